@@ -0,0 +1,114 @@
+package org.traccar.benchmark;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.traccar.BasePipelineFactory;
+import org.traccar.Main;
+import org.traccar.PipelineBuilder;
+import org.traccar.TrackerServer;
+import org.traccar.database.PositionWriter;
+import org.traccar.helper.DataConverter;
+import org.traccar.protocol.Gt06FrameDecoder;
+import org.traccar.protocol.Gt06Protocol;
+import org.traccar.protocol.Gt06ProtocolDecoder;
+import org.traccar.protocol.ProtocolSamples;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pushes frames through the complete server pipeline, from frame decoder to the main event handler, with positions
+ * and events stored in an in-memory H2 database. Has to be started from the project root, so that default
+ * configuration and database schema can be found.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PipelineBenchmark {
+
+    private static final String PROTOCOL = "gt06";
+
+    private static final byte[] LOGIN = DataConverter.parseHex(ProtocolSamples.GT06_LOGIN);
+
+    private static final byte[][] MESSAGES = {
+            DataConverter.parseHex(ProtocolSamples.GT06_GPS_LBS),
+            DataConverter.parseHex(ProtocolSamples.GT06_ALARM)
+    };
+
+    private File configFile;
+    private EmbeddedChannel channel;
+    private int index;
+
+    @Setup
+    public void setup() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("config.default", "./setup/default.xml");
+        properties.setProperty("web.enable", "false");
+        properties.setProperty("logger.console", "true");
+        properties.setProperty("logger.level", "warning");
+        properties.setProperty("database.driver", "org.h2.Driver");
+        properties.setProperty("database.url", "jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1");
+        properties.setProperty("database.user", "sa");
+        properties.setProperty("database.password", "");
+        properties.setProperty("database.registerUnknown", "true");
+
+        configFile = File.createTempFile("benchmark", ".xml");
+        try (OutputStream outputStream = new FileOutputStream(configFile)) {
+            properties.storeToXML(outputStream, null);
+        }
+        Main.init(configFile.getPath());
+
+        Gt06Protocol protocol = new Gt06Protocol();
+        TrackerServer server = new TrackerServer(false, PROTOCOL) {
+            @Override
+            protected void addProtocolHandlers(PipelineBuilder pipeline) {
+                // server is never started, channel below is initialized directly
+            }
+        };
+        channel = new EmbeddedChannel(new BasePipelineFactory(server, PROTOCOL) {
+            @Override
+            protected void addProtocolHandlers(PipelineBuilder pipeline) {
+                pipeline.addLast(new Gt06FrameDecoder());
+                pipeline.addLast(new Gt06ProtocolDecoder(protocol));
+            }
+        });
+
+        channel.writeInbound(Unpooled.wrappedBuffer(LOGIN));
+        channel.releaseOutbound();
+    }
+
+    @TearDown
+    public void tearDown() {
+        channel.finishAndReleaseAll();
+        PositionWriter positionWriter = Main.getInjector().getInstance(PositionWriter.class);
+        if (positionWriter != null) {
+            positionWriter.stop();
+        }
+        configFile.delete();
+    }
+
+    @Benchmark
+    public void process() {
+        channel.writeInbound(Unpooled.wrappedBuffer(MESSAGES[index]));
+        index = (index + 1) % MESSAGES.length;
+        channel.releaseOutbound();
+    }
+
+}
@@ -0,0 +1,121 @@
+package org.traccar.benchmark;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelInboundHandler;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.traccar.BaseProtocolDecoder;
+import org.traccar.Context;
+import org.traccar.TestIdentityManager;
+import org.traccar.WrapperInboundHandler;
+import org.traccar.handler.NetworkMessageHandler;
+import org.traccar.helper.DataConverter;
+import org.traccar.protocol.Gl200FrameDecoder;
+import org.traccar.protocol.Gl200ProtocolDecoder;
+import org.traccar.protocol.Gt06FrameDecoder;
+import org.traccar.protocol.Gt06ProtocolDecoder;
+import org.traccar.protocol.H02FrameDecoder;
+import org.traccar.protocol.H02ProtocolDecoder;
+import org.traccar.protocol.ProtocolSamples;
+import org.traccar.protocol.TeltonikaFrameDecoder;
+import org.traccar.protocol.TeltonikaProtocolDecoder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodes sample messages shared with the protocol tests through the same handler chain the server uses, without any of the
+ * processing handlers. Run with "-prof gc" to get normalized allocation rate per decoded frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ProtocolDecoderBenchmark {
+
+    @Param({"gt06", "teltonika", "gl200", "h02"})
+    private String protocol;
+
+    private EmbeddedChannel channel;
+    private byte[][] messages;
+    private int index;
+
+    private static EmbeddedChannel createChannel(ChannelInboundHandler frameDecoder, BaseProtocolDecoder decoder) {
+        return new EmbeddedChannel(new NetworkMessageHandler(), new WrapperInboundHandler(frameDecoder), decoder);
+    }
+
+    private static byte[] text(String message) {
+        return message.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Setup
+    public void setup() {
+        Context.init(new TestIdentityManager(), null);
+        byte[] login = null;
+        switch (protocol) {
+            case "gt06":
+                channel = createChannel(new Gt06FrameDecoder(), new Gt06ProtocolDecoder(null));
+                login = DataConverter.parseHex(ProtocolSamples.GT06_LOGIN);
+                messages = new byte[][] {
+                        DataConverter.parseHex(ProtocolSamples.GT06_GPS_LBS),
+                        DataConverter.parseHex(ProtocolSamples.GT06_ALARM)};
+                break;
+            case "teltonika":
+                channel = createChannel(new TeltonikaFrameDecoder(), new TeltonikaProtocolDecoder(null, false));
+                login = DataConverter.parseHex(ProtocolSamples.TELTONIKA_IDENTIFICATION);
+                messages = new byte[][] {
+                        DataConverter.parseHex(ProtocolSamples.TELTONIKA_CODEC_8E)};
+                break;
+            case "gl200":
+                channel = createChannel(new Gl200FrameDecoder(), new Gl200ProtocolDecoder(null));
+                messages = new byte[][] {
+                        text(ProtocolSamples.GL200_FRI),
+                        text(ProtocolSamples.GL200_FRI_INPUTS)};
+                break;
+            case "h02":
+                channel = createChannel(new H02FrameDecoder(0), new H02ProtocolDecoder(null));
+                messages = new byte[][] {
+                        text(ProtocolSamples.H02_V5),
+                        text(ProtocolSamples.H02_V1)};
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported protocol " + protocol);
+        }
+        if (login != null) {
+            channel.writeInbound(Unpooled.wrappedBuffer(login));
+            channel.releaseInbound();
+            channel.releaseOutbound();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        channel.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public void decode(Blackhole blackhole) {
+        channel.writeInbound(Unpooled.wrappedBuffer(messages[index]));
+        index = (index + 1) % messages.length;
+        Object decoded;
+        while ((decoded = channel.readInbound()) != null) {
+            blackhole.consume(decoded);
+        }
+        channel.releaseOutbound();
+    }
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2012 - 2019 Anton Tananaev (anton@traccar.org)
+ * Copyright 2012 - 2020 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -25,9 +25,11 @@ import io.netty.handler.timeout.IdleStateHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.traccar.config.Keys;
+import org.traccar.database.MetricsManager;
 import org.traccar.handler.DefaultDataHandler;
 import org.traccar.handler.SpeedLimitHandler;
 import org.traccar.handler.TimeHandler;
+import org.traccar.handler.TripsHandler;
 import org.traccar.handler.events.AlertEventHandler;
 import org.traccar.handler.events.CommandResultEventHandler;
 import org.traccar.handler.events.DriverEventHandler;
@@ -49,6 +51,7 @@ import org.traccar.handler.MotionHandler;
 import org.traccar.handler.NetworkMessageHandler;
 import org.traccar.handler.OpenChannelHandler;
 import org.traccar.handler.RemoteAddressHandler;
+import org.traccar.handler.RollupHandler;
 import org.traccar.handler.StandardLoggingHandler;
 
 import java.util.Map;
@@ -74,11 +77,24 @@ public abstract class BasePipelineFactory extends ChannelInitializer<Channel> {
 
     protected abstract void addProtocolHandlers(PipelineBuilder pipeline);
 
+    private ChannelHandler wrapHandler(ChannelHandler handler, MetricsManager metricsManager) {
+        if (metricsManager != null && handler instanceof ChannelInboundHandler) {
+            return new WrapperInboundHandler((ChannelInboundHandler) handler,
+                    metricsManager.getHandlerHistogram(protocol, handler.getClass().getSimpleName()));
+        }
+        return handler;
+    }
+
     @SafeVarargs
-    private final void addHandlers(ChannelPipeline pipeline, Class<? extends ChannelHandler>... handlerClasses) {
+    private final void addHandlers(
+            ChannelPipeline pipeline, MetricsManager metricsManager,
+            Class<? extends ChannelHandler>... handlerClasses) {
         for (Class<? extends ChannelHandler> handlerClass : handlerClasses) {
             if (handlerClass != null) {
-                pipeline.addLast(Main.getInjector().getInstance(handlerClass));
+                ChannelHandler handler = Main.getInjector().getInstance(handlerClass);
+                if (handler != null) {
+                    pipeline.addLast(wrapHandler(handler, metricsManager));
+                }
             }
         }
     }
@@ -101,6 +117,7 @@ public abstract class BasePipelineFactory extends ChannelInitializer<Channel> {
     @Override
     protected void initChannel(Channel channel) {
         final ChannelPipeline pipeline = channel.pipeline();
+        final MetricsManager metricsManager = Main.getInjector().getInstance(MetricsManager.class);
 
         if (timeout > 0 && !server.isDatagram()) {
             pipeline.addLast(new IdleStateHandler(timeout, 0, 0));
@@ -112,7 +129,9 @@ public abstract class BasePipelineFactory extends ChannelInitializer<Channel> {
         addProtocolHandlers(handler -> {
             if (!(handler instanceof BaseProtocolDecoder || handler instanceof BaseProtocolEncoder)) {
                 if (handler instanceof ChannelInboundHandler) {
-                    handler = new WrapperInboundHandler((ChannelInboundHandler) handler);
+                    handler = metricsManager != null
+                            ? wrapHandler(handler, metricsManager)
+                            : new WrapperInboundHandler((ChannelInboundHandler) handler);
                 } else {
                     handler = new WrapperOutboundHandler((ChannelOutboundHandler) handler);
                 }
@@ -121,7 +140,7 @@ public abstract class BasePipelineFactory extends ChannelInitializer<Channel> {
         });
 
         addHandlers(
-                pipeline,
+                pipeline, metricsManager,
                 TimeHandler.class,
                 GeolocationHandler.class,
                 HemisphereHandler.class,
@@ -131,7 +150,7 @@ public abstract class BasePipelineFactory extends ChannelInitializer<Channel> {
         addDynamicHandlers(pipeline);
 
         addHandlers(
-                pipeline,
+                pipeline, metricsManager,
                 FilterHandler.class,
                 GeocoderHandler.class,
                 SpeedLimitHandler.class,
@@ -140,11 +159,13 @@ public abstract class BasePipelineFactory extends ChannelInitializer<Channel> {
                 EngineHoursHandler.class,
                 ComputedAttributesHandler.class,
                 WebDataHandler.class,
-                DefaultDataHandler.class);
+                DefaultDataHandler.class,
+                RollupHandler.class,
+                TripsHandler.class);
 
         if (eventsEnabled) {
             addHandlers(
-                    pipeline,
+                    pipeline, metricsManager,
                     CommandResultEventHandler.class,
                     OverspeedEventHandler.class,
                     FuelDropEventHandler.class,
@@ -156,7 +177,7 @@ public abstract class BasePipelineFactory extends ChannelInitializer<Channel> {
                     DriverEventHandler.class);
         }
 
-        pipeline.addLast(new MainEventHandler());
+        pipeline.addLast(wrapHandler(new MainEventHandler(), metricsManager));
     }
 
     private void addDynamicHandlers(ChannelPipeline pipeline) {
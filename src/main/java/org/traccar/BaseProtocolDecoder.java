@@ -21,6 +21,7 @@ import io.netty.handler.codec.http.HttpRequestDecoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.traccar.config.Config;
+import org.traccar.config.Keys;
 import org.traccar.database.CommandsManager;
 import org.traccar.database.ConnectionManager;
 import org.traccar.database.IdentityManager;
@@ -46,14 +47,31 @@ public abstract class BaseProtocolDecoder extends ExtendedObjectDecoder {
 
     private static final String PROTOCOL_UNKNOWN = "unknown";
 
-    private final Config config = Context.getConfig();
     private final IdentityManager identityManager = Context.getIdentityManager();
     private final ConnectionManager connectionManager = Context.getConnectionManager();
     private final StatisticsManager statisticsManager;
     private final Protocol protocol;
 
+    private final String server;
+    private final String speedUnits;
+    private final int timeZoneOffset;
+    private final boolean ignoreSessionCache;
+    private final boolean registerUnknown;
+    private final boolean storeDisabled;
+    private final boolean saveEmpty;
+
     public BaseProtocolDecoder(Protocol protocol) {
         this.protocol = protocol;
+        String protocolName = getProtocolName();
+        Config config = Context.getConfig();
+        server = config.getString(Keys.PROTOCOL_SERVER.withPrefix(protocolName));
+        speedUnits = config.getString(Keys.PROTOCOL_SPEED.withPrefix(protocolName));
+        timeZoneOffset = config.getInteger(Keys.PROTOCOL_TIMEZONE.withPrefix(protocolName), 0);
+        ignoreSessionCache = config.getBoolean(Keys.PROTOCOL_IGNORE_SESSION_CACHE.withPrefix(protocolName))
+                || config.getBoolean("decoder.ignoreSessionCache");
+        registerUnknown = config.getBoolean("database.registerUnknown");
+        storeDisabled = config.getBoolean("database.storeDisabled");
+        saveEmpty = config.getBoolean("database.saveEmpty");
         statisticsManager = Main.getInjector() != null ? Main.getInjector().getInstance(StatisticsManager.class) : null;
     }
 
@@ -62,7 +80,7 @@ public abstract class BaseProtocolDecoder extends ExtendedObjectDecoder {
     }
 
     public String getServer(Channel channel, char delimiter) {
-        String server = config.getString(getProtocolName() + ".server");
+        String server = this.server;
         if (server == null && channel != null) {
             InetSocketAddress address = (InetSocketAddress) channel.localAddress();
             server = address.getAddress().getHostAddress() + ":" + address.getPort();
@@ -71,7 +89,7 @@ public abstract class BaseProtocolDecoder extends ExtendedObjectDecoder {
     }
 
     protected double convertSpeed(double value, String defaultUnits) {
-        switch (config.getString(getProtocolName() + ".speed", defaultUnits)) {
+        switch (speedUnits != null ? speedUnits : defaultUnits) {
             case "kmh":
                 return UnitsConverter.knotsFromKph(value);
             case "mps":
@@ -94,7 +112,6 @@ public abstract class BaseProtocolDecoder extends ExtendedObjectDecoder {
         if (timeZoneName != null) {
             result = TimeZone.getTimeZone(timeZoneName);
         } else {
-            int timeZoneOffset = config.getInteger(getProtocolName() + ".timezone", 0);
             if (timeZoneOffset != 0) {
                 result.setRawOffset(timeZoneOffset * 1000);
                 LOGGER.warn("Config parameter " + getProtocolName() + ".timezone is deprecated");
@@ -123,10 +140,10 @@ public abstract class BaseProtocolDecoder extends ExtendedObjectDecoder {
             } catch (Exception e) {
                 LOGGER.warn("Find device error", e);
             }
-            if (deviceId == 0 && config.getBoolean("database.registerUnknown")) {
+            if (deviceId == 0 && registerUnknown) {
                 return identityManager.addUnknownDevice(uniqueIds[0]);
             }
-            if (device != null && !device.getDisabled() || config.getBoolean("database.storeDisabled")) {
+            if (device != null && !device.getDisabled() || storeDisabled) {
                 return deviceId;
             }
             StringBuilder message = new StringBuilder();
@@ -153,8 +170,7 @@ public abstract class BaseProtocolDecoder extends ExtendedObjectDecoder {
     public DeviceSession getDeviceSession(
             Channel channel, SocketAddress remoteAddress, boolean ignoreCache, String... uniqueIds) {
         if (channel != null && BasePipelineFactory.getHandler(channel.pipeline(), HttpRequestDecoder.class) != null
-                || ignoreCache || config.getBoolean(getProtocolName() + ".ignoreSessionCache")
-                || config.getBoolean("decoder.ignoreSessionCache")) {
+                || ignoreCache || ignoreSessionCache) {
             long deviceId = findDeviceId(remoteAddress, uniqueIds);
             if (deviceId != 0) {
                 if (connectionManager != null) {
@@ -244,7 +260,9 @@ public abstract class BaseProtocolDecoder extends ExtendedObjectDecoder {
             }
         }
         for (long deviceId : deviceIds) {
-            connectionManager.updateDevice(deviceId, Device.STATUS_ONLINE, new Date());
+            if (connectionManager != null) {
+                connectionManager.updateDevice(deviceId, Device.STATUS_ONLINE, new Date());
+            }
             sendQueuedCommands(channel, remoteAddress, deviceId);
         }
     }
@@ -261,7 +279,7 @@ public abstract class BaseProtocolDecoder extends ExtendedObjectDecoder {
     @Override
     protected Object handleEmptyMessage(Channel channel, SocketAddress remoteAddress, Object msg) {
         DeviceSession deviceSession = getDeviceSession(channel, remoteAddress);
-        if (config.getBoolean("database.saveEmpty") && deviceSession != null) {
+        if (saveEmpty && deviceSession != null) {
             Position position = new Position(getProtocolName());
             position.setDeviceId(deviceSession.getDeviceId());
             getLastLocation(position, null);
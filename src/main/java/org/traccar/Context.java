@@ -38,8 +38,10 @@ import org.traccar.database.LdapProvider;
 import org.traccar.database.MailManager;
 import org.traccar.database.MaintenancesManager;
 import org.traccar.database.MediaManager;
+import org.traccar.database.MetricsManager;
 import org.traccar.database.NotificationManager;
 import org.traccar.database.PermissionsManager;
+import org.traccar.database.RollupManager;
 import org.traccar.schedule.ScheduleManager;
 import org.traccar.database.UsersManager;
 import org.traccar.geocoder.Geocoder;
@@ -59,6 +61,8 @@ import org.traccar.model.User;
 import org.traccar.notification.EventForwarder;
 import org.traccar.notification.JsonTypeEventForwarder;
 import org.traccar.notification.NotificatorManager;
+import org.traccar.reports.ReportManager;
+import org.traccar.reports.TripsManager;
 import org.traccar.reports.model.TripsConfig;
 import org.traccar.sms.SmsManager;
 import org.traccar.sms.smpp.SmppClient;
@@ -154,6 +158,22 @@ public final class Context {
         return Main.getInjector() != null ? Main.getInjector().getInstance(Geocoder.class) : null;
     }
 
+    public static MetricsManager getMetricsManager() {
+        return Main.getInjector() != null ? Main.getInjector().getInstance(MetricsManager.class) : null;
+    }
+
+    public static RollupManager getRollupManager() {
+        return Main.getInjector() != null ? Main.getInjector().getInstance(RollupManager.class) : null;
+    }
+
+    public static TripsManager getTripsManager() {
+        return Main.getInjector() != null ? Main.getInjector().getInstance(TripsManager.class) : null;
+    }
+
+    public static ReportManager getReportManager() {
+        return Main.getInjector() != null ? Main.getInjector().getInstance(ReportManager.class) : null;
+    }
+
     private static WebServer webServer;
 
     public static WebServer getWebServer() {
@@ -303,7 +323,7 @@ public final class Context {
             ldapProvider = new LdapProvider(config);
         }
 
-        mailManager = new MailManager();
+        mailManager = new MailManager(config);
 
         mediaManager = new MediaManager(config.getString("media.path"));
 
@@ -20,6 +20,9 @@ import com.google.inject.Injector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.traccar.api.HealthCheckService;
+import org.traccar.config.Keys;
+import org.traccar.database.PositionWriter;
+import org.traccar.geocoder.GeocoderCache;
 
 import java.io.File;
 import java.lang.management.ManagementFactory;
@@ -132,10 +135,27 @@ public final class Main {
         }, 0, CLEAN_PERIOD);
     }
 
+    private static void scheduleGeocoderCacheSave() {
+        GeocoderCache geocoderCache = injector.getInstance(GeocoderCache.class);
+        long period = Context.getConfig().getLong(Keys.GEOCODER_CACHE_SAVE_INTERVAL, 3600) * 1000;
+        if (geocoderCache != null && period > 0) {
+            new Timer().scheduleAtFixedRate(new TimerTask() {
+                @Override
+                public void run() {
+                    geocoderCache.save();
+                }
+            }, period, period);
+        }
+    }
+
+    public static void init(String configFile) throws Exception {
+        Context.init(configFile);
+        injector = Guice.createInjector(new MainModule());
+    }
+
     public static void run(String configFile) {
         try {
-            Context.init(configFile);
-            injector = Guice.createInjector(new MainModule());
+            init(configFile);
             logSystemInfo();
             LOGGER.info("Version: " + Main.class.getPackage().getImplementationVersion());
             LOGGER.info("Starting server...");
@@ -148,6 +168,7 @@ public final class Main {
 
             scheduleHealthCheck();
             scheduleDatabaseCleanup();
+            scheduleGeocoderCacheSave();
 
             Thread.setDefaultUncaughtExceptionHandler((t, e) -> LOGGER.error("Thread exception", e));
 
@@ -159,6 +180,24 @@ public final class Main {
                     Context.getWebServer().stop();
                 }
                 Context.getServerManager().stop();
+
+                PositionWriter positionWriter = injector.getInstance(PositionWriter.class);
+                if (positionWriter != null) {
+                    positionWriter.stop();
+                }
+
+                if (Context.getRollupManager() != null) {
+                    Context.getRollupManager().stop();
+                }
+
+                if (Context.getNotificationManager() != null) {
+                    Context.getNotificationManager().stop();
+                }
+
+                GeocoderCache geocoderCache = injector.getInstance(GeocoderCache.class);
+                if (geocoderCache != null) {
+                    geocoderCache.save();
+                }
             }));
         } catch (Exception e) {
             LOGGER.error("Main method error", e);
@@ -28,6 +28,10 @@ import org.traccar.database.DeviceManager;
 import org.traccar.database.GeofenceManager;
 import org.traccar.database.IdentityManager;
 import org.traccar.database.MaintenancesManager;
+import org.traccar.database.MetricsManager;
+import org.traccar.database.NotificationManager;
+import org.traccar.database.PositionWriter;
+import org.traccar.database.RollupManager;
 import org.traccar.database.StatisticsManager;
 import org.traccar.geocoder.AddressFormat;
 import org.traccar.geocoder.BanGeocoder;
@@ -36,6 +40,7 @@ import org.traccar.geocoder.FactualGeocoder;
 import org.traccar.geocoder.GeocodeFarmGeocoder;
 import org.traccar.geocoder.GeocodeXyzGeocoder;
 import org.traccar.geocoder.Geocoder;
+import org.traccar.geocoder.GeocoderCache;
 import org.traccar.geocoder.GisgraphyGeocoder;
 import org.traccar.geocoder.GoogleGeocoder;
 import org.traccar.geocoder.HereGeocoder;
@@ -61,8 +66,10 @@ import org.traccar.handler.GeolocationHandler;
 import org.traccar.handler.HemisphereHandler;
 import org.traccar.handler.MotionHandler;
 import org.traccar.handler.RemoteAddressHandler;
+import org.traccar.handler.RollupHandler;
 import org.traccar.handler.SpeedLimitHandler;
 import org.traccar.handler.TimeHandler;
+import org.traccar.handler.TripsHandler;
 import org.traccar.handler.events.AlertEventHandler;
 import org.traccar.handler.events.CommandResultEventHandler;
 import org.traccar.handler.events.DriverEventHandler;
@@ -72,6 +79,9 @@ import org.traccar.handler.events.IgnitionEventHandler;
 import org.traccar.handler.events.MaintenanceEventHandler;
 import org.traccar.handler.events.MotionEventHandler;
 import org.traccar.handler.events.OverspeedEventHandler;
+import org.traccar.notification.NotificatorManager;
+import org.traccar.reports.ReportManager;
+import org.traccar.reports.TripsManager;
 import org.traccar.reports.model.TripsConfig;
 
 import javax.annotation.Nullable;
@@ -137,6 +147,16 @@ public class MainModule extends AbstractModule {
         return Context.getMaintenancesManager();
     }
 
+    @Provides
+    public static NotificationManager provideNotificationManager() {
+        return Context.getNotificationManager();
+    }
+
+    @Provides
+    public static NotificatorManager provideNotificatorManager() {
+        return Context.getNotificatorManager();
+    }
+
     @Singleton
     @Provides
     public static StatisticsManager provideStatisticsManager(
@@ -146,7 +166,20 @@ public class MainModule extends AbstractModule {
 
     @Singleton
     @Provides
-    public static Geocoder provideGeocoder(Config config) {
+    public static GeocoderCache provideGeocoderCache(Config config) {
+        int cacheSize = config.getInteger(Keys.GEOCODER_CACHE_SIZE);
+        if (config.getBoolean(Keys.GEOCODER_ENABLE) && cacheSize > 0) {
+            return new GeocoderCache(
+                    cacheSize,
+                    config.getInteger(Keys.GEOCODER_CACHE_PRECISION, GeocoderCache.DEFAULT_PRECISION),
+                    config.getString(Keys.GEOCODER_CACHE_FILE));
+        }
+        return null;
+    }
+
+    @Singleton
+    @Provides
+    public static Geocoder provideGeocoder(Config config, @Nullable GeocoderCache geocoderCache) {
         if (config.getBoolean(Keys.GEOCODER_ENABLE)) {
             String type = config.getString(Keys.GEOCODER_TYPE, "google");
             String url = config.getString(Keys.GEOCODER_URL);
@@ -156,36 +189,35 @@ public class MainModule extends AbstractModule {
             String formatString = config.getString(Keys.GEOCODER_FORMAT);
             AddressFormat addressFormat = formatString != null ? new AddressFormat(formatString) : new AddressFormat();
 
-            int cacheSize = config.getInteger(Keys.GEOCODER_CACHE_SIZE);
             switch (type) {
                 case "nominatim":
-                    return new NominatimGeocoder(url, key, language, cacheSize, addressFormat);
+                    return new NominatimGeocoder(url, key, language, geocoderCache, addressFormat);
                 case "gisgraphy":
-                    return new GisgraphyGeocoder(url, cacheSize, addressFormat);
+                    return new GisgraphyGeocoder(url, geocoderCache, addressFormat);
                 case "mapquest":
-                    return new MapQuestGeocoder(url, key, cacheSize, addressFormat);
+                    return new MapQuestGeocoder(url, key, geocoderCache, addressFormat);
                 case "opencage":
-                    return new OpenCageGeocoder(url, key, cacheSize, addressFormat);
+                    return new OpenCageGeocoder(url, key, geocoderCache, addressFormat);
                 case "bingmaps":
-                    return new BingMapsGeocoder(url, key, cacheSize, addressFormat);
+                    return new BingMapsGeocoder(url, key, geocoderCache, addressFormat);
                 case "factual":
-                    return new FactualGeocoder(url, key, cacheSize, addressFormat);
+                    return new FactualGeocoder(url, key, geocoderCache, addressFormat);
                 case "geocodefarm":
-                    return new GeocodeFarmGeocoder(key, language, cacheSize, addressFormat);
+                    return new GeocodeFarmGeocoder(key, language, geocoderCache, addressFormat);
                 case "geocodexyz":
-                    return new GeocodeXyzGeocoder(key, cacheSize, addressFormat);
+                    return new GeocodeXyzGeocoder(key, geocoderCache, addressFormat);
                 case "ban":
-                    return new BanGeocoder(cacheSize, addressFormat);
+                    return new BanGeocoder(geocoderCache, addressFormat);
                 case "here":
-                    return new HereGeocoder(url, id, key, language, cacheSize, addressFormat);
+                    return new HereGeocoder(url, id, key, language, geocoderCache, addressFormat);
                 case "mapmyindia":
-                    return new MapmyIndiaGeocoder(url, key, cacheSize, addressFormat);
+                    return new MapmyIndiaGeocoder(url, key, geocoderCache, addressFormat);
                 case "tomtom":
-                    return new TomTomGeocoder(url, key, cacheSize, addressFormat);
+                    return new TomTomGeocoder(url, key, geocoderCache, addressFormat);
                 case "positionstack":
-                    return new PositionStackGeocoder(key, cacheSize, addressFormat);
+                    return new PositionStackGeocoder(key, geocoderCache, addressFormat);
                 default:
-                    return new GoogleGeocoder(key, language, cacheSize, addressFormat);
+                    return new GoogleGeocoder(key, language, geocoderCache, addressFormat);
             }
         }
         return null;
@@ -284,9 +316,9 @@ public class MainModule extends AbstractModule {
     @Provides
     public static GeocoderHandler provideGeocoderHandler(
             Config config, @Nullable Geocoder geocoder, IdentityManager identityManager,
-            StatisticsManager statisticsManager) {
+            StatisticsManager statisticsManager, @Nullable DataManager dataManager) {
         if (geocoder != null) {
-            return new GeocoderHandler(config, geocoder, identityManager, statisticsManager);
+            return new GeocoderHandler(config, geocoder, identityManager, statisticsManager, dataManager);
         }
         return null;
     }
@@ -345,9 +377,78 @@ public class MainModule extends AbstractModule {
 
     @Singleton
     @Provides
-    public static DefaultDataHandler provideDefaultDataHandler(@Nullable DataManager dataManager) {
+    public static PositionWriter providePositionWriter(Config config, @Nullable DataManager dataManager) {
+        if (dataManager != null && config.getBoolean(Keys.DATABASE_BATCH_ENABLE)) {
+            return new PositionWriter(config, dataManager);
+        }
+        return null;
+    }
+
+    @Singleton
+    @Provides
+    public static MetricsManager provideMetricsManager(
+            Config config, @Nullable DataManager dataManager, @Nullable PositionWriter positionWriter,
+            @Nullable GeocoderHandler geocoderHandler, @Nullable GeocoderCache geocoderCache,
+            @Nullable NotificationManager notificationManager, @Nullable NotificatorManager notificatorManager) {
+        if (config.getBoolean(Keys.METRICS_ENABLE)) {
+            return new MetricsManager(
+                    dataManager, positionWriter, geocoderHandler, geocoderCache,
+                    notificationManager, notificatorManager);
+        }
+        return null;
+    }
+
+    @Singleton
+    @Provides
+    public static RollupManager provideRollupManager(Config config, @Nullable DataManager dataManager) {
+        if (dataManager != null && config.getBoolean(Keys.REPORT_ROLLUP_ENABLE)) {
+            return new RollupManager(dataManager, config.getLong(Keys.REPORT_ROLLUP_FLUSH_INTERVAL, 60000));
+        }
+        return null;
+    }
+
+    @Singleton
+    @Provides
+    public static RollupHandler provideRollupHandler(@Nullable RollupManager rollupManager) {
+        if (rollupManager != null) {
+            return new RollupHandler(rollupManager);
+        }
+        return null;
+    }
+
+    @Singleton
+    @Provides
+    public static TripsManager provideTripsManager(
+            Config config, @Nullable DataManager dataManager, IdentityManager identityManager,
+            DeviceManager deviceManager, TripsConfig tripsConfig) {
+        if (dataManager != null && config.getBoolean(Keys.REPORT_TRIP_MATERIALIZE)) {
+            return new TripsManager(dataManager, identityManager, deviceManager, tripsConfig,
+                    config.getInteger(Keys.REPORT_TRIP_MATERIALIZE_THREADS, 1));
+        }
+        return null;
+    }
+
+    @Singleton
+    @Provides
+    public static TripsHandler provideTripsHandler(@Nullable TripsManager tripsManager) {
+        if (tripsManager != null) {
+            return new TripsHandler(tripsManager);
+        }
+        return null;
+    }
+
+    @Singleton
+    @Provides
+    public static ReportManager provideReportManager(Config config) {
+        return new ReportManager(config);
+    }
+
+    @Singleton
+    @Provides
+    public static DefaultDataHandler provideDefaultDataHandler(
+            @Nullable DataManager dataManager, @Nullable PositionWriter positionWriter) {
         if (dataManager != null) {
-            return new DefaultDataHandler(dataManager);
+            return new DefaultDataHandler(dataManager, positionWriter);
         }
         return null;
     }
@@ -27,6 +27,7 @@ import java.net.URL;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.util.Enumeration;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -38,6 +39,8 @@ public class ServerManager {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ServerManager.class);
 
+    private static final String PROTOCOL_SUFFIX = "Protocol";
+
     private final List<TrackerServer> serverList = new LinkedList<>();
     private final Map<String, BaseProtocol> protocolList = new ConcurrentHashMap<>();
 
@@ -69,15 +72,30 @@ public class ServerManager {
             }
         }
 
+        for (Map.Entry<String, String> entry : indexProtocols(names).entrySet()) {
+            if (Context.getConfig().hasKey(entry.getKey() + ".port")) {
+                Class<?> protocolClass = Class.forName(packageName + '.' + entry.getValue());
+                if (BaseProtocol.class.isAssignableFrom(protocolClass)) {
+                    BaseProtocol protocol = (BaseProtocol) protocolClass.newInstance();
+                    serverList.addAll(protocol.getServerList());
+                    protocolList.put(protocol.getName(), protocol);
+                }
+            }
+        }
+    }
+
+    /**
+     * Map protocol names to class names using the naming convention from {@link BaseProtocol#nameFromClass}, so only
+     * classes of configured protocols have to be loaded.
+     */
+    private static Map<String, String> indexProtocols(List<String> names) {
+        Map<String, String> index = new LinkedHashMap<>();
         for (String name : names) {
-            Class protocolClass = Class.forName(packageName + '.' + name);
-            if (BaseProtocol.class.isAssignableFrom(protocolClass)
-                    && Context.getConfig().hasKey(BaseProtocol.nameFromClass(protocolClass) + ".port")) {
-                BaseProtocol protocol = (BaseProtocol) protocolClass.newInstance();
-                serverList.addAll(protocol.getServerList());
-                protocolList.put(protocol.getName(), protocol);
+            if (name.endsWith(PROTOCOL_SUFFIX) && name.length() > PROTOCOL_SUFFIX.length() && name.indexOf('$') < 0) {
+                index.put(name.substring(0, name.length() - PROTOCOL_SUFFIX.length()).toLowerCase(), name);
             }
         }
+        return index;
     }
 
     public ServerManager() throws IOException, URISyntaxException, ReflectiveOperationException {
@@ -28,9 +28,11 @@ import org.traccar.config.Config;
 import org.traccar.config.Keys;
 import org.traccar.database.IdentityManager;
 import org.traccar.helper.Checksum;
+import org.traccar.helper.HeaderUtil;
 import org.traccar.model.Device;
 import org.traccar.model.Position;
 import org.traccar.model.Group;
+import org.traccar.notification.BatchForwarder;
 
 import javax.inject.Inject;
 import javax.ws.rs.core.HttpHeaders;
@@ -40,15 +42,18 @@ import javax.ws.rs.client.Client;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.client.Invocation;
 import javax.ws.rs.client.InvocationCallback;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
-import java.util.Calendar;
-import java.util.Formatter;
-import java.util.Locale;
-import java.util.TimeZone;
+import java.time.LocalDate;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -69,6 +74,10 @@ public class WebDataHandler extends BaseDataHandler {
     private final boolean json;
     private final boolean urlVariables;
 
+    private final Template urlTemplate;
+    private final Map<String, Template> headerTemplates = new LinkedHashMap<>();
+    private MediaType mediaType = MediaType.APPLICATION_JSON_TYPE;
+
     private final boolean retryEnabled;
     private final int retryDelay;
     private final int retryCount;
@@ -76,6 +85,8 @@ public class WebDataHandler extends BaseDataHandler {
 
     private final AtomicInteger deliveryPending;
 
+    private final BatchForwarder batchForwarder;
+
     @Inject
     public WebDataHandler(
             Config config, IdentityManager identityManager, ObjectMapper objectMapper, Client client) {
@@ -88,41 +99,144 @@ public class WebDataHandler extends BaseDataHandler {
         this.json = config.getBoolean(Keys.FORWARD_JSON);
         this.urlVariables = config.getBoolean(Keys.FORWARD_URL_VARIABLES);
 
+        Map<String, Variable> variables = createVariables();
+        this.urlTemplate = new Template(url != null ? url : "", variables);
+        for (Map.Entry<String, String> entry : HeaderUtil.parseHeaders(header).entrySet()) {
+            if (entry.getKey().equals(HttpHeaders.CONTENT_TYPE)) {
+                mediaType = MediaType.valueOf(entry.getValue());
+            } else {
+                headerTemplates.put(entry.getKey(), new Template(entry.getValue(), variables));
+            }
+        }
+
         this.retryEnabled = config.getBoolean(Keys.FORWARD_RETRY_ENABLE);
         this.retryDelay = config.getInteger(Keys.FORWARD_RETRY_DELAY, 100);
         this.retryCount = config.getInteger(Keys.FORWARD_RETRY_COUNT, 10);
         this.retryLimit = config.getInteger(Keys.FORWARD_RETRY_LIMIT, 100);
 
         this.deliveryPending = new AtomicInteger(0);
-    }
 
-    private static String formatSentence(Position position) {
+        if (config.getBoolean(Keys.FORWARD_BATCH_ENABLE.withPrefix("forward"))) {
+            try {
+                batchForwarder = new BatchForwarder(config, "forward", objectMapper, client, url, header);
+            } catch (IOException e) {
+                throw new RuntimeException("Forwarding spool error", e);
+            }
+        } else {
+            batchForwarder = null;
+        }
+    }
 
-        StringBuilder s = new StringBuilder("$GPRMC,");
+    private interface Variable {
+        void append(StringBuilder target, Position position, Device device)
+                throws UnsupportedEncodingException, JsonProcessingException;
+    }
 
-        try (Formatter f = new Formatter(s, Locale.ENGLISH)) {
+    /**
+     * Request template split once into literal text and variables, so that only referenced values are computed.
+     */
+    private static final class Template {
+
+        private final List<Variable> segments = new ArrayList<>();
+        private final String constant;
+
+        private Template(String template, Map<String, Variable> variables) {
+            StringBuilder literal = new StringBuilder();
+            boolean hasVariables = false;
+            int index = 0;
+            while (index < template.length()) {
+                int start = template.indexOf('{', index);
+                int end = start >= 0 ? template.indexOf('}', start) : -1;
+                if (end < 0) {
+                    literal.append(template, index, template.length());
+                    break;
+                }
+                literal.append(template, index, start);
+                Variable variable = variables.get(template.substring(start + 1, end));
+                if (variable != null) {
+                    addLiteral(literal);
+                    segments.add(variable);
+                    hasVariables = true;
+                } else {
+                    literal.append(template, start, end + 1);
+                }
+                index = end + 1;
+            }
+            constant = hasVariables ? null : literal.toString();
+            addLiteral(literal);
+        }
 
-            Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"), Locale.ENGLISH);
-            calendar.setTimeInMillis(position.getFixTime().getTime());
+        private void addLiteral(StringBuilder literal) {
+            if (literal.length() > 0) {
+                String value = literal.toString();
+                segments.add((target, position, device) -> target.append(value));
+                literal.setLength(0);
+            }
+        }
 
-            f.format("%1$tH%1$tM%1$tS.%1$tL,A,", calendar);
+    }
 
-            double lat = position.getLatitude();
-            double lon = position.getLongitude();
+    private static final ThreadLocal<StringBuilder> BUILDER = ThreadLocal.withInitial(StringBuilder::new);
 
-            f.format("%02d%07.4f,%c,", (int) Math.abs(lat), Math.abs(lat) % 1 * 60, lat < 0 ? 'S' : 'N');
-            f.format("%03d%07.4f,%c,", (int) Math.abs(lon), Math.abs(lon) % 1 * 60, lon < 0 ? 'W' : 'E');
+    private static String encode(String value) throws UnsupportedEncodingException {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8.name());
+    }
 
-            f.format("%.2f,%.2f,", position.getSpeed(), position.getCourse());
-            f.format("%1$td%1$tm%1$ty,,", calendar);
+    private static void appendDigits(StringBuilder target, long value, int width) {
+        String digits = String.valueOf(value);
+        for (int i = digits.length(); i < width; i++) {
+            target.append('0');
         }
+        target.append(digits);
+    }
 
-        s.append(Checksum.nmea(s.substring(1)));
+    private static void appendDecimal(StringBuilder target, double value, int scale, int width) {
+        String decimal = BigDecimal.valueOf(value).setScale(scale, RoundingMode.HALF_UP).toPlainString();
+        for (int i = decimal.length(); i < width; i++) {
+            target.append('0');
+        }
+        target.append(decimal);
+    }
 
-        return s.toString();
+    private static void appendSentence(StringBuilder target, Position position) {
+
+        int start = target.length();
+        target.append("$GPRMC,");
+
+        long time = position.getFixTime().getTime();
+        long millisOfDay = Math.floorMod(time, 86400000L);
+        appendDigits(target, millisOfDay / 3600000, 2);
+        appendDigits(target, millisOfDay / 60000 % 60, 2);
+        appendDigits(target, millisOfDay / 1000 % 60, 2);
+        target.append('.');
+        appendDigits(target, millisOfDay % 1000, 3);
+        target.append(",A,");
+
+        double lat = position.getLatitude();
+        double lon = position.getLongitude();
+
+        appendDigits(target, (int) Math.abs(lat), 2);
+        appendDecimal(target, Math.abs(lat) % 1 * 60, 4, 7);
+        target.append(',').append(lat < 0 ? 'S' : 'N').append(',');
+        appendDigits(target, (int) Math.abs(lon), 3);
+        appendDecimal(target, Math.abs(lon) % 1 * 60, 4, 7);
+        target.append(',').append(lon < 0 ? 'W' : 'E').append(',');
+
+        appendDecimal(target, position.getSpeed(), 2, 0);
+        target.append(',');
+        appendDecimal(target, position.getCourse(), 2, 0);
+        target.append(',');
+
+        LocalDate date = LocalDate.ofEpochDay(Math.floorDiv(time, 86400000L));
+        appendDigits(target, date.getDayOfMonth(), 2);
+        appendDigits(target, date.getMonthValue(), 2);
+        appendDigits(target, date.getYear() % 100, 2);
+        target.append(",,");
+
+        target.append(Checksum.nmea(target.substring(start + 1)));
     }
 
-    private String calculateStatus(Position position) {
+    private static String calculateStatus(Position position) {
         if (position.getAttributes().containsKey(Position.KEY_ALARM)) {
             return "0xF841"; // STATUS_PANIC_ON
         } else if (position.getSpeed() < 1.0) {
@@ -132,43 +246,34 @@ public class WebDataHandler extends BaseDataHandler {
         }
     }
 
-    public String formatRequest(Position position) throws UnsupportedEncodingException, JsonProcessingException {
-
-        Device device = identityManager.getById(position.getDeviceId());
-
-        String request = url
-                .replace("{name}", URLEncoder.encode(device.getName(), StandardCharsets.UTF_8.name()))
-                .replace("{uniqueId}", device.getUniqueId())
-                .replace("{status}", device.getStatus())
-                .replace("{deviceId}", String.valueOf(position.getDeviceId()))
-                .replace("{protocol}", String.valueOf(position.getProtocol()))
-                .replace("{deviceTime}", String.valueOf(position.getDeviceTime().getTime()))
-                .replace("{fixTime}", String.valueOf(position.getFixTime().getTime()))
-                .replace("{valid}", String.valueOf(position.getValid()))
-                .replace("{latitude}", String.valueOf(position.getLatitude()))
-                .replace("{longitude}", String.valueOf(position.getLongitude()))
-                .replace("{altitude}", String.valueOf(position.getAltitude()))
-                .replace("{speed}", String.valueOf(position.getSpeed()))
-                .replace("{course}", String.valueOf(position.getCourse()))
-                .replace("{accuracy}", String.valueOf(position.getAccuracy()))
-                .replace("{statusCode}", calculateStatus(position));
-
-        if (position.getAddress() != null) {
-            request = request.replace(
-                    "{address}", URLEncoder.encode(position.getAddress(), StandardCharsets.UTF_8.name()));
-        }
-
-        if (request.contains("{attributes}")) {
-            String attributes = objectMapper.writeValueAsString(position.getAttributes());
-            request = request.replace(
-                    "{attributes}", URLEncoder.encode(attributes, StandardCharsets.UTF_8.name()));
-        }
-
-        if (request.contains("{gprmc}")) {
-            request = request.replace("{gprmc}", formatSentence(position));
-        }
-
-        if (request.contains("{group}")) {
+    private Map<String, Variable> createVariables() {
+        Map<String, Variable> variables = new HashMap<>();
+        variables.put("name", (target, position, device) -> target.append(encode(device.getName())));
+        variables.put("uniqueId", (target, position, device) -> target.append(device.getUniqueId()));
+        variables.put("status", (target, position, device) -> target.append(device.getStatus()));
+        variables.put("deviceId", (target, position, device) -> target.append(position.getDeviceId()));
+        variables.put("protocol", (target, position, device) -> target.append(position.getProtocol()));
+        variables.put("deviceTime", (target, position, device) -> target.append(position.getDeviceTime().getTime()));
+        variables.put("fixTime", (target, position, device) -> target.append(position.getFixTime().getTime()));
+        variables.put("valid", (target, position, device) -> target.append(position.getValid()));
+        variables.put("latitude", (target, position, device) -> target.append(position.getLatitude()));
+        variables.put("longitude", (target, position, device) -> target.append(position.getLongitude()));
+        variables.put("altitude", (target, position, device) -> target.append(position.getAltitude()));
+        variables.put("speed", (target, position, device) -> target.append(position.getSpeed()));
+        variables.put("course", (target, position, device) -> target.append(position.getCourse()));
+        variables.put("accuracy", (target, position, device) -> target.append(position.getAccuracy()));
+        variables.put("statusCode", (target, position, device) -> target.append(calculateStatus(position)));
+        variables.put("address", (target, position, device) -> {
+            if (position.getAddress() != null) {
+                target.append(encode(position.getAddress()));
+            } else {
+                target.append("{address}");
+            }
+        });
+        variables.put("attributes", (target, position, device) ->
+                target.append(encode(objectMapper.writeValueAsString(position.getAttributes()))));
+        variables.put("gprmc", (target, position, device) -> appendSentence(target, position));
+        variables.put("group", (target, position, device) -> {
             String deviceGroupName = "";
             if (device.getGroupId() != 0) {
                 Group group = Context.getGroupsManager().getById(device.getGroupId());
@@ -176,11 +281,30 @@ public class WebDataHandler extends BaseDataHandler {
                     deviceGroupName = group.getName();
                 }
             }
+            target.append(encode(deviceGroupName));
+        });
+        return variables;
+    }
+
+    private String format(Template template, Position position)
+            throws UnsupportedEncodingException, JsonProcessingException {
+
+        if (template.constant != null) {
+            return template.constant;
+        }
+
+        Device device = identityManager.getById(position.getDeviceId());
 
-            request = request.replace("{group}", URLEncoder.encode(deviceGroupName, StandardCharsets.UTF_8.name()));
+        StringBuilder request = BUILDER.get();
+        request.setLength(0);
+        for (Variable segment : template.segments) {
+            segment.append(request, position, device);
         }
+        return request.toString();
+    }
 
-        return request;
+    public String formatRequest(Position position) throws UnsupportedEncodingException, JsonProcessingException {
+        return format(urlTemplate, position);
     }
 
     class AsyncRequestAndCallback implements InvocationCallback<Response>, TimerTask {
@@ -188,7 +312,6 @@ public class WebDataHandler extends BaseDataHandler {
         private int retries = 0;
         private Map<String, Object> payload;
         private final Invocation.Builder requestBuilder;
-        private MediaType mediaType = MediaType.APPLICATION_JSON_TYPE;
 
         AsyncRequestAndCallback(Position position) {
 
@@ -200,17 +323,12 @@ public class WebDataHandler extends BaseDataHandler {
             }
 
             requestBuilder = client.target(formattedUrl).request();
-            if (header != null && !header.isEmpty()) {
-                for (String line: header.split("\\r?\\n")) {
-                    String[] values = line.split(":", 2);
-                    String headerName = values[0].trim();
-                    String headerValue = values[1].trim();
-                    if (headerName.equals(HttpHeaders.CONTENT_TYPE)) {
-                        mediaType = MediaType.valueOf(headerValue);
-                    } else {
-                        requestBuilder.header(headerName, headerValue);
-                    }
+            try {
+                for (Map.Entry<String, Template> entry : headerTemplates.entrySet()) {
+                    requestBuilder.header(entry.getKey(), format(entry.getValue(), position));
                 }
+            } catch (UnsupportedEncodingException | JsonProcessingException e) {
+                throw new RuntimeException("Forwarding header formatting error", e);
             }
 
             if (json) {
@@ -285,6 +403,11 @@ public class WebDataHandler extends BaseDataHandler {
     @Override
     protected Position handlePosition(Position position) {
 
+        if (batchForwarder != null) {
+            batchForwarder.forward(prepareJsonPayload(position));
+            return position;
+        }
+
         AsyncRequestAndCallback request = new AsyncRequestAndCallback(position);
         request.send();
 
@@ -1,5 +1,5 @@
 /*
- * Copyright 2018 Anton Tananaev (anton@traccar.org)
+ * Copyright 2018 - 2020 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,17 +17,27 @@ package org.traccar;
 
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandler;
+import org.traccar.database.MetricsManager;
 
 public class WrapperInboundHandler implements ChannelInboundHandler {
 
+    // time spent in downstream handlers called synchronously on the current thread
+    private static final ThreadLocal<long[]> NESTED_TIME = ThreadLocal.withInitial(() -> new long[1]);
+
     private final ChannelInboundHandler handler;
+    private final MetricsManager.Histogram histogram;
 
     public ChannelInboundHandler getWrappedHandler() {
         return handler;
     }
 
     public WrapperInboundHandler(ChannelInboundHandler handler) {
+        this(handler, null);
+    }
+
+    public WrapperInboundHandler(ChannelInboundHandler handler, MetricsManager.Histogram histogram) {
         this.handler = handler;
+        this.histogram = histogram;
     }
 
     @Override
@@ -52,6 +62,24 @@ public class WrapperInboundHandler implements ChannelInboundHandler {
 
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (histogram == null) {
+            handleRead(ctx, msg);
+            return;
+        }
+        long[] nestedTime = NESTED_TIME.get();
+        long outerNestedTime = nestedTime[0];
+        nestedTime[0] = 0;
+        long startTime = System.nanoTime();
+        try {
+            handleRead(ctx, msg);
+        } finally {
+            long totalTime = System.nanoTime() - startTime;
+            histogram.record(totalTime - nestedTime[0]);
+            nestedTime[0] = outerNestedTime + totalTime;
+        }
+    }
+
+    private void handleRead(ChannelHandlerContext ctx, Object msg) throws Exception {
         if (msg instanceof NetworkMessage) {
             NetworkMessage nm = (NetworkMessage) msg;
             handler.channelRead(new WrapperContext(ctx, nm.getRemoteAddress()), nm.getMessage());
@@ -1,5 +1,5 @@
 /*
- * Copyright 2015 - 2016 Anton Tananaev (anton@traccar.org)
+ * Copyright 2015 - 2020 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -18,19 +18,36 @@ package org.traccar.api;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import org.eclipse.jetty.websocket.api.Session;
 import org.eclipse.jetty.websocket.api.WebSocketAdapter;
+import org.eclipse.jetty.websocket.api.WriteCallback;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.traccar.Context;
+import org.traccar.config.Keys;
 import org.traccar.database.ConnectionManager;
 import org.traccar.model.Device;
 import org.traccar.model.Event;
 import org.traccar.model.Position;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Pending updates are merged into a single {@code {devices, positions, events}} message per flush interval, keeping
+ * only the latest device and position update per device. In compact mode positions are sent as a separate binary
+ * message of fixed size big-endian records: device id, position id, fix time in milliseconds (longs), latitude,
+ * longitude, altitude (doubles), speed, course (floats) and validity (byte). Updates are serialized when they are
+ * queued, because the objects may be modified later, and flushes run on a dedicated executor.
+ */
 public class AsyncSocket extends WebSocketAdapter implements ConnectionManager.UpdateListener {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(AsyncSocket.class);
@@ -39,19 +56,55 @@ public class AsyncSocket extends WebSocketAdapter implements ConnectionManager.U
     private static final String KEY_POSITIONS = "positions";
     private static final String KEY_EVENTS = "events";
 
+    private static final int COMPACT_POSITION_SIZE = 6 * 8 + 2 * 4 + 1;
+
+    private static final ScheduledExecutorService EXECUTOR = createExecutor();
+
     private final long userId;
+    private final boolean compact;
+    private final int queueSize;
+    private final long flushInterval;
+
+    // guarded by this
+    private final Map<Long, String> devices = new LinkedHashMap<>();
+    private final Map<Long, Object> positions = new LinkedHashMap<>(); // JSON string or compact record
+    private final Deque<String> events = new ArrayDeque<>();
+    private final Deque<Object> messages = new ArrayDeque<>();
+    private boolean flushScheduled;
+    private boolean sending;
 
-    public AsyncSocket(long userId) {
+    public AsyncSocket(long userId, boolean compact) {
         this.userId = userId;
+        this.compact = compact;
+        queueSize = Math.max(Context.getConfig().getInteger(Keys.WEB_SOCKET_QUEUE_SIZE, 1000), 1);
+        flushInterval = Context.getConfig().getLong(Keys.WEB_SOCKET_FLUSH_INTERVAL, 250);
+    }
+
+    private static ScheduledExecutorService createExecutor() {
+        AtomicInteger index = new AtomicInteger();
+        return Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+            Thread thread = new Thread(runnable, "socket-flush-" + index.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     @Override
     public void onWebSocketConnect(Session session) {
         super.onWebSocketConnect(session);
 
-        Map<String, Collection<?>> data = new HashMap<>();
-        data.put(KEY_POSITIONS, Context.getDeviceManager().getInitialState(userId));
-        sendData(data);
+        Map<Long, Object> initialPositions = new LinkedHashMap<>();
+        for (Position position : Context.getDeviceManager().getInitialState(userId)) {
+            Object value = formatPosition(new ConnectionManager.Update<>(position));
+            if (value != null) {
+                initialPositions.put(position.getDeviceId(), value);
+            }
+        }
+        synchronized (this) {
+            positions.putAll(initialPositions);
+            flushScheduled = true;
+        }
+        EXECUTOR.execute(this::flush);
 
         Context.getConnectionManager().addListener(userId, this);
     }
@@ -61,36 +114,228 @@ public class AsyncSocket extends WebSocketAdapter implements ConnectionManager.U
         super.onWebSocketClose(statusCode, reason);
 
         Context.getConnectionManager().removeListener(userId, this);
+        synchronized (this) {
+            devices.clear();
+            positions.clear();
+            events.clear();
+            messages.clear();
+        }
+    }
+
+    private static String formatJson(ConnectionManager.Update<?> update) {
+        try {
+            return update.getJson();
+        } catch (JsonProcessingException e) {
+            LOGGER.warn("Socket JSON formatting error", e);
+            return null;
+        }
+    }
+
+    private Object formatPosition(ConnectionManager.Update<Position> update) {
+        return compact ? formatCompact(update.getObject()) : formatJson(update);
     }
 
     @Override
-    public void onUpdateDevice(Device device) {
-        Map<String, Collection<?>> data = new HashMap<>();
-        data.put(KEY_DEVICES, Collections.singletonList(device));
-        sendData(data);
+    public void onUpdateDevice(ConnectionManager.Update<Device> update) {
+        String json = formatJson(update);
+        if (json != null) {
+            synchronized (this) {
+                devices.put(update.getObject().getId(), json);
+            }
+            scheduleFlush();
+        }
     }
 
     @Override
-    public void onUpdatePosition(Position position) {
-        Map<String, Collection<?>> data = new HashMap<>();
-        data.put(KEY_POSITIONS, Collections.singletonList(position));
-        sendData(data);
+    public void onUpdatePosition(ConnectionManager.Update<Position> update) {
+        Object value = formatPosition(update);
+        if (value != null) {
+            synchronized (this) {
+                positions.put(update.getObject().getDeviceId(), value);
+            }
+            scheduleFlush();
+        }
     }
 
     @Override
-    public void onUpdateEvent(Event event) {
-        Map<String, Collection<?>> data = new HashMap<>();
-        data.put(KEY_EVENTS, Collections.singletonList(event));
-        sendData(data);
+    public void onUpdateEvent(ConnectionManager.Update<Event> update) {
+        String json = formatJson(update);
+        if (json != null) {
+            synchronized (this) {
+                if (events.size() >= queueSize) {
+                    events.removeFirst();
+                }
+                events.addLast(json);
+            }
+            scheduleFlush();
+        }
+    }
+
+    private synchronized boolean hasPending() {
+        return !devices.isEmpty() || !positions.isEmpty() || !events.isEmpty();
+    }
+
+    private void scheduleFlush() {
+        synchronized (this) {
+            if (flushScheduled || sending || !isConnected()) {
+                return;
+            }
+            flushScheduled = true;
+        }
+        if (flushInterval > 0) {
+            EXECUTOR.schedule(this::flush, flushInterval, TimeUnit.MILLISECONDS);
+        } else {
+            EXECUTOR.execute(this::flush);
+        }
+    }
+
+    private void flush() {
+        List<String> deviceUpdates;
+        List<Object> positionUpdates;
+        List<String> eventUpdates;
+        synchronized (this) {
+            deviceUpdates = new ArrayList<>(devices.values());
+            positionUpdates = new ArrayList<>(positions.values());
+            eventUpdates = new ArrayList<>(events);
+            devices.clear();
+            positions.clear();
+            events.clear();
+        }
+
+        List<Object> formatted = new ArrayList<>(2);
+        if (compact && !positionUpdates.isEmpty()) {
+            ByteBuffer buffer = ByteBuffer.allocate(positionUpdates.size() * COMPACT_POSITION_SIZE);
+            for (Object record : positionUpdates) {
+                buffer.put((byte[]) record);
+            }
+            buffer.flip();
+            formatted.add(buffer);
+            positionUpdates.clear();
+        }
+        if (!deviceUpdates.isEmpty() || !positionUpdates.isEmpty() || !eventUpdates.isEmpty()) {
+            StringBuilder message = new StringBuilder("{");
+            appendUpdates(message, KEY_DEVICES, deviceUpdates);
+            appendUpdates(message, KEY_POSITIONS, positionUpdates);
+            appendUpdates(message, KEY_EVENTS, eventUpdates);
+            formatted.add(message.append('}').toString());
+        }
+
+        synchronized (this) {
+            messages.addAll(formatted);
+            flushScheduled = false;
+        }
+        sendPending();
+    }
+
+    private static void appendUpdates(StringBuilder message, String key, Collection<?> updates) {
+        if (!updates.isEmpty()) {
+            if (message.length() > 1) {
+                message.append(',');
+            }
+            message.append('"').append(key).append("\":[");
+            boolean first = true;
+            for (Object update : updates) {
+                if (!first) {
+                    message.append(',');
+                }
+                message.append(update);
+                first = false;
+            }
+            message.append(']');
+        }
+    }
+
+    private static byte[] formatCompact(Position position) {
+        ByteBuffer buffer = ByteBuffer.allocate(COMPACT_POSITION_SIZE);
+        buffer.putLong(position.getDeviceId());
+        buffer.putLong(position.getId());
+        buffer.putLong(position.getFixTime() != null ? position.getFixTime().getTime() : 0);
+        buffer.putDouble(position.getLatitude());
+        buffer.putDouble(position.getLongitude());
+        buffer.putDouble(position.getAltitude());
+        buffer.putFloat((float) position.getSpeed());
+        buffer.putFloat((float) position.getCourse());
+        buffer.put((byte) (position.getValid() ? 1 : 0));
+        return buffer.array();
     }
 
-    private void sendData(Map<String, Collection<?>> data) {
-        if (!data.isEmpty() && isConnected()) {
+    /**
+     * Writes formatted messages one at a time. While a message is being written, new updates keep coalescing and are
+     * flushed after it completes, so a slow client does not accumulate an unbounded queue of frames. Writes completing
+     * synchronously continue in the loop rather than recursing.
+     */
+    private void sendPending() {
+        while (true) {
+            Object message;
+            synchronized (this) {
+                if (sending) {
+                    return;
+                }
+                message = messages.pollFirst();
+                if (message != null && isConnected()) {
+                    sending = true;
+                } else {
+                    messages.clear();
+                    message = null;
+                }
+            }
+            if (message == null) {
+                if (hasPending()) {
+                    scheduleFlush();
+                }
+                return;
+            }
+            MessageCallback callback = new MessageCallback();
             try {
-                getRemote().sendString(Context.getObjectMapper().writeValueAsString(data), null);
-            } catch (JsonProcessingException e) {
-                LOGGER.warn("Socket JSON formatting error", e);
+                if (message instanceof ByteBuffer) {
+                    getRemote().sendBytes((ByteBuffer) message, callback);
+                } else {
+                    getRemote().sendString((String) message, callback);
+                }
+            } catch (RuntimeException e) {
+                callback.writeFailed(e);
+            }
+            if (!callback.release()) {
+                return;
             }
         }
     }
+
+    private final class MessageCallback implements WriteCallback {
+
+        // guarded by AsyncSocket.this
+        private boolean released;
+        private boolean completed;
+
+        private boolean release() {
+            synchronized (AsyncSocket.this) {
+                released = true;
+                return completed;
+            }
+        }
+
+        private void complete() {
+            synchronized (AsyncSocket.this) {
+                sending = false;
+                completed = true;
+                if (!released) {
+                    return;
+                }
+            }
+            sendPending();
+        }
+
+        @Override
+        public void writeFailed(Throwable x) {
+            LOGGER.debug("Socket write error", x);
+            complete();
+        }
+
+        @Override
+        public void writeSuccess() {
+            complete();
+        }
+
+    }
+
 }
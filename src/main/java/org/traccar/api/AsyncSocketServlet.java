@@ -1,5 +1,5 @@
 /*
- * Copyright 2015 - 2016 Anton Tananaev (anton@traccar.org)
+ * Copyright 2015 - 2020 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -30,7 +30,8 @@ public class AsyncSocketServlet extends WebSocketServlet {
         factory.setCreator((req, resp) -> {
             if (req.getSession() != null) {
                 long userId = (Long) req.getSession().getAttribute(SessionResource.USER_ID_KEY);
-                return new AsyncSocket(userId);
+                boolean compact = req.getParameterMap().containsKey("compact");
+                return new AsyncSocket(userId, compact);
             } else {
                 return null;
             }
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2020 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.api.resource;
+
+import org.traccar.Context;
+import org.traccar.api.BaseResource;
+import org.traccar.database.MetricsManager;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+@Path("metrics")
+@Produces(MediaType.TEXT_PLAIN)
+public class MetricsResource extends BaseResource {
+
+    @GET
+    public Response get() {
+        Context.getPermissionsManager().checkAdmin(getUserId());
+        MetricsManager metricsManager = Context.getMetricsManager();
+        if (metricsManager == null) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        return Response.ok(metricsManager.format(), "text/plain; version=0.0.4").build();
+    }
+
+}
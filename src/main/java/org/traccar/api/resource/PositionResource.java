@@ -15,6 +15,9 @@
  */
 package org.traccar.api.resource;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import org.traccar.Context;
 import org.traccar.api.BaseResource;
 import org.traccar.model.Position;
@@ -26,13 +29,17 @@ import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
@@ -48,7 +55,7 @@ public class PositionResource extends BaseResource {
     public static final String CONTENT_DISPOSITION_VALUE_GPX = "attachment; filename=positions.gpx";
 
     @GET
-    public Collection<Position> getJson(
+    public Response getJson(
             @QueryParam("deviceId") long deviceId, @QueryParam("id") List<Long> positionIds,
             @QueryParam("from") Date from, @QueryParam("to") Date to)
             throws SQLException {
@@ -59,15 +66,30 @@ public class PositionResource extends BaseResource {
                 Context.getPermissionsManager().checkDevice(getUserId(), position.getDeviceId());
                 positions.add(position);
             }
-            return positions;
+            return Response.ok(positions).build();
         } else if (deviceId == 0) {
-            return Context.getDeviceManager().getInitialState(getUserId());
+            return Response.ok(Context.getDeviceManager().getInitialState(getUserId())).build();
         } else {
             Context.getPermissionsManager().checkDevice(getUserId(), deviceId);
             if (from != null && to != null) {
-                return Context.getDataManager().getPositions(deviceId, from, to);
+                StreamingOutput stream = output -> {
+                    ObjectWriter writer = Context.getObjectMapper().writerFor(Position.class)
+                            .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+                    JsonGenerator generator = Context.getObjectMapper().getFactory().createGenerator(output);
+                    generator.writeStartArray();
+                    try {
+                        Context.getDataManager().getPositions(
+                                deviceId, from, to, position -> writer.writeValue(generator, position));
+                    } catch (SQLException e) {
+                        throw new WebApplicationException(e);
+                    }
+                    generator.writeEndArray();
+                    generator.flush();
+                };
+                return Response.ok(stream).build();
             } else {
-                return Collections.singleton(Context.getDeviceManager().getLastPosition(deviceId));
+                return Response.ok(Collections.singleton(Context.getDeviceManager().getLastPosition(deviceId)))
+                        .build();
             }
         }
     }
@@ -78,10 +100,22 @@ public class PositionResource extends BaseResource {
             @QueryParam("deviceId") long deviceId, @QueryParam("from") Date from, @QueryParam("to") Date to)
             throws SQLException {
         Context.getPermissionsManager().checkDevice(getUserId(), deviceId);
-        CsvBuilder csv = new CsvBuilder();
-        csv.addHeaderLine(new Position());
-        csv.addArray(Context.getDataManager().getPositions(deviceId, from, to));
-        return Response.ok(csv.build()).header(HttpHeaders.CONTENT_DISPOSITION, CONTENT_DISPOSITION_VALUE_CSV).build();
+        StreamingOutput stream = output -> {
+            Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+            CsvBuilder csv = new CsvBuilder();
+            csv.addHeaderLine(new Position());
+            try {
+                Context.getDataManager().getPositions(deviceId, from, to, position -> {
+                    csv.addLine(position);
+                    csv.flush(writer);
+                });
+            } catch (SQLException e) {
+                throw new WebApplicationException(e);
+            }
+            writer.write(csv.build());
+            writer.flush();
+        };
+        return Response.ok(stream).header(HttpHeaders.CONTENT_DISPOSITION, CONTENT_DISPOSITION_VALUE_CSV).build();
     }
 
     @GET
@@ -90,9 +124,22 @@ public class PositionResource extends BaseResource {
             @QueryParam("deviceId") long deviceId, @QueryParam("from") Date from, @QueryParam("to") Date to)
             throws SQLException {
         Context.getPermissionsManager().checkDevice(getUserId(), deviceId);
-        GpxBuilder gpx = new GpxBuilder(Context.getIdentityManager().getById(deviceId).getName());
-        gpx.addPositions(Context.getDataManager().getPositions(deviceId, from, to));
-        return Response.ok(gpx.build()).header(HttpHeaders.CONTENT_DISPOSITION, CONTENT_DISPOSITION_VALUE_GPX).build();
+        String name = Context.getIdentityManager().getById(deviceId).getName();
+        StreamingOutput stream = output -> {
+            Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+            GpxBuilder gpx = new GpxBuilder(name);
+            try {
+                Context.getDataManager().getPositions(deviceId, from, to, position -> {
+                    gpx.addPosition(position);
+                    gpx.flush(writer);
+                });
+            } catch (SQLException e) {
+                throw new WebApplicationException(e);
+            }
+            writer.write(gpx.build());
+            writer.flush();
+        };
+        return Response.ok(stream).header(HttpHeaders.CONTENT_DISPOSITION, CONTENT_DISPOSITION_VALUE_GPX).build();
     }
 
 }
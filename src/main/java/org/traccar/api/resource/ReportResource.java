@@ -16,25 +16,32 @@
  */
 package org.traccar.api.resource;
 
-import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.sql.SQLException;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 
 import javax.activation.DataHandler;
+import javax.activation.FileDataSource;
 import javax.mail.MessagingException;
 import javax.mail.internet.MimeBodyPart;
-import javax.mail.util.ByteArrayDataSource;
 import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -44,6 +51,10 @@ import org.traccar.helper.LogAction;
 import org.traccar.model.Event;
 import org.traccar.model.Position;
 import org.traccar.reports.Events;
+import org.traccar.reports.ReportJob;
+import org.traccar.reports.ReportLimitException;
+import org.traccar.reports.ReportManager;
+import org.traccar.reports.ReportUtils;
 import org.traccar.reports.Summary;
 import org.traccar.reports.Trips;
 import org.traccar.reports.model.StopReport;
@@ -63,44 +74,129 @@ public class ReportResource extends BaseResource {
     private static final String CONTENT_DISPOSITION_VALUE_XLSX = "attachment; filename=report.xlsx";
 
     private interface ReportExecutor {
-        void execute(ByteArrayOutputStream stream) throws SQLException, IOException;
+        void execute(OutputStream stream) throws SQLException, IOException;
+    }
+
+    private static WebApplicationException tooManyReports(ReportLimitException e) {
+        return new WebApplicationException(e.getMessage(), e, Response.Status.TOO_MANY_REQUESTS);
+    }
+
+    private static ReportJob createJob(ReportManager reportManager, long userId, String type) {
+        try {
+            return reportManager.createJob(userId, type);
+        } catch (ReportLimitException e) {
+            throw tooManyReports(e);
+        }
+    }
+
+    private <T> T executeReport(
+            long userId, String type, ReportManager.ReportTask<T> task) throws SQLException, IOException {
+        ReportManager reportManager = Context.getReportManager();
+        if (reportManager != null) {
+            return reportManager.execute(createJob(reportManager, userId, type), task);
+        } else {
+            return task.execute();
+        }
     }
 
     private Response executeReport(
-            long userId, boolean mail, ReportExecutor executor) throws SQLException, IOException {
-        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            long userId, String type, boolean mail, ReportExecutor executor) throws SQLException, IOException {
+        ReportManager reportManager = Context.getReportManager();
         if (mail) {
-            new Thread(() -> {
+            ReportManager.ReportTask<Void> task = () -> {
+                File file = File.createTempFile("report", ".xlsx");
                 try {
-                    executor.execute(stream);
+                    try (OutputStream stream = new FileOutputStream(file)) {
+                        executor.execute(stream);
+                    }
 
                     MimeBodyPart attachment = new MimeBodyPart();
 
                     attachment.setFileName("report.xlsx");
-                    attachment.setDataHandler(new DataHandler(new ByteArrayDataSource(
-                            stream.toByteArray(), "application/octet-stream")));
+                    attachment.setDataHandler(new DataHandler(new FileDataSource(file) {
+                        @Override
+                        public String getContentType() {
+                            return "application/octet-stream";
+                        }
+                    }));
 
                     Context.getMailManager().sendMessage(
                             userId, "Report", "The report is in the attachment.", attachment);
-                } catch (SQLException | IOException | MessagingException e) {
+                } catch (MessagingException e) {
                     LOGGER.warn("Report failed", e);
+                } finally {
+                    if (!file.delete()) {
+                        LOGGER.warn("Failed to delete report file {}", file);
+                    }
                 }
-            }).start();
+                return null;
+            };
+            if (reportManager != null) {
+                try {
+                    reportManager.submit(userId, type, task);
+                } catch (ReportLimitException e) {
+                    throw tooManyReports(e);
+                }
+            } else {
+                new Thread(() -> {
+                    try {
+                        task.execute();
+                    } catch (SQLException | IOException e) {
+                        LOGGER.warn("Report failed", e);
+                    }
+                }).start();
+            }
             return Response.noContent().build();
         } else {
-            executor.execute(stream);
-            return Response.ok(stream.toByteArray())
+            ReportJob job = reportManager != null ? createJob(reportManager, userId, type) : null;
+            StreamingOutput stream = output -> {
+                try {
+                    if (job != null) {
+                        reportManager.execute(job, () -> {
+                            executor.execute(output);
+                            return null;
+                        });
+                    } else {
+                        executor.execute(output);
+                    }
+                } catch (SQLException e) {
+                    throw new WebApplicationException(e);
+                }
+            };
+            return Response.ok(stream)
                     .header(HttpHeaders.CONTENT_DISPOSITION, CONTENT_DISPOSITION_VALUE_XLSX).build();
         }
     }
 
+    @Path("jobs")
+    @GET
+    public Collection<ReportJob> getJobs() {
+        ReportManager reportManager = Context.getReportManager();
+        return reportManager != null ? reportManager.getJobs(getUserId()) : Collections.emptyList();
+    }
+
+    @Path("jobs/{id}")
+    @DELETE
+    public Response cancelJob(@PathParam("id") long id) {
+        ReportManager reportManager = Context.getReportManager();
+        ReportJob job = reportManager != null ? reportManager.getJob(id) : null;
+        if (job != null) {
+            if (job.getUserId() != getUserId()) {
+                Context.getPermissionsManager().checkAdmin(getUserId());
+            }
+            reportManager.cancel(id);
+        }
+        return Response.noContent().build();
+    }
+
     @Path("route")
     @GET
     public Collection<Position> getRoute(
             @QueryParam("deviceId") final List<Long> deviceIds, @QueryParam("groupId") final List<Long> groupIds,
-            @QueryParam("from") Date from, @QueryParam("to") Date to) throws SQLException {
+            @QueryParam("from") Date from, @QueryParam("to") Date to)
+            throws SQLException, IOException {
         LogAction.logReport(getUserId(), "route", from, to, deviceIds, groupIds);
-        return Route.getObjects(getUserId(), deviceIds, groupIds, from, to);
+        return executeReport(getUserId(), "route", () -> Route.getObjects(getUserId(), deviceIds, groupIds, from, to));
     }
 
     @Path("route")
@@ -110,7 +206,8 @@ public class ReportResource extends BaseResource {
             @QueryParam("deviceId") final List<Long> deviceIds, @QueryParam("groupId") final List<Long> groupIds,
             @QueryParam("from") Date from, @QueryParam("to") Date to, @QueryParam("mail") boolean mail)
             throws SQLException, IOException {
-        return executeReport(getUserId(), mail, stream -> {
+        ReportUtils.checkRequest(getUserId(), deviceIds, groupIds, from, to);
+        return executeReport(getUserId(), "route", mail, stream -> {
             LogAction.logReport(getUserId(), "route", from, to, deviceIds, groupIds);
             Route.getExcel(stream, getUserId(), deviceIds, groupIds, from, to);
         });
@@ -121,9 +218,11 @@ public class ReportResource extends BaseResource {
     public Collection<Event> getEvents(
             @QueryParam("deviceId") final List<Long> deviceIds, @QueryParam("groupId") final List<Long> groupIds,
             @QueryParam("type") final List<String> types,
-            @QueryParam("from") Date from, @QueryParam("to") Date to) throws SQLException {
+            @QueryParam("from") Date from, @QueryParam("to") Date to)
+            throws SQLException, IOException {
         LogAction.logReport(getUserId(), "events", from, to, deviceIds, groupIds);
-        return Events.getObjects(getUserId(), deviceIds, groupIds, types, from, to);
+        return executeReport(getUserId(), "events", () -> Events.getObjects(
+                getUserId(), deviceIds, groupIds, types, from, to));
     }
 
     @Path("events")
@@ -134,7 +233,8 @@ public class ReportResource extends BaseResource {
             @QueryParam("type") final List<String> types,
             @QueryParam("from") Date from, @QueryParam("to") Date to, @QueryParam("mail") boolean mail)
             throws SQLException, IOException {
-        return executeReport(getUserId(), mail, stream -> {
+        ReportUtils.checkRequest(getUserId(), deviceIds, groupIds, from, to);
+        return executeReport(getUserId(), "events", mail, stream -> {
             LogAction.logReport(getUserId(), "events", from, to, deviceIds, groupIds);
             Events.getExcel(stream, getUserId(), deviceIds, groupIds, types, from, to);
         });
@@ -145,9 +245,10 @@ public class ReportResource extends BaseResource {
     public Collection<SummaryReport> getSummary(
             @QueryParam("deviceId") final List<Long> deviceIds, @QueryParam("groupId") final List<Long> groupIds,
             @QueryParam("from") Date from, @QueryParam("to") Date to, @QueryParam("daily") boolean daily)
-            throws SQLException {
+            throws SQLException, IOException {
         LogAction.logReport(getUserId(), "summary", from, to, deviceIds, groupIds);
-        return Summary.getObjects(getUserId(), deviceIds, groupIds, from, to, daily);
+        return executeReport(getUserId(), "summary", () -> Summary.getObjects(
+                getUserId(), deviceIds, groupIds, from, to, daily));
     }
 
     @Path("summary")
@@ -158,7 +259,8 @@ public class ReportResource extends BaseResource {
             @QueryParam("from") Date from, @QueryParam("to") Date to, @QueryParam("daily") boolean daily,
             @QueryParam("mail") boolean mail)
             throws SQLException, IOException {
-        return executeReport(getUserId(), mail, stream -> {
+        ReportUtils.checkRequest(getUserId(), deviceIds, groupIds, from, to);
+        return executeReport(getUserId(), "summary", mail, stream -> {
             LogAction.logReport(getUserId(), "summary", from, to, deviceIds, groupIds);
             Summary.getExcel(stream, getUserId(), deviceIds, groupIds, from, to, daily);
         });
@@ -169,9 +271,10 @@ public class ReportResource extends BaseResource {
     @Produces(MediaType.APPLICATION_JSON)
     public Collection<TripReport> getTrips(
             @QueryParam("deviceId") final List<Long> deviceIds, @QueryParam("groupId") final List<Long> groupIds,
-            @QueryParam("from") Date from, @QueryParam("to") Date to) throws SQLException {
+            @QueryParam("from") Date from, @QueryParam("to") Date to)
+            throws SQLException, IOException {
         LogAction.logReport(getUserId(), "trips", from, to, deviceIds, groupIds);
-        return Trips.getObjects(getUserId(), deviceIds, groupIds, from, to);
+        return executeReport(getUserId(), "trips", () -> Trips.getObjects(getUserId(), deviceIds, groupIds, from, to));
     }
 
     @Path("trips")
@@ -181,7 +284,8 @@ public class ReportResource extends BaseResource {
             @QueryParam("deviceId") final List<Long> deviceIds, @QueryParam("groupId") final List<Long> groupIds,
             @QueryParam("from") Date from, @QueryParam("to") Date to, @QueryParam("mail") boolean mail)
             throws SQLException, IOException {
-        return executeReport(getUserId(), mail, stream -> {
+        ReportUtils.checkRequest(getUserId(), deviceIds, groupIds, from, to);
+        return executeReport(getUserId(), "trips", mail, stream -> {
             LogAction.logReport(getUserId(), "trips", from, to, deviceIds, groupIds);
             Trips.getExcel(stream, getUserId(), deviceIds, groupIds, from, to);
         });
@@ -192,9 +296,10 @@ public class ReportResource extends BaseResource {
     @Produces(MediaType.APPLICATION_JSON)
     public Collection<StopReport> getStops(
             @QueryParam("deviceId") final List<Long> deviceIds, @QueryParam("groupId") final List<Long> groupIds,
-            @QueryParam("from") Date from, @QueryParam("to") Date to) throws SQLException {
+            @QueryParam("from") Date from, @QueryParam("to") Date to)
+            throws SQLException, IOException {
         LogAction.logReport(getUserId(), "stops", from, to, deviceIds, groupIds);
-        return Stops.getObjects(getUserId(), deviceIds, groupIds, from, to);
+        return executeReport(getUserId(), "stops", () -> Stops.getObjects(getUserId(), deviceIds, groupIds, from, to));
     }
 
     @Path("stops")
@@ -204,7 +309,8 @@ public class ReportResource extends BaseResource {
             @QueryParam("deviceId") final List<Long> deviceIds, @QueryParam("groupId") final List<Long> groupIds,
             @QueryParam("from") Date from, @QueryParam("to") Date to, @QueryParam("mail") boolean mail)
             throws SQLException, IOException {
-        return executeReport(getUserId(), mail, stream -> {
+        ReportUtils.checkRequest(getUserId(), deviceIds, groupIds, from, to);
+        return executeReport(getUserId(), "stops", mail, stream -> {
             LogAction.logReport(getUserId(), "stops", from, to, deviceIds, groupIds);
             Stops.getExcel(stream, getUserId(), deviceIds, groupIds, from, to);
         });
@@ -1,5 +1,5 @@
 /*
- * Copyright 2015 - 2019 Anton Tananaev (anton@traccar.org)
+ * Copyright 2015 - 2020 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -18,25 +18,153 @@ package org.traccar.config;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.InvalidPropertiesFormatException;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Config {
 
-    private final Properties properties = new Properties();
+    private static final Map<String, String> ENVIRONMENT_NAMES = new ConcurrentHashMap<>();
+
+    /**
+     * Configuration value parsed into all supported types once, so typed reads do not parse strings.
+     */
+    private static final class Value {
+
+        private static final Value EMPTY = new Value(null);
+
+        private final String string;
+        private final boolean bool;
+        private final Long number;
+        private final Double decimal;
+
+        private Value(String string) {
+            this.string = string;
+            bool = Boolean.parseBoolean(string);
+            Long number = null;
+            Double decimal = null;
+            if (string != null) {
+                try {
+                    number = Long.parseLong(string);
+                } catch (NumberFormatException e) {
+                    number = null;
+                }
+                try {
+                    decimal = Double.parseDouble(string);
+                } catch (NumberFormatException e) {
+                    decimal = null;
+                }
+            }
+            this.number = number;
+            this.decimal = decimal;
+        }
 
-    private boolean useEnvironmentVariables;
+        private int getInteger() {
+            if (number != null && number == number.intValue()) {
+                return number.intValue();
+            }
+            return Integer.parseInt(string); // throws the same error as parsing on every read did
+        }
+
+        private long getLong() {
+            return number != null ? number : Long.parseLong(string);
+        }
+
+        private double getDouble() {
+            return decimal != null ? decimal : Double.parseDouble(string);
+        }
+
+    }
+
+    /**
+     * Immutable view of the configuration. Environment variable overrides are resolved and all values are parsed
+     * when the snapshot is created, so reads are plain map lookups without locking or allocation.
+     */
+    private static final class Snapshot {
+
+        private final Map<String, String> properties;
+        private final Map<String, Value> values;
+        private final Map<String, Value> environment;
+
+        private Snapshot(Map<String, String> properties) {
+            this.properties = Collections.unmodifiableMap(properties);
+            boolean useEnvironmentVariables = Boolean.parseBoolean(System.getenv("CONFIG_USE_ENVIRONMENT_VARIABLES"))
+                    || Boolean.parseBoolean(properties.get("config.useEnvironmentVariables"));
+            Map<String, Value> environmentValues = null;
+            if (useEnvironmentVariables) {
+                environmentValues = new HashMap<>();
+                for (Map.Entry<String, String> entry : System.getenv().entrySet()) {
+                    String value = entry.getValue();
+                    environmentValues.put(entry.getKey(), value.isEmpty() ? Value.EMPTY : new Value(value));
+                }
+            }
+            environment = environmentValues;
+            Map<String, Value> resolved = new HashMap<>();
+            for (Map.Entry<String, String> entry : properties.entrySet()) {
+                Value value = null;
+                if (environment != null) {
+                    value = environment.get(getEnvironmentVariableName(entry.getKey()));
+                }
+                if (value == null || value == Value.EMPTY) {
+                    value = new Value(entry.getValue());
+                }
+                resolved.put(entry.getKey(), value);
+            }
+            values = resolved;
+        }
+
+        /**
+         * Returns null if the key is not configured. An environment variable that is set to an empty string makes the
+         * key present without a value.
+         */
+        private Value get(String key, String environmentName) {
+            Value value = values.get(key);
+            if (value == null && environment != null) {
+                value = environment.get(environmentName);
+            }
+            return value;
+        }
+
+    }
+
+    private final String file;
+    private final Map<String, String> overrides = new HashMap<>();
+
+    private volatile Snapshot snapshot;
 
     public Config() {
+        file = null;
+        snapshot = new Snapshot(new HashMap<>());
     }
 
     public Config(String file) throws IOException {
+        this.file = file;
+        snapshot = new Snapshot(load(file));
+    }
+
+    /**
+     * Read configuration file again and atomically replace current values. Values set with {@link #setString} are
+     * kept. Components that have read their configuration on startup are not affected.
+     */
+    public synchronized void reload() throws IOException {
+        if (file != null) {
+            Map<String, String> properties = load(file);
+            properties.putAll(overrides);
+            snapshot = new Snapshot(properties);
+        }
+    }
+
+    private static Map<String, String> load(String file) throws IOException {
         try {
             Properties mainProperties = new Properties();
             try (InputStream inputStream = new FileInputStream(file)) {
                 mainProperties.loadFromXML(inputStream);
             }
 
+            Properties properties = new Properties();
             String defaultConfigFile = mainProperties.getProperty("config.default");
             if (defaultConfigFile != null) {
                 try (InputStream inputStream = new FileInputStream(defaultConfigFile)) {
@@ -46,58 +174,68 @@ public class Config {
 
             properties.putAll(mainProperties); // override defaults
 
-            useEnvironmentVariables = Boolean.parseBoolean(System.getenv("CONFIG_USE_ENVIRONMENT_VARIABLES"))
-                    || Boolean.parseBoolean(properties.getProperty("config.useEnvironmentVariables"));
+            Map<String, String> result = new HashMap<>();
+            for (String key : properties.stringPropertyNames()) {
+                result.put(key, properties.getProperty(key));
+            }
+            return result;
         } catch (InvalidPropertiesFormatException e) {
             throw new RuntimeException("Configuration file is not a valid XML document", e);
         }
     }
 
+    private Value get(ConfigKey key) {
+        return snapshot.get(key.getKey(), key.getEnvironmentName());
+    }
+
+    private Value get(String key) {
+        return snapshot.get(key, ENVIRONMENT_NAMES.computeIfAbsent(key, Config::getEnvironmentVariableName));
+    }
+
     public boolean hasKey(ConfigKey key) {
-        return hasKey(key.getKey());
+        return get(key) != null;
     }
 
     @Deprecated
     public boolean hasKey(String key) {
-        return useEnvironmentVariables && System.getenv().containsKey(getEnvironmentVariableName(key))
-                || properties.containsKey(key);
+        return get(key) != null;
     }
 
     public String getString(ConfigKey key) {
-        return getString(key.getKey());
+        Value value = get(key);
+        return value != null ? value.string : null;
     }
 
     @Deprecated
     public String getString(String key) {
-        if (useEnvironmentVariables) {
-            String value = System.getenv(getEnvironmentVariableName(key));
-            if (value != null && !value.isEmpty()) {
-                return value;
-            }
-        }
-        return properties.getProperty(key);
+        Value value = get(key);
+        return value != null ? value.string : null;
     }
 
     public String getString(ConfigKey key, String defaultValue) {
-        return getString(key.getKey(), defaultValue);
+        Value value = get(key);
+        return value != null ? value.string : defaultValue;
     }
 
     @Deprecated
     public String getString(String key, String defaultValue) {
-        return hasKey(key) ? getString(key) : defaultValue;
+        Value value = get(key);
+        return value != null ? value.string : defaultValue;
     }
 
     public boolean getBoolean(ConfigKey key) {
-        return getBoolean(key.getKey());
+        Value value = get(key);
+        return value != null && value.bool;
     }
 
     @Deprecated
     public boolean getBoolean(String key) {
-        return Boolean.parseBoolean(getString(key));
+        Value value = get(key);
+        return value != null && value.bool;
     }
 
     public int getInteger(ConfigKey key) {
-        return getInteger(key.getKey());
+        return getInteger(key, 0);
     }
 
     @Deprecated
@@ -106,16 +244,18 @@ public class Config {
     }
 
     public int getInteger(ConfigKey key, int defaultValue) {
-        return getInteger(key.getKey(), defaultValue);
+        Value value = get(key);
+        return value != null ? value.getInteger() : defaultValue;
     }
 
     @Deprecated
     public int getInteger(String key, int defaultValue) {
-        return hasKey(key) ? Integer.parseInt(getString(key)) : defaultValue;
+        Value value = get(key);
+        return value != null ? value.getInteger() : defaultValue;
     }
 
     public long getLong(ConfigKey key) {
-        return getLong(key.getKey());
+        return getLong(key, 0);
     }
 
     @Deprecated
@@ -124,16 +264,18 @@ public class Config {
     }
 
     public long getLong(ConfigKey key, long defaultValue) {
-        return getLong(key.getKey(), defaultValue);
+        Value value = get(key);
+        return value != null ? value.getLong() : defaultValue;
     }
 
     @Deprecated
     public long getLong(String key, long defaultValue) {
-        return hasKey(key) ? Long.parseLong(getString(key)) : defaultValue;
+        Value value = get(key);
+        return value != null ? value.getLong() : defaultValue;
     }
 
     public double getDouble(ConfigKey key) {
-        return getDouble(key.getKey());
+        return getDouble(key, 0.0);
     }
 
     @Deprecated
@@ -142,12 +284,14 @@ public class Config {
     }
 
     public double getDouble(ConfigKey key, double defaultValue) {
-        return getDouble(key.getKey(), defaultValue);
+        Value value = get(key);
+        return value != null ? value.getDouble() : defaultValue;
     }
 
     @Deprecated
     public double getDouble(String key, double defaultValue) {
-        return hasKey(key) ? Double.parseDouble(getString(key)) : defaultValue;
+        Value value = get(key);
+        return value != null ? value.getDouble() : defaultValue;
     }
 
     public void setString(ConfigKey key, String value) {
@@ -155,8 +299,11 @@ public class Config {
     }
 
     @Deprecated
-    public void setString(String key, String value) {
+    public synchronized void setString(String key, String value) {
+        overrides.put(key, value);
+        Map<String, String> properties = new HashMap<>(snapshot.properties);
         properties.put(key, value);
+        snapshot = new Snapshot(properties);
     }
 
     static String getEnvironmentVariableName(String key) {
@@ -19,16 +19,22 @@ public class ConfigKey {
 
     private final String key;
     private final Class clazz;
+    private final String environmentName;
 
     ConfigKey(String key, Class clazz) {
         this.key = key;
         this.clazz = clazz;
+        environmentName = Config.getEnvironmentVariableName(key);
     }
 
     String getKey() {
         return key;
     }
 
+    String getEnvironmentName() {
+        return environmentName;
+    }
+
     Class getValueClass() {
         return clazz;
     }
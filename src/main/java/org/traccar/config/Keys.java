@@ -26,6 +26,73 @@ public final class Keys {
     public static final ConfigSuffix PROTOCOL_TIMEOUT = new ConfigSuffix(
             ".timeout", Integer.class);
 
+    /**
+     * Server address reported to devices by protocols that need it in responses. By default local address of the
+     * connection is used.
+     */
+    public static final ConfigSuffix PROTOCOL_SERVER = new ConfigSuffix(
+            ".server", String.class);
+
+    /**
+     * Speed units reported by devices of the protocol, if it differs from protocol default. Supported values are
+     * 'kn', 'kmh', 'mps' and 'mph'.
+     */
+    public static final ConfigSuffix PROTOCOL_SPEED = new ConfigSuffix(
+            ".speed", String.class);
+
+    /**
+     * Deprecated time zone offset in seconds for the protocol. Use 'decoder.timezone' attribute instead.
+     */
+    public static final ConfigSuffix PROTOCOL_TIMEZONE = new ConfigSuffix(
+            ".timezone", Integer.class);
+
+    /**
+     * Disable device session caching for the protocol, so that device is identified on each message.
+     */
+    public static final ConfigSuffix PROTOCOL_IGNORE_SESSION_CACHE = new ConfigSuffix(
+            ".ignoreSessionCache", Boolean.class);
+
+    /**
+     * Number of threads sending notifications of the notificator type, for example 'notificator.mail.threads'.
+     * Default value is 2.
+     */
+    public static final ConfigSuffix NOTIFICATOR_THREADS = new ConfigSuffix(
+            ".threads", Integer.class);
+
+    /**
+     * Maximum number of notifications of the notificator type waiting to be sent. Notifications that do not fit are
+     * dropped. Default value is 1000.
+     */
+    public static final ConfigSuffix NOTIFICATOR_QUEUE_SIZE = new ConfigSuffix(
+            ".queueSize", Integer.class);
+
+    /**
+     * Maximum average number of notifications per second for the notificator type. Should match provider quota. By
+     * default rate is not limited.
+     */
+    public static final ConfigSuffix NOTIFICATOR_RATE_LIMIT = new ConfigSuffix(
+            ".rateLimit", Double.class);
+
+    /**
+     * Number of notifications that can be sent at once after an idle period when rate limit is set. Default value is
+     * equal to the rate limit.
+     */
+    public static final ConfigSuffix NOTIFICATOR_RATE_BURST = new ConfigSuffix(
+            ".rateBurst", Double.class);
+
+    /**
+     * Number of times a failed notification is sent again. Default value is 2.
+     */
+    public static final ConfigSuffix NOTIFICATOR_RETRIES = new ConfigSuffix(
+            ".retries", Integer.class);
+
+    /**
+     * Delay in milliseconds before the first retry of a failed notification. Each following retry waits twice as long.
+     * Default value is 1000.
+     */
+    public static final ConfigSuffix NOTIFICATOR_RETRY_DELAY = new ConfigSuffix(
+            ".retryDelay", Long.class);
+
     /**
      * Server wide connection timeout value in seconds. See protocol timeout for more information.
      */
@@ -69,6 +136,38 @@ public final class Keys {
     public static final ConfigKey EVENT_IGNORE_DUPLICATE_ALERTS = new ConfigKey(
             "event.ignoreDuplicateAlerts", Boolean.class);
 
+    /**
+     * Store events and send their notifications on background threads instead of the network threads. Events are
+     * inserted in batches grouped by 'event.async.batchSize' and 'event.async.batchDelay'. Events of the same device
+     * are handled in order. If the queue is full, the event is handled synchronously.
+     */
+    public static final ConfigKey EVENT_ASYNC_ENABLE = new ConfigKey(
+            "event.async.enable", Boolean.class);
+
+    /**
+     * Maximum number of events in a single batch insert. Default value is 100.
+     */
+    public static final ConfigKey EVENT_ASYNC_BATCH_SIZE = new ConfigKey(
+            "event.async.batchSize", Integer.class);
+
+    /**
+     * Maximum time in milliseconds to wait for a batch of events to fill up. Default value is 50.
+     */
+    public static final ConfigKey EVENT_ASYNC_BATCH_DELAY = new ConfigKey(
+            "event.async.batchDelay", Long.class);
+
+    /**
+     * Maximum number of queued events per worker thread. Default value is 10000.
+     */
+    public static final ConfigKey EVENT_ASYNC_QUEUE_SIZE = new ConfigKey(
+            "event.async.queueSize", Integer.class);
+
+    /**
+     * Number of event worker threads. Default value is 2.
+     */
+    public static final ConfigKey EVENT_ASYNC_THREADS = new ConfigKey(
+            "event.async.threads", Integer.class);
+
     /**
      * List of external handler classes to use in Netty pipeline.
      */
@@ -81,6 +180,82 @@ public final class Keys {
     public static final ConfigKey DATABASE_SAVE_ORIGINAL = new ConfigKey(
             "database.saveOriginal", Boolean.class);
 
+    /**
+     * Number of rows fetched from the database at a time when history is streamed (exports and reports). Default value
+     * is 1000. For MySQL the database URL must also include 'useCursorFetch=true' parameter.
+     */
+    public static final ConfigKey DATABASE_FETCH_SIZE = new ConfigKey(
+            "database.fetchSize", Integer.class);
+
+    /**
+     * Store positions asynchronously using batched inserts. Positions are queued and written by background threads,
+     * grouped into batches by 'database.batch.size' and 'database.batch.delay'. Processing of each position continues
+     * only after it is stored, so event handlers still get generated identifiers. Requires a JDBC driver that
+     * returns generated keys for batch statements; otherwise positions are stored one by one.
+     */
+    public static final ConfigKey DATABASE_BATCH_ENABLE = new ConfigKey(
+            "database.batch.enable", Boolean.class);
+
+    /**
+     * Maximum number of positions in a single batch insert. Default value is 100.
+     */
+    public static final ConfigKey DATABASE_BATCH_SIZE = new ConfigKey(
+            "database.batch.size", Integer.class);
+
+    /**
+     * Maximum time in milliseconds to wait for a batch to fill up before writing it. Default value is 50.
+     */
+    public static final ConfigKey DATABASE_BATCH_DELAY = new ConfigKey(
+            "database.batch.delay", Long.class);
+
+    /**
+     * Number of writer threads. Positions of the same device are always handled by the same thread to preserve order.
+     * Default value is 1.
+     */
+    public static final ConfigKey DATABASE_BATCH_THREADS = new ConfigKey(
+            "database.batch.threads", Integer.class);
+
+    /**
+     * Maximum number of pending positions per writer thread. Default value is 10000. When the queue is full, the
+     * network thread waits for free space, so positions of a device are always processed in the order they were
+     * received. While the network thread waits, all other connections served by the same thread are stalled too.
+     */
+    public static final ConfigKey DATABASE_BATCH_QUEUE_SIZE = new ConfigKey(
+            "database.batch.queueSize", Integer.class);
+
+    /**
+     * Store positions and events in tables partitioned by server time. Enables the "partitioned" schema context, which
+     * converts existing tables on PostgreSQL (version 11 or newer) and MySQL. Expired history is removed by dropping
+     * whole partitions, so it is kept for up to one partition interval longer than 'database.historyDays'. MySQL does
+     * not support foreign keys on partitioned tables, so positions and events of removed devices are only deleted
+     * together with their partitions. The conversion runs once on startup. MySQL locks both tables and copies every
+     * existing row into a new table, which needs free disk space of the size of both tables and can take hours on
+     * large databases. PostgreSQL first checks existing rows against the partition range in a separate step that does
+     * not block reads and writes. It then locks both tables while it builds a unique index on id and server time for
+     * the existing rows, which also takes time proportional to the size of the tables.
+     */
+    public static final ConfigKey DATABASE_PARTITION_ENABLE = new ConfigKey(
+            "database.partition.enable", Boolean.class);
+
+    /**
+     * Time range of a single partition in days. Default value is 7.
+     */
+    public static final ConfigKey DATABASE_PARTITION_INTERVAL = new ConfigKey(
+            "database.partition.interval", Integer.class);
+
+    /**
+     * Number of position or event identifiers covered by a single delete statement when history is deleted row by
+     * row. Zero deletes all expired rows of a table with a single statement. Default value is 10000.
+     */
+    public static final ConfigKey DATABASE_HISTORY_CHUNK_SIZE = new ConfigKey(
+            "database.historyChunkSize", Integer.class);
+
+    /**
+     * Delay in milliseconds between delete statements when history is deleted row by row. Default value is 100.
+     */
+    public static final ConfigKey DATABASE_HISTORY_CHUNK_DELAY = new ConfigKey(
+            "database.historyChunkDelay", Long.class);
+
     /**
      * Enable positions forwarding to other web server.
      */
@@ -144,6 +319,71 @@ public final class Keys {
     public static final ConfigKey FORWARD_RETRY_LIMIT = new ConfigKey(
             "forward.retry.limit", Integer.class);
 
+    /**
+     * Forward data in batches, for example 'forward.batch.enable' for positions and 'event.forward.batch.enable' for
+     * events. Each request is a POST with a JSON array of payloads in the same format as in JSON mode. Payloads are
+     * stored in a disk spool until the server confirms delivery with a '2xx' response, so they are not lost when the
+     * server is unavailable or Traccar is restarted. Delivery is at least once, so the receiver may get duplicates.
+     * Batches rejected with a '4xx' response other than 408 or 429 are logged and dropped instead of being retried.
+     * URL variables are not supported in this mode.
+     */
+    public static final ConfigSuffix FORWARD_BATCH_ENABLE = new ConfigSuffix(
+            ".batch.enable", Boolean.class);
+
+    /**
+     * Maximum number of payloads in a single batch request. Default value is 100.
+     */
+    public static final ConfigSuffix FORWARD_BATCH_SIZE = new ConfigSuffix(
+            ".batch.size", Integer.class);
+
+    /**
+     * Maximum time in milliseconds to wait for a batch to fill up before it is sent. Default value is 1000.
+     */
+    public static final ConfigSuffix FORWARD_BATCH_DELAY = new ConfigSuffix(
+            ".batch.delay", Long.class);
+
+    /**
+     * Number of batch requests sent concurrently. Default value is 1, which preserves the order of payloads.
+     */
+    public static final ConfigSuffix FORWARD_BATCH_THREADS = new ConfigSuffix(
+            ".batch.threads", Integer.class);
+
+    /**
+     * Initial delay in milliseconds before a failed batch is sent again. The delay doubles on each failure up to one
+     * minute. Failed batches are retried until delivered or rejected. Default value is 1000.
+     */
+    public static final ConfigSuffix FORWARD_BATCH_RETRY_DELAY = new ConfigSuffix(
+            ".batch.retryDelay", Long.class);
+
+    /**
+     * Directory of the batch forwarding spool. Default value is './data/spool/forward' for positions and
+     * './data/spool/event.forward' for events.
+     */
+    public static final ConfigSuffix FORWARD_BATCH_SPOOL = new ConfigSuffix(
+            ".batch.spool", String.class);
+
+    /**
+     * Size in bytes of a spool segment file. Segment files are deleted when all their payloads are delivered. Default
+     * value is 16 MB.
+     */
+    public static final ConfigSuffix FORWARD_BATCH_SEGMENT_SIZE = new ConfigSuffix(
+            ".batch.segmentSize", Long.class);
+
+    /**
+     * Maximum size in bytes of the batch forwarding spool. When the limit is exceeded, the oldest segment files are
+     * deleted and their undelivered payloads are lost. Zero removes the limit. Default value is 1 GB.
+     */
+    public static final ConfigSuffix FORWARD_BATCH_SPOOL_LIMIT = new ConfigSuffix(
+            ".batch.spoolLimit", Long.class);
+
+    /**
+     * Number of payloads waiting to be written to the batch forwarding spool. Payloads are written to disk by a
+     * separate thread, so device connections never wait for the disk. When the queue is full, new payloads are
+     * dropped. Default value is 10000.
+     */
+    public static final ConfigSuffix FORWARD_BATCH_QUEUE_SIZE = new ConfigSuffix(
+            ".batch.queueSize", Integer.class);
+
     /**
      * Boolean flag to enable or disable position filtering.
      */
@@ -341,6 +581,28 @@ public final class Keys {
     public static final ConfigKey GEOCODER_CACHE_SIZE = new ConfigKey(
             "geocoder.cacheSize", Integer.class);
 
+    /**
+     * Number of decimal places of coordinates used as a geocoder cache key. Positions rounding to the same values share
+     * cached address, so lower values give more cache hits at the cost of accuracy. Default value is 5 (about 1 meter),
+     * maximum is 7.
+     */
+    public static final ConfigKey GEOCODER_CACHE_PRECISION = new ConfigKey(
+            "geocoder.cachePrecision", Integer.class);
+
+    /**
+     * Optional file for persisting geocoder cache. If set, cached addresses are loaded on startup and saved
+     * periodically and on shutdown.
+     */
+    public static final ConfigKey GEOCODER_CACHE_FILE = new ConfigKey(
+            "geocoder.cacheFile", String.class);
+
+    /**
+     * Interval in seconds for writing geocoder cache to the cache file, so cached addresses are not lost if the server
+     * is not shut down cleanly. Default value is 3600 (one hour). Zero disables periodic saving.
+     */
+    public static final ConfigKey GEOCODER_CACHE_SAVE_INTERVAL = new ConfigKey(
+            "geocoder.cacheSaveInterval", Long.class);
+
     /**
      * Disable automatic reverse geocoding requests for all positions.
      */
@@ -360,6 +622,32 @@ public final class Keys {
     public static final ConfigKey GEOCODER_REUSE_DISTANCE = new ConfigKey(
             "geocoder.reuseDistance", Integer.class);
 
+    /**
+     * Maximum number of concurrent reverse geocoding lookups. Default value is 32, zero means no limit.
+     */
+    public static final ConfigKey GEOCODER_CONCURRENCY = new ConfigKey(
+            "geocoder.concurrency", Integer.class);
+
+    /**
+     * Maximum number of positions waiting for a geocoding slot. Positions that do not fit are passed on without an
+     * address. Default value is 1000.
+     */
+    public static final ConfigKey GEOCODER_QUEUE_SIZE = new ConfigKey(
+            "geocoder.queueSize", Integer.class);
+
+    /**
+     * Time in milliseconds to hold a position waiting for an address. After that the position is passed on without
+     * it. By default there is no timeout.
+     */
+    public static final ConfigKey GEOCODER_TIMEOUT = new ConfigKey(
+            "geocoder.timeout", Long.class);
+
+    /**
+     * Pass positions on without waiting for geocoding and update stored position address once it is resolved.
+     */
+    public static final ConfigKey GEOCODER_BACKFILL = new ConfigKey(
+            "geocoder.backfill", Boolean.class);
+
     /**
      * Boolean flag to enable LBS location resolution. Some devices send cell towers information and WiFi point when GPS
      * location is not available. Traccar can determine coordinates based on that information using third party
@@ -426,6 +714,13 @@ public final class Keys {
     public static final ConfigKey LOCATION_LONGITUDE_HEMISPHERE = new ConfigKey(
             "location.longitudeHemisphere", Boolean.class);
 
+    /**
+     * Enable collection of pipeline handler timings and other runtime metrics. Metrics are available to administrators
+     * in Prometheus text format at /api/metrics.
+     */
+    public static final ConfigKey METRICS_ENABLE = new ConfigKey(
+            "metrics.enable", Boolean.class);
+
     /**
      * Enable Jetty Request Log.
      */
@@ -460,6 +755,97 @@ public final class Keys {
     public static final ConfigKey WEB_SAME_SITE_COOKIE = new ConfigKey(
             "web.sameSiteCookie", String.class);
 
+    /**
+     * Maximum number of pending events per WebSocket connection. Device and position updates are coalesced to the
+     * latest one per device, so they are not limited. Default value is 1000.
+     */
+    public static final ConfigKey WEB_SOCKET_QUEUE_SIZE = new ConfigKey(
+            "web.socket.queueSize", Integer.class);
+
+    /**
+     * Interval in milliseconds for merging pending WebSocket updates into a single message. Zero sends updates as
+     * soon as the previous message is written. Default value is 250.
+     */
+    public static final ConfigKey WEB_SOCKET_FLUSH_INTERVAL = new ConfigKey(
+            "web.socket.flushInterval", Long.class);
+
+    /**
+     * Number of threads for processing devices of reports in parallel. The pool is shared by all reports. Default
+     * value is 4.
+     */
+    public static final ConfigKey REPORT_THREADS = new ConfigKey(
+            "report.threads", Integer.class);
+
+    /**
+     * Number of threads for reports running in background, for example reports sent by e-mail. Default value is 2.
+     */
+    public static final ConfigKey REPORT_BACKGROUND_THREADS = new ConfigKey(
+            "report.backgroundThreads", Integer.class);
+
+    /**
+     * Maximum number of reports running at the same time for a single user. Zero removes the limit. Default value
+     * is 2.
+     */
+    public static final ConfigKey REPORT_USER_LIMIT = new ConfigKey(
+            "report.userLimit", Integer.class);
+
+    /**
+     * Maximum number of reports running or waiting at the same time for all users together. Further report requests
+     * are rejected with status 429. Zero removes the limit. Default value is 20.
+     */
+    public static final ConfigKey REPORT_GLOBAL_LIMIT = new ConfigKey(
+            "report.globalLimit", Integer.class);
+
+    /**
+     * Maintain hourly rollups of positions while they are stored and use them for summary reports. Only hours after
+     * the first rollup of a device are taken from rollups, older data is still read from the positions table.
+     */
+    public static final ConfigKey REPORT_ROLLUP_ENABLE = new ConfigKey(
+            "report.rollup.enable", Boolean.class);
+
+    /**
+     * Rollups of the current hour are aggregated in memory and written to the database with this interval in
+     * milliseconds, when a device moves on to the next hour and before a report reads them. Default value is 60000.
+     */
+    public static final ConfigKey REPORT_ROLLUP_FLUSH_INTERVAL = new ConfigKey(
+            "report.rollup.flushInterval", Long.class);
+
+    /**
+     * Detect trips and stops while positions are stored and keep them in the database for trips and stops reports.
+     * Reports fall back to detection from positions for periods before the first stored trip or stop of a device.
+     */
+    public static final ConfigKey REPORT_TRIP_MATERIALIZE = new ConfigKey(
+            "report.trip.materialize", Boolean.class);
+
+    /**
+     * Number of background threads detecting trips and stops when 'report.trip.materialize' is enabled. Positions of
+     * the same device are always handled by the same thread. Default value is 1.
+     */
+    public static final ConfigKey REPORT_TRIP_MATERIALIZE_THREADS = new ConfigKey(
+            "report.trip.materializeThreads", Integer.class);
+
+    /**
+     * Period in seconds of positions loaded from the database at once when exporting route reports. Rows are written
+     * to the spreadsheet as positions are read, so only a single period is kept in memory. Default value is 3600.
+     */
+    public static final ConfigKey REPORT_FETCH_PERIOD = new ConfigKey(
+            "report.fetchPeriod", Long.class);
+
+    /**
+     * Maximum number of idle SMTP connections kept open for each distinct set of SMTP settings, including per-user
+     * overrides. Connections are reused for following messages instead of connecting and authenticating again. Zero
+     * disables reuse. Default value is 4.
+     */
+    public static final ConfigKey MAIL_POOL_SIZE = new ConfigKey(
+            "mail.pool.size", Integer.class);
+
+    /**
+     * Time in milliseconds after which an idle SMTP connection is closed. Should be lower than the idle timeout of the
+     * mail server. Default value is 60000.
+     */
+    public static final ConfigKey MAIL_POOL_IDLE_TIMEOUT = new ConfigKey(
+            "mail.pool.idleTimeout", Long.class);
+
     private Keys() {
     }
 
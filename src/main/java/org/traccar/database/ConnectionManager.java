@@ -15,6 +15,7 @@
  */
 package org.traccar.database;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import io.netty.channel.Channel;
 import io.netty.util.Timeout;
 import org.slf4j.Logger;
@@ -34,7 +35,6 @@ import java.net.SocketAddress;
 import java.sql.SQLException;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -157,54 +157,95 @@ public class ConnectionManager {
         return result;
     }
 
-    public synchronized void updateDevice(Device device) {
+    public void updateDevice(Device device) {
+        Update<Device> update = null;
         for (long userId : Context.getPermissionsManager().getDeviceUsers(device.getId())) {
-            if (listeners.containsKey(userId)) {
-                for (UpdateListener listener : listeners.get(userId)) {
-                    listener.onUpdateDevice(device);
+            Set<UpdateListener> userListeners = listeners.get(userId);
+            if (userListeners != null) {
+                for (UpdateListener listener : userListeners) {
+                    if (update == null) {
+                        update = new Update<>(device);
+                    }
+                    listener.onUpdateDevice(update);
                 }
             }
         }
     }
 
-    public synchronized void updatePosition(Position position) {
-        long deviceId = position.getDeviceId();
-
-        for (long userId : Context.getPermissionsManager().getDeviceUsers(deviceId)) {
-            if (listeners.containsKey(userId)) {
-                for (UpdateListener listener : listeners.get(userId)) {
-                    listener.onUpdatePosition(position);
+    public void updatePosition(Position position) {
+        Update<Position> update = null;
+        for (long userId : Context.getPermissionsManager().getDeviceUsers(position.getDeviceId())) {
+            Set<UpdateListener> userListeners = listeners.get(userId);
+            if (userListeners != null) {
+                for (UpdateListener listener : userListeners) {
+                    if (update == null) {
+                        update = new Update<>(position);
+                    }
+                    listener.onUpdatePosition(update);
                 }
             }
         }
     }
 
-    public synchronized void updateEvent(long userId, Event event) {
-        if (listeners.containsKey(userId)) {
-            for (UpdateListener listener : listeners.get(userId)) {
-                listener.onUpdateEvent(event);
+    public void updateEvent(long userId, Event event) {
+        Set<UpdateListener> userListeners = listeners.get(userId);
+        if (userListeners != null) {
+            Update<Event> update = new Update<>(event);
+            for (UpdateListener listener : userListeners) {
+                listener.onUpdateEvent(update);
             }
         }
     }
 
+    /**
+     * Update shared by all listeners receiving it. JSON is produced on first request only, so an update sent to many
+     * sockets is serialized once. Listeners request it while handling the update, before the object can change.
+     */
+    public static final class Update<T> {
+
+        private final T object;
+        private volatile String json;
+
+        public Update(T object) {
+            this.object = object;
+        }
+
+        public T getObject() {
+            return object;
+        }
+
+        public String getJson() throws JsonProcessingException {
+            String result = json;
+            if (result == null) {
+                result = Context.getObjectMapper().writeValueAsString(object);
+                json = result;
+            }
+            return result;
+        }
+
+    }
+
     public interface UpdateListener {
-        void onUpdateDevice(Device device);
-        void onUpdatePosition(Position position);
-        void onUpdateEvent(Event event);
+        void onUpdateDevice(Update<Device> update);
+        void onUpdatePosition(Update<Position> update);
+        void onUpdateEvent(Update<Event> update);
     }
 
-    public synchronized void addListener(long userId, UpdateListener listener) {
-        if (!listeners.containsKey(userId)) {
-            listeners.put(userId, new HashSet<UpdateListener>());
-        }
-        listeners.get(userId).add(listener);
+    public void addListener(long userId, UpdateListener listener) {
+        listeners.compute(userId, (key, userListeners) -> {
+            if (userListeners == null) {
+                userListeners = ConcurrentHashMap.newKeySet();
+            }
+            userListeners.add(listener);
+            return userListeners;
+        });
     }
 
-    public synchronized void removeListener(long userId, UpdateListener listener) {
-        if (!listeners.containsKey(userId)) {
-            listeners.put(userId, new HashSet<UpdateListener>());
-        }
-        listeners.get(userId).remove(listener);
+    public void removeListener(long userId, UpdateListener listener) {
+        listeners.computeIfPresent(userId, (key, userListeners) -> {
+            userListeners.remove(listener);
+            return userListeners.isEmpty() ? null : userListeners;
+        });
     }
 
 }
@@ -24,7 +24,10 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
+import java.util.function.Function;
 
 import javax.naming.InitialContext;
 import javax.sql.DataSource;
@@ -40,6 +43,7 @@ import liquibase.resource.ResourceAccessor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.traccar.config.Config;
+import org.traccar.config.Keys;
 import org.traccar.Context;
 import org.traccar.helper.DateUtil;
 import org.traccar.model.Attribute;
@@ -56,6 +60,8 @@ import org.traccar.model.BaseModel;
 import org.traccar.model.Calendar;
 import org.traccar.model.Command;
 import org.traccar.model.Position;
+import org.traccar.model.Rollup;
+import org.traccar.model.Segment;
 import org.traccar.model.Server;
 import org.traccar.model.Statistics;
 import org.traccar.model.User;
@@ -73,6 +79,8 @@ public class DataManager {
     public static final String ACTION_UPDATE = "update";
     public static final String ACTION_DELETE = "delete";
 
+    private static final long SERVER_TIME_TOLERANCE = 24 * 3600 * 1000;
+
     private final Config config;
 
     private DataSource dataSource;
@@ -81,6 +89,8 @@ public class DataManager {
 
     private final boolean forceLdap;
 
+    private PartitionManager partitionManager;
+
     public DataManager(Config config) throws Exception {
         this.config = config;
 
@@ -88,6 +98,7 @@ public class DataManager {
 
         initDatabase();
         initDatabaseSchema();
+        initPartitions();
     }
 
     private void initDatabase() throws Exception {
@@ -141,6 +152,10 @@ public class DataManager {
         }
     }
 
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
     public static String constructObjectQuery(String action, Class<?> clazz, boolean extended) {
         switch (action) {
             case ACTION_INSERT:
@@ -309,7 +324,19 @@ public class DataManager {
 
             liquibase.clearCheckSums();
 
-            liquibase.update(new Contexts());
+            liquibase.update(new Contexts(
+                    config.getBoolean(Keys.DATABASE_PARTITION_ENABLE) ? "partitioned" : "unpartitioned"));
+        }
+    }
+
+    private void initPartitions() throws SQLException {
+        if (config.getBoolean(Keys.DATABASE_PARTITION_ENABLE)) {
+            partitionManager = PartitionManager.create(
+                    dataSource, Math.max(config.getInteger(Keys.DATABASE_PARTITION_INTERVAL, 7), 1));
+            if (partitionManager != null) {
+                partitionManager.createPartitions("tc_positions");
+                partitionManager.createPartitions("tc_events");
+            }
         }
     }
 
@@ -339,14 +366,35 @@ public class DataManager {
                 .executeUpdate();
     }
 
+    private QueryBuilder createPositionsQuery(long deviceId, Date from, Date to) throws SQLException {
+        if (partitionManager != null) {
+            // Partitions are split by server time, which is never much earlier than fix time
+            return QueryBuilder.create(dataSource, getQuery("database.selectPositionsPartitioned"))
+                    .setLong("deviceId", deviceId)
+                    .setDate("from", from)
+                    .setDate("to", to)
+                    .setDate("serverFrom", new Date(from.getTime() - SERVER_TIME_TOLERANCE));
+        } else {
+            return QueryBuilder.create(dataSource, getQuery("database.selectPositions"))
+                    .setLong("deviceId", deviceId)
+                    .setDate("from", from)
+                    .setDate("to", to);
+        }
+    }
+
     public Collection<Position> getPositions(long deviceId, Date from, Date to) throws SQLException {
-        return QueryBuilder.create(dataSource, getQuery("database.selectPositions"))
-                .setLong("deviceId", deviceId)
-                .setDate("from", from)
-                .setDate("to", to)
+        return createPositionsQuery(deviceId, from, to)
                 .executeQuery(Position.class);
     }
 
+    public <E extends Exception> void getPositions(
+            long deviceId, Date from, Date to, QueryBuilder.ResultHandler<Position, E> handler)
+            throws SQLException, E {
+        createPositionsQuery(deviceId, from, to)
+                .setFetchSize(config.getInteger(Keys.DATABASE_FETCH_SIZE, 1000))
+                .executeQuery(Position.class, handler);
+    }
+
     public void updateLatestPosition(Position position) throws SQLException {
         QueryBuilder.create(dataSource, getQuery("database.updateLatestPosition"))
                 .setDate("now", new Date())
@@ -354,22 +402,85 @@ public class DataManager {
                 .executeUpdate();
     }
 
+    public void updatePositionAddress(Position position) throws SQLException {
+        QueryBuilder.create(dataSource, getQuery("database.updatePositionAddress"))
+                .setObject(position)
+                .executeUpdate();
+    }
+
     public Collection<Position> getLatestPositions() throws SQLException {
         return QueryBuilder.create(dataSource, getQuery("database.selectLatestPositions"))
                 .executeQuery(Position.class);
     }
 
     public void clearHistory() throws SQLException {
+        if (partitionManager != null) {
+            partitionManager.createPartitions("tc_positions");
+            partitionManager.createPartitions("tc_events");
+        }
         long historyDays = config.getInteger("database.historyDays");
         if (historyDays != 0) {
             Date timeLimit = new Date(System.currentTimeMillis() - historyDays * 24 * 3600 * 1000);
             LOGGER.info("Clearing history earlier than " + DateUtil.formatDate(timeLimit, false));
-            QueryBuilder.create(dataSource, getQuery("database.deletePositions"))
+            Date positionsLimit = timeLimit;
+            Date eventsLimit = timeLimit;
+            if (partitionManager != null) {
+                positionsLimit = partitionManager.removePartitions("tc_positions", timeLimit, true);
+                eventsLimit = partitionManager.removePartitions("tc_events", timeLimit, false);
+            }
+            if (positionsLimit != null) {
+                deleteHistory(
+                        "database.selectNextPosition", "database.deletePositions", "database.deletePositionsChunk",
+                        Position.class, Position::getServerTime, positionsLimit);
+            }
+            if (eventsLimit != null) {
+                deleteHistory("database.selectNextEvent", "database.deleteEvents", "database.deleteEventsChunk",
+                        Event.class, Event::getServerTime, eventsLimit);
+            }
+            QueryBuilder.create(dataSource, getQuery("database.deleteRollups"))
+                    .setDate("startTime", timeLimit)
+                    .executeUpdate();
+        }
+    }
+
+    /**
+     * Delete rows older than the time limit in ranges of identifiers, starting from the first row that can be deleted
+     * and stopping at the first one that is too recent. Short statements with pauses in between avoid long locks and
+     * let the database keep up with regular writes. Without a chunk size all rows are deleted with a single statement.
+     */
+    private <T extends BaseModel> void deleteHistory(
+            String selectQuery, String deleteQuery, String deleteChunkQuery,
+            Class<T> clazz, Function<T, Date> serverTime, Date timeLimit) throws SQLException {
+        int chunkSize = config.getInteger(Keys.DATABASE_HISTORY_CHUNK_SIZE, 10000);
+        if (chunkSize <= 0) {
+            QueryBuilder.create(dataSource, getQuery(deleteQuery))
                     .setDate("serverTime", timeLimit)
                     .executeUpdate();
-            QueryBuilder.create(dataSource, getQuery("database.deleteEvents"))
+            return;
+        }
+        long chunkDelay = config.getLong(Keys.DATABASE_HISTORY_CHUNK_DELAY, 100);
+        long id = 0;
+        while (true) {
+            T next = QueryBuilder.create(dataSource, getQuery(selectQuery))
+                    .setLong("id", id)
+                    .executeQuerySingle(clazz);
+            if (next == null || !serverTime.apply(next).before(timeLimit)) {
+                break;
+            }
+            id = next.getId() + chunkSize;
+            QueryBuilder.create(dataSource, getQuery(deleteChunkQuery))
+                    .setLong("fromId", next.getId())
+                    .setLong("toId", id)
                     .setDate("serverTime", timeLimit)
                     .executeUpdate();
+            if (chunkDelay > 0) {
+                try {
+                    Thread.sleep(chunkDelay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
         }
     }
 
@@ -393,6 +504,62 @@ public class DataManager {
                 .executeQuery(Statistics.class);
     }
 
+    public Rollup getFirstRollup(long deviceId) throws SQLException {
+        return QueryBuilder.create(dataSource, getQuery("database.selectFirstRollup"))
+                .setLong("deviceId", deviceId)
+                .executeQuerySingle(Rollup.class);
+    }
+
+    public Collection<Rollup> getRollups(long deviceId, Date from, Date to) throws SQLException {
+        return QueryBuilder.create(dataSource, getQuery("database.selectRollups"))
+                .setLong("deviceId", deviceId)
+                .setDate("from", from)
+                .setDate("to", to)
+                .executeQuery(Rollup.class);
+    }
+
+    public Collection<Segment> getSegments(
+            long deviceId, String type, String configuration, Date from, Date to) throws SQLException {
+        return QueryBuilder.create(dataSource, getQuery("database.selectSegments"))
+                .setLong("deviceId", deviceId)
+                .setString("type", type)
+                .setString("configuration", configuration)
+                .setDate("from", from)
+                .setDate("to", to)
+                .executeQuery(Segment.class);
+    }
+
+    public Segment getFirstSegment(long deviceId, String configuration) throws SQLException {
+        return QueryBuilder.create(dataSource, getQuery("database.selectFirstSegment"))
+                .setLong("deviceId", deviceId)
+                .setString("configuration", configuration)
+                .executeQuerySingle(Segment.class);
+    }
+
+    public Segment getLatestSegment(long deviceId, String configuration) throws SQLException {
+        return QueryBuilder.create(dataSource, getQuery("database.selectLatestSegment"))
+                .setLong("deviceId", deviceId)
+                .setString("configuration", configuration)
+                .executeQuerySingle(Segment.class);
+    }
+
+    public Collection<Segment> getSegmentsEndingAfter(
+            long deviceId, String configuration, Date time) throws SQLException {
+        return QueryBuilder.create(dataSource, getQuery("database.selectSegmentsEndingAfter"))
+                .setLong("deviceId", deviceId)
+                .setString("configuration", configuration)
+                .setDate("time", time)
+                .executeQuery(Segment.class);
+    }
+
+    public void removeSegmentsStartingFrom(long deviceId, String configuration, Date time) throws SQLException {
+        QueryBuilder.create(dataSource, getQuery("database.deleteSegmentsStartingFrom"))
+                .setLong("deviceId", deviceId)
+                .setString("configuration", configuration)
+                .setDate("time", time)
+                .executeUpdate();
+    }
+
     public static Class<?> getClassByName(String name) throws ClassNotFoundException {
         switch (name.toLowerCase().replace("id", "")) {
             case "device":
@@ -458,6 +625,30 @@ public class DataManager {
                 .executeUpdate());
     }
 
+    /**
+     * Insert all entities using a single batch statement. Returns false if the driver did not report generated keys
+     * for every row. In that case the batch is rolled back, nothing is stored and entity ids are left untouched.
+     */
+    public boolean addObjects(List<? extends BaseModel> entities) throws SQLException {
+        if (entities.isEmpty()) {
+            return true;
+        }
+        QueryBuilder builder = QueryBuilder.create(
+                dataSource, getQuery(ACTION_INSERT, entities.get(0).getClass()), true);
+        for (BaseModel entity : entities) {
+            builder.setObject(entity).addBatch();
+        }
+        List<Long> ids = builder.executeBatch();
+        if (ids.size() != entities.size()) {
+            return false;
+        }
+        Iterator<Long> iterator = ids.iterator();
+        for (BaseModel entity : entities) {
+            entity.setId(iterator.next());
+        }
+        return true;
+    }
+
     public void updateObject(BaseModel entity) throws SQLException {
         QueryBuilder.create(dataSource, getQuery(ACTION_UPDATE, entity.getClass()))
                 .setObject(entity)
@@ -17,6 +17,7 @@ package org.traccar.database;
 
 import java.sql.SQLException;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -46,6 +47,7 @@ public class DeviceManager extends BaseObjectManager<Device> implements Identity
     private final Config config;
     private final long dataRefreshDelay;
     private final boolean lookupGroupsAttribute;
+    private final boolean ignoreUnknown;
 
     private Map<String, Device> devicesByUniqueId;
     private Map<String, Device> devicesByPhone;
@@ -55,6 +57,21 @@ public class DeviceManager extends BaseObjectManager<Device> implements Identity
 
     private final Map<Long, DeviceState> deviceStates = new ConcurrentHashMap<>();
 
+    private static final class ResolvedAttributes {
+
+        private final long version;
+        private final Map<String, Object> attributes;
+
+        private ResolvedAttributes(long version, Map<String, Object> attributes) {
+            this.version = version;
+            this.attributes = attributes;
+        }
+
+    }
+
+    private final Map<Long, ResolvedAttributes> resolvedAttributes = new ConcurrentHashMap<>();
+    private final AtomicLong attributesVersion = new AtomicLong();
+
     public DeviceManager(DataManager dataManager) {
         super(dataManager, Device.class);
         this.config = Context.getConfig();
@@ -71,6 +88,7 @@ public class DeviceManager extends BaseObjectManager<Device> implements Identity
         }
         dataRefreshDelay = config.getLong("database.refreshDelay", DEFAULT_REFRESH_DELAY) * 1000;
         lookupGroupsAttribute = config.getBoolean("deviceManager.lookupGroupsAttribute");
+        ignoreUnknown = config.getBoolean("database.ignoreUnknown");
         refreshLastPositions();
     }
 
@@ -116,7 +134,7 @@ public class DeviceManager extends BaseObjectManager<Device> implements Identity
         boolean forceUpdate;
         try {
             readLock();
-            forceUpdate = !devicesByUniqueId.containsKey(uniqueId) && !config.getBoolean("database.ignoreUnknown");
+            forceUpdate = !devicesByUniqueId.containsKey(uniqueId) && !ignoreUnknown;
         } finally {
             readUnlock();
         }
@@ -278,6 +296,8 @@ public class DeviceManager extends BaseObjectManager<Device> implements Identity
     @Override
     protected void updateCachedItem(Device device) {
         Device cachedDevice = getById(device.getId());
+        boolean attributesChanged = cachedDevice.getGroupId() != device.getGroupId()
+                || !cachedDevice.getAttributes().equals(device.getAttributes());
         cachedDevice.setName(device.getName());
         cachedDevice.setGroupId(device.getGroupId());
         cachedDevice.setCategory(device.getCategory());
@@ -297,6 +317,9 @@ public class DeviceManager extends BaseObjectManager<Device> implements Identity
             cachedDevice.setPhone(device.getPhone());
             addByPhone(cachedDevice);
         }
+        if (attributesChanged) {
+            resetResolvedAttributes();
+        }
     }
 
     @Override
@@ -310,6 +333,7 @@ public class DeviceManager extends BaseObjectManager<Device> implements Identity
             removeByPhone(phone);
         }
         positions.remove(deviceId);
+        resolvedAttributes.remove(deviceId);
     }
 
     public void updateDeviceStatus(Device device) throws SQLException {
@@ -356,6 +380,16 @@ public class DeviceManager extends BaseObjectManager<Device> implements Identity
         }
     }
 
+    /**
+     * Replace cached latest position with an updated copy, unless a newer position has arrived in the meantime.
+     */
+    public void replaceLatestPosition(Position position, Position replacement) {
+        if (positions.replace(position.getDeviceId(), position, replacement)
+                && Context.getConnectionManager() != null) {
+            Context.getConnectionManager().updatePosition(replacement);
+        }
+    }
+
     @Override
     public Position getLastPosition(long deviceId) {
         return positions.get(deviceId);
@@ -423,26 +457,57 @@ public class DeviceManager extends BaseObjectManager<Device> implements Identity
         return defaultValue;
     }
 
+    /**
+     * Invalidates flattened device and group attributes. Has to be called after any change in group hierarchy or
+     * group attributes.
+     */
+    public void resetResolvedAttributes() {
+        attributesVersion.incrementAndGet();
+    }
+
+    private Map<String, Object> resolveAttributes(Device device) {
+        Map<String, Object> result = new HashMap<>();
+        for (Map.Entry<String, Object> entry : device.getAttributes().entrySet()) {
+            if (entry.getValue() != null) {
+                result.put(entry.getKey(), entry.getValue());
+            }
+        }
+        Set<Long> visitedGroupIds = new HashSet<>();
+        long groupId = device.getGroupId();
+        while (groupId != 0 && visitedGroupIds.add(groupId)) {
+            Group group = Context.getGroupsManager().getById(groupId);
+            if (group != null) {
+                for (Map.Entry<String, Object> entry : group.getAttributes().entrySet()) {
+                    if (entry.getValue() != null) {
+                        result.putIfAbsent(entry.getKey(), entry.getValue());
+                    }
+                }
+                groupId = group.getGroupId();
+            } else {
+                groupId = 0;
+            }
+        }
+        return result;
+    }
+
+    private Map<String, Object> getResolvedAttributes(Device device) {
+        if (!lookupGroupsAttribute) {
+            return device.getAttributes();
+        }
+        long version = attributesVersion.get();
+        ResolvedAttributes resolved = resolvedAttributes.get(device.getId());
+        if (resolved == null || resolved.version != version) {
+            resolved = new ResolvedAttributes(version, resolveAttributes(device));
+            resolvedAttributes.put(device.getId(), resolved);
+        }
+        return resolved.attributes;
+    }
+
     private Object lookupAttribute(long deviceId, String attributeName, boolean lookupServer, boolean lookupConfig) {
         Object result = null;
         Device device = getById(deviceId);
         if (device != null) {
-            result = device.getAttributes().get(attributeName);
-            if (result == null && lookupGroupsAttribute) {
-                long groupId = device.getGroupId();
-                while (groupId != 0) {
-                    Group group = Context.getGroupsManager().getById(groupId);
-                    if (group != null) {
-                        result = group.getAttributes().get(attributeName);
-                        if (result != null) {
-                            break;
-                        }
-                        groupId = group.getGroupId();
-                    } else {
-                        groupId = 0;
-                    }
-                }
-            }
+            result = getResolvedAttributes(device).get(attributeName);
             if (result == null && lookupServer) {
                 Server server = Context.getPermissionsManager().getServer();
                 result = server.getAttributes().get(attributeName);
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2020 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.database;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.traccar.config.Config;
+import org.traccar.config.Keys;
+import org.traccar.model.Event;
+import org.traccar.model.Position;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stores events in batches and passes them to a handler on background threads. Events of the same device are queued
+ * to the same thread, so their order is preserved while the queue has free space. When the queue is full, the event is
+ * handled on the calling thread and can overtake events of the same device that are still queued.
+ */
+public class EventBus {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EventBus.class);
+
+    private static final long STOP_CHECK_INTERVAL = 100;
+
+    public interface EventHandler {
+        void onEvent(Event event, Position position);
+    }
+
+    private static final class Entry {
+
+        private final Event event;
+        private final Position position;
+
+        private Entry(Event event, Position position) {
+            this.event = event;
+            this.position = position;
+        }
+
+    }
+
+    private final DataManager dataManager;
+    private final EventHandler handler;
+    private final int batchSize;
+    private final long batchDelay;
+    private final Worker[] workers;
+
+    private volatile boolean batchSupported = true;
+    private volatile boolean stopped;
+
+    public EventBus(Config config, DataManager dataManager, EventHandler handler) {
+        this.dataManager = dataManager;
+        this.handler = handler;
+        batchSize = Math.max(config.getInteger(Keys.EVENT_ASYNC_BATCH_SIZE, 100), 1);
+        batchDelay = config.getLong(Keys.EVENT_ASYNC_BATCH_DELAY, 50);
+        int queueSize = config.getInteger(Keys.EVENT_ASYNC_QUEUE_SIZE, 10000);
+        workers = new Worker[Math.max(config.getInteger(Keys.EVENT_ASYNC_THREADS, 2), 1)];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(i, queueSize);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Queue event for storing and handling. If the queue is full or the bus is stopped, the event is handled on the
+     * calling thread.
+     */
+    public void publish(Event event, Position position) {
+        Worker worker = workers[(int) Math.abs(event.getDeviceId() % workers.length)];
+        Entry entry = new Entry(event, position);
+        if (stopped || !worker.queue.offer(entry)) {
+            handleSingle(entry);
+        }
+    }
+
+    public int getQueueSize() {
+        int size = 0;
+        for (Worker worker : workers) {
+            size += worker.queue.size();
+        }
+        return size;
+    }
+
+    /**
+     * Stop workers after all queued events are stored and handled.
+     */
+    public void stop() {
+        stopped = true;
+        for (Worker worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void handleSingle(Entry entry) {
+        try {
+            dataManager.addObject(entry.event);
+        } catch (SQLException error) {
+            LOGGER.warn("Event save error", error);
+        }
+        dispatch(entry);
+    }
+
+    private void dispatch(Entry entry) {
+        try {
+            handler.onEvent(entry.event, entry.position);
+        } catch (RuntimeException error) {
+            LOGGER.warn("Event handling error", error);
+        }
+    }
+
+    private void handleBatch(List<Entry> batch) {
+        if (batchSupported && batch.size() > 1) {
+            List<Event> events = new ArrayList<>(batch.size());
+            for (Entry entry : batch) {
+                events.add(entry.event);
+            }
+            try {
+                if (dataManager.addObjects(events)) {
+                    for (Entry entry : batch) {
+                        dispatch(entry);
+                    }
+                    return;
+                }
+                batchSupported = false;
+                LOGGER.warn("Database driver does not return batch generated keys, event batching disabled");
+            } catch (SQLException error) {
+                LOGGER.warn("Failed to store events batch, retrying individually", error);
+            }
+        }
+        for (Entry entry : batch) {
+            handleSingle(entry);
+        }
+    }
+
+    private final class Worker extends Thread {
+
+        private final BlockingQueue<Entry> queue;
+
+        private Worker(int index, int queueSize) {
+            super("event-bus-" + index);
+            setDaemon(true);
+            queue = new ArrayBlockingQueue<>(queueSize);
+        }
+
+        @Override
+        public void run() {
+            List<Entry> batch = new ArrayList<>(batchSize);
+            boolean interrupted = false;
+            while (!stopped && !interrupted) {
+                try {
+                    Entry first = queue.poll(STOP_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchDelay);
+                    while (batch.size() < batchSize) {
+                        queue.drainTo(batch, batchSize - batch.size());
+                        long remaining = deadline - System.nanoTime();
+                        if (batch.size() >= batchSize || remaining <= 0 || stopped) {
+                            break;
+                        }
+                        Entry entry = queue.poll(
+                                Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(STOP_CHECK_INTERVAL)),
+                                TimeUnit.NANOSECONDS);
+                        if (entry != null) {
+                            batch.add(entry);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+                if (!batch.isEmpty()) {
+                    handleBatch(batch);
+                    batch.clear();
+                }
+            }
+            while (queue.drainTo(batch, batchSize) > 0) {
+                handleBatch(batch);
+                batch.clear();
+            }
+        }
+
+    }
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2016 - 2017 Anton Tananaev (anton@traccar.org)
+ * Copyright 2016 - 2020 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,18 +17,56 @@ package org.traccar.database;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import org.traccar.Context;
+import org.traccar.geofence.GeofenceIndex;
 import org.traccar.model.Device;
 import org.traccar.model.Geofence;
 import org.traccar.model.Position;
 
 public class GeofenceManager extends ExtendedObjectManager<Geofence> {
 
+    private GeofenceIndex index;
+
     public GeofenceManager(DataManager dataManager) {
         super(dataManager, Geofence.class);
     }
 
+    private void updateIndex(long geofenceId, Geofence geofence) {
+        try {
+            writeLock();
+            if (index == null) {
+                index = new GeofenceIndex();
+            }
+            if (geofence != null) {
+                index.put(geofenceId, geofence.getGeometry());
+            } else {
+                index.remove(geofenceId);
+            }
+        } finally {
+            writeUnlock();
+        }
+    }
+
+    @Override
+    protected void addNewItem(Geofence geofence) {
+        super.addNewItem(geofence);
+        updateIndex(geofence.getId(), geofence);
+    }
+
+    @Override
+    protected void updateCachedItem(Geofence geofence) {
+        super.updateCachedItem(geofence);
+        updateIndex(geofence.getId(), geofence);
+    }
+
+    @Override
+    protected void removeCachedItem(long geofenceId) {
+        super.removeCachedItem(geofenceId);
+        updateIndex(geofenceId, null);
+    }
+
     @Override
     public final void refreshExtendedPermissions() {
         super.refreshExtendedPermissions();
@@ -36,15 +74,19 @@ public class GeofenceManager extends ExtendedObjectManager<Geofence> {
     }
 
     public List<Long> getCurrentDeviceGeofences(Position position) {
-        List<Long> result = new ArrayList<>();
-        for (long geofenceId : getAllDeviceItems(position.getDeviceId())) {
-            Geofence geofence = getById(geofenceId);
-            if (geofence != null && geofence.getGeometry()
-                    .containsPoint(position.getLatitude(), position.getLongitude())) {
-                result.add(geofenceId);
+        Set<Long> deviceGeofenceIds = getAllDeviceItems(position.getDeviceId());
+        if (deviceGeofenceIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        try {
+            readLock();
+            if (index == null) {
+                return new ArrayList<>();
             }
+            return index.getContaining(position.getLatitude(), position.getLongitude(), deviceGeofenceIds);
+        } finally {
+            readUnlock();
         }
-        return result;
     }
 
     public void recalculateDevicesGeofences() {
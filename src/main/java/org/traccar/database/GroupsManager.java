@@ -72,10 +72,33 @@ public class GroupsManager extends BaseObjectManager<Group> implements Managable
         return result;
     }
 
+    private void resetDeviceAttributes() {
+        if (Context.getDeviceManager() != null) {
+            Context.getDeviceManager().resetResolvedAttributes();
+        }
+    }
+
     @Override
     protected void addNewItem(Group group) {
         checkGroupCycles(group);
         super.addNewItem(group);
+        resetDeviceAttributes();
+    }
+
+    @Override
+    protected void updateCachedItem(Group group) {
+        Group cachedGroup = getById(group.getId());
+        super.updateCachedItem(group);
+        if (cachedGroup == null || cachedGroup.getGroupId() != group.getGroupId()
+                || !cachedGroup.getAttributes().equals(group.getAttributes())) {
+            resetDeviceAttributes();
+        }
+    }
+
+    @Override
+    protected void removeCachedItem(long groupId) {
+        super.removeCachedItem(groupId);
+        resetDeviceAttributes();
     }
 
     @Override
@@ -95,7 +118,7 @@ public class GroupsManager extends BaseObjectManager<Group> implements Managable
 
     @Override
     public Set<Long> getManagedItems(long userId) {
-        Set<Long> result = getUserItems(userId);
+        Set<Long> result = new HashSet<>(getUserItems(userId));
         for (long managedUserId : Context.getUsersManager().getUserItems(userId)) {
             result.addAll(getUserItems(managedUserId));
         }
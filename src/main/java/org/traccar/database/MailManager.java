@@ -20,6 +20,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.traccar.Context;
 import org.traccar.Main;
+import org.traccar.config.Config;
+import org.traccar.config.Keys;
 import org.traccar.model.User;
 import org.traccar.notification.PropertiesProvider;
 
@@ -27,19 +29,62 @@ import javax.mail.BodyPart;
 import javax.mail.Message;
 import javax.mail.MessagingException;
 import javax.mail.Multipart;
+import javax.mail.SendFailedException;
 import javax.mail.Session;
 import javax.mail.Transport;
 import javax.mail.internet.InternetAddress;
 import javax.mail.internet.MimeBodyPart;
 import javax.mail.internet.MimeMessage;
 import javax.mail.internet.MimeMultipart;
+import java.util.ArrayDeque;
 import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
 public final class MailManager {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(MailManager.class);
 
+    private static final class PooledTransport {
+
+        private final Transport transport;
+        private long lastUsed;
+
+        private PooledTransport(Transport transport) {
+            this.transport = transport;
+        }
+
+    }
+
+    /**
+     * Session and idle connections for one set of effective SMTP settings.
+     */
+    private static final class TransportPool {
+
+        private final Session session;
+        private final Properties properties;
+        private final Deque<PooledTransport> idle = new ArrayDeque<>();
+
+        private TransportPool(Properties properties) {
+            this.properties = properties;
+            this.session = Session.getInstance(properties);
+        }
+
+    }
+
+    private final int poolSize;
+    private final long idleTimeout;
+
+    private final Map<Map<Object, Object>, TransportPool> pools = new ConcurrentHashMap<>();
+
+    public MailManager(Config config) {
+        poolSize = config.getInteger(Keys.MAIL_POOL_SIZE, 4);
+        idleTimeout = config.getLong(Keys.MAIL_POOL_IDLE_TIMEOUT, 60000);
+    }
+
     private static Properties getProperties(PropertiesProvider provider) {
         Properties properties = new Properties();
         String host = provider.getString("mail.smtp.host");
@@ -87,6 +132,17 @@ public final class MailManager {
         return properties;
     }
 
+    private static Properties getProperties(User user) {
+        Properties properties = null;
+        if (!Context.getConfig().getBoolean("mail.smtp.ignoreUserConfig")) {
+            properties = getProperties(new PropertiesProvider(user));
+        }
+        if (properties == null || !properties.containsKey("mail.smtp.host")) {
+            properties = getProperties(new PropertiesProvider(Context.getConfig()));
+        }
+        return properties;
+    }
+
     public void sendMessage(
             long userId, String subject, String body) throws MessagingException {
         sendMessage(userId, subject, body, null);
@@ -96,21 +152,16 @@ public final class MailManager {
             long userId, String subject, String body, MimeBodyPart attachment) throws MessagingException {
         User user = Context.getPermissionsManager().getUser(userId);
 
-        Properties properties = null;
-        if (!Context.getConfig().getBoolean("mail.smtp.ignoreUserConfig")) {
-            properties = getProperties(new PropertiesProvider(user));
-        }
-        if (properties == null || !properties.containsKey("mail.smtp.host")) {
-            properties = getProperties(new PropertiesProvider(Context.getConfig()));
-        }
+        Properties properties = getProperties(user);
         if (!properties.containsKey("mail.smtp.host")) {
             LOGGER.warn("No SMTP configuration found");
             return;
         }
 
-        Session session = Session.getInstance(properties);
+        evictIdle();
+        TransportPool pool = pools.computeIfAbsent(new HashMap<>(properties), key -> new TransportPool(properties));
 
-        MimeMessage message = new MimeMessage(session);
+        MimeMessage message = new MimeMessage(pool.session);
 
         String from = properties.getProperty("mail.smtp.from");
         if (from != null) {
@@ -134,13 +185,99 @@ public final class MailManager {
             message.setContent(body, "text/html; charset=utf-8");
         }
 
-        try (Transport transport = session.getTransport()) {
-            Main.getInjector().getInstance(StatisticsManager.class).registerMail();
-            transport.connect(
-                    properties.getProperty("mail.smtp.host"),
-                    properties.getProperty("mail.smtp.username"),
-                    properties.getProperty("mail.smtp.password"));
-            transport.sendMessage(message, message.getAllRecipients());
+        Main.getInjector().getInstance(StatisticsManager.class).registerMail();
+
+        PooledTransport transport = acquire(pool);
+        if (transport != null) {
+            try {
+                transport.transport.sendMessage(message, message.getAllRecipients());
+                release(pool, transport);
+                return;
+            } catch (SendFailedException e) {
+                release(pool, transport);
+                throw e;
+            } catch (MessagingException e) {
+                close(transport);
+                LOGGER.debug("Pooled SMTP connection failed, reconnecting", e);
+            }
+        }
+
+        transport = connect(pool);
+        try {
+            transport.transport.sendMessage(message, message.getAllRecipients());
+        } catch (MessagingException e) {
+            close(transport);
+            throw e;
+        }
+        release(pool, transport);
+    }
+
+    private PooledTransport connect(TransportPool pool) throws MessagingException {
+        Transport transport = pool.session.getTransport();
+        transport.connect(
+                pool.properties.getProperty("mail.smtp.host"),
+                pool.properties.getProperty("mail.smtp.username"),
+                pool.properties.getProperty("mail.smtp.password"));
+        return new PooledTransport(transport);
+    }
+
+    /**
+     * Returns an idle connection that is still alive, or null if there is none. Connections idle for longer than the
+     * timeout are closed, because servers usually drop them on their side.
+     */
+    private PooledTransport acquire(TransportPool pool) {
+        long now = System.currentTimeMillis();
+        while (true) {
+            PooledTransport transport;
+            synchronized (pool) {
+                transport = pool.idle.pollFirst();
+            }
+            if (transport == null) {
+                return null;
+            }
+            if (now - transport.lastUsed < idleTimeout && transport.transport.isConnected()) {
+                return transport;
+            }
+            close(transport);
+        }
+    }
+
+    private void release(TransportPool pool, PooledTransport transport) {
+        transport.lastUsed = System.currentTimeMillis();
+        synchronized (pool) {
+            if (pool.idle.size() < poolSize) {
+                pool.idle.addFirst(transport);
+                return;
+            }
+        }
+        close(transport);
+    }
+
+    /**
+     * Close connections that have been idle for too long, including ones for settings that are no longer used.
+     */
+    private void evictIdle() {
+        long limit = System.currentTimeMillis() - idleTimeout;
+        for (TransportPool pool : pools.values()) {
+            while (true) {
+                PooledTransport expired;
+                synchronized (pool) {
+                    expired = pool.idle.peekLast();
+                    if (expired == null || expired.lastUsed >= limit) {
+                        break;
+                    }
+                    pool.idle.pollLast();
+                }
+                close(expired);
+            }
+        }
+    }
+
+    private static void close(PooledTransport transport) {
+        try {
+            transport.transport.close();
+        } catch (MessagingException e) {
+            LOGGER.debug("SMTP connection close error", e);
         }
     }
 
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2020 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.database;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.traccar.geocoder.GeocoderCache;
+import org.traccar.handler.GeocoderHandler;
+import org.traccar.notification.NotificationDispatcher;
+import org.traccar.notification.NotificatorManager;
+
+import javax.sql.DataSource;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runtime metrics in Prometheus text format. Pipeline handlers report time spent in each handler per protocol, and
+ * queue depths, geocoder cache counters and database pool state are sampled when metrics are requested.
+ */
+public class MetricsManager {
+
+    private static final long[] BUCKET_BOUNDS = {
+        10_000, 25_000, 50_000, 100_000, 250_000, 500_000,
+        1_000_000, 2_500_000, 5_000_000, 10_000_000, 25_000_000, 50_000_000,
+        100_000_000, 250_000_000, 500_000_000, 1_000_000_000, 2_500_000_000L, 5_000_000_000L, 10_000_000_000L,
+    };
+
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    public static final class Histogram {
+
+        private final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS.length + 1];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+
+        private Histogram() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        public void record(long nanos) {
+            int index = 0;
+            while (index < BUCKET_BOUNDS.length && nanos > BUCKET_BOUNDS[index]) {
+                index += 1;
+            }
+            buckets[index].increment();
+            count.increment();
+            sum.add(nanos);
+        }
+
+    }
+
+    private final DataManager dataManager;
+    private final PositionWriter positionWriter;
+    private final GeocoderHandler geocoderHandler;
+    private final GeocoderCache geocoderCache;
+    private final NotificationManager notificationManager;
+    private final NotificatorManager notificatorManager;
+
+    private final Map<String, Histogram> handlerHistograms = new ConcurrentSkipListMap<>();
+    private final Map<String, String> handlerLabels = new ConcurrentHashMap<>();
+
+    public MetricsManager(
+            DataManager dataManager, PositionWriter positionWriter, GeocoderHandler geocoderHandler,
+            GeocoderCache geocoderCache, NotificationManager notificationManager,
+            NotificatorManager notificatorManager) {
+        this.dataManager = dataManager;
+        this.positionWriter = positionWriter;
+        this.geocoderHandler = geocoderHandler;
+        this.geocoderCache = geocoderCache;
+        this.notificationManager = notificationManager;
+        this.notificatorManager = notificatorManager;
+    }
+
+    public Histogram getHandlerHistogram(String protocol, String handler) {
+        String key = protocol + ':' + handler;
+        return handlerHistograms.computeIfAbsent(key, k -> {
+            handlerLabels.put(k, "protocol=\"" + protocol + "\",handler=\"" + handler + "\"");
+            return new Histogram();
+        });
+    }
+
+    private static void appendHeader(StringBuilder result, String name, String type, String help) {
+        result.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        result.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void appendGauge(StringBuilder result, String name, String help, long value) {
+        appendHeader(result, name, "gauge", help);
+        result.append(name).append(' ').append(value).append('\n');
+    }
+
+    private void appendHandlers(StringBuilder result) {
+        String name = "traccar_handler_duration_seconds";
+        appendHeader(result, name, "histogram", "Time spent in pipeline handler, excluding downstream handlers.");
+        for (Map.Entry<String, Histogram> entry : handlerHistograms.entrySet()) {
+            String labels = handlerLabels.get(entry.getKey());
+            Histogram histogram = entry.getValue();
+            long cumulative = 0;
+            for (int i = 0; i < histogram.buckets.length; i++) {
+                cumulative += histogram.buckets[i].sum();
+                String bound = i < BUCKET_BOUNDS.length ? String.valueOf(BUCKET_BOUNDS[i] / NANOS_PER_SECOND) : "+Inf";
+                result.append(name).append("_bucket{").append(labels)
+                        .append(",le=\"").append(bound).append("\"} ").append(cumulative).append('\n');
+            }
+            result.append(name).append("_sum{").append(labels).append("} ")
+                    .append(histogram.sum.sum() / NANOS_PER_SECOND).append('\n');
+            result.append(name).append("_count{").append(labels).append("} ")
+                    .append(histogram.count.sum()).append('\n');
+        }
+    }
+
+    private void appendDatabase(StringBuilder result) {
+        DataSource dataSource = dataManager.getDataSource();
+        if (dataSource instanceof HikariDataSource) {
+            HikariPoolMXBean pool = ((HikariDataSource) dataSource).getHikariPoolMXBean();
+            if (pool != null) {
+                appendGauge(result, "traccar_database_connections_active",
+                        "Database connections in use.", pool.getActiveConnections());
+                appendGauge(result, "traccar_database_connections_idle",
+                        "Idle database connections.", pool.getIdleConnections());
+                appendGauge(result, "traccar_database_connections_total",
+                        "Open database connections.", pool.getTotalConnections());
+                appendGauge(result, "traccar_database_connections_pending",
+                        "Threads waiting for a database connection.", pool.getThreadsAwaitingConnection());
+            }
+        }
+    }
+
+    private void appendGeocoderCache(StringBuilder result) {
+        String name = "traccar_geocoder_cache_requests_total";
+        appendHeader(result, name, "counter", "Geocoder cache lookups by result.");
+        result.append(name).append("{result=\"hit\"} ").append(geocoderCache.getHits()).append('\n');
+        result.append(name).append("{result=\"miss\"} ").append(geocoderCache.getMisses()).append('\n');
+        name = "traccar_geocoder_cache_evictions_total";
+        appendHeader(result, name, "counter", "Addresses evicted from geocoder cache.");
+        result.append(name).append(' ').append(geocoderCache.getEvictions()).append('\n');
+        appendGauge(result, "traccar_geocoder_cache_size",
+                "Addresses in geocoder cache.", geocoderCache.getSize());
+    }
+
+    private void appendNotifications(StringBuilder result) {
+        String name = "traccar_notifications_total";
+        appendHeader(result, name, "counter", "Notifications by notificator and result.");
+        for (NotificationDispatcher dispatcher : notificatorManager.getDispatchers()) {
+            String labels = "{notificator=\"" + dispatcher.getType() + "\",result=\"";
+            result.append(name).append(labels).append("sent\"} ").append(dispatcher.getSent()).append('\n');
+            result.append(name).append(labels).append("failed\"} ").append(dispatcher.getFailed()).append('\n');
+            result.append(name).append(labels).append("retried\"} ").append(dispatcher.getRetried()).append('\n');
+            result.append(name).append(labels).append("dropped\"} ").append(dispatcher.getDropped()).append('\n');
+        }
+        name = "traccar_notifications_pending";
+        appendHeader(result, name, "gauge", "Notifications waiting to be sent.");
+        for (NotificationDispatcher dispatcher : notificatorManager.getDispatchers()) {
+            result.append(name).append("{notificator=\"").append(dispatcher.getType()).append("\"} ")
+                    .append(dispatcher.getQueueSize()).append('\n');
+        }
+    }
+
+    public String format() {
+        StringBuilder result = new StringBuilder();
+        appendHandlers(result);
+        if (dataManager != null) {
+            appendDatabase(result);
+        }
+        if (positionWriter != null) {
+            appendGauge(result, "traccar_position_writer_queue",
+                    "Positions waiting to be stored.", positionWriter.getQueueSize());
+        }
+        if (geocoderHandler != null) {
+            appendGauge(result, "traccar_geocoder_pending",
+                    "Positions waiting for reverse geocoding.", geocoderHandler.getPendingCount());
+        }
+        if (geocoderCache != null) {
+            appendGeocoderCache(result);
+        }
+        if (notificationManager != null) {
+            appendGauge(result, "traccar_event_queue",
+                    "Events waiting to be stored and notified.", notificationManager.getQueueSize());
+        }
+        if (notificatorManager != null) {
+            appendNotifications(result);
+        }
+        return result.toString();
+    }
+
+}
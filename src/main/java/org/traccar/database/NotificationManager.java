@@ -19,17 +19,23 @@ package org.traccar.database;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Date;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.traccar.Context;
+import org.traccar.config.Keys;
+import org.traccar.helper.PositionUtil;
 import org.traccar.model.Calendar;
 import org.traccar.model.Event;
 import org.traccar.model.Notification;
@@ -42,77 +48,194 @@ public class NotificationManager extends ExtendedObjectManager<Notification> {
 
     private boolean geocodeOnRequest;
 
+    private EventBus eventBus;
+
+    /**
+     * Notification of a user that applies to a device.
+     */
+    private static final class Subscription {
+
+        private final long userId;
+        private final long notificationId;
+
+        private Subscription(long userId, long notificationId) {
+            this.userId = userId;
+            this.notificationId = notificationId;
+        }
+
+    }
+
+    /**
+     * Subscriptions of a device by event type, together with device users they were built for.
+     */
+    private static final class DeviceSubscriptions {
+
+        private final long version;
+        private final Set<Long> users;
+        private final Map<String, List<Subscription>> subscriptions = new HashMap<>();
+
+        private DeviceSubscriptions(long version, Set<Long> users) {
+            this.version = version;
+            this.users = users;
+        }
+
+    }
+
+    private final Map<Long, DeviceSubscriptions> deviceSubscriptions = new ConcurrentHashMap<>();
+    private final AtomicLong subscriptionsVersion = new AtomicLong();
+
     public NotificationManager(DataManager dataManager) {
         super(dataManager, Notification.class);
         geocodeOnRequest = Context.getConfig().getBoolean("geocoder.onRequest");
+        if (Context.getConfig().getBoolean(Keys.EVENT_ASYNC_ENABLE)) {
+            eventBus = new EventBus(Context.getConfig(), dataManager, this::processEvent);
+        }
+    }
+
+    public int getQueueSize() {
+        return eventBus != null ? eventBus.getQueueSize() : 0;
+    }
+
+    public void stop() {
+        if (eventBus != null) {
+            eventBus.stop();
+        }
+    }
+
+    private void invalidateSubscriptions() {
+        if (deviceSubscriptions != null) {
+            subscriptionsVersion.incrementAndGet();
+            deviceSubscriptions.clear();
+        }
+    }
+
+    @Override
+    protected void addNewItem(Notification item) {
+        super.addNewItem(item);
+        invalidateSubscriptions();
+    }
+
+    @Override
+    protected void updateCachedItem(Notification item) {
+        super.updateCachedItem(item);
+        invalidateSubscriptions();
+    }
+
+    @Override
+    protected void removeCachedItem(long itemId) {
+        super.removeCachedItem(itemId);
+        invalidateSubscriptions();
+    }
+
+    @Override
+    public void refreshUserItems() {
+        super.refreshUserItems();
+        invalidateSubscriptions();
+    }
+
+    @Override
+    public void refreshExtendedPermissions() {
+        super.refreshExtendedPermissions();
+        invalidateSubscriptions();
     }
 
-    private Set<Long> getEffectiveNotifications(long userId, long deviceId, Date time) {
-        Set<Long> result = new HashSet<>();
-        Set<Long> deviceNotifications = getAllDeviceItems(deviceId);
-        for (long itemId : getUserItems(userId)) {
-            if (getById(itemId).getAlways() || deviceNotifications.contains(itemId)) {
-                long calendarId = getById(itemId).getCalendarId();
-                Calendar calendar = calendarId != 0 ? Context.getCalendarManager().getById(calendarId) : null;
-                if (calendar == null || calendar.checkMoment(time)) {
-                    result.add(itemId);
+    /**
+     * Get subscriptions of a device, building them when missing or outdated. An index built while notifications were
+     * invalidated keeps the old version, so it is rebuilt on the next lookup instead of being used.
+     */
+    private DeviceSubscriptions getDeviceSubscriptions(long deviceId) {
+        long version = subscriptionsVersion.get();
+        Set<Long> users = Context.getPermissionsManager().getDeviceUsers(deviceId);
+        DeviceSubscriptions result = deviceSubscriptions.get(deviceId);
+        if (result == null || result.version != version || !result.users.equals(users)) {
+            result = new DeviceSubscriptions(version, users);
+            Set<Long> deviceNotifications = getAllDeviceItems(deviceId);
+            for (long userId : users) {
+                for (long notificationId : getUserItems(userId)) {
+                    Notification notification = getById(notificationId);
+                    if (notification != null
+                            && (notification.getAlways() || deviceNotifications.contains(notificationId))) {
+                        result.subscriptions.computeIfAbsent(notification.getType(), key -> new ArrayList<>())
+                                .add(new Subscription(userId, notificationId));
+                    }
                 }
             }
+            deviceSubscriptions.put(deviceId, result);
         }
         return result;
     }
 
+    private static boolean checkUser(long userId, Event event) {
+        return (event.getGeofenceId() == 0
+                || Context.getGeofenceManager().checkItemPermission(userId, event.getGeofenceId()))
+                && (event.getMaintenanceId() == 0
+                || Context.getMaintenancesManager().checkItemPermission(userId, event.getMaintenanceId()));
+    }
+
+    private static boolean checkNotification(Notification notification, Event event) {
+        long calendarId = notification.getCalendarId();
+        Calendar calendar = calendarId != 0 ? Context.getCalendarManager().getById(calendarId) : null;
+        if (calendar != null && !calendar.checkMoment(event.getServerTime())) {
+            return false;
+        }
+        if (event.getType().equals(Event.TYPE_ALARM)) {
+            String alarmsAttribute = notification.getString("alarms");
+            if (alarmsAttribute == null) {
+                return false;
+            }
+            List<String> alarms = Arrays.asList(alarmsAttribute.split(","));
+            return alarms.contains(event.getString(Position.KEY_ALARM));
+        }
+        return true;
+    }
+
     public void updateEvent(Event event, Position position) {
+        if (eventBus != null) {
+            eventBus.publish(event, position);
+            return;
+        }
+
         try {
             getDataManager().addObject(event);
         } catch (SQLException error) {
             LOGGER.warn("Event save error", error);
         }
 
+        processEvent(event, position);
+    }
+
+    private void processEvent(Event event, Position position) {
         if (position != null && geocodeOnRequest && Context.getGeocoder() != null && position.getAddress() == null) {
-            position.setAddress(Context.getGeocoder()
+            position = PositionUtil.copyWithAddress(position, Context.getGeocoder()
                     .getAddress(position.getLatitude(), position.getLongitude(), null));
         }
 
-        long deviceId = event.getDeviceId();
-        Set<Long> users = Context.getPermissionsManager().getDeviceUsers(deviceId);
-        Set<Long> usersToForward = null;
+        DeviceSubscriptions subscriptions = getDeviceSubscriptions(event.getDeviceId());
+
+        Map<Long, Set<String>> userNotificators = new HashMap<>();
+        for (Subscription subscription : subscriptions.subscriptions.getOrDefault(
+                event.getType(), Collections.emptyList())) {
+            Notification notification = getById(subscription.notificationId);
+            if (notification != null && checkUser(subscription.userId, event)
+                    && checkNotification(notification, event)) {
+                userNotificators.computeIfAbsent(subscription.userId, key -> new HashSet<>())
+                        .addAll(notification.getNotificatorsTypes());
+            }
+        }
+        for (Map.Entry<Long, Set<String>> entry : userNotificators.entrySet()) {
+            for (String notificator : entry.getValue()) {
+                Context.getNotificatorManager().getNotificator(notificator)
+                        .sendAsync(entry.getKey(), event, position);
+            }
+        }
+
         if (Context.getEventForwarder() != null) {
-            usersToForward = new HashSet<>();
-        }
-        for (long userId : users) {
-            if ((event.getGeofenceId() == 0
-                    || Context.getGeofenceManager().checkItemPermission(userId, event.getGeofenceId()))
-                    && (event.getMaintenanceId() == 0
-                    || Context.getMaintenancesManager().checkItemPermission(userId, event.getMaintenanceId()))) {
-                if (usersToForward != null) {
+            Set<Long> usersToForward = new HashSet<>();
+            for (long userId : subscriptions.users) {
+                if (checkUser(userId, event)) {
                     usersToForward.add(userId);
                 }
-                final Set<String> notificators = new HashSet<>();
-                for (long notificationId : getEffectiveNotifications(userId, deviceId, event.getServerTime())) {
-                    Notification notification = getById(notificationId);
-                    if (getById(notificationId).getType().equals(event.getType())) {
-                        boolean filter = false;
-                        if (event.getType().equals(Event.TYPE_ALARM)) {
-                            String alarmsAttribute = notification.getString("alarms");
-                            if (alarmsAttribute == null) {
-                                filter = true;
-                            } else {
-                                List<String> alarms = Arrays.asList(alarmsAttribute.split(","));
-                                filter = !alarms.contains(event.getString(Position.KEY_ALARM));
-                            }
-                        }
-                        if (!filter) {
-                            notificators.addAll(notification.getNotificatorsTypes());
-                        }
-                    }
-                }
-                for (String notificator : notificators) {
-                    Context.getNotificatorManager().getNotificator(notificator).sendAsync(userId, event, position);
-                }
             }
-        }
-        if (Context.getEventForwarder() != null) {
             Context.getEventForwarder().forwardEvent(event, position, usersToForward);
         }
     }
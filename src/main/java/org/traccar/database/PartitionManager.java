@@ -0,0 +1,300 @@
+/*
+ * Copyright 2020 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.database;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Maintains time range partitions of history tables created by the "partitioned" schema context. Partitions are
+ * split by server time, created ahead of time and dropped as a whole once they are older than the history limit.
+ */
+public final class PartitionManager {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PartitionManager.class);
+
+    private static final int PARTITIONS_AHEAD = 2;
+
+    private static final String REFERENCED_POSITIONS =
+            "SELECT positionId FROM tc_devices WHERE positionId IS NOT NULL";
+
+    private static final class Partition {
+
+        private final String name;
+        private final Date to;
+
+        private Partition(String name, Date to) {
+            this.name = name;
+            this.to = to;
+        }
+
+    }
+
+    private abstract static class Dialect {
+
+        abstract List<Partition> getPartitions(Connection connection, String table) throws SQLException;
+
+        abstract String createPartition(String table, List<Partition> partitions, Date from, Date to);
+
+        abstract String dropPartition(String table, Partition partition);
+
+        abstract String selectFrom(String table, Partition partition);
+
+    }
+
+    private static final class PostgresDialect extends Dialect {
+
+        private static final Pattern TO = Pattern.compile("TO \\('([^']+)'\\)");
+
+        @Override
+        List<Partition> getPartitions(Connection connection, String table) throws SQLException {
+            List<Partition> result = new ArrayList<>();
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT c.relname, pg_get_expr(c.relpartbound, c.oid) FROM pg_inherits i "
+                    + "JOIN pg_class c ON c.oid = i.inhrelid WHERE i.inhparent = to_regclass(?)")) {
+                statement.setString(1, table);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        String bound = resultSet.getString(2);
+                        if (bound != null && !bound.equals("DEFAULT")) {
+                            Matcher matcher = TO.matcher(bound);
+                            result.add(new Partition(
+                                    resultSet.getString(1), matcher.find() ? parseDate(matcher.group(1)) : null));
+                        }
+                    }
+                }
+            }
+            return result;
+        }
+
+        @Override
+        String createPartition(String table, List<Partition> partitions, Date from, Date to) {
+            return "CREATE TABLE " + table + "_p" + formatName(from) + " PARTITION OF " + table
+                    + " FOR VALUES FROM ('" + formatDate(from) + "') TO ('" + formatDate(to) + "')";
+        }
+
+        @Override
+        String dropPartition(String table, Partition partition) {
+            return "DROP TABLE " + partition.name;
+        }
+
+        @Override
+        String selectFrom(String table, Partition partition) {
+            return partition.name;
+        }
+
+    }
+
+    private static final class MysqlDialect extends Dialect {
+
+        @Override
+        List<Partition> getPartitions(Connection connection, String table) throws SQLException {
+            List<Partition> result = new ArrayList<>();
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT partition_name, partition_description FROM information_schema.partitions "
+                    + "WHERE table_schema = DATABASE() AND table_name = ? ORDER BY partition_ordinal_position")) {
+                statement.setString(1, table);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        String name = resultSet.getString(1);
+                        if (name != null) {
+                            String bound = resultSet.getString(2);
+                            Date to = bound.equals("MAXVALUE") ? null : parseDate(bound.replace("'", ""));
+                            result.add(new Partition(name, to));
+                        }
+                    }
+                }
+            }
+            return result;
+        }
+
+        @Override
+        String createPartition(String table, List<Partition> partitions, Date from, Date to) {
+            String maxPartition = null;
+            for (Partition partition : partitions) {
+                if (partition.to == null) {
+                    maxPartition = partition.name;
+                }
+            }
+            return "ALTER TABLE " + table + " REORGANIZE PARTITION " + maxPartition + " INTO ("
+                    + "PARTITION p" + formatName(from) + " VALUES LESS THAN ('" + formatDate(to) + "'), "
+                    + "PARTITION " + maxPartition + " VALUES LESS THAN MAXVALUE)";
+        }
+
+        @Override
+        String dropPartition(String table, Partition partition) {
+            return "ALTER TABLE " + table + " DROP PARTITION " + partition.name;
+        }
+
+        @Override
+        String selectFrom(String table, Partition partition) {
+            return table + " PARTITION (" + partition.name + ")";
+        }
+
+    }
+
+    private final DataSource dataSource;
+    private final Dialect dialect;
+    private final int interval;
+
+    private PartitionManager(DataSource dataSource, Dialect dialect, int interval) {
+        this.dataSource = dataSource;
+        this.dialect = dialect;
+        this.interval = interval;
+    }
+
+    /**
+     * Returns null if the database does not support partitioning, in which case history is deleted row by row.
+     */
+    public static PartitionManager create(DataSource dataSource, int interval) throws SQLException {
+        String product;
+        try (Connection connection = dataSource.getConnection()) {
+            product = connection.getMetaData().getDatabaseProductName();
+        }
+        switch (product) {
+            case "PostgreSQL":
+                return new PartitionManager(dataSource, new PostgresDialect(), interval);
+            case "MySQL":
+            case "MariaDB":
+                return new PartitionManager(dataSource, new MysqlDialect(), interval);
+            default:
+                LOGGER.warn("Partitioning is not supported for " + product);
+                return null;
+        }
+    }
+
+    private static String formatName(Date date) {
+        return new SimpleDateFormat("yyyyMMdd").format(date);
+    }
+
+    private static String formatDate(Date date) {
+        return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(date);
+    }
+
+    private static Date parseDate(String value) {
+        try {
+            if (value.length() == 10) {
+                return new SimpleDateFormat("yyyy-MM-dd").parse(value);
+            }
+            return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse(value);
+        } catch (ParseException e) {
+            throw new IllegalArgumentException("Unexpected partition bound " + value, e);
+        }
+    }
+
+    private Date getNextBound(Date time) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(time);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        calendar.add(Calendar.DATE, interval);
+        return calendar.getTime();
+    }
+
+    private List<Partition> getPartitions(Connection connection, String table) throws SQLException {
+        List<Partition> partitions = dialect.getPartitions(connection, table);
+        if (partitions.isEmpty()) {
+            LOGGER.warn("Table " + table + " is not partitioned");
+        }
+        return partitions;
+    }
+
+    private void execute(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    /**
+     * Create partitions covering the current and the following intervals. New partitions start where the last
+     * existing one ends, so the range of the partition created by the schema migration is respected.
+     */
+    public void createPartitions(String table) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            List<Partition> partitions = getPartitions(connection, table);
+            if (partitions.isEmpty()) {
+                return;
+            }
+            Date end = null;
+            for (Partition partition : partitions) {
+                if (partition.to != null && (end == null || partition.to.after(end))) {
+                    end = partition.to;
+                }
+            }
+            if (end == null) {
+                end = getNextBound(new Date(System.currentTimeMillis() - interval * 24 * 3600 * 1000L));
+            }
+            Date horizon = new Date(System.currentTimeMillis() + PARTITIONS_AHEAD * interval * 24 * 3600 * 1000L);
+            while (end.before(horizon)) {
+                Date next = getNextBound(end);
+                LOGGER.info("Creating partition of " + table + " starting " + formatDate(end));
+                execute(connection, dialect.createPartition(table, partitions, end, next));
+                end = next;
+            }
+        }
+    }
+
+    private boolean hasReferencedPositions(Connection connection, String table, Partition partition)
+            throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT 1 FROM " + dialect.selectFrom(table, partition)
+                     + " WHERE id IN (" + REFERENCED_POSITIONS + ") LIMIT 1")) {
+            return resultSet.next();
+        }
+    }
+
+    /**
+     * Drop partitions that end before the time limit. Partitions of positions that are still referenced as the latest
+     * position of a device are kept, so that their remaining rows can be deleted row by row.
+     *
+     * @return upper bound of expired partitions, or null if there are none
+     */
+    public Date removePartitions(String table, Date timeLimit, boolean positions) throws SQLException {
+        Date expired = null;
+        try (Connection connection = dataSource.getConnection()) {
+            for (Partition partition : getPartitions(connection, table)) {
+                if (partition.to != null && !partition.to.after(timeLimit)) {
+                    if (expired == null || partition.to.after(expired)) {
+                        expired = partition.to;
+                    }
+                    if (!positions || !hasReferencedPositions(connection, table, partition)) {
+                        LOGGER.info("Dropping partition " + partition.name + " of " + table);
+                        execute(connection, dialect.dropPartition(table, partition));
+                    }
+                }
+            }
+        }
+        return expired;
+    }
+
+}
@@ -15,6 +15,8 @@
  */
 package org.traccar.database;
 
+import io.netty.util.collection.LongObjectHashMap;
+import io.netty.util.collection.LongObjectMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.traccar.Context;
@@ -34,6 +36,7 @@ import org.traccar.model.Server;
 import org.traccar.model.User;
 
 import java.sql.SQLException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -48,10 +51,42 @@ public class PermissionsManager {
 
     private volatile Server server;
 
-    private final Map<Long, Set<Long>> groupPermissions = new HashMap<>();
-    private final Map<Long, Set<Long>> devicePermissions = new HashMap<>();
-    private final Map<Long, Set<Long>> deviceUsers = new HashMap<>();
-    private final Map<Long, Set<Long>> groupDevices = new HashMap<>();
+    /**
+     * Immutable permission maps keyed by primitive ids, so that lookups on the position path do not box keys.
+     */
+    private static final class PermissionsSnapshot {
+
+        private final LongObjectMap<Set<Long>> groupPermissions;
+        private final LongObjectMap<Set<Long>> devicePermissions;
+        private final LongObjectMap<Set<Long>> deviceUsers;
+        private final LongObjectMap<Set<Long>> groupDevices;
+
+        private PermissionsSnapshot(
+                Map<Long, Set<Long>> groupPermissions, Map<Long, Set<Long>> devicePermissions,
+                Map<Long, Set<Long>> deviceUsers, Map<Long, Set<Long>> groupDevices) {
+            this.groupPermissions = freeze(groupPermissions);
+            this.devicePermissions = freeze(devicePermissions);
+            this.deviceUsers = freeze(deviceUsers);
+            this.groupDevices = freeze(groupDevices);
+        }
+
+        private static LongObjectMap<Set<Long>> freeze(Map<Long, Set<Long>> map) {
+            LongObjectMap<Set<Long>> result = new LongObjectHashMap<>(Math.max(map.size(), 1));
+            for (Map.Entry<Long, Set<Long>> entry : map.entrySet()) {
+                result.put((long) entry.getKey(), Collections.unmodifiableSet(entry.getValue()));
+            }
+            return result;
+        }
+
+        private static Set<Long> get(LongObjectMap<Set<Long>> map, long key) {
+            Set<Long> result = map.get(key);
+            return result != null ? result : Collections.emptySet();
+        }
+
+    }
+
+    private volatile PermissionsSnapshot snapshot = new PermissionsSnapshot(
+            Collections.emptyMap(), Collections.emptyMap(), Collections.emptyMap(), Collections.emptyMap());
 
     public PermissionsManager(DataManager dataManager, UsersManager usersManager) {
         this.dataManager = dataManager;
@@ -65,33 +100,21 @@ public class PermissionsManager {
     }
 
     public Set<Long> getGroupPermissions(long userId) {
-        if (!groupPermissions.containsKey(userId)) {
-            groupPermissions.put(userId, new HashSet<>());
-        }
-        return groupPermissions.get(userId);
+        return PermissionsSnapshot.get(snapshot.groupPermissions, userId);
     }
 
     public Set<Long> getDevicePermissions(long userId) {
-        if (!devicePermissions.containsKey(userId)) {
-            devicePermissions.put(userId, new HashSet<>());
-        }
-        return devicePermissions.get(userId);
-    }
-
-    private Set<Long> getAllDeviceUsers(long deviceId) {
-        if (!deviceUsers.containsKey(deviceId)) {
-            deviceUsers.put(deviceId, new HashSet<>());
-        }
-        return deviceUsers.get(deviceId);
+        return PermissionsSnapshot.get(snapshot.devicePermissions, userId);
     }
 
     public Set<Long> getDeviceUsers(long deviceId) {
+        Set<Long> users = PermissionsSnapshot.get(snapshot.deviceUsers, deviceId);
         Device device = Context.getIdentityManager().getById(deviceId);
         if (device != null && !device.getDisabled()) {
-            return getAllDeviceUsers(deviceId);
+            return users;
         } else {
             Set<Long> result = new HashSet<>();
-            for (long userId : getAllDeviceUsers(deviceId)) {
+            for (long userId : users) {
                 if (getUserAdmin(userId)) {
                     result.add(userId);
                 }
@@ -101,10 +124,7 @@ public class PermissionsManager {
     }
 
     public Set<Long> getGroupDevices(long groupId) {
-        if (!groupDevices.containsKey(groupId)) {
-            groupDevices.put(groupId, new HashSet<>());
-        }
-        return groupDevices.get(groupId);
+        return PermissionsSnapshot.get(snapshot.groupDevices, groupId);
     }
 
     public void refreshServer() {
@@ -115,16 +135,23 @@ public class PermissionsManager {
         }
     }
 
-    public final void refreshDeviceAndGroupPermissions() {
-        groupPermissions.clear();
-        devicePermissions.clear();
+    /**
+     * Rebuild device and group permissions. Readers keep using the previous snapshot until the new one is published.
+     * If any part fails to load, the previous snapshot is kept as a whole.
+     */
+    public final synchronized void refreshDeviceAndGroupPermissions() {
+        Map<Long, Set<Long>> groupPermissions = new HashMap<>();
+        Map<Long, Set<Long>> devicePermissions = new HashMap<>();
+        Map<Long, Set<Long>> groupDevices = new HashMap<>();
         try {
             GroupTree groupTree = new GroupTree(Context.getGroupsManager().getItems(
                     Context.getGroupsManager().getAllItems()),
                     Context.getDeviceManager().getAllDevices());
             for (Permission groupPermission : dataManager.getPermissions(User.class, Group.class)) {
-                Set<Long> userGroupPermissions = getGroupPermissions(groupPermission.getOwnerId());
-                Set<Long> userDevicePermissions = getDevicePermissions(groupPermission.getOwnerId());
+                Set<Long> userGroupPermissions = groupPermissions.computeIfAbsent(
+                        groupPermission.getOwnerId(), key -> new HashSet<>());
+                Set<Long> userDevicePermissions = devicePermissions.computeIfAbsent(
+                        groupPermission.getOwnerId(), key -> new HashSet<>());
                 userGroupPermissions.add(groupPermission.getPropertyId());
                 for (Group group : groupTree.getGroups(groupPermission.getPropertyId())) {
                     userGroupPermissions.add(group.getId());
@@ -135,26 +162,29 @@ public class PermissionsManager {
             }
 
             for (Permission devicePermission : dataManager.getPermissions(User.class, Device.class)) {
-                getDevicePermissions(devicePermission.getOwnerId()).add(devicePermission.getPropertyId());
+                devicePermissions.computeIfAbsent(devicePermission.getOwnerId(), key -> new HashSet<>())
+                        .add(devicePermission.getPropertyId());
             }
 
-            groupDevices.clear();
             for (long groupId : Context.getGroupsManager().getAllItems()) {
                 for (Device device : groupTree.getDevices(groupId)) {
-                    getGroupDevices(groupId).add(device.getId());
+                    groupDevices.computeIfAbsent(groupId, key -> new HashSet<>()).add(device.getId());
                 }
             }
 
         } catch (SQLException | ClassNotFoundException error) {
             LOGGER.warn("Refresh device permissions error", error);
+            return;
         }
 
-        deviceUsers.clear();
+        Map<Long, Set<Long>> deviceUsers = new HashMap<>();
         for (Map.Entry<Long, Set<Long>> entry : devicePermissions.entrySet()) {
             for (long deviceId : entry.getValue()) {
-                getAllDeviceUsers(deviceId).add(entry.getKey());
+                deviceUsers.computeIfAbsent(deviceId, key -> new HashSet<>()).add(entry.getKey());
             }
         }
+
+        snapshot = new PermissionsSnapshot(groupPermissions, devicePermissions, deviceUsers, groupDevices);
     }
 
     public boolean getUserAdmin(long userId) {
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2020 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.database;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.traccar.config.Config;
+import org.traccar.config.Keys;
+import org.traccar.model.Position;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class PositionWriter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PositionWriter.class);
+
+    private static final long STOP_CHECK_INTERVAL = 100;
+
+    public interface WriteCallback {
+        void onComplete(Position position);
+    }
+
+    private static final class Request {
+
+        private final Position position;
+        private final WriteCallback callback;
+
+        private Request(Position position, WriteCallback callback) {
+            this.position = position;
+            this.callback = callback;
+        }
+
+    }
+
+    private final DataManager dataManager;
+    private final int batchSize;
+    private final long batchDelay;
+    private final Worker[] workers;
+
+    private volatile boolean batchSupported = true;
+    private volatile boolean stopped;
+
+    public PositionWriter(Config config, DataManager dataManager) {
+        this.dataManager = dataManager;
+        batchSize = Math.max(config.getInteger(Keys.DATABASE_BATCH_SIZE, 100), 1);
+        batchDelay = config.getLong(Keys.DATABASE_BATCH_DELAY, 50);
+        int queueSize = config.getInteger(Keys.DATABASE_BATCH_QUEUE_SIZE, 10000);
+        workers = new Worker[Math.max(config.getInteger(Keys.DATABASE_BATCH_THREADS, 1), 1)];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(i, queueSize);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Queue position for storing. Positions of a device always go to the same worker, and the caller waits while the
+     * queue is full, so callbacks of a device are completed in the order positions were written. After the writer is
+     * stopped, the position is stored on the calling thread once the worker has drained its queue.
+     */
+    public void write(Position position, WriteCallback callback) {
+        Worker worker = workers[(int) Math.abs(position.getDeviceId() % workers.length)];
+        Request request = new Request(position, callback);
+        boolean queued = false;
+        try {
+            while (!stopped && !queued) {
+                queued = worker.queue.offer(request, STOP_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+            }
+            if (queued && !stopped) {
+                return;
+            }
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queued || worker.queue.remove(request)) {
+            storeSingle(request); // not queued or queued after the worker finished draining
+        }
+    }
+
+    public int getQueueSize() {
+        int size = 0;
+        for (Worker worker : workers) {
+            size += worker.queue.size();
+        }
+        return size;
+    }
+
+    /**
+     * Stop workers after all queued positions are stored.
+     */
+    public void stop() {
+        stopped = true;
+        for (Worker worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void storeSingle(Request request) {
+        try {
+            dataManager.addObject(request.position);
+        } catch (Exception error) {
+            LOGGER.warn("Failed to store position", error);
+        }
+        request.callback.onComplete(request.position);
+    }
+
+    private void storeBatch(List<Request> batch) {
+        if (batchSupported && batch.size() > 1) {
+            List<Position> positions = new ArrayList<>(batch.size());
+            for (Request request : batch) {
+                positions.add(request.position);
+            }
+            try {
+                if (dataManager.addObjects(positions)) {
+                    for (Request request : batch) {
+                        request.callback.onComplete(request.position);
+                    }
+                    return;
+                }
+                batchSupported = false;
+                LOGGER.warn("Database driver does not return batch generated keys, batching disabled");
+            } catch (SQLException error) {
+                LOGGER.warn("Failed to store positions batch, retrying individually", error);
+            }
+        }
+        for (Request request : batch) {
+            storeSingle(request);
+        }
+    }
+
+    private final class Worker extends Thread {
+
+        private final BlockingQueue<Request> queue;
+
+        private Worker(int index, int queueSize) {
+            super("position-writer-" + index);
+            setDaemon(true);
+            queue = new ArrayBlockingQueue<>(queueSize);
+        }
+
+        @Override
+        public void run() {
+            List<Request> batch = new ArrayList<>(batchSize);
+            boolean interrupted = false;
+            while (!stopped && !interrupted) {
+                try {
+                    Request first = queue.poll(STOP_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchDelay);
+                    while (batch.size() < batchSize) {
+                        queue.drainTo(batch, batchSize - batch.size());
+                        long remaining = deadline - System.nanoTime();
+                        if (batch.size() >= batchSize || remaining <= 0 || stopped) {
+                            break;
+                        }
+                        Request request = queue.poll(
+                                Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(STOP_CHECK_INTERVAL)),
+                                TimeUnit.NANOSECONDS);
+                        if (request != null) {
+                            batch.add(request);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+                if (!batch.isEmpty()) {
+                    storeBatch(batch);
+                    batch.clear();
+                }
+            }
+            while (queue.drainTo(batch, batchSize) > 0) {
+                storeBatch(batch);
+                batch.clear();
+            }
+        }
+
+    }
+
+}
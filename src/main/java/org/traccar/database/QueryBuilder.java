@@ -15,7 +15,6 @@
  */
 package org.traccar.database;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.traccar.Context;
@@ -23,9 +22,7 @@ import org.traccar.model.MiscFormatter;
 import org.traccar.model.Permission;
 
 import javax.sql.DataSource;
-import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.lang.invoke.MethodHandle;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -34,6 +31,7 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.sql.Types;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
@@ -51,6 +49,7 @@ public final class QueryBuilder {
     private PreparedStatement statement;
     private final String query;
     private final boolean returnGeneratedKeys;
+    private int batchCount;
 
     private QueryBuilder(DataSource dataSource, String query, boolean returnGeneratedKeys) throws SQLException {
         this.query = query;
@@ -258,38 +257,52 @@ public final class QueryBuilder {
 
     public QueryBuilder setObject(Object object) throws SQLException {
 
-        Method[] methods = object.getClass().getMethods();
-
-        for (Method method : methods) {
-            if (method.getName().startsWith("get") && method.getParameterTypes().length == 0
-                    && !method.isAnnotationPresent(QueryIgnore.class)) {
-                String name = method.getName().substring(3);
-                try {
-                    if (method.getReturnType().equals(boolean.class)) {
-                        setBoolean(name, (Boolean) method.invoke(object));
-                    } else if (method.getReturnType().equals(int.class)) {
-                        setInteger(name, (Integer) method.invoke(object));
-                    } else if (method.getReturnType().equals(long.class)) {
-                        setLong(name, (Long) method.invoke(object), name.endsWith("Id"));
-                    } else if (method.getReturnType().equals(double.class)) {
-                        setDouble(name, (Double) method.invoke(object));
-                    } else if (method.getReturnType().equals(String.class)) {
-                        setString(name, (String) method.invoke(object));
-                    } else if (method.getReturnType().equals(Date.class)) {
-                        setDate(name, (Date) method.invoke(object));
-                    } else if (method.getReturnType().equals(byte[].class)) {
-                        setBlob(name, (byte[]) method.invoke(object));
-                    } else {
-                        if (method.getReturnType().equals(Map.class)
-                                && Context.getConfig().getBoolean("database.xml")) {
-                            setString(name, MiscFormatter.toXmlString((Map) method.invoke(object)));
+        for (QueryMapper.Property property : QueryMapper.get(object.getClass()).getGetters()) {
+            if (!indexMap.containsKey(property.getKey())) {
+                continue;
+            }
+            String name = property.getName();
+            MethodHandle handle = property.getHandle();
+            try {
+                switch (property.getType()) {
+                    case BOOLEAN:
+                        setBoolean(name, (boolean) handle.invokeExact(object));
+                        break;
+                    case INTEGER:
+                        setInteger(name, (int) handle.invokeExact(object));
+                        break;
+                    case LONG:
+                        setLong(name, (long) handle.invokeExact(object), name.endsWith("Id"));
+                        break;
+                    case DOUBLE:
+                        setDouble(name, (double) handle.invokeExact(object));
+                        break;
+                    case STRING:
+                        setString(name, (String) (Object) handle.invokeExact(object));
+                        break;
+                    case DATE:
+                        setDate(name, (Date) (Object) handle.invokeExact(object));
+                        break;
+                    case BYTES:
+                        setBlob(name, (byte[]) (Object) handle.invokeExact(object));
+                        break;
+                    case MAP:
+                        Map map = (Map) (Object) handle.invokeExact(object);
+                        if (Context.getConfig().getBoolean("database.xml")) {
+                            setString(name, MiscFormatter.toXmlString(map));
                         } else {
-                            setString(name, Context.getObjectMapper().writeValueAsString(method.invoke(object)));
+                            setString(name, Context.getObjectMapper().writeValueAsString(map));
                         }
-                    }
-                } catch (IllegalAccessException | InvocationTargetException | JsonProcessingException error) {
-                    LOGGER.warn("Get property error", error);
+                        break;
+                    default:
+                        setString(name, Context.getObjectMapper().writeValueAsString(
+                                (Object) handle.invokeExact(object)));
+                        break;
                 }
+            } catch (SQLException error) {
+                throw error;
+            } catch (Throwable error) {
+                LOGGER.warn("Get property error", error);
             }
         }
 
@@ -300,6 +313,24 @@ public final class QueryBuilder {
         void process(T object, ResultSet resultSet) throws SQLException;
     }
 
+    public interface ResultHandler<T, E extends Exception> {
+        void handle(T object) throws E;
+    }
+
+    public QueryBuilder setFetchSize(int fetchSize) throws SQLException {
+        if (query != null && fetchSize > 0) {
+            try {
+                connection.setAutoCommit(false); // required by some drivers to use cursor instead of full result
+                statement.setFetchSize(fetchSize);
+            } catch (SQLException error) {
+                statement.close();
+                connection.close();
+                throw error;
+            }
+        }
+        return this;
+    }
+
     public <T> T executeQuerySingle(Class<T> clazz) throws SQLException {
         Collection<T> result = executeQuery(clazz);
         if (!result.isEmpty()) {
@@ -309,85 +340,108 @@ public final class QueryBuilder {
         }
     }
 
-    private <T> void addProcessors(
-            List<ResultSetProcessor<T>> processors,
-            final Class<?> parameterType, final Method method, final String name) {
+    private static <T> ResultSetProcessor<T> createProcessor(QueryMapper.Property property, final int index) {
 
-        if (parameterType.equals(boolean.class)) {
-            processors.add((object, resultSet) -> {
-                try {
-                    method.invoke(object, resultSet.getBoolean(name));
-                } catch (IllegalAccessException | InvocationTargetException error) {
-                    LOGGER.warn("Set property error", error);
-                }
-            });
-        } else if (parameterType.equals(int.class)) {
-            processors.add((object, resultSet) -> {
-                try {
-                    method.invoke(object, resultSet.getInt(name));
-                } catch (IllegalAccessException | InvocationTargetException error) {
-                    LOGGER.warn("Set property error", error);
-                }
-            });
-        } else if (parameterType.equals(long.class)) {
-            processors.add((object, resultSet) -> {
-                try {
-                    method.invoke(object, resultSet.getLong(name));
-                } catch (IllegalAccessException | InvocationTargetException error) {
-                    LOGGER.warn("Set property error", error);
-                }
-            });
-        } else if (parameterType.equals(double.class)) {
-            processors.add((object, resultSet) -> {
-                try {
-                    method.invoke(object, resultSet.getDouble(name));
-                } catch (IllegalAccessException | InvocationTargetException error) {
-                    LOGGER.warn("Set property error", error);
-                }
-            });
-        } else if (parameterType.equals(String.class)) {
-            processors.add((object, resultSet) -> {
-                try {
-                    method.invoke(object, resultSet.getString(name));
-                } catch (IllegalAccessException | InvocationTargetException error) {
-                    LOGGER.warn("Set property error", error);
-                }
-            });
-        } else if (parameterType.equals(Date.class)) {
-            processors.add((object, resultSet) -> {
-                try {
-                    Timestamp timestamp = resultSet.getTimestamp(name);
-                    if (timestamp != null) {
-                        method.invoke(object, new Date(timestamp.getTime()));
+        final MethodHandle handle = property.getHandle();
+        final Class<?> valueClass = property.getValueClass();
+
+        switch (property.getType()) {
+            case BOOLEAN:
+                return (object, resultSet) -> {
+                    try {
+                        handle.invokeExact((Object) object, resultSet.getBoolean(index));
+                    } catch (SQLException error) {
+                        throw error;
+                    } catch (Throwable error) {
+                        LOGGER.warn("Set property error", error);
                     }
-                } catch (IllegalAccessException | InvocationTargetException error) {
-                    LOGGER.warn("Set property error", error);
-                }
-            });
-        } else if (parameterType.equals(byte[].class)) {
-            processors.add((object, resultSet) -> {
-                try {
-                    method.invoke(object, resultSet.getBytes(name));
-                } catch (IllegalAccessException | InvocationTargetException error) {
-                    LOGGER.warn("Set property error", error);
-                }
-            });
-        } else {
-            processors.add((object, resultSet) -> {
-                String value = resultSet.getString(name);
-                if (value != null && !value.isEmpty()) {
+                };
+            case INTEGER:
+                return (object, resultSet) -> {
                     try {
-                        method.invoke(object, Context.getObjectMapper().readValue(value, parameterType));
-                    } catch (InvocationTargetException | IllegalAccessException | IOException error) {
+                        handle.invokeExact((Object) object, resultSet.getInt(index));
+                    } catch (SQLException error) {
+                        throw error;
+                    } catch (Throwable error) {
                         LOGGER.warn("Set property error", error);
                     }
-                }
-            });
+                };
+            case LONG:
+                return (object, resultSet) -> {
+                    try {
+                        handle.invokeExact((Object) object, resultSet.getLong(index));
+                    } catch (SQLException error) {
+                        throw error;
+                    } catch (Throwable error) {
+                        LOGGER.warn("Set property error", error);
+                    }
+                };
+            case DOUBLE:
+                return (object, resultSet) -> {
+                    try {
+                        handle.invokeExact((Object) object, resultSet.getDouble(index));
+                    } catch (SQLException error) {
+                        throw error;
+                    } catch (Throwable error) {
+                        LOGGER.warn("Set property error", error);
+                    }
+                };
+            case STRING:
+                return (object, resultSet) -> {
+                    try {
+                        handle.invokeExact((Object) object, (Object) resultSet.getString(index));
+                    } catch (SQLException error) {
+                        throw error;
+                    } catch (Throwable error) {
+                        LOGGER.warn("Set property error", error);
+                    }
+                };
+            case DATE:
+                return (object, resultSet) -> {
+                    try {
+                        Timestamp timestamp = resultSet.getTimestamp(index);
+                        if (timestamp != null) {
+                            handle.invokeExact((Object) object, (Object) new Date(timestamp.getTime()));
+                        }
+                    } catch (SQLException error) {
+                        throw error;
+                    } catch (Throwable error) {
+                        LOGGER.warn("Set property error", error);
+                    }
+                };
+            case BYTES:
+                return (object, resultSet) -> {
+                    try {
+                        handle.invokeExact((Object) object, (Object) resultSet.getBytes(index));
+                    } catch (SQLException error) {
+                        throw error;
+                    } catch (Throwable error) {
+                        LOGGER.warn("Set property error", error);
+                    }
+                };
+            default:
+                return (object, resultSet) -> {
+                    String value = resultSet.getString(index);
+                    if (value != null && !value.isEmpty()) {
+                        try {
+                            handle.invokeExact(
+                                    (Object) object, (Object) Context.getObjectMapper().readValue(value, valueClass));
+                        } catch (Throwable error) {
+                            LOGGER.warn("Set property error", error);
+                        }
+                    }
+                };
         }
     }
 
     public <T> Collection<T> executeQuery(Class<T> clazz) throws SQLException {
-        List<T> result = new LinkedList<>();
+        List<T> result = new ArrayList<>();
+        executeQuery(clazz, result::add);
+        return result;
+    }
+
+    public <T, E extends Exception> void executeQuery(
+            Class<T> clazz, ResultHandler<T, E> handler) throws SQLException, E {
 
         if (query != null) {
 
@@ -397,42 +451,27 @@ public final class QueryBuilder {
 
                     ResultSetMetaData resultMetaData = resultSet.getMetaData();
 
-                    List<ResultSetProcessor<T>> processors = new LinkedList<>();
-
-                    Method[] methods = clazz.getMethods();
-
-                    for (final Method method : methods) {
-                        if (method.getName().startsWith("set") && method.getParameterTypes().length == 1
-                                && !method.isAnnotationPresent(QueryIgnore.class)) {
-
-                            final String name = method.getName().substring(3);
+                    Map<String, Integer> columns = new HashMap<>();
+                    for (int i = resultMetaData.getColumnCount(); i >= 1; i--) {
+                        columns.put(resultMetaData.getColumnLabel(i).toLowerCase(), i);
+                    }
 
-                            // Check if column exists
-                            boolean column = false;
-                            for (int i = 1; i <= resultMetaData.getColumnCount(); i++) {
-                                if (name.equalsIgnoreCase(resultMetaData.getColumnLabel(i))) {
-                                    column = true;
-                                    break;
-                                }
-                            }
-                            if (!column) {
-                                continue;
-                            }
+                    QueryMapper mapper = QueryMapper.get(clazz);
 
-                            addProcessors(processors, method.getParameterTypes()[0], method, name);
+                    List<ResultSetProcessor<T>> processors = new ArrayList<>();
+                    for (QueryMapper.Property property : mapper.getSetters()) {
+                        Integer index = columns.get(property.getKey());
+                        if (index != null) {
+                            processors.add(createProcessor(property, index));
                         }
                     }
 
                     while (resultSet.next()) {
-                        try {
-                            T object = clazz.getDeclaredConstructor().newInstance();
-                            for (ResultSetProcessor<T> processor : processors) {
-                                processor.process(object, resultSet);
-                            }
-                            result.add(object);
-                        } catch (ReflectiveOperationException e) {
-                            throw new IllegalArgumentException();
+                        T object = clazz.cast(mapper.newInstance());
+                        for (ResultSetProcessor<T> processor : processors) {
+                            processor.process(object, resultSet);
                         }
+                        handler.handle(object);
                     }
                 }
 
@@ -441,8 +480,6 @@ public final class QueryBuilder {
                 connection.close();
             }
         }
-
-        return result;
     }
 
     public long executeUpdate() throws SQLException {
@@ -464,6 +501,61 @@ public final class QueryBuilder {
         return 0;
     }
 
+    public QueryBuilder addBatch() throws SQLException {
+        if (query != null) {
+            try {
+                statement.addBatch();
+                batchCount += 1;
+            } catch (SQLException error) {
+                statement.close();
+                connection.close();
+                throw error;
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Execute batch and return generated keys, if requested. With generated keys the batch runs in a single
+     * transaction that is rolled back when the driver does not return a key for every row, so that rows are never
+     * stored without their ids being known. In that case an empty list is returned.
+     */
+    public List<Long> executeBatch() throws SQLException {
+        List<Long> result = new LinkedList<>();
+        if (query != null) {
+            try {
+                if (returnGeneratedKeys) {
+                    connection.setAutoCommit(false);
+                    try {
+                        statement.executeBatch();
+                        try (ResultSet resultSet = statement.getGeneratedKeys()) {
+                            while (resultSet.next()) {
+                                result.add(resultSet.getLong(1));
+                            }
+                        }
+                        if (result.size() == batchCount) {
+                            connection.commit();
+                        } else {
+                            connection.rollback();
+                            result.clear();
+                        }
+                    } catch (SQLException error) {
+                        connection.rollback();
+                        throw error;
+                    } finally {
+                        connection.setAutoCommit(true);
+                    }
+                } else {
+                    statement.executeBatch();
+                }
+            } finally {
+                statement.close();
+                connection.close();
+            }
+        }
+        return result;
+    }
+
     public Collection<Permission> executePermissionsQuery() throws SQLException, ClassNotFoundException {
         List<Permission> result = new LinkedList<>();
         if (query != null) {
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2020 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.database;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Property accessors of a model class resolved once and cached for all queries. Getters and setters are bound as
+ * method handles adapted to a common shape, so binding and reading rows does not go through reflection.
+ */
+final class QueryMapper {
+
+    private static final Map<Class<?>, QueryMapper> MAPPERS = new ConcurrentHashMap<>();
+
+    enum Type {
+        BOOLEAN, INTEGER, LONG, DOUBLE, STRING, DATE, BYTES, MAP, OBJECT
+    }
+
+    static final class Property {
+
+        private final String name;
+        private final String key;
+        private final Class<?> valueClass;
+        private final Type type;
+        private final MethodHandle handle;
+
+        private Property(String name, Class<?> valueClass, MethodHandle handle) {
+            this.name = name;
+            this.key = name.toLowerCase();
+            this.valueClass = valueClass;
+            this.type = QueryMapper.getType(valueClass);
+            this.handle = handle;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        String getKey() {
+            return key;
+        }
+
+        Class<?> getValueClass() {
+            return valueClass;
+        }
+
+        Type getType() {
+            return type;
+        }
+
+        MethodHandle getHandle() {
+            return handle;
+        }
+
+    }
+
+    private final Class<?> clazz;
+    private final MethodHandle constructor;
+    private final List<Property> getters = new ArrayList<>();
+    private final List<Property> setters = new ArrayList<>();
+
+    private QueryMapper(Class<?> clazz) {
+        this.clazz = clazz;
+
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+
+        MethodHandle constructor;
+        try {
+            constructor = lookup.findConstructor(clazz, MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(Object.class));
+        } catch (ReflectiveOperationException e) {
+            constructor = null;
+        }
+        this.constructor = constructor;
+
+        for (Method method : clazz.getMethods()) {
+            if (method.isAnnotationPresent(QueryIgnore.class)) {
+                continue;
+            }
+            try {
+                if (method.getName().startsWith("get") && method.getParameterTypes().length == 0) {
+                    Class<?> valueClass = method.getReturnType();
+                    MethodHandle handle = lookup.unreflect(method).asType(
+                            MethodType.methodType(handleClass(valueClass), Object.class));
+                    getters.add(new Property(method.getName().substring(3), valueClass, handle));
+                } else if (method.getName().startsWith("set") && method.getParameterTypes().length == 1) {
+                    Class<?> valueClass = method.getParameterTypes()[0];
+                    MethodHandle handle = lookup.unreflect(method).asType(
+                            MethodType.methodType(void.class, Object.class, handleClass(valueClass)));
+                    setters.add(new Property(method.getName().substring(3), valueClass, handle));
+                }
+            } catch (IllegalAccessException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+    }
+
+    static QueryMapper get(Class<?> clazz) {
+        return MAPPERS.computeIfAbsent(clazz, QueryMapper::new);
+    }
+
+    private static Class<?> handleClass(Class<?> valueClass) {
+        switch (getType(valueClass)) {
+            case BOOLEAN:
+            case INTEGER:
+            case LONG:
+            case DOUBLE:
+                return valueClass;
+            default:
+                return Object.class;
+        }
+    }
+
+    private static Type getType(Class<?> valueClass) {
+        if (valueClass.equals(boolean.class)) {
+            return Type.BOOLEAN;
+        } else if (valueClass.equals(int.class)) {
+            return Type.INTEGER;
+        } else if (valueClass.equals(long.class)) {
+            return Type.LONG;
+        } else if (valueClass.equals(double.class)) {
+            return Type.DOUBLE;
+        } else if (valueClass.equals(String.class)) {
+            return Type.STRING;
+        } else if (valueClass.equals(Date.class)) {
+            return Type.DATE;
+        } else if (valueClass.equals(byte[].class)) {
+            return Type.BYTES;
+        } else if (valueClass.equals(Map.class)) {
+            return Type.MAP;
+        } else {
+            return Type.OBJECT;
+        }
+    }
+
+    List<Property> getGetters() {
+        return Collections.unmodifiableList(getters);
+    }
+
+    List<Property> getSetters() {
+        return Collections.unmodifiableList(setters);
+    }
+
+    Object newInstance() {
+        if (constructor == null) {
+            throw new IllegalArgumentException("No public constructor for " + clazz.getName());
+        }
+        try {
+            return constructor.invokeExact();
+        } catch (Throwable error) {
+            throw new IllegalArgumentException(error);
+        }
+    }
+
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2020 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.database;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.traccar.model.Position;
+import org.traccar.model.Rollup;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Maintains hourly rollups of stored positions. Positions are aggregated in memory and merged into the database
+ * periodically, when a device moves on to another hour and before rollups are read. Rollups of a device are only
+ * complete after the hour of its first rollup, positions older than that are not aggregated and have to be read from
+ * the positions table.
+ */
+public class RollupManager {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RollupManager.class);
+
+    public static final long PERIOD = 60 * 60 * 1000;
+
+    private static final class DeviceState {
+        private final Object flushLock = new Object();
+        private Map<Long, Rollup> pending = new HashMap<>();
+        private long currentStartTime;
+        private boolean loaded;
+        private Date firstStartTime;
+    }
+
+    private final DataManager dataManager;
+    private final Map<Long, DeviceState> devices = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService executor;
+
+    public RollupManager(DataManager dataManager, long flushInterval) {
+        this.dataManager = dataManager;
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rollup-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (flushInterval > 0) {
+            executor.scheduleWithFixedDelay(this::flushAll, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public static long getStartTime(long time) {
+        return Math.floorDiv(time, PERIOD) * PERIOD;
+    }
+
+    public Rollup getFirstRollup(long deviceId) throws SQLException {
+        flush(deviceId);
+        return dataManager.getFirstRollup(deviceId);
+    }
+
+    public Collection<Rollup> getRollups(long deviceId, Date from, Date to) throws SQLException {
+        flush(deviceId);
+        return dataManager.getRollups(deviceId, from, to);
+    }
+
+    private static void add(Rollup rollup, Position position) {
+        rollup.setPositionCount(rollup.getPositionCount() + 1);
+        rollup.setSpeedSum(rollup.getSpeedSum() + position.getSpeed());
+        rollup.setMaxSpeed(Math.max(rollup.getMaxSpeed(), position.getSpeed()));
+        if (rollup.getFirstTime() == null || position.getFixTime().before(rollup.getFirstTime())) {
+            rollup.setFirstPositionId(position.getId());
+            rollup.setFirstTime(position.getFixTime());
+        }
+        if (rollup.getLastTime() == null || !position.getFixTime().before(rollup.getLastTime())) {
+            rollup.setLastPositionId(position.getId());
+            rollup.setLastTime(position.getFixTime());
+        }
+    }
+
+    private static void merge(Rollup rollup, Rollup delta) {
+        rollup.setPositionCount(rollup.getPositionCount() + delta.getPositionCount());
+        rollup.setSpeedSum(rollup.getSpeedSum() + delta.getSpeedSum());
+        rollup.setMaxSpeed(Math.max(rollup.getMaxSpeed(), delta.getMaxSpeed()));
+        if (rollup.getFirstTime() == null || delta.getFirstTime().before(rollup.getFirstTime())) {
+            rollup.setFirstPositionId(delta.getFirstPositionId());
+            rollup.setFirstTime(delta.getFirstTime());
+        }
+        if (rollup.getLastTime() == null || !delta.getLastTime().before(rollup.getLastTime())) {
+            rollup.setLastPositionId(delta.getLastPositionId());
+            rollup.setLastTime(delta.getLastTime());
+        }
+    }
+
+    /**
+     * Aggregate stored position in memory. Does not access the database.
+     */
+    public void updateRollup(Position position) {
+        if (position.getId() == 0 || position.getFixTime() == null) {
+            return; // position is not stored
+        }
+
+        long deviceId = position.getDeviceId();
+        long startTime = getStartTime(position.getFixTime().getTime());
+        DeviceState state = devices.computeIfAbsent(deviceId, key -> new DeviceState());
+        boolean hourChanged;
+        synchronized (state) {
+            Rollup rollup = state.pending.computeIfAbsent(startTime, key -> {
+                Rollup delta = new Rollup();
+                delta.setDeviceId(deviceId);
+                delta.setStartTime(new Date(key));
+                return delta;
+            });
+            add(rollup, position);
+            hourChanged = state.currentStartTime != 0 && startTime > state.currentStartTime;
+            state.currentStartTime = Math.max(state.currentStartTime, startTime);
+        }
+        if (hourChanged) {
+            executor.execute(() -> {
+                try {
+                    flush(deviceId);
+                } catch (SQLException error) {
+                    LOGGER.warn("Failed to store rollups", error);
+                }
+            });
+        }
+    }
+
+    private Rollup getRollup(long deviceId, Date startTime) throws SQLException {
+        for (Rollup rollup : dataManager.getRollups(deviceId, startTime, startTime)) {
+            return rollup;
+        }
+        return null;
+    }
+
+    /**
+     * Merge aggregated positions of the device into stored rollups. Aggregates that fail to be stored are kept for
+     * the next attempt.
+     */
+    public void flush(long deviceId) throws SQLException {
+        DeviceState state = devices.get(deviceId);
+        if (state == null) {
+            return;
+        }
+        synchronized (state.flushLock) {
+            List<Rollup> deltas;
+            synchronized (state) {
+                if (state.pending.isEmpty()) {
+                    return;
+                }
+                deltas = new ArrayList<>(state.pending.values());
+                state.pending = new HashMap<>();
+            }
+            deltas.sort((a, b) -> a.getStartTime().compareTo(b.getStartTime()));
+            try {
+                if (!state.loaded) {
+                    Rollup first = dataManager.getFirstRollup(deviceId);
+                    state.firstStartTime = first != null ? first.getStartTime() : null;
+                    state.loaded = true;
+                }
+                while (!deltas.isEmpty()) {
+                    Rollup delta = deltas.get(0);
+                    if (state.firstStartTime == null || !delta.getStartTime().before(state.firstStartTime)) {
+                        Rollup rollup = getRollup(deviceId, delta.getStartTime());
+                        if (rollup == null) {
+                            dataManager.addObject(delta);
+                            if (state.firstStartTime == null) {
+                                state.firstStartTime = delta.getStartTime();
+                            }
+                        } else {
+                            merge(rollup, delta);
+                            dataManager.updateObject(rollup);
+                        }
+                    } // older hours are read from positions table
+                    deltas.remove(0);
+                }
+            } catch (SQLException e) {
+                synchronized (state) {
+                    for (Rollup delta : deltas) {
+                        Rollup rollup = state.pending.get(delta.getStartTime().getTime());
+                        if (rollup != null) {
+                            merge(delta, rollup);
+                        }
+                        delta.setId(0);
+                        state.pending.put(delta.getStartTime().getTime(), delta);
+                    }
+                }
+                throw e;
+            }
+        }
+    }
+
+    private void flushAll() {
+        for (long deviceId : devices.keySet()) {
+            try {
+                flush(deviceId);
+            } catch (SQLException error) {
+                LOGGER.warn("Failed to store rollups", error);
+            }
+        }
+    }
+
+    /**
+     * Store all aggregated positions and stop periodic flushing.
+     */
+    public void stop() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushAll();
+    }
+
+}
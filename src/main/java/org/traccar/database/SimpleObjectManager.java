@@ -74,7 +74,7 @@ public abstract class SimpleObjectManager<T extends BaseModel> extends BaseObjec
         refreshUserItems();
     }
 
-    public final void refreshUserItems() {
+    public void refreshUserItems() {
         if (getDataManager() != null) {
             try {
                 writeLock();
@@ -25,8 +25,8 @@ import javax.json.JsonObject;
 
 public class BanGeocoder extends JsonGeocoder {
 
-    public BanGeocoder(int cacheSize, AddressFormat addressFormat) {
-        super("https://api-adresse.data.gouv.fr/reverse/?lat=%f&lon=%f", cacheSize, addressFormat);
+    public BanGeocoder(GeocoderCache cache, AddressFormat addressFormat) {
+        super("https://api-adresse.data.gouv.fr/reverse/?lat=%f&lon=%f", cache, addressFormat);
     }
 
     @Override
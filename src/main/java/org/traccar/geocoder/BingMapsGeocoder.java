@@ -21,8 +21,8 @@ import javax.json.JsonObject;
 
 public class BingMapsGeocoder extends JsonGeocoder {
 
-    public BingMapsGeocoder(String url, String key, int cacheSize, AddressFormat addressFormat) {
-        super(url + "/Locations/%f,%f?key=" + key + "&include=ciso2", cacheSize, addressFormat);
+    public BingMapsGeocoder(String url, String key, GeocoderCache cache, AddressFormat addressFormat) {
+        super(url + "/Locations/%f,%f?key=" + key + "&include=ciso2", cache, addressFormat);
     }
 
     @Override
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2020 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.geocoder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Address cache keyed by a grid cell of coordinates rounded to the given number of decimal places, so nearby fixes
+ * share an entry. Entries are split between independently locked LRU segments. Optionally the cache is loaded from a
+ * file on startup and written back by {@link #save()}.
+ */
+public class GeocoderCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GeocoderCache.class);
+
+    public static final int DEFAULT_PRECISION = 5;
+
+    private static final int MAX_PRECISION = 7;
+    private static final int MAX_SEGMENTS = 16;
+    private static final int FILE_VERSION = 1;
+
+    private final double scale;
+    private final int precision;
+    private final Segment[] segments;
+    private final Path file;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private final class Segment extends LinkedHashMap<Long, String> {
+
+        private final int capacity;
+
+        private Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+
+    }
+
+    public GeocoderCache(int size, int precision) {
+        this(size, precision, null);
+    }
+
+    public GeocoderCache(int size, int precision, String file) {
+        this.precision = Math.max(0, Math.min(precision, MAX_PRECISION));
+        scale = Math.pow(10, this.precision);
+        segments = new Segment[Math.max(1, Math.min(MAX_SEGMENTS, size))];
+        int capacity = (Math.max(size, 1) + segments.length - 1) / segments.length;
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment(capacity);
+        }
+        this.file = file != null ? Paths.get(file) : null;
+        load();
+    }
+
+    private static long getKey(double latitude, double longitude, double scale) {
+        long latitudeIndex = Math.round(latitude * scale);
+        long longitudeIndex = Math.round(longitude * scale);
+        return latitudeIndex << 32 | longitudeIndex & 0xffffffffL;
+    }
+
+    static long getExactKey(double latitude, double longitude) {
+        return getKey(latitude, longitude, Math.pow(10, MAX_PRECISION));
+    }
+
+    long getKey(double latitude, double longitude) {
+        return getKey(latitude, longitude, scale);
+    }
+
+    private Segment segment(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return segments[(int) ((hash >>> 32) % segments.length)];
+    }
+
+    public String get(double latitude, double longitude) {
+        long key = getKey(latitude, longitude);
+        Segment segment = segment(key);
+        String address;
+        synchronized (segment) {
+            address = segment.get(key);
+        }
+        if (address != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return address;
+    }
+
+    public void put(double latitude, double longitude, String address) {
+        long key = getKey(latitude, longitude);
+        Segment segment = segment(key);
+        synchronized (segment) {
+            segment.put(key, address);
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public int getSize() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    private void load() {
+        if (file == null || !Files.exists(file)) {
+            return;
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (input.readInt() != FILE_VERSION || input.readInt() != precision) {
+                LOGGER.info("Geocoder cache file format or precision changed, ignoring it");
+                return;
+            }
+            int count = 0;
+            while (true) {
+                long key;
+                try {
+                    key = input.readLong();
+                } catch (EOFException e) {
+                    break;
+                }
+                String address = input.readUTF();
+                Segment segment = segment(key);
+                synchronized (segment) {
+                    segment.put(key, address);
+                }
+                count += 1;
+            }
+            LOGGER.info("Geocoder cache loaded, entries: " + count);
+        } catch (IOException error) {
+            LOGGER.warn("Geocoder cache load error", error);
+        }
+    }
+
+    /**
+     * Write cache content to the file, if one is configured. Entries are written from the least recently used, so the
+     * recency order is preserved after loading. Called periodically and on shutdown.
+     */
+    public synchronized void save() {
+        if (file == null) {
+            return;
+        }
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            output.writeInt(FILE_VERSION);
+            output.writeInt(precision);
+            for (Segment segment : segments) {
+                Map<Long, String> entries;
+                synchronized (segment) {
+                    entries = new LinkedHashMap<>(segment);
+                }
+                for (Map.Entry<Long, String> entry : entries.entrySet()) {
+                    output.writeLong(entry.getKey());
+                    output.writeUTF(entry.getValue());
+                }
+            }
+        } catch (IOException error) {
+            LOGGER.warn("Geocoder cache save error", error);
+            return;
+        }
+        try {
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException error) {
+            LOGGER.warn("Geocoder cache save error", error);
+        }
+    }
+
+}
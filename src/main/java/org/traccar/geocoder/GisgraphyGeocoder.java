@@ -27,8 +27,8 @@ public class GisgraphyGeocoder extends JsonGeocoder {
         return url;
     }
 
-    public GisgraphyGeocoder(String url, int cacheSize, AddressFormat addressFormat) {
-        super(formatUrl(url), cacheSize, addressFormat);
+    public GisgraphyGeocoder(String url, GeocoderCache cache, AddressFormat addressFormat) {
+        super(formatUrl(url), cache, addressFormat);
     }
 
     @Override
@@ -35,8 +35,8 @@ public class HereGeocoder extends JsonGeocoder {
     }
 
     public HereGeocoder(
-            String url, String id, String key, String language, int cacheSize, AddressFormat addressFormat) {
-        super(formatUrl(url, id, key, language), cacheSize, addressFormat);
+            String url, String id, String key, String language, GeocoderCache cache, AddressFormat addressFormat) {
+        super(formatUrl(url, id, key, language), cache, addressFormat);
     }
 
     @Override
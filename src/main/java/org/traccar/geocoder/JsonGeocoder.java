@@ -1,5 +1,5 @@
 /*
- * Copyright 2015 - 2018 Anton Tananaev (anton@traccar.org)
+ * Copyright 2015 - 2020 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -23,10 +23,10 @@ import javax.json.JsonObject;
 import javax.ws.rs.ClientErrorException;
 import javax.ws.rs.client.Invocation;
 import javax.ws.rs.client.InvocationCallback;
-import java.util.AbstractMap;
-import java.util.Collections;
-import java.util.LinkedHashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public abstract class JsonGeocoder implements Geocoder {
 
@@ -35,19 +35,14 @@ public abstract class JsonGeocoder implements Geocoder {
     private final String url;
     private final AddressFormat addressFormat;
 
-    private Map<Map.Entry<Double, Double>, String> cache;
+    private final GeocoderCache cache;
 
-    public JsonGeocoder(String url, final int cacheSize, AddressFormat addressFormat) {
+    private final Map<Long, List<ReverseGeocoderCallback>> pendingRequests = new ConcurrentHashMap<>();
+
+    public JsonGeocoder(String url, GeocoderCache cache, AddressFormat addressFormat) {
         this.url = url;
+        this.cache = cache;
         this.addressFormat = addressFormat;
-        if (cacheSize > 0) {
-            this.cache = Collections.synchronizedMap(new LinkedHashMap<Map.Entry<Double, Double>, String>() {
-                @Override
-                protected boolean removeEldestEntry(Map.Entry eldest) {
-                    return size() > cacheSize;
-                }
-            });
-        }
     }
 
     protected String readValue(JsonObject object, String key) {
@@ -64,7 +59,7 @@ public abstract class JsonGeocoder implements Geocoder {
         if (address != null) {
             String formattedAddress = addressFormat.format(address);
             if (cache != null) {
-                cache.put(new AbstractMap.SimpleImmutableEntry<>(latitude, longitude), formattedAddress);
+                cache.put(latitude, longitude, formattedAddress);
             }
             if (callback != null) {
                 callback.onSuccess(formattedAddress);
@@ -81,12 +76,58 @@ public abstract class JsonGeocoder implements Geocoder {
         return null;
     }
 
+    /**
+     * Register callback for the cache cell of the coordinates. Returns a callback completing all requests for the cell
+     * if the caller has to send the request, or null if a request for the same cell is already in progress.
+     */
+    private ReverseGeocoderCallback addPendingRequest(
+            double latitude, double longitude, ReverseGeocoderCallback callback) {
+
+        long key = cache != null ? cache.getKey(latitude, longitude) : GeocoderCache.getExactKey(latitude, longitude);
+        boolean[] created = new boolean[1];
+        pendingRequests.compute(key, (k, callbacks) -> {
+            if (callbacks == null) {
+                callbacks = new ArrayList<>();
+                created[0] = true;
+            }
+            callbacks.add(callback);
+            return callbacks;
+        });
+        if (!created[0]) {
+            return null;
+        }
+
+        return new ReverseGeocoderCallback() {
+            @Override
+            public void onSuccess(String address) {
+                for (ReverseGeocoderCallback pendingCallback : pendingRequests.remove(key)) {
+                    try {
+                        pendingCallback.onSuccess(address);
+                    } catch (RuntimeException error) {
+                        LOGGER.warn("Geocoder callback error", error);
+                    }
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+                for (ReverseGeocoderCallback pendingCallback : pendingRequests.remove(key)) {
+                    try {
+                        pendingCallback.onFailure(e);
+                    } catch (RuntimeException error) {
+                        LOGGER.warn("Geocoder callback error", error);
+                    }
+                }
+            }
+        };
+    }
+
     @Override
     public String getAddress(
             final double latitude, final double longitude, final ReverseGeocoderCallback callback) {
 
         if (cache != null) {
-            String cachedAddress = cache.get(new AbstractMap.SimpleImmutableEntry<>(latitude, longitude));
+            String cachedAddress = cache.get(latitude, longitude);
             if (cachedAddress != null) {
                 if (callback != null) {
                     callback.onSuccess(cachedAddress);
@@ -98,17 +139,25 @@ public abstract class JsonGeocoder implements Geocoder {
         Invocation.Builder request = Context.getClient().target(String.format(url, latitude, longitude)).request();
 
         if (callback != null) {
-            request.async().get(new InvocationCallback<JsonObject>() {
-                @Override
-                public void completed(JsonObject json) {
-                    handleResponse(latitude, longitude, json, callback);
-                }
-
-                @Override
-                public void failed(Throwable throwable) {
-                    callback.onFailure(throwable);
-                }
-            });
+            ReverseGeocoderCallback sharedCallback = addPendingRequest(latitude, longitude, callback);
+            if (sharedCallback == null) {
+                return null;
+            }
+            try {
+                request.async().get(new InvocationCallback<JsonObject>() {
+                    @Override
+                    public void completed(JsonObject json) {
+                        handleResponse(latitude, longitude, json, sharedCallback);
+                    }
+
+                    @Override
+                    public void failed(Throwable throwable) {
+                        sharedCallback.onFailure(throwable);
+                    }
+                });
+            } catch (RuntimeException e) {
+                sharedCallback.onFailure(e);
+            }
         } else {
             try {
                 return handleResponse(latitude, longitude, request.get(JsonObject.class), null);
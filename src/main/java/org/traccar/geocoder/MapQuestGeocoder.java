@@ -29,8 +29,8 @@ public class MapQuestGeocoder extends JsonGeocoder {
         return url;
     }
 
-    public MapQuestGeocoder(String url, String key, int cacheSize, AddressFormat addressFormat) {
-        super(formatUrl(url, key), cacheSize, addressFormat);
+    public MapQuestGeocoder(String url, String key, GeocoderCache cache, AddressFormat addressFormat) {
+        super(formatUrl(url, key), cache, addressFormat);
     }
 
     @Override
@@ -33,8 +33,9 @@ public class NominatimGeocoder extends JsonGeocoder {
         return url;
     }
 
-    public NominatimGeocoder(String url, String key, String language, int cacheSize, AddressFormat addressFormat) {
-        super(formatUrl(url, key, language), cacheSize, addressFormat);
+    public NominatimGeocoder(
+            String url, String key, String language, GeocoderCache cache, AddressFormat addressFormat) {
+        super(formatUrl(url, key, language), cache, addressFormat);
     }
 
     @Override
@@ -29,8 +29,8 @@ public class OpenCageGeocoder extends JsonGeocoder {
         return url;
     }
 
-    public OpenCageGeocoder(String url, String key, int cacheSize, AddressFormat addressFormat) {
-        super(formatUrl(url, key), cacheSize, addressFormat);
+    public OpenCageGeocoder(String url, String key, GeocoderCache cache, AddressFormat addressFormat) {
+        super(formatUrl(url, key), cache, addressFormat);
     }
 
     @Override
@@ -24,8 +24,8 @@ public class PositionStackGeocoder extends JsonGeocoder {
         return "http://api.positionstack.com/v1/reverse?access_key=" + key + "&query=%f,%f";
     }
 
-    public PositionStackGeocoder(String key, int cacheSize, AddressFormat addressFormat) {
-        super(formatUrl(key), cacheSize, addressFormat);
+    public PositionStackGeocoder(String key, GeocoderCache cache, AddressFormat addressFormat) {
+        super(formatUrl(key), cache, addressFormat);
     }
 
     @Override
@@ -28,8 +28,8 @@ public class TomTomGeocoder extends JsonGeocoder {
         return url;
     }
 
-    public TomTomGeocoder(String url, String key, int cacheSize, AddressFormat addressFormat) {
-        super(formatUrl(url, key), cacheSize, addressFormat);
+    public TomTomGeocoder(String url, String key, GeocoderCache cache, AddressFormat addressFormat) {
+        super(formatUrl(url, key), cache, addressFormat);
     }
 
     @Override
@@ -1,5 +1,5 @@
 /*
- * Copyright 2016 Anton Tananaev (anton@traccar.org)
+ * Copyright 2016 - 2020 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -19,8 +19,72 @@ import java.text.ParseException;
 
 public abstract class GeofenceGeometry {
 
+    private static final double EARTH_RADIUS = 6378137;
+    private static final double BOUNDS_EPSILON = 1e-6;
+
+    private double minLatitude = Double.NEGATIVE_INFINITY;
+    private double maxLatitude = Double.POSITIVE_INFINITY;
+    private double minLongitude = Double.NEGATIVE_INFINITY;
+    private double maxLongitude = Double.POSITIVE_INFINITY;
+
     public abstract boolean containsPoint(double latitude, double longitude);
 
+    public double getMinLatitude() {
+        return minLatitude;
+    }
+
+    public double getMaxLatitude() {
+        return maxLatitude;
+    }
+
+    public double getMinLongitude() {
+        return minLongitude;
+    }
+
+    public double getMaxLongitude() {
+        return maxLongitude;
+    }
+
+    /**
+     * Quick rejection test. A point outside of the bounding box is never contained in the geometry, but a point inside
+     * of it still has to be checked with {@link #containsPoint(double, double)}.
+     */
+    public boolean boundsContain(double latitude, double longitude) {
+        return latitude >= minLatitude && latitude <= maxLatitude
+                && longitude >= minLongitude && longitude <= maxLongitude;
+    }
+
+    protected void resetBounds() {
+        minLatitude = Double.NEGATIVE_INFINITY;
+        maxLatitude = Double.POSITIVE_INFINITY;
+        minLongitude = Double.NEGATIVE_INFINITY;
+        maxLongitude = Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Set bounding box expanded by the given margin in meters. If the expanded box reaches a pole or crosses the
+     * antimeridian, longitude is left unbounded.
+     */
+    protected void setBounds(double minLat, double maxLat, double minLon, double maxLon, double margin) {
+        double angle = Math.max(margin, 0) / EARTH_RADIUS;
+        double latitudeDelta = Math.toDegrees(angle) + BOUNDS_EPSILON;
+        minLatitude = minLat - latitudeDelta;
+        maxLatitude = maxLat + latitudeDelta;
+        double cos = Math.cos(Math.toRadians(Math.max(Math.abs(minLatitude), Math.abs(maxLatitude))));
+        if (minLatitude <= -90 || maxLatitude >= 90 || angle >= Math.PI / 2 || Math.sin(angle) >= cos) {
+            minLongitude = Double.NEGATIVE_INFINITY;
+            maxLongitude = Double.POSITIVE_INFINITY;
+        } else {
+            double longitudeDelta = Math.toDegrees(Math.asin(Math.sin(angle) / cos)) + BOUNDS_EPSILON;
+            minLongitude = minLon - longitudeDelta;
+            maxLongitude = maxLon + longitudeDelta;
+            if (minLongitude < -180 || maxLongitude > 180) {
+                minLongitude = Double.NEGATIVE_INFINITY;
+                maxLongitude = Double.POSITIVE_INFINITY;
+            }
+        }
+    }
+
     public abstract String toWkt();
 
     public abstract void fromWkt(String wkt) throws ParseException;
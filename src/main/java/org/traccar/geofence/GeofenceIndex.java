@@ -0,0 +1,161 @@
+/*
+ * Copyright 2020 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.geofence;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Multi-level grid over geofence bounding boxes. Each geofence is stored on the finest level where its bounding box
+ * covers only a few cells, so a lookup checks a single cell per level. Unbounded geometries are kept in a separate
+ * list that is always checked. Not thread-safe, access has to be synchronized by the caller.
+ */
+public class GeofenceIndex {
+
+    private static final double[] CELL_SIZES = {0.01, 0.1, 1, 10};
+    private static final int MAX_CELLS = 4;
+
+    private final Map<Long, GeofenceGeometry> geometries = new HashMap<>();
+    private final Map<Long, Set<Long>> cells = new HashMap<>();
+    private final Set<Long> unbounded = new HashSet<>();
+
+    private static long cellKey(int level, long latitudeIndex, long longitudeIndex) {
+        return (long) level << 48 | latitudeIndex << 24 | longitudeIndex;
+    }
+
+    private static long latitudeIndex(int level, double latitude) {
+        return (long) Math.floor((Math.max(-90, Math.min(latitude, 90)) + 90) / CELL_SIZES[level]);
+    }
+
+    private static long longitudeIndex(int level, double longitude) {
+        return (long) Math.floor((Math.max(-180, Math.min(longitude, 180)) + 180) / CELL_SIZES[level]);
+    }
+
+    private static List<Long> getCells(GeofenceGeometry geometry) {
+        if (Double.isInfinite(geometry.getMinLatitude()) || Double.isInfinite(geometry.getMaxLatitude())
+                || Double.isInfinite(geometry.getMinLongitude()) || Double.isInfinite(geometry.getMaxLongitude())
+                || !geometry.boundsContain(geometry.getMinLatitude(), geometry.getMinLongitude())) {
+            return Collections.emptyList();
+        }
+        for (int level = 0; level < CELL_SIZES.length; level++) {
+            long minLatitude = latitudeIndex(level, geometry.getMinLatitude());
+            long maxLatitude = latitudeIndex(level, geometry.getMaxLatitude());
+            long minLongitude = longitudeIndex(level, geometry.getMinLongitude());
+            long maxLongitude = longitudeIndex(level, geometry.getMaxLongitude());
+            if ((maxLatitude - minLatitude + 1) * (maxLongitude - minLongitude + 1) <= MAX_CELLS) {
+                List<Long> result = new ArrayList<>();
+                for (long i = minLatitude; i <= maxLatitude; i++) {
+                    for (long j = minLongitude; j <= maxLongitude; j++) {
+                        result.add(cellKey(level, i, j));
+                    }
+                }
+                return result;
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    public void put(long id, GeofenceGeometry geometry) {
+        remove(id);
+        if (geometry != null) {
+            geometries.put(id, geometry);
+            List<Long> geometryCells = getCells(geometry);
+            if (geometryCells.isEmpty()) {
+                unbounded.add(id);
+            } else {
+                for (long cell : geometryCells) {
+                    cells.computeIfAbsent(cell, key -> new HashSet<>()).add(id);
+                }
+            }
+        }
+    }
+
+    public void remove(long id) {
+        GeofenceGeometry geometry = geometries.remove(id);
+        if (geometry != null && !unbounded.remove(id)) {
+            for (long cell : getCells(geometry)) {
+                Set<Long> ids = cells.get(cell);
+                if (ids != null) {
+                    ids.remove(id);
+                    if (ids.isEmpty()) {
+                        cells.remove(cell);
+                    }
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        geometries.clear();
+        cells.clear();
+        unbounded.clear();
+    }
+
+    private void addContaining(
+            Collection<Long> candidates, Set<Long> filter, double latitude, double longitude, List<Long> result) {
+        for (long id : candidates) {
+            if (filter == null || filter.contains(id)) {
+                GeofenceGeometry geometry = geometries.get(id);
+                if (geometry.boundsContain(latitude, longitude) && geometry.containsPoint(latitude, longitude)) {
+                    result.add(id);
+                }
+            }
+        }
+    }
+
+    /**
+     * Find geofences containing the point. If a filter is provided, only geofences from the filter are returned, and
+     * whichever is smaller of the filter and the indexed candidates is scanned.
+     */
+    public List<Long> getContaining(double latitude, double longitude, Set<Long> filter) {
+        List<Collection<Long>> candidates = new ArrayList<>(CELL_SIZES.length + 1);
+        int count = unbounded.size();
+        candidates.add(unbounded);
+        if (latitude >= -90 && latitude <= 90 && longitude >= -180 && longitude <= 180) {
+            for (int level = 0; level < CELL_SIZES.length; level++) {
+                Set<Long> ids = cells.get(
+                        cellKey(level, latitudeIndex(level, latitude), longitudeIndex(level, longitude)));
+                if (ids != null) {
+                    candidates.add(ids);
+                    count += ids.size();
+                }
+            }
+        }
+
+        List<Long> result = new ArrayList<>();
+        if (filter != null && filter.size() < count) {
+            for (long id : filter) {
+                GeofenceGeometry geometry = geometries.get(id);
+                if (geometry != null
+                        && geometry.boundsContain(latitude, longitude) && geometry.containsPoint(latitude, longitude)) {
+                    result.add(id);
+                }
+            }
+        } else {
+            for (Collection<Long> ids : candidates) {
+                addContaining(ids, filter, latitude, longitude, result);
+            }
+        }
+        return result;
+    }
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2016 Anton Tananaev (anton@traccar.org)
+ * Copyright 2016 - 2020 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -27,13 +27,21 @@ public class GeofencePolygon extends GeofenceGeometry {
         fromWkt(wkt);
     }
 
+    private static final int BUCKET_THRESHOLD = 32;
+
     private ArrayList<Coordinate> coordinates;
 
+    private double[] latitudes;
+    private double[] longitudes;
     private double[] constant;
     private double[] multiple;
 
     private boolean needNormalize = false;
 
+    private double bucketMin;
+    private double bucketScale;
+    private int[][] buckets;
+
     private void precalc() {
         if (coordinates == null) {
             return;
@@ -43,16 +51,6 @@ public class GeofencePolygon extends GeofenceGeometry {
         int i;
         int j = polyCorners - 1;
 
-        if (constant != null) {
-            constant = null;
-        }
-        if (multiple != null) {
-            multiple = null;
-        }
-
-        constant = new double[polyCorners];
-        multiple = new double[polyCorners];
-
         boolean hasNegative = false;
         boolean hasPositive = false;
         for (i = 0; i < polyCorners; i++) {
@@ -64,22 +62,85 @@ public class GeofencePolygon extends GeofenceGeometry {
         }
         needNormalize = hasPositive && hasNegative;
 
+        latitudes = new double[polyCorners];
+        longitudes = new double[polyCorners];
+        for (i = 0; i < polyCorners; i++) {
+            latitudes[i] = coordinates.get(i).getLat();
+            longitudes[i] = normalizeLon(coordinates.get(i).getLon());
+        }
+
+        constant = new double[polyCorners];
+        multiple = new double[polyCorners];
+
         for (i = 0; i < polyCorners; j = i++) {
-            if (normalizeLon(coordinates.get(j).getLon()) == normalizeLon(coordinates.get(i).getLon())) {
-                constant[i] = coordinates.get(i).getLat();
+            if (longitudes[j] == longitudes[i]) {
+                constant[i] = latitudes[i];
                 multiple[i] = 0;
             } else {
-                constant[i] = coordinates.get(i).getLat()
-                        - (normalizeLon(coordinates.get(i).getLon()) * coordinates.get(j).getLat())
-                        / (normalizeLon(coordinates.get(j).getLon()) - normalizeLon(coordinates.get(i).getLon()))
-                        + (normalizeLon(coordinates.get(i).getLon()) * coordinates.get(i).getLat())
-                        / (normalizeLon(coordinates.get(j).getLon()) - normalizeLon(coordinates.get(i).getLon()));
-                multiple[i] = (coordinates.get(j).getLat() - coordinates.get(i).getLat())
-                        / (normalizeLon(coordinates.get(j).getLon()) - normalizeLon(coordinates.get(i).getLon()));
+                constant[i] = latitudes[i]
+                        - (longitudes[i] * latitudes[j]) / (longitudes[j] - longitudes[i])
+                        + (longitudes[i] * latitudes[i]) / (longitudes[j] - longitudes[i]);
+                multiple[i] = (latitudes[j] - latitudes[i]) / (longitudes[j] - longitudes[i]);
+            }
+        }
+
+        double minLat = Double.POSITIVE_INFINITY;
+        double maxLat = Double.NEGATIVE_INFINITY;
+        double minLon = Double.POSITIVE_INFINITY;
+        double maxLon = Double.NEGATIVE_INFINITY;
+        for (i = 0; i < polyCorners; i++) {
+            minLat = Math.min(minLat, latitudes[i]);
+            maxLat = Math.max(maxLat, latitudes[i]);
+            minLon = Math.min(minLon, longitudes[i]);
+            maxLon = Math.max(maxLon, longitudes[i]);
+        }
+        if (needNormalize) {
+            setBounds(minLat, maxLat, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, 0);
+        } else {
+            setBounds(minLat, maxLat, minLon, maxLon, 0);
+        }
+
+        buckets = null;
+        if (polyCorners > BUCKET_THRESHOLD && maxLon > minLon) {
+            precalcBuckets(minLon, maxLon);
+        }
+    }
+
+    /**
+     * Group edges into longitude bands, so that the ray cast only visits edges that can cross the point longitude.
+     */
+    private void precalcBuckets(double minLon, double maxLon) {
+        int polyCorners = longitudes.length;
+        int bucketCount = (int) Math.sqrt(polyCorners) * 2;
+        bucketMin = minLon;
+        bucketScale = bucketCount / (maxLon - minLon);
+
+        int[] sizes = new int[bucketCount];
+        for (int i = 0, j = polyCorners - 1; i < polyCorners; j = i++) {
+            int last = bucketIndex(Math.max(longitudes[i], longitudes[j]), bucketCount);
+            for (int k = bucketIndex(Math.min(longitudes[i], longitudes[j]), bucketCount); k <= last; k++) {
+                sizes[k] += 1;
+            }
+        }
+
+        buckets = new int[bucketCount][];
+        for (int k = 0; k < bucketCount; k++) {
+            buckets[k] = new int[sizes[k]];
+            sizes[k] = 0;
+        }
+        for (int i = 0, j = polyCorners - 1; i < polyCorners; j = i++) {
+            int last = bucketIndex(Math.max(longitudes[i], longitudes[j]), bucketCount);
+            for (int k = bucketIndex(Math.min(longitudes[i], longitudes[j]), bucketCount); k <= last; k++) {
+                buckets[k][sizes[k]++] = i;
             }
         }
     }
 
+    private int bucketIndex(double longitude, int bucketCount) {
+        int index = (int) ((longitude - bucketMin) * bucketScale);
+        return Math.max(0, Math.min(index, bucketCount - 1));
+    }
+
     private double normalizeLon(double lon) {
         if (needNormalize && lon < -90) {
             return lon + 360;
@@ -87,21 +148,28 @@ public class GeofencePolygon extends GeofenceGeometry {
         return lon;
     }
 
+    private boolean crossesEdge(int i, double latitude, double longitudeNorm) {
+        int j = i > 0 ? i - 1 : longitudes.length - 1;
+        return (longitudes[i] < longitudeNorm && longitudes[j] >= longitudeNorm
+                || longitudes[j] < longitudeNorm && longitudes[i] >= longitudeNorm)
+                && longitudeNorm * multiple[i] + constant[i] < latitude;
+    }
+
     @Override
     public boolean containsPoint(double latitude, double longitude) {
 
-        int polyCorners = coordinates.size();
-        int i;
-        int j = polyCorners - 1;
         double longitudeNorm = normalizeLon(longitude);
         boolean oddNodes = false;
 
-        for (i = 0; i < polyCorners; j = i++) {
-            if (normalizeLon(coordinates.get(i).getLon()) < longitudeNorm
-                    && normalizeLon(coordinates.get(j).getLon()) >= longitudeNorm
-                    || normalizeLon(coordinates.get(j).getLon()) < longitudeNorm
-                    && normalizeLon(coordinates.get(i).getLon()) >= longitudeNorm) {
-                oddNodes ^= longitudeNorm * multiple[i] + constant[i] < latitude;
+        if (buckets != null) {
+            if (longitudeNorm >= bucketMin) {
+                for (int i : buckets[bucketIndex(longitudeNorm, buckets.length)]) {
+                    oddNodes ^= crossesEdge(i, latitude, longitudeNorm);
+                }
+            }
+        } else {
+            for (int i = 0; i < longitudes.length; i++) {
+                oddNodes ^= crossesEdge(i, latitude, longitudeNorm);
             }
         }
         return oddNodes;
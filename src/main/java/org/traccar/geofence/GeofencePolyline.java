@@ -1,5 +1,5 @@
 /*
- * Copyright 2016 Anton Tananaev (anton@traccar.org)
+ * Copyright 2016 - 2020 Anton Tananaev (anton@traccar.org)
  * Copyright 2016 Andrey Kunitsyn (andrey@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
@@ -23,6 +23,8 @@ import org.traccar.helper.DistanceCalculator;
 
 public class GeofencePolyline extends GeofenceGeometry {
 
+    private static final double MAX_BOUNDED_SEGMENT = 100000;
+
     private ArrayList<Coordinate> coordinates;
     private double distance;
 
@@ -32,6 +34,39 @@ public class GeofencePolyline extends GeofenceGeometry {
     public GeofencePolyline(String wkt, double distance) throws ParseException {
         fromWkt(wkt);
         this.distance = distance;
+        updateBounds();
+    }
+
+    /**
+     * Distance to a segment is not measured along a straight line in latitude and longitude, so the margin is widened
+     * in proportion to the segment length, and polylines with very long segments are left unbounded.
+     */
+    private void updateBounds() {
+        if (coordinates == null) {
+            return;
+        }
+        double minLat = Double.POSITIVE_INFINITY;
+        double maxLat = Double.NEGATIVE_INFINITY;
+        double minLon = Double.POSITIVE_INFINITY;
+        double maxLon = Double.NEGATIVE_INFINITY;
+        double maxSegment = 0;
+        for (int i = 0; i < coordinates.size(); i++) {
+            Coordinate coordinate = coordinates.get(i);
+            minLat = Math.min(minLat, coordinate.getLat());
+            maxLat = Math.max(maxLat, coordinate.getLat());
+            minLon = Math.min(minLon, coordinate.getLon());
+            maxLon = Math.max(maxLon, coordinate.getLon());
+            if (i > 0) {
+                Coordinate previous = coordinates.get(i - 1);
+                maxSegment = Math.max(maxSegment, DistanceCalculator.distance(
+                        previous.getLat(), previous.getLon(), coordinate.getLat(), coordinate.getLon()));
+            }
+        }
+        if (maxSegment > MAX_BOUNDED_SEGMENT) {
+            resetBounds();
+        } else {
+            setBounds(minLat, maxLat, minLon, maxLon, distance + maxSegment * 0.01);
+        }
     }
 
     @Override
@@ -97,11 +132,12 @@ public class GeofencePolyline extends GeofenceGeometry {
             }
             coordinates.add(coordinate);
         }
-
+        updateBounds();
     }
 
     public void setDistance(double distance) {
         this.distance = distance;
+        updateBounds();
     }
 
 }
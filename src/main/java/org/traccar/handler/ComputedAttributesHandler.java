@@ -1,5 +1,5 @@
 /*
- * Copyright 2017 - 2019 Anton Tananaev (anton@traccar.org)
+ * Copyright 2017 - 2020 Anton Tananaev (anton@traccar.org)
  * Copyright 2017 Andrey Kunitsyn (andrey@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
@@ -18,17 +18,23 @@ package org.traccar.handler;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import io.netty.channel.ChannelHandler;
+import org.apache.commons.jexl2.Expression;
+import org.apache.commons.jexl2.JexlContext;
 import org.apache.commons.jexl2.JexlEngine;
 import org.apache.commons.jexl2.JexlException;
-import org.apache.commons.jexl2.MapContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.traccar.BaseDataHandler;
@@ -45,6 +51,54 @@ public class ComputedAttributesHandler extends BaseDataHandler {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ComputedAttributesHandler.class);
 
+    private static final class Accessor {
+
+        private final Method method;
+        private final String name;
+
+        private Accessor(Method method) {
+            this.method = method;
+            if (method.getReturnType().equals(Map.class)) {
+                name = null;
+            } else {
+                name = Character.toLowerCase(method.getName().charAt(3)) + method.getName().substring(4);
+            }
+        }
+
+    }
+
+    private static final Accessor[] ACCESSORS;
+    private static final Map<String, Integer> ACCESSOR_INDEXES = new HashMap<>();
+
+    static {
+        // same iteration order as used for the original eager context, so that conflicting names resolve identically
+        Set<Method> methods = new HashSet<>(Arrays.asList(Position.class.getMethods()));
+        methods.removeAll(Arrays.asList(Object.class.getMethods()));
+        List<Accessor> accessors = new ArrayList<>();
+        for (Method method : methods) {
+            if (method.getName().startsWith("get") && method.getParameterTypes().length == 0) {
+                Accessor accessor = new Accessor(method);
+                if (accessor.name != null) {
+                    ACCESSOR_INDEXES.put(accessor.name, accessors.size());
+                }
+                accessors.add(accessor);
+            }
+        }
+        ACCESSORS = accessors.toArray(new Accessor[0]);
+    }
+
+    private static final class CompiledExpression {
+
+        private final String source;
+        private final Expression expression;
+
+        private CompiledExpression(String source, Expression expression) {
+            this.source = source;
+            this.expression = expression;
+        }
+
+    }
+
     private final IdentityManager identityManager;
     private final AttributesManager attributesManager;
 
@@ -52,6 +106,8 @@ public class ComputedAttributesHandler extends BaseDataHandler {
 
     private final boolean includeDeviceAttributes;
 
+    private final Map<Long, CompiledExpression> expressions = new ConcurrentHashMap<>();
+
     public ComputedAttributesHandler(
             Config config, IdentityManager identityManager, AttributesManager attributesManager) {
         this.identityManager = identityManager;
@@ -62,36 +118,92 @@ public class ComputedAttributesHandler extends BaseDataHandler {
         includeDeviceAttributes = config.getBoolean(Keys.PROCESSING_COMPUTED_ATTRIBUTES_DEVICE_ATTRIBUTES);
     }
 
-    private MapContext prepareContext(Position position) {
-        MapContext result = new MapContext();
-        if (includeDeviceAttributes) {
-            Device device = identityManager.getById(position.getDeviceId());
-            if (device != null) {
-                for (Object key : device.getAttributes().keySet()) {
-                    result.set((String) key, device.getAttributes().get(key));
+    /**
+     * Variables are resolved only when an expression references them. Assignments are kept in the context and never
+     * modify the position.
+     */
+    private final class PositionContext implements JexlContext {
+
+        private final Position position;
+        private final Map<String, Object> variables = new HashMap<>();
+        private Map<String, Object> deviceAttributes;
+
+        private PositionContext(Position position) {
+            this.position = position;
+        }
+
+        private Object invoke(Method method) {
+            try {
+                return method.invoke(position);
+            } catch (IllegalAccessException | InvocationTargetException error) {
+                LOGGER.warn("Attribute reflection error", error);
+                return null;
+            }
+        }
+
+        private Map<String, Object> getDeviceAttributes() {
+            if (deviceAttributes == null) {
+                deviceAttributes = Collections.emptyMap();
+                if (includeDeviceAttributes) {
+                    Device device = identityManager.getById(position.getDeviceId());
+                    if (device != null) {
+                        deviceAttributes = device.getAttributes();
+                    }
                 }
             }
+            return deviceAttributes;
         }
-        Set<Method> methods = new HashSet<>(Arrays.asList(position.getClass().getMethods()));
-        methods.removeAll(Arrays.asList(Object.class.getMethods()));
-        for (Method method : methods) {
-            if (method.getName().startsWith("get") && method.getParameterTypes().length == 0) {
-                String name = Character.toLowerCase(method.getName().charAt(3)) + method.getName().substring(4);
 
-                try {
-                    if (!method.getReturnType().equals(Map.class)) {
-                        result.set(name, method.invoke(position));
-                    } else {
-                        for (Object key : ((Map) method.invoke(position)).keySet()) {
-                            result.set((String) key, ((Map) method.invoke(position)).get(key));
-                        }
+        private Map<?, ?> findAttributes(String name) {
+            Integer index = ACCESSOR_INDEXES.get(name);
+            for (int i = ACCESSORS.length - 1; i > (index != null ? index : -1); i--) {
+                if (ACCESSORS[i].name == null) {
+                    Map<?, ?> attributes = (Map<?, ?>) invoke(ACCESSORS[i].method);
+                    if (attributes != null && attributes.containsKey(name)) {
+                        return attributes;
                     }
-                } catch (IllegalAccessException | InvocationTargetException error) {
-                    LOGGER.warn("Attribute reflection error", error);
                 }
             }
+            return null;
+        }
+
+        @Override
+        public Object get(String name) {
+            if (variables.containsKey(name)) {
+                return variables.get(name);
+            }
+            Map<?, ?> attributes = findAttributes(name);
+            if (attributes != null) {
+                return attributes.get(name);
+            }
+            Integer index = ACCESSOR_INDEXES.get(name);
+            if (index != null) {
+                return invoke(ACCESSORS[index].method);
+            }
+            return getDeviceAttributes().get(name);
+        }
+
+        @Override
+        public void set(String name, Object value) {
+            variables.put(name, value);
+        }
+
+        @Override
+        public boolean has(String name) {
+            return variables.containsKey(name) || ACCESSOR_INDEXES.containsKey(name)
+                    || findAttributes(name) != null || getDeviceAttributes().containsKey(name);
+        }
+
+    }
+
+    private Expression getExpression(Attribute attribute) {
+        CompiledExpression compiled = expressions.get(attribute.getId());
+        if (compiled == null || !Objects.equals(compiled.source, attribute.getExpression())) {
+            compiled = new CompiledExpression(
+                    attribute.getExpression(), engine.createExpression(attribute.getExpression()));
+            expressions.put(attribute.getId(), compiled);
         }
-        return result;
+        return compiled.expression;
     }
 
     /**
@@ -99,7 +211,7 @@ public class ComputedAttributesHandler extends BaseDataHandler {
      */
     @Deprecated
     public Object computeAttribute(Attribute attribute, Position position) throws JexlException {
-        return engine.createExpression(attribute.getExpression()).evaluate(prepareContext(position));
+        return getExpression(attribute).evaluate(new PositionContext(position));
     }
 
     @Override
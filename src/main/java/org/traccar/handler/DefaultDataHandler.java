@@ -16,10 +16,12 @@
 package org.traccar.handler;
 
 import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.traccar.BaseDataHandler;
 import org.traccar.database.DataManager;
+import org.traccar.database.PositionWriter;
 import org.traccar.model.Position;
 
 @ChannelHandler.Sharable
@@ -28,9 +30,20 @@ public class DefaultDataHandler extends BaseDataHandler {
     private static final Logger LOGGER = LoggerFactory.getLogger(DefaultDataHandler.class);
 
     private final DataManager dataManager;
+    private final PositionWriter positionWriter;
 
-    public DefaultDataHandler(DataManager dataManager) {
+    public DefaultDataHandler(DataManager dataManager, PositionWriter positionWriter) {
         this.dataManager = dataManager;
+        this.positionWriter = positionWriter;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg instanceof Position && positionWriter != null) {
+            positionWriter.write((Position) msg, ctx::fireChannelRead);
+        } else {
+            super.channelRead(ctx, msg);
+        }
     }
 
     @Override
@@ -1,5 +1,5 @@
 /*
- * Copyright 2012 - 2019 Anton Tananaev (anton@traccar.org)
+ * Copyright 2012 - 2020 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -18,36 +18,66 @@ package org.traccar.handler;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.traccar.Context;
+import org.traccar.GlobalTimer;
 import org.traccar.config.Config;
 import org.traccar.config.Keys;
+import org.traccar.database.DataManager;
+import org.traccar.database.DeviceManager;
 import org.traccar.database.IdentityManager;
 import org.traccar.database.StatisticsManager;
 import org.traccar.geocoder.Geocoder;
+import org.traccar.helper.PositionUtil;
 import org.traccar.model.Position;
 
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 @ChannelHandler.Sharable
 public class GeocoderHandler extends ChannelInboundHandlerAdapter {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(GeocoderHandler.class);
 
+    private static final long BACKFILL_RETRY_DELAY = 1000;
+    private static final int BACKFILL_RETRY_COUNT = 10;
+
     private final Geocoder geocoder;
     private final IdentityManager identityManager;
     private final StatisticsManager statisticsManager;
+    private final DataManager dataManager;
     private final boolean ignorePositions;
     private final boolean processInvalidPositions;
     private final int geocoderReuseDistance;
+    private final int concurrency;
+    private final int queueSize;
+    private final long timeout;
+    private final boolean backfill;
+
+    // guarded by this
+    private final Queue<GeocoderRequest> waitingRequests = new ArrayDeque<>();
+    private int activeRequests;
 
     public GeocoderHandler(
-            Config config, Geocoder geocoder, IdentityManager identityManager, StatisticsManager statisticsManager) {
+            Config config, Geocoder geocoder, IdentityManager identityManager, StatisticsManager statisticsManager,
+            DataManager dataManager) {
         this.geocoder = geocoder;
         this.identityManager = identityManager;
         this.statisticsManager = statisticsManager;
+        this.dataManager = dataManager;
         ignorePositions = Context.getConfig().getBoolean(Keys.GEOCODER_IGNORE_POSITIONS);
         processInvalidPositions = config.getBoolean(Keys.GEOCODER_PROCESS_INVALID_POSITIONS);
         geocoderReuseDistance = config.getInteger(Keys.GEOCODER_REUSE_DISTANCE, 0);
+        concurrency = config.getInteger(Keys.GEOCODER_CONCURRENCY, 32);
+        queueSize = config.getInteger(Keys.GEOCODER_QUEUE_SIZE, 1000);
+        timeout = config.getLong(Keys.GEOCODER_TIMEOUT);
+        backfill = config.getBoolean(Keys.GEOCODER_BACKFILL);
     }
 
     @Override
@@ -65,24 +95,13 @@ public class GeocoderHandler extends ChannelInboundHandlerAdapter {
                     }
                 }
 
-                if (statisticsManager != null) {
-                    statisticsManager.registerGeocoderRequest();
+                GeocoderRequest request = new GeocoderRequest(ctx, position);
+                if (backfill) {
+                    request.forward(null);
+                } else if (timeout > 0) {
+                    request.timeout = GlobalTimer.getTimer().newTimeout(request, timeout, TimeUnit.MILLISECONDS);
                 }
-
-                geocoder.getAddress(position.getLatitude(), position.getLongitude(),
-                        new Geocoder.ReverseGeocoderCallback() {
-                    @Override
-                    public void onSuccess(String address) {
-                        position.setAddress(address);
-                        ctx.fireChannelRead(position);
-                    }
-
-                    @Override
-                    public void onFailure(Throwable e) {
-                        LOGGER.warn("Geocoding failed", e);
-                        ctx.fireChannelRead(position);
-                    }
-                });
+                submit(request);
             } else {
                 ctx.fireChannelRead(position);
             }
@@ -91,4 +110,142 @@ public class GeocoderHandler extends ChannelInboundHandlerAdapter {
         }
     }
 
+    public synchronized int getPendingCount() {
+        return activeRequests + waitingRequests.size();
+    }
+
+    private void submit(GeocoderRequest request) {
+        boolean start = false;
+        boolean rejected = false;
+        synchronized (this) {
+            if (concurrency <= 0 || activeRequests < concurrency) {
+                activeRequests += 1;
+                start = true;
+            } else if (waitingRequests.size() < queueSize) {
+                waitingRequests.add(request);
+            } else {
+                rejected = true;
+            }
+        }
+        if (start) {
+            request.start();
+        } else if (rejected) {
+            LOGGER.debug("Geocoding queue is full");
+            request.forward(null);
+        }
+    }
+
+    private void release() {
+        GeocoderRequest next;
+        synchronized (this) {
+            do {
+                next = waitingRequests.poll();
+            } while (next != null && next.isExpired());
+            if (next == null) {
+                activeRequests -= 1;
+                return;
+            }
+        }
+        GeocoderRequest request = next;
+        request.ctx.executor().execute(request::start);
+    }
+
+    /**
+     * Store address of a position that has already been forwarded. The forwarded position is only read for its id
+     * and never modified, because other handlers may be using it at the same time. If it is still the latest position
+     * of the device, the cached latest position is replaced with a copy that has the address.
+     */
+    private void storeAddress(Position position, String address, int attempt) {
+        long positionId = position.getId();
+        if (positionId == 0) {
+            if (attempt < BACKFILL_RETRY_COUNT) {
+                GlobalTimer.getTimer().newTimeout(
+                        timeout -> storeAddress(position, address, attempt + 1),
+                        BACKFILL_RETRY_DELAY, TimeUnit.MILLISECONDS);
+            }
+            return;
+        }
+        Position update = new Position();
+        update.setId(positionId);
+        update.setAddress(address);
+        try {
+            dataManager.updatePositionAddress(update);
+        } catch (SQLException error) {
+            LOGGER.warn("Failed to update position address", error);
+        }
+        DeviceManager deviceManager = Context.getDeviceManager();
+        if (deviceManager != null) {
+            Position lastPosition = deviceManager.getLastPosition(position.getDeviceId());
+            if (lastPosition != null && lastPosition.getId() == positionId) {
+                deviceManager.replaceLatestPosition(lastPosition, PositionUtil.copyWithAddress(lastPosition, address));
+            }
+        }
+    }
+
+    private final class GeocoderRequest implements Geocoder.ReverseGeocoderCallback, TimerTask {
+
+        private final ChannelHandlerContext ctx;
+        private final Position position;
+        private final AtomicBoolean forwarded = new AtomicBoolean();
+        private volatile Timeout timeout;
+
+        private GeocoderRequest(ChannelHandlerContext ctx, Position position) {
+            this.ctx = ctx;
+            this.position = position;
+        }
+
+        private boolean isExpired() {
+            return forwarded.get() && !backfill;
+        }
+
+        private void start() {
+            if (statisticsManager != null) {
+                statisticsManager.registerGeocoderRequest();
+            }
+            try {
+                geocoder.getAddress(position.getLatitude(), position.getLongitude(), this);
+            } catch (RuntimeException e) {
+                onFailure(e);
+            }
+        }
+
+        private boolean forward(String address) {
+            if (forwarded.compareAndSet(false, true)) {
+                Timeout currentTimeout = timeout;
+                if (currentTimeout != null) {
+                    currentTimeout.cancel();
+                }
+                if (address != null) {
+                    position.setAddress(address);
+                }
+                ctx.fireChannelRead(position);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void onSuccess(String address) {
+            release();
+            if (!forward(address) && backfill && address != null && dataManager != null) {
+                storeAddress(position, address, 0);
+            }
+        }
+
+        @Override
+        public void onFailure(Throwable e) {
+            release();
+            LOGGER.warn("Geocoding failed", e);
+            forward(null);
+        }
+
+        @Override
+        public void run(Timeout timeout) {
+            if (forward(null)) {
+                LOGGER.debug("Geocoding timeout");
+            }
+        }
+
+    }
+
 }
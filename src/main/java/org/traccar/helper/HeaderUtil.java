@@ -0,0 +1,42 @@
+/*
+ * Copyright 2020 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.helper;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public final class HeaderUtil {
+
+    private HeaderUtil() {
+    }
+
+    /**
+     * Parse forwarding header configuration with one 'Name: value' pair per line. Lines without a colon are ignored.
+     */
+    public static Map<String, String> parseHeaders(String header) {
+        Map<String, String> result = new LinkedHashMap<>();
+        if (header != null && !header.isEmpty()) {
+            for (String line: header.split("\\r?\\n")) {
+                String[] values = line.split(":", 2);
+                if (values.length == 2) {
+                    result.put(values[0].trim(), values[1].trim());
+                }
+            }
+        }
+        return result;
+    }
+
+}
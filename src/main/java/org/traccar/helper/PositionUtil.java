@@ -0,0 +1,52 @@
+/*
+ * Copyright 2020 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.helper;
+
+import org.traccar.model.Position;
+
+import java.util.LinkedHashMap;
+
+public final class PositionUtil {
+
+    private PositionUtil() {
+    }
+
+    /**
+     * Copy position with the given address. Positions that have been forwarded are shared between handlers, so an
+     * address resolved later is set on a copy instead.
+     */
+    public static Position copyWithAddress(Position position, String address) {
+        Position result = new Position(position.getProtocol());
+        result.setId(position.getId());
+        result.setDeviceId(position.getDeviceId());
+        result.setServerTime(position.getServerTime());
+        result.setDeviceTime(position.getDeviceTime());
+        result.setFixTime(position.getFixTime());
+        result.setOutdated(position.getOutdated());
+        result.setValid(position.getValid());
+        result.setLatitude(position.getLatitude());
+        result.setLongitude(position.getLongitude());
+        result.setAltitude(position.getAltitude());
+        result.setSpeed(position.getSpeed());
+        result.setCourse(position.getCourse());
+        result.setAccuracy(position.getAccuracy());
+        result.setNetwork(position.getNetwork());
+        result.setAttributes(new LinkedHashMap<>(position.getAttributes()));
+        result.setAddress(address);
+        return result;
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2020 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.model;
+
+import java.util.Date;
+
+/**
+ * Aggregated positions of a device for one hour, used by summary reports instead of scanning raw positions.
+ */
+public class Rollup extends BaseModel {
+
+    private long deviceId;
+
+    public long getDeviceId() {
+        return deviceId;
+    }
+
+    public void setDeviceId(long deviceId) {
+        this.deviceId = deviceId;
+    }
+
+    private Date startTime;
+
+    public Date getStartTime() {
+        return startTime;
+    }
+
+    public void setStartTime(Date startTime) {
+        this.startTime = startTime;
+    }
+
+    private int positionCount;
+
+    public int getPositionCount() {
+        return positionCount;
+    }
+
+    public void setPositionCount(int positionCount) {
+        this.positionCount = positionCount;
+    }
+
+    private double speedSum;
+
+    public double getSpeedSum() {
+        return speedSum;
+    }
+
+    public void setSpeedSum(double speedSum) {
+        this.speedSum = speedSum;
+    }
+
+    private double maxSpeed;
+
+    public double getMaxSpeed() {
+        return maxSpeed;
+    }
+
+    public void setMaxSpeed(double maxSpeed) {
+        this.maxSpeed = maxSpeed;
+    }
+
+    private long firstPositionId;
+
+    public long getFirstPositionId() {
+        return firstPositionId;
+    }
+
+    public void setFirstPositionId(long firstPositionId) {
+        this.firstPositionId = firstPositionId;
+    }
+
+    private Date firstTime;
+
+    public Date getFirstTime() {
+        return firstTime;
+    }
+
+    public void setFirstTime(Date firstTime) {
+        this.firstTime = firstTime;
+    }
+
+    private long lastPositionId;
+
+    public long getLastPositionId() {
+        return lastPositionId;
+    }
+
+    public void setLastPositionId(long lastPositionId) {
+        this.lastPositionId = lastPositionId;
+    }
+
+    private Date lastTime;
+
+    public Date getLastTime() {
+        return lastTime;
+    }
+
+    public void setLastTime(Date lastTime) {
+        this.lastTime = lastTime;
+    }
+
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2020 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.notification;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.traccar.config.Config;
+import org.traccar.config.Keys;
+import org.traccar.helper.HeaderUtil;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Forwards JSON payloads in batches. Each request body is a JSON array of payloads. Payloads are handed through a
+ * bounded in-memory queue to a writer thread that stores them in a disk spool. They are acknowledged only after the
+ * receiving server responds with a successful status, so they survive server restarts and receiver outages. Batches
+ * rejected with a client error other than 408 or 429 are logged and dropped, because sending them again would never
+ * succeed.
+ */
+public class BatchForwarder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchForwarder.class);
+
+    private static final long MAX_RETRY_DELAY = 60000;
+    private static final int MAX_WRITE_BATCH = 1000;
+
+    private enum Result {
+        DELIVERED, RETRY, REJECTED
+    }
+
+    private final ObjectMapper objectMapper;
+    private final Client client;
+    private final String url;
+
+    private final Map<String, String> headers = new LinkedHashMap<>();
+    private MediaType mediaType = MediaType.APPLICATION_JSON_TYPE;
+
+    private final ForwardSpool spool;
+    private final BlockingQueue<byte[]> queue;
+    private final int batchSize;
+    private final long batchDelay;
+    private final long retryDelay;
+
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    public BatchForwarder(
+            Config config, String prefix, ObjectMapper objectMapper, Client client,
+            String url, String header) throws IOException {
+        this.objectMapper = objectMapper;
+        this.client = client;
+        this.url = url;
+
+        for (Map.Entry<String, String> entry : HeaderUtil.parseHeaders(header).entrySet()) {
+            if (entry.getKey().equals(HttpHeaders.CONTENT_TYPE)) {
+                mediaType = MediaType.valueOf(entry.getValue());
+            } else {
+                headers.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        spool = new ForwardSpool(
+                new File(config.getString(Keys.FORWARD_BATCH_SPOOL.withPrefix(prefix), "./data/spool/" + prefix)),
+                config.getLong(Keys.FORWARD_BATCH_SEGMENT_SIZE.withPrefix(prefix), 16 * 1024 * 1024),
+                config.getLong(Keys.FORWARD_BATCH_SPOOL_LIMIT.withPrefix(prefix), 1024 * 1024 * 1024));
+        queue = new ArrayBlockingQueue<>(
+                Math.max(config.getInteger(Keys.FORWARD_BATCH_QUEUE_SIZE.withPrefix(prefix), 10000), 1));
+        batchSize = Math.max(config.getInteger(Keys.FORWARD_BATCH_SIZE.withPrefix(prefix), 100), 1);
+        batchDelay = config.getLong(Keys.FORWARD_BATCH_DELAY.withPrefix(prefix), 1000);
+        retryDelay = Math.max(config.getLong(Keys.FORWARD_BATCH_RETRY_DELAY.withPrefix(prefix), 1000), 1);
+
+        Thread writer = new Thread(this::write, "forward-" + prefix + "-writer");
+        writer.setDaemon(true);
+        writer.start();
+
+        int threads = Math.max(config.getInteger(Keys.FORWARD_BATCH_THREADS.withPrefix(prefix), 1), 1);
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(this::run, "forward-" + prefix + "-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    public long getPending() {
+        return queue.size() + spool.getAvailable();
+    }
+
+    /**
+     * Number of payloads dropped because the receiving server rejected them.
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * Number of payloads dropped because the spool writer could not keep up or the payload could not be serialized.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Serialize payload and queue it for the spool writer thread, so the caller never waits for disk. Payload is
+     * dropped if the queue is full.
+     */
+    public void forward(Object payload) {
+        try {
+            if (!queue.offer(objectMapper.writeValueAsBytes(payload))) {
+                dropped.incrementAndGet();
+                LOGGER.warn("Forwarding queue is full, payload dropped");
+            }
+        } catch (IOException e) {
+            dropped.incrementAndGet();
+            LOGGER.warn("Forwarding serialization error", e);
+        }
+    }
+
+    private void write() {
+        List<byte[]> records = new ArrayList<>();
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                records.add(queue.take());
+                queue.drainTo(records, MAX_WRITE_BATCH - 1);
+                spool.append(records);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException | RuntimeException e) {
+                dropped.addAndGet(records.size());
+                LOGGER.warn("Forwarding spool error, dropped " + records.size() + " payloads", e);
+            } finally {
+                records.clear();
+            }
+        }
+    }
+
+    /**
+     * Client errors mean the batch will never be accepted, except for request timeout and rate limiting.
+     */
+    private static boolean isRejected(int status) {
+        return Response.Status.Family.familyOf(status) == Response.Status.Family.CLIENT_ERROR
+                && status != Response.Status.REQUEST_TIMEOUT.getStatusCode()
+                && status != Response.Status.TOO_MANY_REQUESTS.getStatusCode();
+    }
+
+    private Result send(List<byte[]> records) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write('[');
+        for (int i = 0; i < records.size(); i++) {
+            if (i > 0) {
+                body.write(',');
+            }
+            byte[] record = records.get(i);
+            body.write(record, 0, record.length);
+        }
+        body.write(']');
+
+        Invocation.Builder requestBuilder = client.target(url).request();
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            requestBuilder.header(header.getKey(), header.getValue());
+        }
+        try {
+            Response response = requestBuilder.post(Entity.entity(body.toByteArray(), mediaType));
+            response.close();
+            if (response.getStatusInfo().getFamily() == Response.Status.Family.SUCCESSFUL) {
+                return Result.DELIVERED;
+            }
+            if (isRejected(response.getStatus())) {
+                LOGGER.warn("Batch forwarding rejected with status " + response.getStatus()
+                        + ", dropping " + records.size() + " records: "
+                        + new String(body.toByteArray(), StandardCharsets.UTF_8));
+                return Result.REJECTED;
+            }
+            LOGGER.warn("Batch forwarding failed with status " + response.getStatus());
+        } catch (ProcessingException e) {
+            LOGGER.warn("Batch forwarding failed", e);
+        }
+        return Result.RETRY;
+    }
+
+    private long getRetryDelay(int attempt) {
+        return Math.min(retryDelay << Math.min(attempt, 16), MAX_RETRY_DELAY);
+    }
+
+    private void run() {
+        ForwardSpool.Batch batch = null;
+        int attempt = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                if (batch == null) {
+                    batch = spool.take(batchSize, batchDelay);
+                    attempt = 0;
+                }
+                Result result = send(batch.getRecords());
+                if (result == Result.RETRY) {
+                    Thread.sleep(getRetryDelay(attempt++));
+                } else {
+                    if (result == Result.REJECTED) {
+                        rejected.addAndGet(batch.getRecords().size());
+                    }
+                    ForwardSpool.Batch completed = batch;
+                    batch = null;
+                    spool.acknowledge(completed);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException | RuntimeException e) {
+                LOGGER.warn("Batch forwarding error", e);
+                try {
+                    Thread.sleep(getRetryDelay(attempt++));
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+}
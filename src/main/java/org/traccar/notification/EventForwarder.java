@@ -16,6 +16,8 @@
 package org.traccar.notification;
 
 import org.traccar.Context;
+import org.traccar.config.Keys;
+import org.traccar.helper.HeaderUtil;
 import org.traccar.model.Device;
 import org.traccar.model.Event;
 import org.traccar.model.Geofence;
@@ -24,6 +26,7 @@ import org.traccar.model.Position;
 
 import javax.ws.rs.client.AsyncInvoker;
 import javax.ws.rs.client.Invocation;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
@@ -32,10 +35,24 @@ public abstract class EventForwarder {
 
     private final String url;
     private final String header;
+    private final Map<String, String> headers;
+
+    private final BatchForwarder batchForwarder;
 
     public EventForwarder() {
         url = Context.getConfig().getString("event.forward.url", "http://localhost/");
         header = Context.getConfig().getString("event.forward.header");
+        headers = HeaderUtil.parseHeaders(header);
+        if (Context.getConfig().getBoolean(Keys.FORWARD_BATCH_ENABLE.withPrefix("event.forward"))) {
+            try {
+                batchForwarder = new BatchForwarder(Context.getConfig(), "event.forward",
+                        Context.getObjectMapper(), Context.getClient(), url, header);
+            } catch (IOException e) {
+                throw new RuntimeException("Event forwarding spool error", e);
+            }
+        } else {
+            batchForwarder = null;
+        }
     }
 
     private static final String KEY_POSITION = "position";
@@ -47,13 +64,15 @@ public abstract class EventForwarder {
 
     public final void forwardEvent(Event event, Position position, Set<Long> users) {
 
+        if (batchForwarder != null) {
+            batchForwarder.forward(preparePayload(event, position, users));
+            return;
+        }
+
         Invocation.Builder requestBuilder = Context.getClient().target(url).request();
 
-        if (header != null && !header.isEmpty()) {
-            for (String line: header.split("\\r?\\n")) {
-                String[] values = line.split(":", 2);
-                requestBuilder.header(values[0].trim(), values[1].trim());
-            }
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+            requestBuilder.header(entry.getKey(), entry.getValue());
         }
 
         executeRequest(event, position, users, requestBuilder.async());
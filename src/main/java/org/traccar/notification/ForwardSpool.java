@@ -0,0 +1,355 @@
+/*
+ * Copyright 2020 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.notification;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of serialized records split into segment files. Records are read in the order they were appended
+ * and a segment file is deleted once all its records are acknowledged. Segments left over from a previous run are
+ * read again from the beginning, so delivery is at least once. When the spool grows over its size limit, the oldest
+ * segments are deleted with their undelivered records.
+ */
+public class ForwardSpool {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ForwardSpool.class);
+
+    private static final String EXTENSION = ".log";
+
+    private static final class Segment {
+
+        private final long id;
+        private final File file;
+
+        private long written;
+        private long size;
+        private long read;
+        private long acknowledged;
+        private boolean sealed;
+
+        private Segment(long id, File file) {
+            this.id = id;
+            this.file = file;
+        }
+
+    }
+
+    /**
+     * Records taken from the spool that have to be acknowledged once delivered.
+     */
+    public static final class Batch {
+
+        private final List<byte[]> records = new ArrayList<>();
+        private final Map<Long, Integer> segments = new HashMap<>();
+
+        public List<byte[]> getRecords() {
+            return records;
+        }
+
+    }
+
+    private final File directory;
+    private final long segmentSize;
+    private final long sizeLimit;
+
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+
+    private Segment writeSegment;
+    private DataOutputStream writer;
+    private long writeSize;
+
+    private Segment readSegment;
+    private DataInputStream reader;
+
+    private long available;
+    private long totalSize;
+
+    public ForwardSpool(File directory, long segmentSize, long sizeLimit) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.sizeLimit = sizeLimit;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Failed to create spool directory " + directory);
+        }
+        recover();
+    }
+
+    private static String formatName(long id) {
+        return String.format("%020d", id) + EXTENSION;
+    }
+
+    private static long checksum(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return crc.getValue();
+    }
+
+    private static byte[] readRecord(DataInputStream input, long maxLength) throws IOException {
+        int length = input.readInt();
+        int crc = input.readInt();
+        if (length < 0 || length > maxLength) {
+            throw new IOException("Invalid record length");
+        }
+        byte[] data = new byte[length];
+        input.readFully(data);
+        if ((int) checksum(data) != crc) {
+            throw new IOException("Invalid record checksum");
+        }
+        return data;
+    }
+
+    /**
+     * Count valid records of existing segments and cut off records that were only partially written before a crash.
+     */
+    private void recover() throws IOException {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(EXTENSION));
+        long lastId = 0;
+        if (files != null) {
+            for (File file : files) {
+                long id;
+                try {
+                    id = Long.parseLong(file.getName().substring(0, file.getName().length() - EXTENSION.length()));
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                Segment segment = new Segment(id, file);
+                long validSize = 0;
+                try (DataInputStream input = new DataInputStream(
+                        new BufferedInputStream(new FileInputStream(file)))) {
+                    while (true) {
+                        byte[] data = readRecord(input, file.length() - validSize - 8);
+                        validSize += 8 + data.length;
+                        segment.written += 1;
+                    }
+                } catch (EOFException e) {
+                    LOGGER.debug("Spool segment end", e);
+                } catch (IOException e) {
+                    LOGGER.warn("Corrupted spool segment " + file + ", ignoring remaining records", e);
+                }
+                if (validSize < file.length()) {
+                    try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+                        output.setLength(validSize);
+                    }
+                }
+                segment.sealed = true;
+                if (segment.written == 0) {
+                    deleteFile(segment);
+                } else {
+                    segment.size = validSize;
+                    segments.put(id, segment);
+                    available += segment.written;
+                    totalSize += validSize;
+                }
+                lastId = Math.max(lastId, id);
+            }
+        }
+        if (available > 0) {
+            LOGGER.info("Replaying " + available + " spooled records from " + directory);
+        }
+        openSegment(lastId + 1);
+        trim();
+    }
+
+    private void openSegment(long id) throws IOException {
+        writeSegment = new Segment(id, new File(directory, formatName(id)));
+        writer = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(writeSegment.file, true)));
+        writeSize = 0;
+        segments.put(id, writeSegment);
+    }
+
+    private void deleteFile(Segment segment) {
+        if (!segment.file.delete()) {
+            LOGGER.warn("Failed to delete spool segment " + segment.file);
+        }
+    }
+
+    private void remove(Segment segment) throws IOException {
+        if (segment == readSegment && reader != null) {
+            reader.close();
+            reader = null;
+        }
+        if (segments.remove(segment.id) != null) {
+            totalSize -= segment.size;
+            deleteFile(segment);
+        }
+    }
+
+    private void removeIfDone(Segment segment) throws IOException {
+        if (segment.sealed && segment.acknowledged >= segment.written) {
+            remove(segment);
+        }
+    }
+
+    private void rollSegment() throws IOException {
+        writer.close();
+        writeSegment.sealed = true;
+        Segment previous = writeSegment;
+        openSegment(previous.id + 1);
+        removeIfDone(previous);
+    }
+
+    /**
+     * Delete oldest segments until the spool fits into the size limit. The segment being written is never deleted.
+     */
+    private void trim() throws IOException {
+        long dropped = 0;
+        while (sizeLimit > 0 && totalSize > sizeLimit && segments.firstEntry().getValue() != writeSegment) {
+            Segment segment = segments.firstEntry().getValue();
+            long unread = segment.written - segment.read;
+            available -= unread;
+            dropped += unread;
+            if (segment == readSegment) {
+                segment.read = segment.written;
+            }
+            remove(segment);
+        }
+        if (dropped > 0) {
+            LOGGER.warn("Forwarding spool " + directory + " is full, dropped " + dropped + " records");
+        }
+    }
+
+    /**
+     * Skip remaining records of the segment being read after it turned out to be corrupted.
+     */
+    private void skipReadSegment() throws IOException {
+        long skipped = readSegment.written - readSegment.read;
+        available -= skipped;
+        readSegment.read = readSegment.written;
+        readSegment.acknowledged += skipped;
+        if (readSegment == writeSegment) {
+            rollSegment();
+        }
+        if (reader != null) {
+            reader.close();
+            reader = null;
+        }
+        removeIfDone(readSegment);
+        LOGGER.warn("Corrupted spool segment " + readSegment.file + ", skipped " + skipped + " records");
+    }
+
+    /**
+     * Append record to the spool. Data is handed over to the operating system before the method returns.
+     */
+    public void append(byte[] data) throws IOException {
+        append(Collections.singletonList(data));
+    }
+
+    /**
+     * Append records to the spool with a single flush. Data is handed over to the operating system before the method
+     * returns.
+     */
+    public synchronized void append(List<byte[]> records) throws IOException {
+        for (byte[] data : records) {
+            if (writeSize >= segmentSize) {
+                rollSegment();
+            }
+            writer.writeInt(data.length);
+            writer.writeInt((int) checksum(data));
+            writer.write(data);
+            writeSize += 8 + data.length;
+            writeSegment.written += 1;
+            writeSegment.size += 8 + data.length;
+            totalSize += 8 + data.length;
+            available += 1;
+        }
+        writer.flush();
+        trim();
+        notifyAll();
+    }
+
+    public synchronized long getAvailable() {
+        return available;
+    }
+
+    /**
+     * Take up to the given number of records. Waits until at least one record is available and then until the batch
+     * is full or the delay has passed.
+     */
+    public synchronized Batch take(int size, long delay) throws InterruptedException, IOException {
+        Batch batch = new Batch();
+        while (batch.records.isEmpty()) {
+            while (available == 0) {
+                wait();
+            }
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+            while (available < size) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    break;
+                }
+                wait(remaining);
+            }
+            while (available > 0 && batch.records.size() < size) {
+                if (reader == null || readSegment.read >= readSegment.written) {
+                    if (reader != null) {
+                        reader.close();
+                        reader = null;
+                    }
+                    readSegment = (readSegment == null
+                            ? segments.firstEntry() : segments.higherEntry(readSegment.id)).getValue();
+                    reader = new DataInputStream(new BufferedInputStream(new FileInputStream(readSegment.file)));
+                }
+                byte[] data;
+                try {
+                    data = readRecord(reader, readSegment.size);
+                } catch (IOException e) {
+                    LOGGER.warn("Spool read error", e);
+                    skipReadSegment();
+                    continue;
+                }
+                batch.records.add(data);
+                batch.segments.merge(readSegment.id, 1, Integer::sum);
+                readSegment.read += 1;
+                available -= 1;
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Mark records of the batch as delivered.
+     */
+    public synchronized void acknowledge(Batch batch) throws IOException {
+        for (Map.Entry<Long, Integer> entry : batch.segments.entrySet()) {
+            Segment segment = segments.get(entry.getKey());
+            if (segment != null) {
+                segment.acknowledged += entry.getValue();
+                removeIfDone(segment);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2020 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.notification;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.traccar.config.Config;
+import org.traccar.config.Keys;
+import org.traccar.model.Event;
+import org.traccar.model.Position;
+import org.traccar.notificators.Notificator;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sends notifications of a single notificator type on a bounded pool of worker threads. Sending rate is limited by a
+ * token bucket, failed messages are retried with exponential backoff and messages that do not fit into the queue are
+ * dropped.
+ */
+public class NotificationDispatcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NotificationDispatcher.class);
+
+    private static final class RateLimiter {
+
+        private final double rate;
+        private final double burst;
+
+        private double tokens;
+        private long lastTime = System.nanoTime();
+
+        private RateLimiter(double rate, double burst) {
+            this.rate = rate;
+            this.burst = burst;
+            this.tokens = burst;
+        }
+
+        private synchronized void acquire() throws InterruptedException {
+            while (true) {
+                long time = System.nanoTime();
+                tokens = Math.min(burst, tokens + (time - lastTime) * rate / 1e9);
+                lastTime = time;
+                if (tokens >= 1) {
+                    tokens -= 1;
+                    return;
+                }
+                Thread.sleep((long) Math.ceil((1 - tokens) * 1000 / rate));
+            }
+        }
+
+    }
+
+    private final String type;
+    private final Notificator notificator;
+    private final ScheduledExecutorService retryExecutor;
+
+    private final ThreadPoolExecutor executor;
+    private final RateLimiter rateLimiter;
+    private final int retries;
+    private final long retryDelay;
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    public NotificationDispatcher(
+            Config config, String type, Notificator notificator, ScheduledExecutorService retryExecutor) {
+        this.type = type;
+        this.notificator = notificator;
+        this.retryExecutor = retryExecutor;
+
+        String prefix = "notificator." + type;
+        int threads = Math.max(config.getInteger(Keys.NOTIFICATOR_THREADS.withPrefix(prefix), 2), 1);
+        int queueSize = Math.max(config.getInteger(Keys.NOTIFICATOR_QUEUE_SIZE.withPrefix(prefix), 1000), 1);
+        AtomicInteger index = new AtomicInteger();
+        executor = new ThreadPoolExecutor(
+                threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize), runnable -> {
+                    Thread thread = new Thread(runnable, "notificator-" + type + "-" + index.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        double rate = config.getDouble(Keys.NOTIFICATOR_RATE_LIMIT.withPrefix(prefix));
+        if (rate > 0) {
+            rateLimiter = new RateLimiter(
+                    rate, Math.max(config.getDouble(Keys.NOTIFICATOR_RATE_BURST.withPrefix(prefix), rate), 1));
+        } else {
+            rateLimiter = null;
+        }
+
+        retries = config.getInteger(Keys.NOTIFICATOR_RETRIES.withPrefix(prefix), 2);
+        retryDelay = config.getLong(Keys.NOTIFICATOR_RETRY_DELAY.withPrefix(prefix), 1000);
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public long getSent() {
+        return sent.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    public long getRetried() {
+        return retried.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    public void dispatch(long userId, Event event, Position position) {
+        submit(userId, event, position, 0);
+    }
+
+    private void submit(long userId, Event event, Position position, int attempt) {
+        try {
+            executor.execute(() -> send(userId, event, position, attempt));
+        } catch (RejectedExecutionException e) {
+            dropped.increment();
+            LOGGER.warn("Notification queue is full, {} notification dropped", type);
+        }
+    }
+
+    private void send(long userId, Event event, Position position, int attempt) {
+        try {
+            if (rateLimiter != null) {
+                rateLimiter.acquire();
+            }
+            notificator.sendSync(userId, event, position);
+            sent.increment();
+        } catch (MessageException | RuntimeException error) {
+            if (attempt < retries) {
+                retried.increment();
+                retryExecutor.schedule(
+                        () -> submit(userId, event, position, attempt + 1),
+                        retryDelay << attempt, TimeUnit.MILLISECONDS);
+            } else {
+                failed.increment();
+                LOGGER.warn("Event send error", error);
+            }
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -16,10 +16,15 @@
  */
 package org.traccar.notification;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,6 +47,13 @@ public final class NotificatorManager {
     private static final Notificator NULL_NOTIFICATOR = new NotificatorNull();
 
     private final Map<String, Notificator> notificators = new HashMap<>();
+    private final List<NotificationDispatcher> dispatchers = new ArrayList<>();
+
+    private final ScheduledExecutorService retryExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "notificator-retry");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     public NotificatorManager() {
         final String[] types = Context.getConfig().getString("notificator.types", "").split(",");
@@ -75,7 +87,12 @@ public final class NotificatorManager {
             final String className = Context.getConfig()
                     .getString("notificator." + type + ".class", defaultNotificator);
             try {
-                notificators.put(type, (Notificator) Class.forName(className).newInstance());
+                Notificator notificator = (Notificator) Class.forName(className).newInstance();
+                NotificationDispatcher dispatcher = new NotificationDispatcher(
+                        Context.getConfig(), type, notificator, retryExecutor);
+                notificator.setDispatcher(dispatcher);
+                notificators.put(type, notificator);
+                dispatchers.add(dispatcher);
             } catch (ClassNotFoundException | InstantiationException | IllegalAccessException e) {
                 LOGGER.warn("Unable to load notificator class for " + type + " " + className + " " + e.getMessage());
             }
@@ -91,6 +108,10 @@ public final class NotificatorManager {
         return notificator;
     }
 
+    public Collection<NotificationDispatcher> getDispatchers() {
+        return dispatchers;
+    }
+
     public Set<Typed> getAllNotificatorTypes() {
         Set<Typed> result = new HashSet<>();
         for (String notificator : notificators.keySet()) {
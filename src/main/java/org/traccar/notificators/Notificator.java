@@ -16,24 +16,38 @@
  */
 package org.traccar.notificators;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.traccar.model.Event;
 import org.traccar.model.Position;
 import org.traccar.notification.MessageException;
+import org.traccar.notification.NotificationDispatcher;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.core.Response;
 
 public abstract class Notificator {
 
-    private static final Logger LOGGER = LoggerFactory.getLogger(Notificator.class);
+    private NotificationDispatcher dispatcher;
+
+    public void setDispatcher(NotificationDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
+    public void sendAsync(long userId, Event event, Position position) {
+        dispatcher.dispatch(userId, event, position);
+    }
 
-    public void sendAsync(final long userId, final Event event, final Position position) {
-        new Thread(() -> {
-            try {
-                sendSync(userId, event, position);
-            } catch (MessageException | InterruptedException error) {
-                LOGGER.warn("Event send error", error);
+    protected static void postJson(Invocation.Builder request, Object message) throws MessageException {
+        try {
+            Response response = request.post(Entity.json(message));
+            response.close();
+            if (response.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
+                throw new MessageException("HTTP status " + response.getStatus());
             }
-        }).start();
+        } catch (ProcessingException e) {
+            throw new MessageException(e);
+        }
     }
 
     public abstract void sendSync(long userId, Event event, Position position)
@@ -22,11 +22,9 @@ import org.traccar.Context;
 import org.traccar.model.Event;
 import org.traccar.model.Position;
 import org.traccar.model.User;
+import org.traccar.notification.MessageException;
 import org.traccar.notification.NotificationFormatter;
 
-import javax.ws.rs.client.Entity;
-import javax.ws.rs.client.InvocationCallback;
-
 public class NotificatorPushover extends Notificator {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(NotificatorPushover.class);
@@ -53,7 +51,7 @@ public class NotificatorPushover extends Notificator {
     }
 
     @Override
-    public void sendSync(long userId, Event event, Position position) {
+    public void sendSync(long userId, Event event, Position position) throws MessageException {
 
         final User user = Context.getPermissionsManager().getUser(userId);
 
@@ -79,22 +77,7 @@ public class NotificatorPushover extends Notificator {
         message.device = device;
         message.message = NotificationFormatter.formatShortMessage(userId, event, position);
 
-        Context.getClient().target(url).request()
-                .async().post(Entity.json(message), new InvocationCallback<Object>() {
-            @Override
-            public void completed(Object o) {
-            }
-
-            @Override
-            public void failed(Throwable throwable) {
-                LOGGER.warn("Pushover API error", throwable);
-            }
-        });
-    }
-
-    @Override
-    public void sendAsync(long userId, Event event, Position position) {
-        sendSync(userId, event, position);
+        postJson(Context.getClient().target(url).request(), message);
     }
 
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2016 - 2018 Anton Tananaev (anton@traccar.org)
+ * Copyright 2016 - 2020 Anton Tananaev (anton@traccar.org)
  * Copyright 2016 - 2018 Andrey Kunitsyn (andrey@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
@@ -24,8 +24,10 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.poi.ss.util.WorkbookUtil;
 import org.traccar.Context;
@@ -44,22 +46,24 @@ public final class Events {
     public static Collection<Event> getObjects(long userId, Collection<Long> deviceIds, Collection<Long> groupIds,
             Collection<String> types, Date from, Date to) throws SQLException {
         ReportUtils.checkPeriodLimit(from, to);
+        boolean all = types.isEmpty() || types.contains(Event.ALL_EVENTS);
         ArrayList<Event> result = new ArrayList<>();
-        for (long deviceId: ReportUtils.getDeviceList(deviceIds, groupIds)) {
-            Context.getPermissionsManager().checkDevice(userId, deviceId);
-            Collection<Event> events = Context.getDataManager().getEvents(deviceId, from, to);
-            boolean all = types.isEmpty() || types.contains(Event.ALL_EVENTS);
-            for (Event event : events) {
+        for (List<Event> events : ReportUtils.processDevices(userId, deviceIds, groupIds, deviceId -> {
+            List<Event> deviceEvents = new ArrayList<>();
+            for (Event event : Context.getDataManager().getEvents(deviceId, from, to)) {
                 if (all || types.contains(event.getType())) {
                     long geofenceId = event.getGeofenceId();
                     long maintenanceId = event.getMaintenanceId();
                     if ((geofenceId == 0 || Context.getGeofenceManager().checkItemPermission(userId, geofenceId))
                             && (maintenanceId == 0
                             || Context.getMaintenancesManager().checkItemPermission(userId, maintenanceId))) {
-                       result.add(event);
+                        deviceEvents.add(event);
                     }
                 }
             }
+            return deviceEvents;
+        })) {
+            result.addAll(events);
         }
         return result;
     }
@@ -68,14 +72,11 @@ public final class Events {
             long userId, Collection<Long> deviceIds, Collection<Long> groupIds,
             Collection<String> types, Date from, Date to) throws SQLException, IOException {
         ReportUtils.checkPeriodLimit(from, to);
-        ArrayList<DeviceReport> devicesEvents = new ArrayList<>();
-        ArrayList<String> sheetNames = new ArrayList<>();
-        HashMap<Long, String> geofenceNames = new HashMap<>();
-        HashMap<Long, String> maintenanceNames = new HashMap<>();
-        for (long deviceId: ReportUtils.getDeviceList(deviceIds, groupIds)) {
-            Context.getPermissionsManager().checkDevice(userId, deviceId);
+        Map<Long, String> geofenceNames = new ConcurrentHashMap<>();
+        Map<Long, String> maintenanceNames = new ConcurrentHashMap<>();
+        boolean all = types.isEmpty() || types.contains(Event.ALL_EVENTS);
+        List<DeviceReport> devicesEvents = ReportUtils.processDevices(userId, deviceIds, groupIds, deviceId -> {
             Collection<Event> events = Context.getDataManager().getEvents(deviceId, from, to);
-            boolean all = types.isEmpty() || types.contains(Event.ALL_EVENTS);
             for (Iterator<Event> iterator = events.iterator(); iterator.hasNext();) {
                 Event event = iterator.next();
                 if (all || types.contains(event.getType())) {
@@ -107,7 +108,6 @@ public final class Events {
             DeviceReport deviceEvents = new DeviceReport();
             Device device = Context.getIdentityManager().getById(deviceId);
             deviceEvents.setDeviceName(device.getName());
-            sheetNames.add(WorkbookUtil.createSafeSheetName(deviceEvents.getDeviceName()));
             if (device.getGroupId() != 0) {
                 Group group = Context.getGroupsManager().getById(device.getGroupId());
                 if (group != null) {
@@ -115,7 +115,11 @@ public final class Events {
                 }
             }
             deviceEvents.setObjects(events);
-            devicesEvents.add(deviceEvents);
+            return deviceEvents;
+        });
+        ArrayList<String> sheetNames = new ArrayList<>();
+        for (DeviceReport deviceEvents : devicesEvents) {
+            sheetNames.add(WorkbookUtil.createSafeSheetName(deviceEvents.getDeviceName()));
         }
         String templatePath = Context.getConfig().getString("report.templatesPath",
                 "templates/export/");
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2020 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.reports;
+
+import org.traccar.database.DataManager;
+import org.traccar.model.Position;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Positions of a device read lazily in consecutive time windows, so that only a single window is kept in memory
+ * while iterating over a long period.
+ */
+public class PositionCursor implements Iterable<Position> {
+
+    /**
+     * Database error while reading the next window. Iterator methods can not throw checked exceptions, so the
+     * original exception is carried as the cause.
+     */
+    public static class ReadException extends RuntimeException {
+
+        public ReadException(SQLException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized SQLException getCause() {
+            return (SQLException) super.getCause();
+        }
+
+    }
+
+    private final DataManager dataManager;
+    private final long deviceId;
+    private final Date from;
+    private final Date to;
+    private final long period;
+
+    public PositionCursor(DataManager dataManager, long deviceId, Date from, Date to, long period) {
+        this.dataManager = dataManager;
+        this.deviceId = deviceId;
+        this.from = from;
+        this.to = to;
+        this.period = period;
+    }
+
+    @Override
+    public Iterator<Position> iterator() {
+        return new Iterator<Position>() {
+
+            private long windowStart = from.getTime();
+            private boolean finished;
+            private Iterator<Position> window = Collections.emptyIterator();
+
+            private void load() {
+                long windowEnd = Math.min(windowStart + period, to.getTime());
+                finished = windowEnd >= to.getTime();
+                List<Position> positions = new ArrayList<>();
+                try {
+                    for (Position position : dataManager.getPositions(
+                            deviceId, new Date(windowStart), new Date(windowEnd))) {
+                        if (finished || position.getFixTime().getTime() < windowEnd) {
+                            positions.add(position); // positions at the end are read again with the next window
+                        }
+                    }
+                } catch (SQLException e) {
+                    throw new ReadException(e);
+                }
+                window = positions.iterator();
+                windowStart = windowEnd;
+            }
+
+            @Override
+            public boolean hasNext() {
+                while (!window.hasNext() && !finished) {
+                    load();
+                }
+                return window.hasNext();
+            }
+
+            @Override
+            public Position next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return window.next();
+            }
+
+        };
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2020 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.reports;
+
+import java.util.Date;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ReportJob {
+
+    private final long id;
+    private final long userId;
+    private final String type;
+    private final Date startTime = new Date();
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicInteger completed = new AtomicInteger();
+
+    private volatile boolean cancelled;
+    private volatile Future<?> future;
+
+    ReportJob(long id, long userId, String type) {
+        this.id = id;
+        this.userId = userId;
+        this.type = type;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getUserId() {
+        return userId;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public Date getStartTime() {
+        return startTime;
+    }
+
+    public int getTotal() {
+        return total.get();
+    }
+
+    void addTotal(int count) {
+        total.addAndGet(count);
+    }
+
+    public int getCompleted() {
+        return completed.get();
+    }
+
+    void addCompleted() {
+        completed.incrementAndGet();
+    }
+
+    public boolean getCancelled() {
+        return cancelled;
+    }
+
+    void setFuture(Future<?> future) {
+        this.future = future;
+        if (cancelled) {
+            future.cancel(true);
+        }
+    }
+
+    void cancel() {
+        cancelled = true;
+        Future<?> future = this.future;
+        if (future != null) {
+            future.cancel(true);
+        }
+    }
+
+}
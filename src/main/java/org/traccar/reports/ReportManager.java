@@ -0,0 +1,239 @@
+/*
+ * Copyright 2020 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.reports;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.traccar.config.Config;
+import org.traccar.config.Keys;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs reports with limited parallelism. Devices of a report are processed concurrently on a shared pool, background
+ * (e-mailed) reports run on a separate pool, and number of reports running for a single user and for all users is
+ * limited. Both pools have bounded queues. When the device queue is full, the report thread processes the device
+ * itself.
+ */
+public class ReportManager {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReportManager.class);
+
+    private static final int DEVICE_QUEUE_SIZE = 1000;
+
+    public interface DeviceTask<T> {
+        T execute(long deviceId) throws SQLException;
+    }
+
+    public interface ReportTask<T> {
+        T execute() throws SQLException, IOException;
+    }
+
+    private final ExecutorService deviceExecutor;
+    private final ExecutorService backgroundExecutor;
+    private final int userLimit;
+    private final int globalLimit;
+
+    private final AtomicLong jobIds = new AtomicLong();
+    private final Map<Long, ReportJob> jobs = new ConcurrentHashMap<>();
+    private final ThreadLocal<ReportJob> currentJob = new ThreadLocal<>();
+
+    public ReportManager(Config config) {
+        userLimit = config.getInteger(Keys.REPORT_USER_LIMIT, 2);
+        globalLimit = config.getInteger(Keys.REPORT_GLOBAL_LIMIT, 20);
+        int threads = Math.max(config.getInteger(Keys.REPORT_THREADS, 4), 1);
+        deviceExecutor = new ThreadPoolExecutor(
+                threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(DEVICE_QUEUE_SIZE),
+                createThreadFactory("report-device-"), new ThreadPoolExecutor.CallerRunsPolicy());
+        int backgroundThreads = Math.max(config.getInteger(Keys.REPORT_BACKGROUND_THREADS, 2), 1);
+        BlockingQueue<Runnable> backgroundQueue = globalLimit > 0
+                ? new ArrayBlockingQueue<>(globalLimit) : new LinkedBlockingQueue<>();
+        backgroundExecutor = new ThreadPoolExecutor(
+                backgroundThreads, backgroundThreads, 0, TimeUnit.MILLISECONDS, backgroundQueue,
+                createThreadFactory("report-background-"));
+    }
+
+    private static ThreadFactory createThreadFactory(String prefix) {
+        AtomicInteger index = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + index.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Register a report job, so that limits are checked before the report is started. Throws
+     * {@link ReportLimitException} when the user or all users together already have the maximum number of reports
+     * running.
+     */
+    public synchronized ReportJob createJob(long userId, String type) {
+        if (globalLimit > 0 && jobs.size() >= globalLimit) {
+            throw new ReportLimitException("Too many reports in progress");
+        }
+        if (userLimit > 0) {
+            int count = 0;
+            for (ReportJob job : jobs.values()) {
+                if (job.getUserId() == userId) {
+                    count += 1;
+                }
+            }
+            if (count >= userLimit) {
+                throw new ReportLimitException("Too many reports in progress for user");
+            }
+        }
+        ReportJob job = new ReportJob(jobIds.incrementAndGet(), userId, type);
+        jobs.put(job.getId(), job);
+        return job;
+    }
+
+    private <T> T run(ReportJob job, ReportTask<T> task) throws SQLException, IOException {
+        if (job.getCancelled()) {
+            throw new CancellationException("Report cancelled");
+        }
+        currentJob.set(job);
+        try {
+            return task.execute();
+        } finally {
+            currentJob.remove();
+        }
+    }
+
+    public <T> T execute(long userId, String type, ReportTask<T> task) throws SQLException, IOException {
+        return execute(createJob(userId, type), task);
+    }
+
+    /**
+     * Run task of a job created with {@link #createJob} on the calling thread and unregister the job afterwards.
+     */
+    public <T> T execute(ReportJob job, ReportTask<T> task) throws SQLException, IOException {
+        try {
+            return run(job, task);
+        } finally {
+            jobs.remove(job.getId());
+        }
+    }
+
+    public ReportJob submit(long userId, String type, ReportTask<?> task) {
+        ReportJob job = createJob(userId, type);
+        try {
+            job.setFuture(backgroundExecutor.submit(() -> {
+                try {
+                    run(job, task);
+                } catch (CancellationException e) {
+                    LOGGER.info("Report {} cancelled", job.getId());
+                } catch (SQLException | IOException | RuntimeException e) {
+                    LOGGER.warn("Report failed", e);
+                } finally {
+                    jobs.remove(job.getId());
+                }
+            }));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            throw new ReportLimitException("Too many background reports");
+        }
+        return job;
+    }
+
+    public Collection<ReportJob> getJobs(long userId) {
+        List<ReportJob> result = new ArrayList<>();
+        for (ReportJob job : jobs.values()) {
+            if (job.getUserId() == userId) {
+                result.add(job);
+            }
+        }
+        return result;
+    }
+
+    public ReportJob getJob(long jobId) {
+        return jobs.get(jobId);
+    }
+
+    public void cancel(long jobId) {
+        ReportJob job = jobs.get(jobId);
+        if (job != null) {
+            job.cancel();
+        }
+    }
+
+    /**
+     * Executes task for each device concurrently and returns results in the same order as device ids. When called
+     * from a report job, progress is tracked and pending devices are skipped after cancellation.
+     */
+    public <T> List<T> processDevices(Collection<Long> deviceIds, DeviceTask<T> task) throws SQLException {
+        ReportJob job = currentJob.get();
+        if (job != null) {
+            job.addTotal(deviceIds.size());
+        }
+        List<Future<T>> futures = new ArrayList<>(deviceIds.size());
+        try {
+            for (long deviceId : deviceIds) {
+                futures.add(deviceExecutor.submit(() -> {
+                    if (job != null && job.getCancelled()) {
+                        throw new CancellationException("Report cancelled");
+                    }
+                    T result = task.execute(deviceId);
+                    if (job != null) {
+                        job.addCompleted();
+                    }
+                    return result;
+                }));
+            }
+            List<T> results = new ArrayList<>(futures.size());
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Report interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            for (Future<T> future : futures) {
+                future.cancel(false); // skip remaining devices after failure
+            }
+        }
+    }
+
+}
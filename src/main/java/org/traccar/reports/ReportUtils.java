@@ -16,22 +16,22 @@
  */
 package org.traccar.reports;
 
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.velocity.tools.generic.DateTool;
 import org.apache.velocity.tools.generic.NumberTool;
 import org.jxls.area.Area;
 import org.jxls.builder.xls.XlsCommentAreaBuilder;
 import org.jxls.common.CellRef;
-import org.jxls.formula.StandardFormulaProcessor;
-import org.jxls.transform.Transformer;
 import org.jxls.transform.poi.PoiTransformer;
-import org.jxls.util.TransformerFactory;
+import org.jxls.transform.poi.PoiUtil;
+import org.jxls.transform.poi.WritableCellValue;
 import org.traccar.Context;
 import org.traccar.database.DeviceManager;
 import org.traccar.database.IdentityManager;
 import org.traccar.handler.events.MotionEventHandler;
-import org.traccar.model.DeviceState;
 import org.traccar.model.Driver;
-import org.traccar.model.Event;
 import org.traccar.model.Position;
 import org.traccar.reports.model.BaseReport;
 import org.traccar.reports.model.StopReport;
@@ -43,16 +43,22 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 import java.util.TimeZone;
 
 public final class ReportUtils {
 
+    private static final int MAX_FORMULA_STRING = 255;
+
+    private static final int ROW_ACCESS_WINDOW = 100;
+
+    private static final String OUTPUT_SHEET = "~output~";
+
     private ReportUtils() {
     }
 
@@ -88,6 +94,35 @@ public final class ReportUtils {
         return result;
     }
 
+    /**
+     * Check period limit and device permissions before a report is started.
+     */
+    public static void checkRequest(
+            long userId, Collection<Long> deviceIds, Collection<Long> groupIds, Date from, Date to) {
+        checkPeriodLimit(from, to);
+        for (long deviceId : getDeviceList(deviceIds, groupIds)) {
+            Context.getPermissionsManager().checkDevice(userId, deviceId);
+        }
+    }
+
+    public static <T> List<T> processDevices(
+            long userId, Collection<Long> deviceIds, Collection<Long> groupIds,
+            ReportManager.DeviceTask<T> task) throws SQLException {
+        Collection<Long> devices = getDeviceList(deviceIds, groupIds);
+        for (long deviceId : devices) {
+            Context.getPermissionsManager().checkDevice(userId, deviceId);
+        }
+        ReportManager reportManager = Context.getReportManager();
+        if (reportManager != null) {
+            return reportManager.processDevices(devices, task);
+        }
+        List<T> result = new ArrayList<>();
+        for (long deviceId : devices) {
+            result.add(task.execute(deviceId));
+        }
+        return result;
+    }
+
     public static double calculateDistance(Position firstPosition, Position lastPosition) {
         return calculateDistance(firstPosition, lastPosition, true);
     }
@@ -152,36 +187,70 @@ public final class ReportUtils {
         return jxlsContext;
     }
 
+    /**
+     * Hyperlinks are kept in memory by streaming workbooks until the whole document is written, so they are
+     * stored as formulas instead.
+     */
+    public static class StreamingPoiUtil extends PoiUtil {
+
+        private static String quote(String value) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+
+        @Override
+        public WritableCellValue hyperlink(String address, String title) {
+            return (cell, context) -> {
+                String value = title != null ? title : address;
+                if (address.length() <= MAX_FORMULA_STRING && value.length() <= MAX_FORMULA_STRING) {
+                    cell.setCellFormula("HYPERLINK(" + quote(address) + "," + quote(value) + ")");
+                } else {
+                    cell.setCellValue(value);
+                }
+                return cell;
+            };
+        }
+
+    }
+
     public static void processTemplateWithSheets(
             InputStream templateStream, OutputStream targetStream,
             org.jxls.common.Context jxlsContext) throws IOException {
 
-        Transformer transformer = TransformerFactory.createTransformer(templateStream, targetStream);
-        List<Area> xlsAreas = new XlsCommentAreaBuilder(transformer).build();
-        for (Area xlsArea : xlsAreas) {
-            xlsArea.applyAt(new CellRef(xlsArea.getStartCellRef().getCellName()), jxlsContext);
-            xlsArea.setFormulaProcessor(new StandardFormulaProcessor());
-            xlsArea.processFormulas();
+        PoiTransformer transformer = PoiTransformer.createSxssfTransformer(
+                WorkbookFactory.create(templateStream), ROW_ACCESS_WINDOW, true);
+        transformer.setOutputStream(targetStream);
+        jxlsContext.putVar("util", new StreamingPoiUtil());
+        jxlsContext.getConfig().setIsFormulaProcessingRequired(false); // otherwise every written cell is tracked
+        try {
+            List<Area> xlsAreas = new XlsCommentAreaBuilder(transformer).build();
+            for (Area xlsArea : xlsAreas) {
+                // template rows can't be rewritten in streaming mode, so other cells go to a temporary sheet
+                CellRef startCellRef = xlsArea.getStartCellRef();
+                xlsArea.applyAt(new CellRef(OUTPUT_SHEET, startCellRef.getRow(), startCellRef.getCol()), jxlsContext);
+            }
+            transformer.deleteSheet(xlsAreas.get(0).getStartCellRef().getSheetName());
+            Workbook workbook = transformer.getWorkbook();
+            if (workbook.getSheetIndex(OUTPUT_SHEET) >= 0) {
+                workbook.removeSheetAt(workbook.getSheetIndex(OUTPUT_SHEET));
+            }
+            workbook.setForceFormulaRecalculation(true);
+            transformer.write();
+        } finally {
+            ((SXSSFWorkbook) transformer.getWorkbook()).dispose();
         }
-        transformer.deleteSheet(xlsAreas.get(0).getStartCellRef().getSheetName());
-        transformer.write();
     }
 
-    private static TripReport calculateTrip(
-            ArrayList<Position> positions, int startIndex, int endIndex, boolean ignoreOdometer) {
-
-        Position startTrip = positions.get(startIndex);
-        Position endTrip = positions.get(endIndex);
-
-        double speedMax = 0.0;
-        double speedSum = 0.0;
-        for (int i = startIndex; i <= endIndex; i++) {
-            double speed = positions.get(i).getSpeed();
-            speedSum += speed;
-            if (speed > speedMax) {
-                speedMax = speed;
-            }
+    public static String resolveAddress(String address, double latitude, double longitude) {
+        if (address == null && Context.getGeocoder() != null
+                && Context.getConfig().getBoolean("geocoder.onRequest")) {
+            return Context.getGeocoder().getAddress(latitude, longitude, null);
         }
+        return address;
+    }
+
+    static TripReport calculateTrip(
+            Position startTrip, Position endTrip, double speedSum, double speedMax, int intervals,
+            boolean ignoreOdometer, boolean resolveAddresses) {
 
         TripReport trip = new TripReport();
 
@@ -195,9 +264,8 @@ public final class ReportUtils {
         trip.setStartLon(startTrip.getLongitude());
         trip.setStartTime(startTrip.getFixTime());
         String startAddress = startTrip.getAddress();
-        if (startAddress == null && Context.getGeocoder() != null
-                && Context.getConfig().getBoolean("geocoder.onRequest")) {
-            startAddress = Context.getGeocoder().getAddress(startTrip.getLatitude(), startTrip.getLongitude(), null);
+        if (resolveAddresses) {
+            startAddress = resolveAddress(startAddress, startTrip.getLatitude(), startTrip.getLongitude());
         }
         trip.setStartAddress(startAddress);
 
@@ -206,15 +274,14 @@ public final class ReportUtils {
         trip.setEndLon(endTrip.getLongitude());
         trip.setEndTime(endTrip.getFixTime());
         String endAddress = endTrip.getAddress();
-        if (endAddress == null && Context.getGeocoder() != null
-                && Context.getConfig().getBoolean("geocoder.onRequest")) {
-            endAddress = Context.getGeocoder().getAddress(endTrip.getLatitude(), endTrip.getLongitude(), null);
+        if (resolveAddresses) {
+            endAddress = resolveAddress(endAddress, endTrip.getLatitude(), endTrip.getLongitude());
         }
         trip.setEndAddress(endAddress);
 
         trip.setDistance(calculateDistance(startTrip, endTrip, !ignoreOdometer));
         trip.setDuration(tripDuration);
-        trip.setAverageSpeed(speedSum / (endIndex - startIndex));
+        trip.setAverageSpeed(speedSum / intervals);
         trip.setMaxSpeed(speedMax);
         trip.setSpentFuel(calculateFuel(startTrip, endTrip));
 
@@ -234,11 +301,8 @@ public final class ReportUtils {
         return trip;
     }
 
-    private static StopReport calculateStop(
-            ArrayList<Position> positions, int startIndex, int endIndex, boolean ignoreOdometer) {
-
-        Position startStop = positions.get(startIndex);
-        Position endStop = positions.get(endIndex);
+    static StopReport calculateStop(
+            Position startStop, Position endStop, boolean ignoreOdometer, boolean resolveAddresses) {
 
         StopReport stop = new StopReport();
 
@@ -251,9 +315,8 @@ public final class ReportUtils {
         stop.setLongitude(startStop.getLongitude());
         stop.setStartTime(startStop.getFixTime());
         String address = startStop.getAddress();
-        if (address == null && Context.getGeocoder() != null
-                && Context.getConfig().getBoolean("geocoder.onRequest")) {
-            address = Context.getGeocoder().getAddress(stop.getLatitude(), stop.getLongitude(), null);
+        if (resolveAddresses) {
+            address = resolveAddress(address, stop.getLatitude(), stop.getLongitude());
         }
         stop.setAddress(address);
 
@@ -282,36 +345,6 @@ public final class ReportUtils {
 
     }
 
-    private static <T extends BaseReport> T calculateTripOrStop(
-            ArrayList<Position> positions, int startIndex, int endIndex, boolean ignoreOdometer, Class<T> reportClass) {
-
-        if (reportClass.equals(TripReport.class)) {
-            return (T) calculateTrip(positions, startIndex, endIndex, ignoreOdometer);
-        } else {
-            return (T) calculateStop(positions, startIndex, endIndex, ignoreOdometer);
-        }
-    }
-
-    private static boolean isMoving(ArrayList<Position> positions, int index, TripsConfig tripsConfig) {
-        if (tripsConfig.getMinimalNoDataDuration() > 0) {
-            boolean beforeGap = index < positions.size() - 1
-                    && positions.get(index + 1).getFixTime().getTime() - positions.get(index).getFixTime().getTime()
-                    >= tripsConfig.getMinimalNoDataDuration();
-            boolean afterGap = index > 0
-                    && positions.get(index).getFixTime().getTime() - positions.get(index - 1).getFixTime().getTime()
-                    >= tripsConfig.getMinimalNoDataDuration();
-            if (beforeGap || afterGap) {
-                return false;
-            }
-        }
-        if (positions.get(index).getAttributes().containsKey(Position.KEY_MOTION)
-                && positions.get(index).getAttributes().get(Position.KEY_MOTION) instanceof Boolean) {
-            return positions.get(index).getBoolean(Position.KEY_MOTION);
-        } else {
-            return positions.get(index).getSpeed() > tripsConfig.getSpeedThreshold();
-        }
-    }
-
     public static <T extends BaseReport> Collection<T> detectTripsAndStops(
             IdentityManager identityManager, DeviceManager deviceManager,
             Collection<Position> positionCollection,
@@ -319,46 +352,14 @@ public final class ReportUtils {
 
         Collection<T> result = new ArrayList<>();
 
-        ArrayList<Position> positions = new ArrayList<>(positionCollection);
-        if (!positions.isEmpty()) {
-            boolean trips = reportClass.equals(TripReport.class);
-            MotionEventHandler  motionHandler = new MotionEventHandler(identityManager, deviceManager, tripsConfig);
-            DeviceState deviceState = new DeviceState();
-            deviceState.setMotionState(isMoving(positions, 0, tripsConfig));
-            int startEventIndex = trips == deviceState.getMotionState() ? 0 : -1;
-            int startNoEventIndex = -1;
-            for (int i = 0; i < positions.size(); i++) {
-                Map<Event, Position> event = motionHandler.updateMotionState(deviceState, positions.get(i),
-                        isMoving(positions, i, tripsConfig));
-                if (startEventIndex == -1
-                        && (trips != deviceState.getMotionState() && deviceState.getMotionPosition() != null
-                        || trips == deviceState.getMotionState() && event != null)) {
-                    startEventIndex = i;
-                    startNoEventIndex = -1;
-                } else if (trips != deviceState.getMotionState() && startEventIndex != -1
-                        && deviceState.getMotionPosition() == null && event == null) {
-                    startEventIndex = -1;
-                }
-                if (startNoEventIndex == -1
-                        && (trips == deviceState.getMotionState() && deviceState.getMotionPosition() != null
-                        || trips != deviceState.getMotionState() && event != null)) {
-                    startNoEventIndex = i;
-                } else if (startNoEventIndex != -1 && deviceState.getMotionPosition() == null && event == null) {
-                    startNoEventIndex = -1;
-                }
-                if (startEventIndex != -1 && startNoEventIndex != -1 && event != null
-                        && trips != deviceState.getMotionState()) {
-                    result.add(calculateTripOrStop(positions, startEventIndex, startNoEventIndex,
-                            ignoreOdometer, reportClass));
-                    startEventIndex = -1;
-                }
-            }
-            if (startEventIndex != -1 && (startNoEventIndex != -1 || !trips)) {
-                result.add(calculateTripOrStop(positions, startEventIndex,
-                            startNoEventIndex != -1 ? startNoEventIndex : positions.size() - 1,
-                            ignoreOdometer, reportClass));
-            }
+        boolean trips = reportClass.equals(TripReport.class);
+        TripsDetector detector = new TripsDetector(
+                new MotionEventHandler(identityManager, deviceManager, tripsConfig), tripsConfig,
+                ignoreOdometer, true, trips, !trips, report -> result.add(reportClass.cast(report)));
+        for (Position position : positionCollection) {
+            detector.addPosition(position);
         }
+        detector.finish();
 
         return result;
     }
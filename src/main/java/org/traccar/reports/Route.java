@@ -1,5 +1,5 @@
 /*
- * Copyright 2016 Anton Tananaev (anton@traccar.org)
+ * Copyright 2016 - 2020 Anton Tananaev (anton@traccar.org)
  * Copyright 2016 Andrey Kunitsyn (andrey@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
@@ -24,9 +24,11 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 
 import org.apache.poi.ss.util.WorkbookUtil;
 import org.traccar.Context;
+import org.traccar.config.Keys;
 import org.traccar.model.Device;
 import org.traccar.model.Group;
 import org.traccar.model.Position;
@@ -41,9 +43,12 @@ public final class Route {
             Date from, Date to) throws SQLException {
         ReportUtils.checkPeriodLimit(from, to);
         ArrayList<Position> result = new ArrayList<>();
-        for (long deviceId: ReportUtils.getDeviceList(deviceIds, groupIds)) {
-            Context.getPermissionsManager().checkDevice(userId, deviceId);
-            result.addAll(Context.getDataManager().getPositions(deviceId, from, to));
+        for (List<Position> positions : ReportUtils.processDevices(userId, deviceIds, groupIds, deviceId -> {
+            List<Position> devicePositions = new ArrayList<>();
+            Context.getDataManager().getPositions(deviceId, from, to, devicePositions::add);
+            return devicePositions;
+        })) {
+            result.addAll(positions);
         }
         return result;
     }
@@ -52,16 +57,13 @@ public final class Route {
             long userId, Collection<Long> deviceIds, Collection<Long> groupIds,
             Date from, Date to) throws SQLException, IOException {
         ReportUtils.checkPeriodLimit(from, to);
-        ArrayList<DeviceReport> devicesRoutes = new ArrayList<>();
-        ArrayList<String> sheetNames = new ArrayList<>();
-        for (long deviceId: ReportUtils.getDeviceList(deviceIds, groupIds)) {
-            Context.getPermissionsManager().checkDevice(userId, deviceId);
-            Collection<Position> positions = Context.getDataManager()
-                    .getPositions(deviceId, from, to);
+        long fetchPeriod = Context.getConfig().getLong(Keys.REPORT_FETCH_PERIOD, 3600) * 1000;
+        List<DeviceReport> devicesRoutes = ReportUtils.processDevices(userId, deviceIds, groupIds, deviceId -> {
+            Iterable<Position> positions = new PositionCursor(
+                    Context.getDataManager(), deviceId, from, to, fetchPeriod);
             DeviceReport deviceRoutes = new DeviceReport();
             Device device = Context.getIdentityManager().getById(deviceId);
             deviceRoutes.setDeviceName(device.getName());
-            sheetNames.add(WorkbookUtil.createSafeSheetName(deviceRoutes.getDeviceName()));
             if (device.getGroupId() != 0) {
                 Group group = Context.getGroupsManager().getById(device.getGroupId());
                 if (group != null) {
@@ -69,7 +71,11 @@ public final class Route {
                 }
             }
             deviceRoutes.setObjects(positions);
-            devicesRoutes.add(deviceRoutes);
+            return deviceRoutes;
+        });
+        ArrayList<String> sheetNames = new ArrayList<>();
+        for (DeviceReport deviceRoutes : devicesRoutes) {
+            sheetNames.add(WorkbookUtil.createSafeSheetName(deviceRoutes.getDeviceName()));
         }
         String templatePath = Context.getConfig().getString("report.templatesPath",
                 "templates/export/");
@@ -80,6 +86,8 @@ public final class Route {
             jxlsContext.putVar("from", from);
             jxlsContext.putVar("to", to);
             ReportUtils.processTemplateWithSheets(inputStream, outputStream, jxlsContext);
+        } catch (PositionCursor.ReadException e) {
+            throw e.getCause();
         }
     }
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2017 Anton Tananaev (anton@traccar.org)
+ * Copyright 2017 - 2020 Anton Tananaev (anton@traccar.org)
  * Copyright 2017 Andrey Kunitsyn (andrey@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
@@ -25,6 +25,7 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 
 import org.apache.poi.ss.util.WorkbookUtil;
 import org.traccar.Context;
@@ -42,6 +43,14 @@ public final class Stops {
     }
 
     private static Collection<StopReport> detectStops(long deviceId, Date from, Date to) throws SQLException {
+        TripsManager tripsManager = Context.getTripsManager();
+        if (tripsManager != null) {
+            Collection<StopReport> result = tripsManager.getReports(deviceId, StopReport.class, from, to);
+            if (result != null) {
+                return result;
+            }
+        }
+
         boolean ignoreOdometer = Context.getDeviceManager()
                 .lookupAttributeBoolean(deviceId, "report.ignoreOdometer", false, false, true);
 
@@ -58,9 +67,9 @@ public final class Stops {
             Date from, Date to) throws SQLException {
         ReportUtils.checkPeriodLimit(from, to);
         ArrayList<StopReport> result = new ArrayList<>();
-        for (long deviceId: ReportUtils.getDeviceList(deviceIds, groupIds)) {
-            Context.getPermissionsManager().checkDevice(userId, deviceId);
-            result.addAll(detectStops(deviceId, from, to));
+        for (Collection<StopReport> reports : ReportUtils.processDevices(userId, deviceIds, groupIds,
+                deviceId -> detectStops(deviceId, from, to))) {
+            result.addAll(reports);
         }
         return result;
     }
@@ -69,15 +78,11 @@ public final class Stops {
             OutputStream outputStream, long userId, Collection<Long> deviceIds, Collection<Long> groupIds,
             Date from, Date to) throws SQLException, IOException {
         ReportUtils.checkPeriodLimit(from, to);
-        ArrayList<DeviceReport> devicesStops = new ArrayList<>();
-        ArrayList<String> sheetNames = new ArrayList<>();
-        for (long deviceId: ReportUtils.getDeviceList(deviceIds, groupIds)) {
-            Context.getPermissionsManager().checkDevice(userId, deviceId);
+        List<DeviceReport> devicesStops = ReportUtils.processDevices(userId, deviceIds, groupIds, deviceId -> {
             Collection<StopReport> stops = detectStops(deviceId, from, to);
             DeviceReport deviceStops = new DeviceReport();
             Device device = Context.getIdentityManager().getById(deviceId);
             deviceStops.setDeviceName(device.getName());
-            sheetNames.add(WorkbookUtil.createSafeSheetName(deviceStops.getDeviceName()));
             if (device.getGroupId() != 0) {
                 Group group = Context.getGroupsManager().getById(device.getGroupId());
                 if (group != null) {
@@ -85,7 +90,11 @@ public final class Stops {
                 }
             }
             deviceStops.setObjects(stops);
-            devicesStops.add(deviceStops);
+            return deviceStops;
+        });
+        ArrayList<String> sheetNames = new ArrayList<>();
+        for (DeviceReport deviceStops : devicesStops) {
+            sheetNames.add(WorkbookUtil.createSafeSheetName(deviceStops.getDeviceName()));
         }
         String templatePath = Context.getConfig().getString("report.templatesPath",
                 "templates/export/");
@@ -24,11 +24,17 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
 
 import org.jxls.util.JxlsHelper;
 import org.traccar.Context;
+import org.traccar.database.DataManager;
+import org.traccar.database.RollupManager;
 import org.traccar.model.Position;
+import org.traccar.model.Rollup;
 import org.traccar.reports.model.SummaryReport;
 
 public final class Summary {
@@ -36,76 +42,228 @@ public final class Summary {
     private Summary() {
     }
 
-    private static SummaryReport calculateSummaryResult(long deviceId, Collection<Position> positions) {
-        SummaryReport result = new SummaryReport();
-        result.setDeviceId(deviceId);
-        result.setDeviceName(Context.getIdentityManager().getById(deviceId).getName());
-        if (positions != null && !positions.isEmpty()) {
-            Position firstPosition = null;
-            Position previousPosition = null;
-            double speedSum = 0;
-            for (Position position : positions) {
+    private static final class SummaryCollector {
+
+        private final DataManager dataManager;
+        private final long deviceId;
+        private Position firstPosition;
+        private Position previousPosition;
+        private long previousPositionId;
+        private double speedSum;
+        private double maxSpeed;
+        private int count;
+        private int day;
+
+        private SummaryCollector(DataManager dataManager, long deviceId) {
+            this.dataManager = dataManager;
+            this.deviceId = deviceId;
+        }
+
+        private int getDay() {
+            return day;
+        }
+
+        private void setDay(int day) {
+            this.day = day;
+        }
+
+        private boolean isEmpty() {
+            return count == 0;
+        }
+
+        private void add(Position position) {
+            if (firstPosition == null) {
+                firstPosition = position;
+            }
+            previousPosition = position;
+            previousPositionId = 0;
+            speedSum += position.getSpeed();
+            maxSpeed = Math.max(maxSpeed, position.getSpeed());
+            count += 1;
+        }
+
+        private boolean add(Rollup rollup) throws SQLException {
+            if (rollup.getPositionCount() > 0) {
                 if (firstPosition == null) {
-                    firstPosition = position;
+                    firstPosition = dataManager.getObject(Position.class, rollup.getFirstPositionId());
+                    if (firstPosition == null) {
+                        return false;
+                    }
                 }
-                previousPosition = position;
-                speedSum += position.getSpeed();
-                result.setMaxSpeed(position.getSpeed());
-            }
-            boolean ignoreOdometer = Context.getDeviceManager()
-                    .lookupAttributeBoolean(deviceId, "report.ignoreOdometer", false, false, true);
-            result.setDistance(ReportUtils.calculateDistance(firstPosition, previousPosition, !ignoreOdometer));
-            result.setAverageSpeed(speedSum / positions.size());
-            result.setSpentFuel(ReportUtils.calculateFuel(firstPosition, previousPosition));
-
-            if (firstPosition.getAttributes().containsKey(Position.KEY_HOURS)
-                    && previousPosition.getAttributes().containsKey(Position.KEY_HOURS)) {
-                result.setEngineHours(
-                        previousPosition.getLong(Position.KEY_HOURS) - firstPosition.getLong(Position.KEY_HOURS));
+                previousPositionId = rollup.getLastPositionId();
+                speedSum += rollup.getSpeedSum();
+                maxSpeed = Math.max(maxSpeed, rollup.getMaxSpeed());
+                count += rollup.getPositionCount();
             }
+            return true;
+        }
 
-            if (!ignoreOdometer
-                    && firstPosition.getDouble(Position.KEY_ODOMETER) != 0
-                    && previousPosition.getDouble(Position.KEY_ODOMETER) != 0) {
-                result.setStartOdometer(firstPosition.getDouble(Position.KEY_ODOMETER));
-                result.setEndOdometer(previousPosition.getDouble(Position.KEY_ODOMETER));
-            } else {
-                result.setStartOdometer(firstPosition.getDouble(Position.KEY_TOTAL_DISTANCE));
-                result.setEndOdometer(previousPosition.getDouble(Position.KEY_TOTAL_DISTANCE));
+        private boolean resolve() throws SQLException {
+            if (previousPositionId != 0) {
+                previousPosition = dataManager.getObject(Position.class, previousPositionId);
+                previousPositionId = 0;
             }
+            return isEmpty() || previousPosition != null;
+        }
+
+        private SummaryReport build() {
+            SummaryReport result = new SummaryReport();
+            result.setDeviceId(deviceId);
+            result.setDeviceName(Context.getIdentityManager().getById(deviceId).getName());
+            if (!isEmpty()) {
+                result.setMaxSpeed(maxSpeed);
+                boolean ignoreOdometer = Context.getIdentityManager()
+                        .lookupAttributeBoolean(deviceId, "report.ignoreOdometer", false, false, true);
+                result.setDistance(ReportUtils.calculateDistance(firstPosition, previousPosition, !ignoreOdometer));
+                result.setAverageSpeed(speedSum / count);
+                result.setSpentFuel(ReportUtils.calculateFuel(firstPosition, previousPosition));
+
+                if (firstPosition.getAttributes().containsKey(Position.KEY_HOURS)
+                        && previousPosition.getAttributes().containsKey(Position.KEY_HOURS)) {
+                    result.setEngineHours(
+                            previousPosition.getLong(Position.KEY_HOURS) - firstPosition.getLong(Position.KEY_HOURS));
+                }
+
+                if (!ignoreOdometer
+                        && firstPosition.getDouble(Position.KEY_ODOMETER) != 0
+                        && previousPosition.getDouble(Position.KEY_ODOMETER) != 0) {
+                    result.setStartOdometer(firstPosition.getDouble(Position.KEY_ODOMETER));
+                    result.setEndOdometer(previousPosition.getDouble(Position.KEY_ODOMETER));
+                } else {
+                    result.setStartOdometer(firstPosition.getDouble(Position.KEY_TOTAL_DISTANCE));
+                    result.setEndOdometer(previousPosition.getDouble(Position.KEY_TOTAL_DISTANCE));
+                }
 
-            result.setStartTime(firstPosition.getFixTime());
-            result.setEndTime(previousPosition.getServerTime());
+                result.setStartTime(firstPosition.getFixTime());
+                result.setEndTime(previousPosition.getServerTime());
+            }
+            return result;
         }
-        return result;
+
     }
 
-    private static int getDay(long userId, Date date) {
-        Calendar calendar = Calendar.getInstance(ReportUtils.getTimezone(userId));
+    private static int getDay(TimeZone timezone, Date date) {
+        Calendar calendar = Calendar.getInstance(timezone);
         calendar.setTime(date);
         return calendar.get(Calendar.DAY_OF_MONTH);
     }
 
-    private static Collection<SummaryReport> calculateSummaryResults(
-            long userId, long deviceId, Date from, Date to, boolean daily) throws SQLException {
+    private static List<Date> getDayStarts(TimeZone timezone, Date from, Date to) {
+        List<Date> result = new ArrayList<>();
+        result.add(from);
+        Calendar calendar = Calendar.getInstance(timezone);
+        calendar.setTime(from);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        while (true) {
+            calendar.add(Calendar.DAY_OF_MONTH, 1);
+            if (calendar.getTime().after(to)) {
+                break;
+            }
+            result.add(calendar.getTime());
+        }
+        return result;
+    }
+
+    private static SummaryCollector collectRollups(
+            DataManager dataManager, long deviceId, long from, long to, long completeFrom, Collection<Rollup> rollups)
+            throws SQLException {
+
+        SummaryCollector collector = new SummaryCollector(dataManager, deviceId);
+
+        long rollupsFrom = Math.max(
+                RollupManager.getStartTime(from + RollupManager.PERIOD - 1), completeFrom);
+        long rollupsTo = RollupManager.getStartTime(to + 1);
+        if (rollupsFrom >= rollupsTo) {
+            rollupsFrom = to + 1;
+            rollupsTo = to + 1;
+        }
+
+        if (from < rollupsFrom) {
+            dataManager.getPositions(deviceId, new Date(from), new Date(rollupsFrom - 1), collector::add);
+        }
+        for (Rollup rollup : rollups) {
+            long startTime = rollup.getStartTime().getTime();
+            if (startTime >= rollupsFrom && startTime < rollupsTo && !collector.add(rollup)) {
+                return null;
+            }
+        }
+        if (rollupsTo <= to) {
+            dataManager.getPositions(deviceId, new Date(rollupsTo), new Date(to), collector::add);
+        }
+        return collector.resolve() ? collector : null;
+    }
+
+    private static Collection<SummaryReport> calculateRollupResults(
+            DataManager dataManager, RollupManager rollupManager, TimeZone timezone,
+            long deviceId, Date from, Date to, boolean daily) throws SQLException {
 
-        ArrayList<Position> positions = new ArrayList<>(Context.getDataManager().getPositions(deviceId, from, to));
+        Rollup firstRollup = rollupManager.getFirstRollup(deviceId);
+        if (firstRollup == null) {
+            return null;
+        }
+        long completeFrom = firstRollup.getStartTime().getTime() + RollupManager.PERIOD;
+        Collection<Rollup> rollups = rollupManager.getRollups(deviceId, from, to);
+
+        List<Date> starts = daily ? getDayStarts(timezone, from, to) : Collections.singletonList(from);
+        List<SummaryCollector> collectors = new ArrayList<>();
+        for (int i = 0; i < starts.size(); i++) {
+            long end = i + 1 < starts.size() ? starts.get(i + 1).getTime() - 1 : to.getTime();
+            SummaryCollector collector = collectRollups(
+                    dataManager, deviceId, starts.get(i).getTime(), end, completeFrom, rollups);
+            if (collector == null) {
+                return null; // aggregated positions have been removed
+            }
+            if (!collector.isEmpty() || !daily) {
+                collectors.add(collector);
+            }
+        }
+        if (collectors.isEmpty()) {
+            collectors.add(new SummaryCollector(dataManager, deviceId));
+        }
 
         ArrayList<SummaryReport> results = new ArrayList<>();
-        if (daily && !positions.isEmpty()) {
-            int startIndex = 0;
-            int startDay = getDay(userId, positions.iterator().next().getFixTime());
-            for (int i = 0; i < positions.size(); i++) {
-                int currentDay = getDay(userId, positions.get(i).getFixTime());
-                if (currentDay != startDay) {
-                    results.add(calculateSummaryResult(deviceId, positions.subList(startIndex, i)));
-                    startIndex = i;
-                    startDay = currentDay;
+        for (SummaryCollector collector : collectors) {
+            results.add(collector.build());
+        }
+        return results;
+    }
+
+    static Collection<SummaryReport> calculateSummaryResults(
+            DataManager dataManager, RollupManager rollupManager, TimeZone timezone,
+            long deviceId, Date from, Date to, boolean daily) throws SQLException {
+
+        if (rollupManager != null) {
+            Collection<SummaryReport> results = calculateRollupResults(
+                    dataManager, rollupManager, timezone, deviceId, from, to, daily);
+            if (results != null) {
+                return results;
+            }
+        }
+
+        List<SummaryCollector> collectors = new ArrayList<>();
+        collectors.add(new SummaryCollector(dataManager, deviceId));
+
+        dataManager.getPositions(deviceId, from, to, position -> {
+            SummaryCollector collector = collectors.get(collectors.size() - 1);
+            if (daily) {
+                int day = getDay(timezone, position.getFixTime());
+                if (collector.isEmpty()) {
+                    collector.setDay(day);
+                } else if (collector.getDay() != day) {
+                    collector = new SummaryCollector(dataManager, deviceId);
+                    collector.setDay(day);
+                    collectors.add(collector);
                 }
             }
-            results.add(calculateSummaryResult(deviceId, positions.subList(startIndex, positions.size())));
-        } else {
-            results.add(calculateSummaryResult(deviceId, positions));
+            collector.add(position);
+        });
+
+        ArrayList<SummaryReport> results = new ArrayList<>();
+        for (SummaryCollector collector : collectors) {
+            results.add(collector.build());
         }
 
         return results;
@@ -114,10 +272,12 @@ public final class Summary {
     public static Collection<SummaryReport> getObjects(long userId, Collection<Long> deviceIds,
             Collection<Long> groupIds, Date from, Date to, boolean daily) throws SQLException {
         ReportUtils.checkPeriodLimit(from, to);
+        TimeZone timezone = ReportUtils.getTimezone(userId);
         ArrayList<SummaryReport> result = new ArrayList<>();
-        for (long deviceId: ReportUtils.getDeviceList(deviceIds, groupIds)) {
-            Context.getPermissionsManager().checkDevice(userId, deviceId);
-            result.addAll(calculateSummaryResults(userId, deviceId, from, to, daily));
+        for (Collection<SummaryReport> summaries : ReportUtils.processDevices(userId, deviceIds, groupIds,
+                deviceId -> calculateSummaryResults(
+                        Context.getDataManager(), Context.getRollupManager(), timezone, deviceId, from, to, daily))) {
+            result.addAll(summaries);
         }
         return result;
     }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2016 Anton Tananaev (anton@traccar.org)
+ * Copyright 2016 - 2020 Anton Tananaev (anton@traccar.org)
  * Copyright 2016 Andrey Kunitsyn (andrey@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
@@ -24,6 +24,7 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 
 import org.apache.poi.ss.util.WorkbookUtil;
 import org.traccar.Context;
@@ -41,6 +42,14 @@ public final class Trips {
     }
 
     private static Collection<TripReport> detectTrips(long deviceId, Date from, Date to) throws SQLException {
+        TripsManager tripsManager = Context.getTripsManager();
+        if (tripsManager != null) {
+            Collection<TripReport> result = tripsManager.getReports(deviceId, TripReport.class, from, to);
+            if (result != null) {
+                return result;
+            }
+        }
+
         boolean ignoreOdometer = Context.getDeviceManager()
                 .lookupAttributeBoolean(deviceId, "report.ignoreOdometer", false, false, true);
 
@@ -56,9 +65,9 @@ public final class Trips {
             Date from, Date to) throws SQLException {
         ReportUtils.checkPeriodLimit(from, to);
         ArrayList<TripReport> result = new ArrayList<>();
-        for (long deviceId: ReportUtils.getDeviceList(deviceIds, groupIds)) {
-            Context.getPermissionsManager().checkDevice(userId, deviceId);
-            result.addAll(detectTrips(deviceId, from, to));
+        for (Collection<TripReport> reports : ReportUtils.processDevices(userId, deviceIds, groupIds,
+                deviceId -> detectTrips(deviceId, from, to))) {
+            result.addAll(reports);
         }
         return result;
     }
@@ -67,15 +76,11 @@ public final class Trips {
             long userId, Collection<Long> deviceIds, Collection<Long> groupIds,
             Date from, Date to) throws SQLException, IOException {
         ReportUtils.checkPeriodLimit(from, to);
-        ArrayList<DeviceReport> devicesTrips = new ArrayList<>();
-        ArrayList<String> sheetNames = new ArrayList<>();
-        for (long deviceId: ReportUtils.getDeviceList(deviceIds, groupIds)) {
-            Context.getPermissionsManager().checkDevice(userId, deviceId);
+        List<DeviceReport> devicesTrips = ReportUtils.processDevices(userId, deviceIds, groupIds, deviceId -> {
             Collection<TripReport> trips = detectTrips(deviceId, from, to);
             DeviceReport deviceTrips = new DeviceReport();
             Device device = Context.getIdentityManager().getById(deviceId);
             deviceTrips.setDeviceName(device.getName());
-            sheetNames.add(WorkbookUtil.createSafeSheetName(deviceTrips.getDeviceName()));
             if (device.getGroupId() != 0) {
                 Group group = Context.getGroupsManager().getById(device.getGroupId());
                 if (group != null) {
@@ -83,7 +88,11 @@ public final class Trips {
                 }
             }
             deviceTrips.setObjects(trips);
-            devicesTrips.add(deviceTrips);
+            return deviceTrips;
+        });
+        ArrayList<String> sheetNames = new ArrayList<>();
+        for (DeviceReport deviceTrips : devicesTrips) {
+            sheetNames.add(WorkbookUtil.createSafeSheetName(deviceTrips.getDeviceName()));
         }
         String templatePath = Context.getConfig().getString("report.templatesPath",
                 "templates/export/");
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2020 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.reports;
+
+import org.traccar.handler.events.MotionEventHandler;
+import org.traccar.model.DeviceState;
+import org.traccar.model.Event;
+import org.traccar.model.Position;
+import org.traccar.reports.model.BaseReport;
+import org.traccar.reports.model.TripsConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Incremental trips and stops detection. Positions have to be added in order of fix time, finished trips and stops
+ * are passed to the listener as soon as they are detected. When gaps in data are taken into account, each position
+ * is processed only after the next one is added.
+ */
+public class TripsDetector {
+
+    public interface Listener {
+        void onReport(BaseReport report);
+    }
+
+    private final class Tracker {
+
+        private final boolean trips;
+
+        private Position start;
+        private double speedSum;
+        private double speedMax;
+        private int count;
+
+        private Position end;
+        private double endSpeedSum;
+        private double endSpeedMax;
+        private int endCount;
+
+        private Tracker(boolean trips) {
+            this.trips = trips;
+        }
+
+        private void begin(Position position) {
+            start = position;
+            speedSum = 0;
+            speedMax = 0;
+            count = 0;
+        }
+
+        private void update(Position position, Map<Event, Position> event) {
+            boolean motion = deviceState.getMotionState();
+            Position motionPosition = deviceState.getMotionPosition();
+
+            if (start == null
+                    && (trips != motion && motionPosition != null || trips == motion && event != null)) {
+                begin(position);
+                end = null;
+            } else if (trips != motion && start != null && motionPosition == null && event == null) {
+                start = null;
+            }
+
+            if (start != null) {
+                speedSum += position.getSpeed();
+                speedMax = Math.max(speedMax, position.getSpeed());
+                count += 1;
+            }
+
+            if (end == null
+                    && (trips == motion && motionPosition != null || trips != motion && event != null)) {
+                end = position;
+                endSpeedSum = speedSum;
+                endSpeedMax = speedMax;
+                endCount = count;
+            } else if (end != null && motionPosition == null && event == null) {
+                end = null;
+            }
+
+            if (start != null && end != null && event != null && trips != motion) {
+                listener.onReport(build(end));
+                start = null;
+            }
+        }
+
+        private BaseReport build(Position last) {
+            if (trips) {
+                return ReportUtils.calculateTrip(
+                        start, end, endSpeedSum, endSpeedMax, endCount - 1, ignoreOdometer, resolveAddresses);
+            } else {
+                return ReportUtils.calculateStop(
+                        start, end != null ? end : last, ignoreOdometer, resolveAddresses);
+            }
+        }
+
+        private BaseReport current(Position last) {
+            if (start != null && (end != null || !trips)) {
+                return build(last);
+            }
+            return null;
+        }
+
+    }
+
+    private final MotionEventHandler motionHandler;
+    private final TripsConfig tripsConfig;
+    private final boolean ignoreOdometer;
+    private final boolean resolveAddresses;
+    private final Listener listener;
+
+    private final DeviceState deviceState = new DeviceState();
+    private final List<Tracker> trackers = new ArrayList<>();
+
+    private Position previous;
+    private Position pending;
+
+    public TripsDetector(
+            MotionEventHandler motionHandler, TripsConfig tripsConfig, boolean ignoreOdometer,
+            boolean resolveAddresses, boolean trips, boolean stops, Listener listener) {
+        this.motionHandler = motionHandler;
+        this.tripsConfig = tripsConfig;
+        this.ignoreOdometer = ignoreOdometer;
+        this.resolveAddresses = resolveAddresses;
+        this.listener = listener;
+        if (trips) {
+            trackers.add(new Tracker(true));
+        }
+        if (stops) {
+            trackers.add(new Tracker(false));
+        }
+    }
+
+    private boolean isMoving(Position position, Position next) {
+        if (tripsConfig.getMinimalNoDataDuration() > 0) {
+            boolean beforeGap = next != null
+                    && next.getFixTime().getTime() - position.getFixTime().getTime()
+                    >= tripsConfig.getMinimalNoDataDuration();
+            boolean afterGap = previous != null
+                    && position.getFixTime().getTime() - previous.getFixTime().getTime()
+                    >= tripsConfig.getMinimalNoDataDuration();
+            if (beforeGap || afterGap) {
+                return false;
+            }
+        }
+        if (position.getAttributes().get(Position.KEY_MOTION) instanceof Boolean) {
+            return position.getBoolean(Position.KEY_MOTION);
+        } else {
+            return position.getSpeed() > tripsConfig.getSpeedThreshold();
+        }
+    }
+
+    private void process(Position position, Position next) {
+        boolean moving = isMoving(position, next);
+        if (deviceState.getMotionState() == null) {
+            deviceState.setMotionState(moving);
+            for (Tracker tracker : trackers) {
+                if (tracker.trips == moving) {
+                    tracker.begin(position);
+                }
+            }
+        }
+        Map<Event, Position> event = motionHandler.updateMotionState(deviceState, position, moving);
+        for (Tracker tracker : trackers) {
+            tracker.update(position, event);
+        }
+        previous = position;
+    }
+
+    public void addPosition(Position position) {
+        if (tripsConfig.getMinimalNoDataDuration() > 0) {
+            if (pending != null) {
+                process(pending, position);
+            }
+            pending = position;
+        } else {
+            process(position, null);
+        }
+    }
+
+    /**
+     * Returns trips and stops that are not finished yet, based on positions processed so far.
+     */
+    public List<BaseReport> getCurrent() {
+        List<BaseReport> result = new ArrayList<>();
+        if (previous != null) {
+            Position last = pending != null ? pending : previous;
+            for (Tracker tracker : trackers) {
+                BaseReport report = tracker.current(last);
+                if (report != null) {
+                    result.add(report);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Processes remaining positions and reports trips and stops that are not finished yet.
+     */
+    public void finish() {
+        if (pending != null) {
+            process(pending, null);
+            pending = null;
+        }
+        for (BaseReport report : getCurrent()) {
+            listener.onReport(report);
+        }
+    }
+
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright 2020 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.reports;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.traccar.database.DataManager;
+import org.traccar.database.DeviceManager;
+import org.traccar.database.IdentityManager;
+import org.traccar.handler.events.MotionEventHandler;
+import org.traccar.model.Position;
+import org.traccar.model.Segment;
+import org.traccar.reports.model.BaseReport;
+import org.traccar.reports.model.StopReport;
+import org.traccar.reports.model.TripReport;
+import org.traccar.reports.model.TripsConfig;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Detects trips and stops while positions are stored and keeps finished ones in the database, so that reports can
+ * read them instead of replaying positions. Stored results are tied to the detection configuration and are only
+ * used for periods after the first one was stored. Positions arriving out of order cause detection to be repeated
+ * starting from the trip or stop preceding the affected one. Detection runs on background threads, one per shard
+ * of devices, so database reads and replays never block network threads.
+ */
+public class TripsManager {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TripsManager.class);
+
+    private static final long REPLAY_AHEAD = 24 * 60 * 60 * 1000;
+
+    private static final int QUEUE_SIZE = 10000;
+
+    private static final class DeviceTrips {
+        private String configuration;
+        private TripsDetector detector;
+        private long lastPositionId;
+        private Date lastTime;
+        private Date rebuildTime;
+    }
+
+    private final DataManager dataManager;
+    private final IdentityManager identityManager;
+    private final DeviceManager deviceManager;
+    private final TripsConfig tripsConfig;
+    private final ObjectMapper objectMapper;
+
+    private final Map<Long, DeviceTrips> devices = new ConcurrentHashMap<>();
+
+    private final ThreadPoolExecutor[] executors;
+
+    public TripsManager(
+            DataManager dataManager, IdentityManager identityManager, DeviceManager deviceManager,
+            TripsConfig tripsConfig, int threads) {
+        this.dataManager = dataManager;
+        this.identityManager = identityManager;
+        this.deviceManager = deviceManager;
+        this.tripsConfig = tripsConfig;
+        objectMapper = new ObjectMapper(); // shared mapper escapes strings for web output
+        objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+        executors = new ThreadPoolExecutor[Math.max(threads, 1)];
+        for (int i = 0; i < executors.length; i++) {
+            String name = "trips-" + i;
+            executors[i] = new ThreadPoolExecutor(
+                    1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(QUEUE_SIZE), runnable -> {
+                        Thread thread = new Thread(runnable, name);
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+        }
+    }
+
+    private boolean getIgnoreOdometer(long deviceId) {
+        return identityManager.lookupAttributeBoolean(deviceId, "report.ignoreOdometer", false, false, true);
+    }
+
+    private String getConfiguration(long deviceId) {
+        return tripsConfig.getMinimalTripDistance()
+                + ":" + tripsConfig.getMinimalTripDuration()
+                + ":" + tripsConfig.getMinimalParkingDuration()
+                + ":" + tripsConfig.getMinimalNoDataDuration()
+                + ":" + tripsConfig.getUseIgnition()
+                + ":" + tripsConfig.getSpeedThreshold()
+                + ":" + getIgnoreOdometer(deviceId);
+    }
+
+    private void store(DeviceTrips state, long deviceId, BaseReport report) {
+        Segment segment = new Segment();
+        segment.setDeviceId(deviceId);
+        segment.setType(report instanceof TripReport ? Segment.TYPE_TRIP : Segment.TYPE_STOP);
+        segment.setConfiguration(state.configuration);
+        segment.setStartTime(report.getStartTime());
+        segment.setEndTime(report.getEndTime());
+        try {
+            segment.setData(objectMapper.writeValueAsString(report));
+            dataManager.addObject(segment);
+        } catch (JsonProcessingException | SQLException e) {
+            LOGGER.warn("Failed to store trip or stop", e);
+            markRebuild(state, report.getStartTime());
+        }
+    }
+
+    private void add(DeviceTrips state, Position position) {
+        state.detector.addPosition(position);
+        state.lastPositionId = Math.max(state.lastPositionId, position.getId());
+        state.lastTime = position.getFixTime();
+    }
+
+    private Date getReplayStart(long deviceId, String configuration, Date time) throws SQLException {
+        Date from = time;
+        for (Segment segment : dataManager.getSegmentsEndingAfter(deviceId, configuration, time)) {
+            if (segment.getStartTime().before(from)) {
+                from = segment.getStartTime();
+            }
+        }
+        return from;
+    }
+
+    private void rebuild(DeviceTrips state, long deviceId, Date time) throws SQLException {
+        state.rebuildTime = null;
+        state.lastPositionId = 0;
+        state.lastTime = null;
+        state.detector = new TripsDetector(
+                new MotionEventHandler(identityManager, deviceManager, tripsConfig), tripsConfig,
+                getIgnoreOdometer(deviceId), false, true, true, report -> store(state, deviceId, report));
+        if (time != null) {
+            Date from = getReplayStart(deviceId, state.configuration, time);
+            from = getReplayStart(deviceId, state.configuration, from); // include preceding one for context
+            dataManager.removeSegmentsStartingFrom(deviceId, state.configuration, from);
+            dataManager.getPositions(
+                    deviceId, from, new Date(System.currentTimeMillis() + REPLAY_AHEAD),
+                    position -> add(state, position));
+        }
+    }
+
+    private static void markRebuild(DeviceTrips state, Date time) {
+        if (state.rebuildTime == null || time.before(state.rebuildTime)) {
+            state.rebuildTime = time;
+        }
+    }
+
+    /**
+     * Queue stored position for detection on a background thread. If the queue is full, the position is skipped and
+     * detection is repeated from its time when the next position of the device is handled.
+     */
+    public void submit(Position position) {
+        if (position.getId() == 0 || position.getFixTime() == null) {
+            return; // position is not stored
+        }
+
+        ThreadPoolExecutor executor = executors[(int) Math.abs(position.getDeviceId() % executors.length)];
+        try {
+            executor.execute(() -> {
+                try {
+                    updatePosition(position);
+                } catch (SQLException | RuntimeException error) {
+                    LOGGER.warn("Failed to update trips", error);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            DeviceTrips state = devices.computeIfAbsent(position.getDeviceId(), key -> new DeviceTrips());
+            synchronized (state) {
+                markRebuild(state, position.getFixTime());
+            }
+        }
+    }
+
+    public void updatePosition(Position position) throws SQLException {
+        if (position.getId() == 0 || position.getFixTime() == null) {
+            return; // position is not stored
+        }
+
+        long deviceId = position.getDeviceId();
+        DeviceTrips state = devices.computeIfAbsent(deviceId, key -> new DeviceTrips());
+        synchronized (state) {
+            try {
+                String configuration = getConfiguration(deviceId);
+                if (!configuration.equals(state.configuration)) {
+                    state.configuration = configuration;
+                    Segment latest = dataManager.getLatestSegment(deviceId, configuration);
+                    Date from = latest != null ? latest.getEndTime() : null;
+                    if (state.rebuildTime != null && (from == null || state.rebuildTime.before(from))) {
+                        from = state.rebuildTime;
+                    }
+                    rebuild(state, deviceId, from);
+                }
+
+                if (position.getId() <= state.lastPositionId) {
+                    return; // already included by replay
+                }
+
+                if (state.lastTime != null && position.getFixTime().before(state.lastTime)) {
+                    markRebuild(state, position.getFixTime());
+                } else if (state.rebuildTime != null) {
+                    rebuild(state, deviceId, state.rebuildTime);
+                } else {
+                    add(state, position);
+                }
+            } catch (SQLException e) {
+                state.configuration = null;
+                throw e;
+            }
+        }
+    }
+
+    private void refresh(BaseReport report) {
+        report.setDeviceName(identityManager.getById(report.getDeviceId()).getName());
+        if (report instanceof TripReport) {
+            TripReport trip = (TripReport) report;
+            trip.setDriverName(ReportUtils.findDriverName(trip.getDriverUniqueId()));
+            trip.setStartAddress(ReportUtils.resolveAddress(
+                    trip.getStartAddress(), trip.getStartLat(), trip.getStartLon()));
+            trip.setEndAddress(ReportUtils.resolveAddress(
+                    trip.getEndAddress(), trip.getEndLat(), trip.getEndLon()));
+        } else if (report instanceof StopReport) {
+            StopReport stop = (StopReport) report;
+            stop.setAddress(ReportUtils.resolveAddress(stop.getAddress(), stop.getLatitude(), stop.getLongitude()));
+        }
+    }
+
+    /**
+     * Returns stored trips or stops starting within the period, or null if they are not available for it.
+     */
+    public <T extends BaseReport> Collection<T> getReports(
+            long deviceId, Class<T> reportClass, Date from, Date to) throws SQLException {
+
+        String configuration = getConfiguration(deviceId);
+
+        List<BaseReport> current = Collections.emptyList();
+        DeviceTrips state = devices.get(deviceId);
+        if (state != null) {
+            synchronized (state) {
+                if (state.rebuildTime != null) {
+                    return null;
+                }
+                if (configuration.equals(state.configuration)) {
+                    current = state.detector.getCurrent();
+                }
+            }
+        }
+
+        Segment first = dataManager.getFirstSegment(deviceId, configuration);
+        if (first == null || from.before(first.getStartTime())) {
+            return null;
+        }
+
+        String type = reportClass.equals(TripReport.class) ? Segment.TYPE_TRIP : Segment.TYPE_STOP;
+        List<T> result = new ArrayList<>();
+        for (Segment segment : dataManager.getSegments(deviceId, type, configuration, from, to)) {
+            try {
+                result.add(objectMapper.readValue(segment.getData(), reportClass));
+            } catch (IOException e) {
+                LOGGER.warn("Failed to read stored trip or stop", e);
+                return null;
+            }
+        }
+        for (BaseReport report : current) {
+            if (reportClass.isInstance(report)
+                    && !report.getStartTime().before(from) && !report.getStartTime().after(to)) {
+                result.add(reportClass.cast(report));
+            }
+        }
+        for (T report : result) {
+            refresh(report);
+        }
+        return result;
+    }
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2016 Anton Tananaev (anton@traccar.org)
+ * Copyright 2016 - 2020 Anton Tananaev (anton@traccar.org)
  * Copyright 2016 Andrey Kunitsyn (andrey@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
@@ -16,10 +16,6 @@
  */
 package org.traccar.reports.model;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
-
 public class DeviceReport {
 
     private String deviceName;
@@ -42,14 +38,14 @@ public class DeviceReport {
         this.groupName = groupName;
     }
 
-    private List<?> objects;
+    private Iterable<?> objects;
 
-    public Collection<?> getObjects() {
+    public Iterable<?> getObjects() {
         return objects;
     }
 
-    public void setObjects(Collection<?> objects) {
-        this.objects = new ArrayList<>(objects);
+    public void setObjects(Iterable<?> objects) {
+        this.objects = objects;
     }
 
 }
@@ -17,6 +17,8 @@
 package org.traccar.web;
 
 import java.beans.Introspector;
+import java.io.IOException;
+import java.io.Writer;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Arrays;
@@ -154,6 +156,11 @@ public class CsvBuilder {
         }
     }
 
+    public void flush(Writer writer) throws IOException {
+        writer.write(builder.toString());
+        builder.setLength(0);
+    }
+
     public String build() {
         return builder.toString();
     }
@@ -16,6 +16,8 @@
  */
 package org.traccar.web;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.Collection;
 
 import org.traccar.helper.DateUtil;
@@ -61,6 +63,11 @@ public class GpxBuilder {
         }
     }
 
+    public void flush(Writer writer) throws IOException {
+        writer.write(builder.toString());
+        builder.setLength(0);
+    }
+
     public String build() {
         builder.append(FOOTER);
         return builder.toString();
@@ -0,0 +1,42 @@
+package org.traccar;
+
+import org.traccar.config.Config;
+import org.traccar.database.DataManager;
+import org.traccar.model.Device;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+public class DatabaseTest extends BaseTest {
+
+    protected static Config createConfig(Properties properties) throws Exception {
+        Properties main = new Properties();
+        main.setProperty("config.default", "./setup/default.xml");
+        main.setProperty("database.driver", "org.h2.Driver");
+        main.setProperty("database.url", "jdbc:h2:mem:test;DB_CLOSE_DELAY=-1");
+        main.setProperty("database.user", "sa");
+        main.setProperty("database.password", "");
+        main.putAll(properties);
+        File file = File.createTempFile("traccar", ".xml");
+        file.deleteOnExit();
+        try (OutputStream outputStream = new FileOutputStream(file)) {
+            main.storeToXML(outputStream, null);
+        }
+        return new Config(file.getPath());
+    }
+
+    protected static DataManager createDataManager(Config config) throws Exception {
+        return new DataManager(config);
+    }
+
+    protected static long createDevice(DataManager dataManager, String uniqueId) throws Exception {
+        Device device = new Device();
+        device.setName(uniqueId);
+        device.setUniqueId(uniqueId);
+        dataManager.addObject(device);
+        return device.getId();
+    }
+
+}
@@ -25,4 +25,23 @@ public class WebDataHandlerTest extends ProtocolTest {
 
     }
 
+    @Test
+    public void testFormatRequestTemplate() throws Exception {
+
+        Config config = new Config();
+        config.setString(Keys.FORWARD_URL, "http://localhost/?gprmc={gprmc}&address={address}&other={other}");
+
+        Position position = position("2019-12-31 23:59:59.999", true, -33.8568, -151.2153);
+        position.setSpeed(12.345);
+        position.setCourse(270.005);
+
+        WebDataHandler handler = new WebDataHandler(config, Context.getIdentityManager(), null, null);
+
+        assertEquals(
+                "http://localhost/?gprmc=$GPRMC,235959.999,A,3351.4080,S,15112.9180,W,12.35,270.01,311219,,*32"
+                        + "&address={address}&other={other}",
+                handler.formatRequest(position));
+
+    }
+
 }
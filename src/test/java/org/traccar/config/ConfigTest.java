@@ -2,8 +2,17 @@ package org.traccar.config;
 
 import org.junit.Test;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import org.traccar.config.Config;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Properties;
+
 public class ConfigTest {
 
     @Test
@@ -16,4 +25,71 @@ public class ConfigTest {
         assertEquals("STATUS_TIMEOUT", Config.getEnvironmentVariableName("status.timeout"));
     }
 
+    private static void writeConfig(File file, String key, String value) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(key, value);
+        try (OutputStream outputStream = new FileOutputStream(file)) {
+            properties.storeToXML(outputStream, null);
+        }
+    }
+
+    @Test
+    public void testSetString() throws IOException {
+        File file = File.createTempFile("config", ".xml");
+        try {
+            writeConfig(file, "web.port", "8082");
+            Config config = new Config(file.getPath());
+            assertEquals(8082, config.getInteger("web.port"));
+            assertFalse(config.hasKey("database.query"));
+            assertEquals("default", config.getString("database.query", "default"));
+
+            config.setString("database.query", "SELECT 1");
+            assertTrue(config.hasKey("database.query"));
+            assertEquals("SELECT 1", config.getString("database.query", "default"));
+            assertEquals(8082, config.getInteger("web.port"));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testReload() throws IOException {
+        File file = File.createTempFile("config", ".xml");
+        try {
+            writeConfig(file, "web.port", "8082");
+            Config config = new Config(file.getPath());
+            assertEquals(8082, config.getInteger("web.port"));
+            assertFalse(config.hasKey("database.query"));
+            config.setString("database.query", "SELECT 1");
+            assertTrue(config.hasKey("database.query"));
+            writeConfig(file, "web.port", "8083");
+            assertEquals(8082, config.getInteger("web.port"));
+            config.reload();
+            assertEquals(8083, config.getInteger("web.port"));
+            assertEquals("SELECT 1", config.getString("database.query"));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testTypedValues() {
+        Config config = new Config();
+        config.setString("test.number", "5000000000");
+        config.setString("test.decimal", "1.5");
+        config.setString("test.boolean", "TRUE");
+        assertEquals(5000000000L, config.getLong("test.number"));
+        assertEquals(5000000000.0, config.getDouble("test.number"), 0.0);
+        assertEquals(1.5, config.getDouble("test.decimal"), 0.0);
+        assertTrue(config.getBoolean("test.boolean"));
+        assertFalse(config.getBoolean("test.missing"));
+        assertEquals(7, config.getInteger("test.missing", 7));
+        try {
+            config.getInteger("test.number");
+            fail();
+        } catch (NumberFormatException e) {
+            assertTrue(e.getMessage().contains("5000000000"));
+        }
+    }
+
 }
@@ -1,20 +1,28 @@
 package org.traccar.database;
 
 import org.junit.Test;
+import org.traccar.DatabaseTest;
+import org.traccar.config.Config;
 import org.traccar.model.Attribute;
 import org.traccar.model.Device;
 import org.traccar.model.Driver;
+import org.traccar.model.Event;
 import org.traccar.model.Geofence;
 import org.traccar.model.Group;
 import org.traccar.model.ManagedUser;
 import org.traccar.model.Position;
 import org.traccar.model.User;
 
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
-public class DataManagerTest {
+public class DataManagerTest extends DatabaseTest {
 
     @Test
     public void constructObjectQuery() {
@@ -78,4 +86,71 @@ public class DataManagerTest {
 
     }
 
+    private static Config createHistoryConfig(int chunkSize) throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("database.url", "jdbc:h2:mem:history" + chunkSize + ";DB_CLOSE_DELAY=-1");
+        properties.setProperty("database.historyDays", "1");
+        properties.setProperty("database.historyChunkSize", String.valueOf(chunkSize));
+        properties.setProperty("database.historyChunkDelay", "0");
+        return createConfig(properties);
+    }
+
+    private static List<Long> createHistory(DataManager dataManager, long deviceId) throws Exception {
+        Date old = new Date(System.currentTimeMillis() - 10 * 24 * 3600 * 1000L);
+        List<Long> kept = new ArrayList<>();
+        for (int i = 0; i < 9; i++) {
+            Position position = new Position("test");
+            position.setDeviceId(deviceId);
+            if (i < 7) {
+                position.setServerTime(old);
+                position.setTime(old);
+            } else {
+                position.setTime(new Date());
+            }
+            dataManager.addObject(position);
+            if (i == 3) {
+                dataManager.updateLatestPosition(position);
+            }
+            if (i == 3 || i >= 7) {
+                kept.add(position.getId());
+            }
+
+            Event event = new Event("test", deviceId);
+            if (i < 7) {
+                event.setServerTime(old);
+            }
+            dataManager.addObject(event);
+        }
+        return kept;
+    }
+
+    private static void verifyHistory(DataManager dataManager, long deviceId, List<Long> kept) throws Exception {
+        Date from = new Date(0);
+        Date to = new Date(System.currentTimeMillis() + 3600 * 1000);
+        List<Long> positions = new ArrayList<>();
+        for (Position position : dataManager.getPositions(deviceId, from, to)) {
+            positions.add(position.getId());
+        }
+        assertEquals(kept, positions);
+        assertEquals(2, dataManager.getEvents(deviceId, from, to).size());
+    }
+
+    @Test
+    public void testClearHistory() throws Exception {
+        DataManager dataManager = createDataManager(createHistoryConfig(2));
+        long deviceId = createDevice(dataManager, "history1");
+        List<Long> kept = createHistory(dataManager, deviceId);
+        dataManager.clearHistory();
+        verifyHistory(dataManager, deviceId, kept);
+    }
+
+    @Test
+    public void testClearHistorySingleStatement() throws Exception {
+        DataManager dataManager = createDataManager(createHistoryConfig(0));
+        long deviceId = createDevice(dataManager, "history2");
+        List<Long> kept = createHistory(dataManager, deviceId);
+        dataManager.clearHistory();
+        verifyHistory(dataManager, deviceId, kept);
+    }
+
 }
@@ -0,0 +1,144 @@
+package org.traccar.database;
+
+import org.junit.Test;
+import org.traccar.DatabaseTest;
+import org.traccar.config.Config;
+import org.traccar.model.BaseModel;
+import org.traccar.model.Event;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EventBusTest extends DatabaseTest {
+
+    private static final class CountingDataManager extends DataManager {
+
+        private final AtomicInteger batches = new AtomicInteger();
+
+        private CountingDataManager(Config config) throws Exception {
+            super(config);
+        }
+
+        @Override
+        public boolean addObjects(List<? extends BaseModel> entities) throws SQLException {
+            batches.incrementAndGet();
+            return super.addObjects(entities);
+        }
+
+    }
+
+    private static final class NoKeysDataManager extends DataManager {
+
+        private NoKeysDataManager(Config config) throws Exception {
+            super(config);
+        }
+
+        @Override
+        public boolean addObjects(List<? extends BaseModel> entities) {
+            return false; // driver without batch generated keys, batch rolled back
+        }
+
+    }
+
+    private static Config createConfig(String batchSize, String batchDelay, String queueSize) throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("event.async.batchSize", batchSize);
+        properties.setProperty("event.async.batchDelay", batchDelay);
+        properties.setProperty("event.async.queueSize", queueSize);
+        properties.setProperty("event.async.threads", "2");
+        return createConfig(properties);
+    }
+
+    @Test
+    public void testBatchOrderAndStop() throws Exception {
+        Config config = createConfig("10", "60000", "100");
+        CountingDataManager dataManager = new CountingDataManager(config);
+        long deviceId = createDevice(dataManager, "1");
+
+        List<Event> handled = Collections.synchronizedList(new ArrayList<>());
+        EventBus eventBus = new EventBus(config, dataManager, (event, position) -> handled.add(event));
+
+        List<Event> events = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            Event event = new Event(Event.TYPE_DEVICE_MOVING, deviceId);
+            events.add(event);
+            eventBus.publish(event, null);
+        }
+        eventBus.stop();
+
+        assertEquals(events, handled);
+        assertEquals(3, dataManager.batches.get());
+        for (int i = 1; i < events.size(); i++) {
+            assertTrue(events.get(i).getId() > events.get(i - 1).getId());
+        }
+    }
+
+    @Test
+    public void testQueueFull() throws Exception {
+        Config config = createConfig("1", "0", "1");
+        DataManager dataManager = createDataManager(config);
+        long deviceId = createDevice(dataManager, "2");
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> threads = Collections.synchronizedList(new ArrayList<>());
+        EventBus eventBus = new EventBus(config, dataManager, (event, position) -> {
+            threads.add(Thread.currentThread().getName());
+            if (threads.size() == 1) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        eventBus.publish(new Event(Event.TYPE_DEVICE_MOVING, deviceId), null);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        eventBus.publish(new Event(Event.TYPE_DEVICE_MOVING, deviceId), null);
+        Event overflow = new Event(Event.TYPE_DEVICE_MOVING, deviceId);
+        eventBus.publish(overflow, null);
+
+        assertNotEquals(0, overflow.getId());
+        assertEquals(Thread.currentThread().getName(), threads.get(1));
+
+        release.countDown();
+        eventBus.stop();
+        assertEquals(3, threads.size());
+    }
+
+    @Test
+    public void testMissingGeneratedKeys() throws Exception {
+        Config config = createConfig("10", "60000", "100");
+        DataManager dataManager = new NoKeysDataManager(config);
+        long deviceId = createDevice(dataManager, "3");
+
+        List<Event> handled = Collections.synchronizedList(new ArrayList<>());
+        EventBus eventBus = new EventBus(config, dataManager, (event, position) -> handled.add(event));
+
+        List<Event> events = new ArrayList<>();
+        for (int i = 0; i < 15; i++) {
+            Event event = new Event(Event.TYPE_DEVICE_MOVING, deviceId);
+            events.add(event);
+            eventBus.publish(event, null);
+        }
+        eventBus.stop();
+
+        assertEquals(events, handled);
+        for (Event event : handled) {
+            assertNotEquals(0, event.getId());
+        }
+    }
+
+}
@@ -0,0 +1,176 @@
+package org.traccar.database;
+
+import org.junit.Test;
+import org.traccar.DatabaseTest;
+import org.traccar.config.Config;
+import org.traccar.model.BaseModel;
+import org.traccar.model.Position;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PositionWriterTest extends DatabaseTest {
+
+    private static final class CountingDataManager extends DataManager {
+
+        private final AtomicInteger batches = new AtomicInteger();
+
+        private CountingDataManager(Config config) throws Exception {
+            super(config);
+        }
+
+        @Override
+        public boolean addObjects(List<? extends BaseModel> entities) throws SQLException {
+            batches.incrementAndGet();
+            return super.addObjects(entities);
+        }
+
+    }
+
+    private static final class SlowDataManager extends DataManager {
+
+        private SlowDataManager(Config config) throws Exception {
+            super(config);
+        }
+
+        @Override
+        public void addObject(BaseModel entity) throws SQLException {
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            super.addObject(entity);
+        }
+
+    }
+
+    private static final class NoKeysDataManager extends DataManager {
+
+        private NoKeysDataManager(Config config) throws Exception {
+            super(config);
+        }
+
+        @Override
+        public boolean addObjects(List<? extends BaseModel> entities) {
+            return false; // driver without batch generated keys, batch rolled back
+        }
+
+    }
+
+    private static Position createPosition(long deviceId) {
+        Position position = new Position("test");
+        position.setDeviceId(deviceId);
+        position.setTime(new Date());
+        return position;
+    }
+
+    @Test
+    public void testBatchOrderAndStop() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("database.batch.size", "10");
+        properties.setProperty("database.batch.delay", "60000");
+        Config config = createConfig(properties);
+        CountingDataManager dataManager = new CountingDataManager(config);
+        long deviceId = createDevice(dataManager, "writer1");
+
+        List<Position> stored = Collections.synchronizedList(new ArrayList<>());
+        PositionWriter positionWriter = new PositionWriter(config, dataManager);
+
+        List<Position> positions = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            Position position = createPosition(deviceId);
+            positions.add(position);
+            positionWriter.write(position, stored::add);
+        }
+        positionWriter.stop();
+
+        assertEquals(positions, stored);
+        assertEquals(3, dataManager.batches.get());
+        for (int i = 1; i < positions.size(); i++) {
+            assertTrue(positions.get(i).getId() > positions.get(i - 1).getId());
+        }
+    }
+
+    @Test
+    public void testStopped() throws Exception {
+        Config config = createConfig(new Properties());
+        DataManager dataManager = createDataManager(config);
+        long deviceId = createDevice(dataManager, "writer2");
+
+        PositionWriter positionWriter = new PositionWriter(config, dataManager);
+        positionWriter.stop();
+
+        List<String> threads = new ArrayList<>();
+        Position position = createPosition(deviceId);
+        positionWriter.write(position, p -> threads.add(Thread.currentThread().getName()));
+
+        assertNotEquals(0, position.getId());
+        assertEquals(Collections.singletonList(Thread.currentThread().getName()), threads);
+    }
+
+    @Test
+    public void testQueueFullKeepsOrder() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("database.batch.size", "1");
+        properties.setProperty("database.batch.queueSize", "1");
+        Config config = createConfig(properties);
+        DataManager dataManager = new SlowDataManager(config);
+        long deviceId = createDevice(dataManager, "writer3");
+
+        List<Position> stored = Collections.synchronizedList(new ArrayList<>());
+        List<String> threads = Collections.synchronizedList(new ArrayList<>());
+        PositionWriter positionWriter = new PositionWriter(config, dataManager);
+
+        List<Position> positions = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Position position = createPosition(deviceId);
+            positions.add(position);
+            positionWriter.write(position, p -> {
+                stored.add(p);
+                threads.add(Thread.currentThread().getName());
+            });
+        }
+        positionWriter.stop();
+
+        assertEquals(positions, stored);
+        assertFalse(threads.contains(Thread.currentThread().getName()));
+    }
+
+    @Test
+    public void testMissingGeneratedKeys() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("database.batch.size", "10");
+        properties.setProperty("database.batch.delay", "60000");
+        Config config = createConfig(properties);
+        DataManager dataManager = new NoKeysDataManager(config);
+        long deviceId = createDevice(dataManager, "writer4");
+
+        List<Position> stored = Collections.synchronizedList(new ArrayList<>());
+        PositionWriter positionWriter = new PositionWriter(config, dataManager);
+
+        List<Position> positions = new ArrayList<>();
+        for (int i = 0; i < 15; i++) {
+            Position position = createPosition(deviceId);
+            positions.add(position);
+            positionWriter.write(position, stored::add);
+        }
+        positionWriter.stop();
+
+        assertEquals(positions, stored);
+        for (Position position : stored) {
+            assertNotEquals(0, position.getId());
+        }
+    }
+
+}
@@ -0,0 +1,53 @@
+package org.traccar.geocoder;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class GeocoderCacheTest {
+
+    @Test
+    public void testCache() {
+        GeocoderCache cache = new GeocoderCache(100, 4);
+        cache.put(55.75414, 37.6204, "Moscow");
+        assertEquals("Moscow", cache.get(55.75414, 37.6204));
+        assertEquals("Moscow", cache.get(55.75411, 37.62036));
+        assertNull(cache.get(55.7545, 37.6204));
+        assertNull(cache.get(-55.75414, 37.6204));
+        assertNull(cache.get(55.75414, -37.6204));
+        assertEquals(2, cache.getHits());
+        assertEquals(3, cache.getMisses());
+    }
+
+    @Test
+    public void testEviction() {
+        GeocoderCache cache = new GeocoderCache(1, 5);
+        cache.put(1, 1, "first");
+        cache.put(2, 2, "second");
+        assertNull(cache.get(1, 1));
+        assertEquals("second", cache.get(2, 2));
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void testPersistence() throws IOException {
+        File file = File.createTempFile("geocoder", ".cache");
+        file.deleteOnExit();
+        file.delete();
+
+        GeocoderCache cache = new GeocoderCache(100, 5, file.getPath());
+        cache.put(55.75414, 37.6204, "Moscow");
+        cache.save();
+
+        cache = new GeocoderCache(100, 5, file.getPath());
+        assertEquals("Moscow", cache.get(55.75414, 37.6204));
+
+        cache = new GeocoderCache(100, 4, file.getPath());
+        assertNull(cache.get(55.75414, 37.6204));
+    }
+
+}
@@ -0,0 +1,41 @@
+package org.traccar.geofence;
+
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GeofenceIndexTest {
+
+    @Test
+    public void testGetContaining() throws ParseException {
+        GeofenceIndex index = new GeofenceIndex();
+        index.put(1, new GeofenceCircle("CIRCLE (55.75414 37.6204, 100)"));
+        index.put(2, new GeofencePolygon(
+                "POLYGON ((55.75474 37.61823, 55.75513 37.61888, 55.7535 37.6222, 55.75315 37.62165))"));
+        index.put(3, new GeofencePolygon("POLYGON ((66.9494 179.838, 66.9508 -179.8496, 66.8406 -180.0014))"));
+        index.put(4, new GeofencePolygon("POLYGON ((50 30, 60 30, 60 45, 50 45))"));
+
+        assertEquals(new HashSet<>(Arrays.asList(1L, 2L, 4L)),
+                new HashSet<>(index.getContaining(55.75414, 37.6204, null)));
+        assertEquals(Collections.singletonList(4L), index.getContaining(55.75545, 37.61921, null));
+        assertEquals(Collections.singletonList(3L), index.getContaining(66.9015, -180.0096, null));
+        assertTrue(index.getContaining(0, 0, null).isEmpty());
+
+        assertEquals(Collections.singletonList(1L),
+                index.getContaining(55.75414, 37.6204, new HashSet<>(Arrays.asList(1L, 3L))));
+
+        index.remove(4);
+        assertTrue(index.getContaining(55.75545, 37.61921, null).isEmpty());
+
+        index.put(1, new GeofenceCircle("CIRCLE (0 0, 100)"));
+        assertEquals(Collections.singletonList(1L), index.getContaining(0, 0, null));
+        assertEquals(Collections.singletonList(2L), index.getContaining(55.75414, 37.6204, null));
+    }
+
+}
@@ -49,4 +49,22 @@ public class GeofencePolygonTest {
 
     }
 
+    @Test
+    public void testContainsLargePolygon() throws ParseException {
+        StringBuilder test = new StringBuilder("POLYGON ((");
+        for (int i = 0; i < 100; i++) {
+            double angle = 2 * Math.PI * i / 100;
+            test.append(10 + 5 * Math.sin(angle)).append(' ').append(20 + 5 * Math.cos(angle)).append(", ");
+        }
+        test.setLength(test.length() - 2);
+        test.append("))");
+        GeofenceGeometry geofenceGeometry = new GeofencePolygon(test.toString());
+        assertTrue(geofenceGeometry.containsPoint(10, 20));
+        assertTrue(geofenceGeometry.containsPoint(14.9, 20));
+        assertTrue(geofenceGeometry.containsPoint(10, 15.1));
+        assertTrue(!geofenceGeometry.containsPoint(14.9, 24.9));
+        assertTrue(!geofenceGeometry.containsPoint(10, 25.1));
+        assertTrue(!geofenceGeometry.containsPoint(10, 14.9));
+    }
+
 }
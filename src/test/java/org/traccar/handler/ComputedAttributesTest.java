@@ -2,12 +2,14 @@ package org.traccar.handler;
 
 import java.util.Date;
 
+import org.apache.commons.jexl2.JexlException;
 import org.junit.Test;
 import org.traccar.config.Config;
 import org.traccar.model.Attribute;
 import org.traccar.model.Position;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 
 public class ComputedAttributesTest {
 
@@ -68,4 +70,40 @@ public class ComputedAttributesTest {
 
     }
 
+    @Test
+    public void testCachedExpressions() {
+
+        ComputedAttributesHandler handler = new ComputedAttributesHandler(new Config(), null, null);
+
+        Position position = new Position();
+        position.set("adc1", 128);
+        Attribute attribute = new Attribute();
+        attribute.setId(1);
+
+        attribute.setExpression("adc1 + 1");
+        assertEquals(129, handler.computeAttribute(attribute, position));
+
+        position.set("adc1", 256);
+        assertEquals(257, handler.computeAttribute(attribute, position));
+
+        attribute.setExpression("adc1 - 1");
+        assertEquals(255, handler.computeAttribute(attribute, position));
+
+        attribute.setExpression("x = adc1 * 2");
+        assertEquals(512, handler.computeAttribute(attribute, position));
+        assertFalse(position.getAttributes().containsKey("x"));
+
+    }
+
+    @Test(expected = JexlException.class)
+    public void testUnknownVariable() {
+
+        ComputedAttributesHandler handler = new ComputedAttributesHandler(new Config(), null, null);
+
+        Attribute attribute = new Attribute();
+        attribute.setExpression("unknown + 1");
+        handler.computeAttribute(attribute, new Position());
+
+    }
+
 }
@@ -0,0 +1,24 @@
+package org.traccar.helper;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HeaderUtilTest {
+
+    @Test
+    public void testParseHeaders() {
+        assertTrue(HeaderUtil.parseHeaders(null).isEmpty());
+        assertTrue(HeaderUtil.parseHeaders("").isEmpty());
+
+        Map<String, String> headers = HeaderUtil.parseHeaders(
+                "Content-Type: application/json\r\nAuthorization: Basic a:b\ninvalid");
+        assertEquals(2, headers.size());
+        assertEquals("application/json", headers.get("Content-Type"));
+        assertEquals("Basic a:b", headers.get("Authorization"));
+    }
+
+}
@@ -0,0 +1,34 @@
+package org.traccar.helper;
+
+import org.junit.Test;
+import org.traccar.model.Position;
+
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class PositionUtilTest {
+
+    @Test
+    public void testCopyWithAddress() {
+        Position position = new Position("test");
+        position.setId(10);
+        position.setDeviceId(1);
+        position.setTime(new Date());
+        position.setLatitude(52.5);
+        position.setLongitude(13.4);
+        position.set(Position.KEY_SATELLITES, 5);
+
+        Position copy = PositionUtil.copyWithAddress(position, "Berlin");
+        copy.set(Position.KEY_SATELLITES, 6);
+
+        assertEquals("Berlin", copy.getAddress());
+        assertEquals(10, copy.getId());
+        assertEquals(position.getFixTime(), copy.getFixTime());
+        assertEquals(52.5, copy.getLatitude(), 0.0);
+        assertNull(position.getAddress());
+        assertEquals(5, position.getInteger(Position.KEY_SATELLITES));
+    }
+
+}
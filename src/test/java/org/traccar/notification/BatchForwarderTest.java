@@ -0,0 +1,72 @@
+package org.traccar.notification;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.traccar.config.Config;
+import org.traccar.config.Keys;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+
+public class BatchForwarderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRejectedBatch() throws Exception {
+        List<String> requests = new CopyOnWriteArrayList<>();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            try (InputStream input = exchange.getRequestBody()) {
+                byte[] buffer = new byte[1024];
+                int length;
+                while ((length = input.read(buffer)) > 0) {
+                    body.write(buffer, 0, length);
+                }
+            }
+            String request = new String(body.toByteArray(), StandardCharsets.UTF_8);
+            requests.add(request);
+            exchange.sendResponseHeaders(request.contains("invalid") ? 400 : 200, -1);
+            exchange.close();
+        });
+        server.start();
+        Client client = ClientBuilder.newClient();
+        try {
+            Config config = new Config();
+            config.setString(Keys.FORWARD_BATCH_SPOOL.withPrefix("forward"), folder.newFolder().getPath());
+            config.setString(Keys.FORWARD_BATCH_SIZE.withPrefix("forward"), "1");
+            config.setString(Keys.FORWARD_BATCH_DELAY.withPrefix("forward"), "0");
+            BatchForwarder forwarder = new BatchForwarder(config, "forward", new ObjectMapper(), client,
+                    "http://localhost:" + server.getAddress().getPort() + "/", null);
+
+            forwarder.forward("invalid");
+            forwarder.forward("valid");
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (requests.size() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(2, requests.size());
+            assertEquals("[\"invalid\"]", requests.get(0));
+            assertEquals("[\"valid\"]", requests.get(1));
+            assertEquals(1, forwarder.getRejected());
+        } finally {
+            client.close();
+            server.stop(0);
+        }
+    }
+
+}
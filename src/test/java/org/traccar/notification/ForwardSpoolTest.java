@@ -0,0 +1,122 @@
+package org.traccar.notification;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class ForwardSpoolTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] record(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String value(byte[] record) {
+        return new String(record, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testSegments() throws Exception {
+        File directory = folder.newFolder();
+        ForwardSpool spool = new ForwardSpool(directory, 10, 0);
+        for (int i = 0; i < 5; i++) {
+            spool.append(record("record" + i));
+        }
+        assertEquals(5, directory.list().length);
+
+        ForwardSpool.Batch batch = spool.take(3, 0);
+        assertEquals(3, batch.getRecords().size());
+        assertEquals("record0", value(batch.getRecords().get(0)));
+        assertEquals("record2", value(batch.getRecords().get(2)));
+        spool.acknowledge(batch);
+        assertEquals(2, directory.list().length);
+
+        batch = spool.take(3, 0);
+        assertEquals(2, batch.getRecords().size());
+        assertEquals("record4", value(batch.getRecords().get(1)));
+    }
+
+    @Test
+    public void testRecovery() throws Exception {
+        File directory = folder.newFolder();
+        ForwardSpool spool = new ForwardSpool(directory, 1024, 0);
+        spool.append(record("first"));
+        spool.append(record("second"));
+        spool.acknowledge(spool.take(1, 0));
+
+        File segment = directory.listFiles()[0];
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.setLength(file.length() - 1);
+        }
+
+        spool = new ForwardSpool(directory, 1024, 0);
+        assertEquals(1, spool.getAvailable());
+        spool.append(record("third"));
+
+        ForwardSpool.Batch batch = spool.take(10, 0);
+        assertEquals(2, batch.getRecords().size());
+        assertEquals("first", value(batch.getRecords().get(0)));
+        assertEquals("third", value(batch.getRecords().get(1)));
+    }
+
+    @Test
+    public void testSizeLimit() throws Exception {
+        File directory = folder.newFolder();
+        ForwardSpool spool = new ForwardSpool(directory, 10, 30);
+        for (int i = 0; i < 5; i++) {
+            spool.append(record("record" + i));
+        }
+        assertEquals(2, directory.list().length);
+        assertEquals(2, spool.getAvailable());
+
+        ForwardSpool.Batch batch = spool.take(10, 0);
+        assertEquals(2, batch.getRecords().size());
+        assertEquals("record3", value(batch.getRecords().get(0)));
+        assertEquals("record4", value(batch.getRecords().get(1)));
+    }
+
+    @Test
+    public void testCorruptedRecord() throws Exception {
+        File directory = folder.newFolder();
+        ForwardSpool spool = new ForwardSpool(directory, 10, 0);
+        spool.append(record("a"));
+        spool.append(record("b"));
+
+        File segment = directory.listFiles()[0];
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.writeInt(Integer.MAX_VALUE);
+        }
+
+        spool.append(record("c"));
+
+        ForwardSpool.Batch batch = spool.take(10, 0);
+        assertEquals(1, batch.getRecords().size());
+        assertEquals("c", value(batch.getRecords().get(0)));
+        assertFalse(segment.exists());
+    }
+
+    @Test
+    public void testAppendList() throws Exception {
+        File directory = folder.newFolder();
+        ForwardSpool spool = new ForwardSpool(directory, 20, 0);
+        spool.append(Arrays.asList(record("record0"), record("record1"), record("record2")));
+        assertEquals(2, directory.list().length);
+        assertEquals(3, spool.getAvailable());
+
+        ForwardSpool.Batch batch = spool.take(5, 0);
+        assertEquals(3, batch.getRecords().size());
+        assertEquals("record0", value(batch.getRecords().get(0)));
+        assertEquals("record2", value(batch.getRecords().get(2)));
+    }
+
+}
@@ -0,0 +1,81 @@
+package org.traccar.notification;
+
+import org.junit.Test;
+import org.traccar.config.Config;
+import org.traccar.model.Event;
+import org.traccar.model.Position;
+import org.traccar.notificators.Notificator;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NotificationDispatcherTest {
+
+    @Test
+    public void testRetry() throws Exception {
+        Config config = new Config();
+        config.setString("notificator.test.retryDelay", "10");
+
+        AtomicInteger attempts = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(1);
+        Notificator notificator = new Notificator() {
+            @Override
+            public void sendSync(long userId, Event event, Position position) throws MessageException {
+                if (attempts.incrementAndGet() < 3) {
+                    throw new MessageException("error");
+                }
+                latch.countDown();
+            }
+        };
+
+        ScheduledExecutorService retryExecutor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            NotificationDispatcher dispatcher = new NotificationDispatcher(config, "test", notificator, retryExecutor);
+            dispatcher.dispatch(1, new Event("test", 1), null);
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            assertEquals(3, attempts.get());
+            assertEquals(2, dispatcher.getRetried());
+            assertEquals(0, dispatcher.getFailed());
+        } finally {
+            retryExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testOverflow() throws Exception {
+        Config config = new Config();
+        config.setString("notificator.test.threads", "1");
+        config.setString("notificator.test.queueSize", "1");
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Notificator notificator = new Notificator() {
+            @Override
+            public void sendSync(long userId, Event event, Position position) throws InterruptedException {
+                started.countDown();
+                release.await();
+            }
+        };
+
+        ScheduledExecutorService retryExecutor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            NotificationDispatcher dispatcher = new NotificationDispatcher(config, "test", notificator, retryExecutor);
+            dispatcher.dispatch(1, new Event("test", 1), null);
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            dispatcher.dispatch(1, new Event("test", 1), null);
+            dispatcher.dispatch(1, new Event("test", 1), null);
+            assertEquals(1, dispatcher.getQueueSize());
+            assertEquals(1, dispatcher.getDropped());
+        } finally {
+            release.countDown();
+            retryExecutor.shutdownNow();
+        }
+    }
+
+}
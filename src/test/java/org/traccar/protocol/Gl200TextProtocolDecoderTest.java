@@ -16,7 +16,7 @@ public class Gl200TextProtocolDecoderTest extends ProtocolTest {
                 Position.KEY_BATTERY_LEVEL, 79);
 
         verifyAttribute(decoder, buffer(
-                "+RESP:GTFRI,DE0114,865284042140479,,0,0,1,1,0.0,0,28.0,-118.268093,33.975430,20200901105954,0311,0480,3500,00D07F02,18,0,,93,0,,,20200901110000,0355$"),
+                ProtocolSamples.GL200_FRI),
                 Position.KEY_BATTERY_LEVEL, 93);
 
         verifyAttribute(decoder, buffer(
@@ -24,7 +24,7 @@ public class Gl200TextProtocolDecoderTest extends ProtocolTest {
                 Position.KEY_BATTERY_LEVEL, 85);
 
         verifyAttribute(decoder, buffer(
-                "+RESP:GTFRI,380903,869606020188383,,,40,1,2,43.4,80,252.4,8.606297,50.700200,20200721090109,0262,0001,1932,1BA4,00,0.0,,,,0,220100,,,,20200721090110,00B9$"),
+                ProtocolSamples.GL200_FRI_INPUTS),
                 Position.PREFIX_IN + 1, false);
 
         verifyPositions(decoder, buffer(
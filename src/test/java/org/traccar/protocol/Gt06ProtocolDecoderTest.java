@@ -15,21 +15,21 @@ public class Gt06ProtocolDecoderTest extends ProtocolTest {
                 "787805120099abec0d0a"));
 
         verifyNull(decoder, binary(
-                "78780D01086471700328358100093F040D0A"));
+                ProtocolSamples.GT06_LOGIN));
 
         verifyAttribute(decoder, binary(
                 "7979000E9B0332382E33A1E60D0A0289BE490D0A"),
                 Position.PREFIX_TEMP + 1, 28.3);
 
         verifyPosition(decoder, binary(
-                "7878353714080d05000ac500a886eb0b7522f000100001fe0a05ea004f1b000001002e0400002328003b0217c0003c0401020001002c468a0d0a"));
+                ProtocolSamples.GT06_GPS_LBS));
 
         verifyAttribute(decoder, binary(
                 "79790020940a035985708236675805200502187214018966051912408052452f000355560d0a"),
                 Position.KEY_ICCID, "8966051912408052452");
 
         verifyPosition(decoder, binary(
-                "7878252612030C063816C3026C10540C38C9700144030901CC002866000EEE0C06040302000DA2DB0D0A"));
+                ProtocolSamples.GT06_ALARM));
 
         verifyAttribute(decoder, binary(
                 "78784A1614051C150204EC02777E560C2A2A2A5314AF000000000000040000000000000000000000000000000000000000000000000000000000000000000000000000007E061B0982004B24C00D0A"),
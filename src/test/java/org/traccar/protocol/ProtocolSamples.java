@@ -0,0 +1,39 @@
+package org.traccar.protocol;
+
+/**
+ * Sample messages shared by the decoder tests and the decoder benchmarks. Binary messages are hex strings, text
+ * messages are sent as they are.
+ */
+public final class ProtocolSamples {
+
+    public static final String GT06_LOGIN =
+            "78780D01086471700328358100093F040D0A";
+
+    public static final String GT06_GPS_LBS =
+            "7878353714080d05000ac500a886eb0b7522f000100001fe0a05ea004f1b000001002e0400002328003b0217c0003c0401020001002c468a0d0a";
+
+    public static final String GT06_ALARM =
+            "7878252612030C063816C3026C10540C38C9700144030901CC002866000EEE0C06040302000DA2DB0D0A";
+
+    public static final String TELTONIKA_IDENTIFICATION =
+            "000F313233343536373839303132333435";
+
+    public static final String TELTONIKA_CODEC_8E =
+            "00000000000000858e0200000174431aadc100061d888f21000e8a0032002e0c000001810001000000000000000000010181001711210102030405060708090a0b0c0d0e0f10020b010ad000000174431a389100061d888f21000e8a0033002e0d000001810001000000000000000000010181001711210102030405060708090a0b0c0d0e0f10020b010ad2020000492b";
+
+    public static final String GL200_FRI =
+            "+RESP:GTFRI,DE0114,865284042140479,,0,0,1,1,0.0,0,28.0,-118.268093,33.975430,20200901105954,0311,0480,3500,00D07F02,18,0,,93,0,,,20200901110000,0355$";
+
+    public static final String GL200_FRI_INPUTS =
+            "+RESP:GTFRI,380903,869606020188383,,,40,1,2,43.4,80,252.4,8.606297,50.700200,20200721090109,0262,0001,1932,1BA4,00,0.0,,,,0,220100,,,,20200721090110,00B9$";
+
+    public static final String H02_V5 =
+            "*HQ,9180271064,V5,091233,V,2348.8912,N,09021.3302,E,000.00,000,051219,FFFFBBFF,470,01,21019,2033,2921283#";
+
+    public static final String H02_V1 =
+            "*HQ,865205035331981,V1,132926,A,1935.3933,N,07920.4134,E,  3.34,342,280519,FFFFFFFF#";
+
+    private ProtocolSamples() {
+    }
+
+}
@@ -12,10 +12,10 @@ public class TeltonikaProtocolDecoderTest extends ProtocolTest {
         TeltonikaProtocolDecoder decoder = new TeltonikaProtocolDecoder(null, false);
 
         verifyNull(decoder, binary(
-                "000F313233343536373839303132333435"));
+                ProtocolSamples.TELTONIKA_IDENTIFICATION));
 
         verifyPositions(decoder, binary(
-                "00000000000000858e0200000174431aadc100061d888f21000e8a0032002e0c000001810001000000000000000000010181001711210102030405060708090a0b0c0d0e0f10020b010ad000000174431a389100061d888f21000e8a0033002e0d000001810001000000000000000000010181001711210102030405060708090a0b0c0d0e0f10020b010ad2020000492b"));
+                ProtocolSamples.TELTONIKA_CODEC_8E));
 
         verifyPositions(decoder, false, binary(
                 "000000000000001C0D01050000001056E924222347455420444154414F524445520D0A0100004990"));
@@ -121,7 +121,7 @@ public class TeltonikaProtocolDecoderTest extends ProtocolTest {
         TeltonikaProtocolDecoder decoder = new TeltonikaProtocolDecoder(null, false);
 
         verifyNull(decoder, binary(
-                "000F313233343536373839303132333435"));
+                ProtocolSamples.TELTONIKA_IDENTIFICATION));
 
         verifyNull(decoder, binary(
                 "00000000000000090c010D00000001000100000CD8"));
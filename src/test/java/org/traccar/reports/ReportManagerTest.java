@@ -0,0 +1,131 @@
+package org.traccar.reports;
+
+import org.junit.Test;
+import org.traccar.config.Config;
+import org.traccar.config.Keys;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ReportManagerTest {
+
+    private static ReportManager createReportManager(int threads, int userLimit) {
+        return createReportManager(threads, userLimit, 0);
+    }
+
+    private static ReportManager createReportManager(int threads, int userLimit, int globalLimit) {
+        Config config = new Config();
+        config.setString(Keys.REPORT_THREADS, String.valueOf(threads));
+        config.setString(Keys.REPORT_USER_LIMIT, String.valueOf(userLimit));
+        config.setString(Keys.REPORT_GLOBAL_LIMIT, String.valueOf(globalLimit));
+        return new ReportManager(config);
+    }
+
+    @Test
+    public void testResultOrder() throws Exception {
+        ReportManager reportManager = createReportManager(4, 0);
+        List<Long> deviceIds = Arrays.asList(5L, 1L, 4L, 2L, 3L);
+
+        List<String> results = reportManager.execute(1, "test", () -> reportManager.processDevices(deviceIds, id -> {
+            try {
+                Thread.sleep(id * 10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "device" + id;
+        }));
+
+        assertEquals(Arrays.asList("device5", "device1", "device4", "device2", "device3"), results);
+    }
+
+    @Test
+    public void testCancellation() throws Exception {
+        ReportManager reportManager = createReportManager(1, 0);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+
+        ReportJob job = reportManager.submit(1, "test", () -> reportManager.processDevices(
+                Arrays.asList(1L, 2L, 3L, 4L), id -> {
+                    calls.incrementAndGet();
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return id;
+                }));
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertEquals(4, job.getTotal());
+        reportManager.cancel(job.getId());
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (reportManager.getJob(job.getId()) != null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertNull(reportManager.getJob(job.getId()));
+        assertTrue(job.getCancelled());
+
+        release.countDown();
+        assertEquals(1, reportManager.processDevices(Arrays.asList(5L), id -> id).size());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void testUserLimit() throws Exception {
+        ReportManager reportManager = createReportManager(1, 1);
+
+        ReportJob job = reportManager.createJob(1, "test");
+        try {
+            reportManager.createJob(1, "test");
+            fail();
+        } catch (ReportLimitException e) {
+            assertEquals("Too many reports in progress for user", e.getMessage());
+        }
+        reportManager.execute(reportManager.createJob(2, "test"), () -> null);
+
+        reportManager.execute(job, () -> null);
+        reportManager.execute(reportManager.createJob(1, "test"), () -> null);
+        assertTrue(reportManager.getJobs(1).isEmpty());
+    }
+
+    @Test
+    public void testGlobalLimit() throws Exception {
+        ReportManager reportManager = createReportManager(1, 0, 2);
+
+        ReportJob job = reportManager.createJob(1, "test");
+        reportManager.createJob(2, "test");
+        try {
+            reportManager.createJob(3, "test");
+            fail();
+        } catch (ReportLimitException e) {
+            assertEquals("Too many reports in progress", e.getMessage());
+        }
+
+        reportManager.execute(job, () -> null);
+        reportManager.execute(reportManager.createJob(3, "test"), () -> null);
+    }
+
+    @Test
+    public void testDeviceQueueFull() throws Exception {
+        ReportManager reportManager = createReportManager(1, 0);
+        List<Long> deviceIds = new ArrayList<>();
+        for (long i = 0; i < 5000; i++) {
+            deviceIds.add(i);
+        }
+        List<Long> results = reportManager.processDevices(deviceIds, id -> id);
+        assertEquals(deviceIds, results);
+    }
+
+}
@@ -0,0 +1,124 @@
+package org.traccar.reports;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.traccar.DatabaseTest;
+import org.traccar.database.DataManager;
+import org.traccar.database.RollupManager;
+import org.traccar.model.Position;
+import org.traccar.reports.model.SummaryReport;
+
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class SummaryTest extends DatabaseTest {
+
+    private static DataManager dataManager;
+
+    @BeforeClass
+    public static void init() throws Exception {
+        dataManager = createDataManager(createConfig(new Properties()));
+    }
+
+    private static Date date(String time) throws ParseException {
+        DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return dateFormat.parse(time);
+    }
+
+    private static Position store(RollupManager rollupManager, long deviceId, long time, int index) throws Exception {
+        Position position = new Position("test");
+        position.setDeviceId(deviceId);
+        position.setTime(new Date(time));
+        position.setValid(true);
+        position.setSpeed(index % 7 * 3 + index % 5);
+        position.set(Position.KEY_TOTAL_DISTANCE, index * 100.0 + index % 3);
+        position.set(Position.KEY_HOURS, index * 60000L);
+        dataManager.addObject(position);
+        if (rollupManager != null) {
+            rollupManager.updateRollup(position);
+        }
+        return position;
+    }
+
+    private static void assertSummaries(Collection<SummaryReport> expected, Collection<SummaryReport> actual) {
+        assertEquals(expected.size(), actual.size());
+        List<SummaryReport> expectedList = new ArrayList<>(expected);
+        List<SummaryReport> actualList = new ArrayList<>(actual);
+        for (int i = 0; i < expectedList.size(); i++) {
+            SummaryReport expectedItem = expectedList.get(i);
+            SummaryReport actualItem = actualList.get(i);
+            assertEquals(expectedItem.getDeviceId(), actualItem.getDeviceId());
+            assertEquals(expectedItem.getStartTime(), actualItem.getStartTime());
+            assertEquals(expectedItem.getEndTime(), actualItem.getEndTime());
+            assertEquals(expectedItem.getDistance(), actualItem.getDistance(), 0.01);
+            assertEquals(expectedItem.getStartOdometer(), actualItem.getStartOdometer(), 0.01);
+            assertEquals(expectedItem.getEndOdometer(), actualItem.getEndOdometer(), 0.01);
+            assertEquals(expectedItem.getAverageSpeed(), actualItem.getAverageSpeed(), 0.01);
+            assertEquals(expectedItem.getMaxSpeed(), actualItem.getMaxSpeed(), 0.01);
+            assertEquals(expectedItem.getEngineHours(), actualItem.getEngineHours());
+        }
+    }
+
+    private static void verify(
+            RollupManager rollupManager, long deviceId, String from, String to) throws Exception {
+        for (String timezone : new String[] {"Europe/Berlin", "Asia/Kolkata"}) {
+            for (boolean daily : new boolean[] {false, true}) {
+                assertSummaries(
+                        Summary.calculateSummaryResults(dataManager, null, TimeZone.getTimeZone(timezone),
+                                deviceId, date(from), date(to), daily),
+                        Summary.calculateSummaryResults(dataManager, rollupManager, TimeZone.getTimeZone(timezone),
+                                deviceId, date(from), date(to), daily));
+            }
+        }
+    }
+
+    @Test
+    public void testRollupMatchesPositions() throws Exception {
+        long deviceId = createDevice(dataManager, "summary1");
+        RollupManager rollupManager = new RollupManager(dataManager, 0);
+
+        long step = 10 * 60 * 1000;
+        long enableTime = date("2016-03-26 23:35").getTime();
+        int index = 0;
+        for (long time = date("2016-03-26 20:00").getTime(); time < date("2016-03-28 02:00").getTime(); time += step) {
+            store(time < enableTime ? null : rollupManager, deviceId, time, index++);
+        }
+        store(rollupManager, deviceId, date("2016-03-27 05:05").getTime(), index++);
+        store(rollupManager, deviceId, date("2016-03-27 18:45").getTime(), index);
+
+        assertNotNull(rollupManager.getFirstRollup(deviceId));
+        assertEquals(date("2016-03-26 23:00"), rollupManager.getFirstRollup(deviceId).getStartTime());
+
+        verify(rollupManager, deviceId, "2016-03-26 00:00", "2016-03-29 00:00");
+        verify(rollupManager, deviceId, "2016-03-26 21:15", "2016-03-27 22:45");
+        verify(rollupManager, deviceId, "2016-03-26 23:15", "2016-03-27 01:59");
+        verify(rollupManager, deviceId, "2016-03-27 00:30", "2016-03-27 00:50");
+        verify(rollupManager, deviceId, "2016-03-27 18:25", "2016-03-28 01:05");
+
+        rollupManager.stop();
+    }
+
+    @Test
+    public void testNoPositions() throws Exception {
+        long deviceId = createDevice(dataManager, "summary2");
+        RollupManager rollupManager = new RollupManager(dataManager, 0);
+        store(rollupManager, deviceId, date("2016-01-01 10:00").getTime(), 1);
+
+        verify(rollupManager, deviceId, "2016-01-02 00:00", "2016-01-03 00:00");
+        verify(rollupManager, deviceId, "2016-01-01 10:30", "2016-01-01 12:00");
+
+        rollupManager.stop();
+    }
+
+}
@@ -0,0 +1,160 @@
+package org.traccar.reports;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.traccar.DatabaseTest;
+import org.traccar.TestIdentityManager;
+import org.traccar.database.DataManager;
+import org.traccar.model.Position;
+import org.traccar.reports.model.BaseReport;
+import org.traccar.reports.model.StopReport;
+import org.traccar.reports.model.TripReport;
+import org.traccar.reports.model.TripsConfig;
+
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class TripsManagerTest extends DatabaseTest {
+
+    private static final TripsConfig TRIPS_CONFIG = new TripsConfig(500, 300000, 180000, 0, false, false, 0.01);
+
+    private static DataManager dataManager;
+
+    @BeforeClass
+    public static void init() throws Exception {
+        dataManager = createDataManager(createConfig(new Properties()));
+    }
+
+    private static Date date(String time) throws ParseException {
+        DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return dateFormat.parse(time);
+    }
+
+    private static List<Position> createPositions(long deviceId) throws Exception {
+        double[] speeds = {0, 0, 10, 10, 10, 0, 0, 0, 0, 0};
+        double[] distances = {0, 0, 0, 1000, 2000, 3000, 3000, 3000, 3000, 3000};
+        List<Position> positions = new ArrayList<>();
+        for (int i = 0; i < speeds.length; i++) {
+            Position position = new Position("test");
+            position.setDeviceId(deviceId);
+            position.setTime(date(String.format("2016-01-01 00:%02d:00.000", i)));
+            position.setValid(true);
+            position.setSpeed(speeds[i]);
+            position.set(Position.KEY_TOTAL_DISTANCE, distances[i]);
+            positions.add(position);
+        }
+        return positions;
+    }
+
+    private static TripsManager createTripsManager(TripsConfig tripsConfig) {
+        return new TripsManager(dataManager, new TestIdentityManager(), null, tripsConfig, 1);
+    }
+
+    private static void store(TripsManager tripsManager, Position position) throws Exception {
+        dataManager.addObject(position);
+        tripsManager.updatePosition(position);
+    }
+
+    private static <T extends BaseReport> void assertReports(
+            Collection<T> expected, Collection<T> actual) {
+        assertNotNull(actual);
+        assertEquals(expected.size(), actual.size());
+        List<T> expectedList = new ArrayList<>(expected);
+        List<T> actualList = new ArrayList<>(actual);
+        for (int i = 0; i < expectedList.size(); i++) {
+            assertEquals(expectedList.get(i).getStartTime(), actualList.get(i).getStartTime());
+            assertEquals(expectedList.get(i).getEndTime(), actualList.get(i).getEndTime());
+            assertEquals(expectedList.get(i).getDistance(), actualList.get(i).getDistance(), 0.01);
+        }
+    }
+
+    private static <T extends BaseReport> Collection<T> detect(List<Position> positions, Class<T> reportClass) {
+        return ReportUtils.detectTripsAndStops(
+                new TestIdentityManager(), null, positions, TRIPS_CONFIG, false, reportClass);
+    }
+
+    @Test
+    public void testInOrder() throws Exception {
+        long deviceId = createDevice(dataManager, "trips1");
+        List<Position> positions = createPositions(deviceId);
+
+        TripsManager tripsManager = createTripsManager(TRIPS_CONFIG);
+        for (Position position : positions) {
+            store(tripsManager, position);
+        }
+
+        Date from = date("2016-01-01 00:00:00.000");
+        Date to = date("2016-01-01 01:00:00.000");
+
+        assertReports(detect(positions, TripReport.class),
+                tripsManager.getReports(deviceId, TripReport.class, from, to));
+
+        Collection<StopReport> stops = tripsManager.getReports(deviceId, StopReport.class, from, to);
+        assertReports(detect(positions, StopReport.class), stops);
+        assertEquals(date("2016-01-01 00:09:00.000"), new ArrayList<>(stops).get(1).getEndTime());
+    }
+
+    @Test
+    public void testOutOfOrder() throws Exception {
+        long deviceId = createDevice(dataManager, "trips2");
+        List<Position> positions = createPositions(deviceId);
+
+        TripsManager tripsManager = createTripsManager(TRIPS_CONFIG);
+        for (int i = 0; i < positions.size() - 1; i++) {
+            if (i != 3) {
+                store(tripsManager, positions.get(i));
+            }
+        }
+        store(tripsManager, positions.get(3));
+
+        Date from = date("2016-01-01 00:00:00.000");
+        Date to = date("2016-01-01 01:00:00.000");
+        assertNull(tripsManager.getReports(deviceId, TripReport.class, from, to));
+
+        store(tripsManager, positions.get(positions.size() - 1));
+
+        assertReports(detect(positions, TripReport.class),
+                tripsManager.getReports(deviceId, TripReport.class, from, to));
+        assertReports(detect(positions, StopReport.class),
+                tripsManager.getReports(deviceId, StopReport.class, from, to));
+    }
+
+    @Test
+    public void testConfigurationChange() throws Exception {
+        long deviceId = createDevice(dataManager, "trips3");
+        List<Position> positions = createPositions(deviceId);
+
+        TripsManager tripsManager = createTripsManager(TRIPS_CONFIG);
+        for (Position position : positions) {
+            store(tripsManager, position);
+        }
+
+        Date from = date("2016-01-01 00:00:00.000");
+        Date to = date("2016-01-01 01:00:00.000");
+
+        TripsManager changedManager = createTripsManager(
+                new TripsConfig(500, 300000, 120000, 0, false, false, 0.01));
+        assertNull(changedManager.getReports(deviceId, TripReport.class, from, to));
+
+        Position position = new Position("test");
+        position.setDeviceId(deviceId);
+        position.setTime(date("2016-01-01 00:10:00.000"));
+        store(changedManager, position);
+        assertNull(changedManager.getReports(deviceId, TripReport.class, from, to));
+
+        assertNotNull(tripsManager.getReports(deviceId, TripReport.class, from, to));
+    }
+
+}